@@ -4,6 +4,7 @@ import foundry.veil.api.client.render.VeilRenderSystem;
 import foundry.veil.api.molang.VeilMolang;
 import foundry.veil.impl.client.imgui.VeilImGui;
 import foundry.veil.impl.client.imgui.VeilImGuiImpl;
+import foundry.veil.impl.network.VeilPackets;
 import foundry.veil.platform.VeilPlatform;
 import gg.moonflower.molangcompiler.api.MolangCompiler;
 import net.minecraft.resources.ResourceLocation;
@@ -43,6 +44,7 @@ public class Veil {
             LOGGER.info("ImGui Disabled");
         }
         VeilMolang.set(MolangCompiler.create(MolangCompiler.DEFAULT_FLAGS, Veil.class.getClassLoader()));
+        VeilPackets.init();
     }
 
     /**
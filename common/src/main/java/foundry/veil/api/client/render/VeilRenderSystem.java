@@ -100,6 +100,8 @@ public final class VeilRenderSystem {
     private static final BooleanSupplier NV_DRAW_TEXTURE_SUPPORTED = VeilRenderSystem.glCapability(caps -> caps.GL_NV_draw_texture);
     private static final BooleanSupplier DRAW_INDIRECT_SUPPORTED = VeilRenderSystem.glCapability(caps -> caps.OpenGL40 || caps.GL_ARB_draw_indirect);
     private static final BooleanSupplier MULTI_DRAW_INDIRECT_SUPPORTED = VeilRenderSystem.glCapability(caps -> caps.OpenGL43 || caps.GL_ARB_multi_draw_indirect);
+    private static final BooleanSupplier BASE_INSTANCE_SUPPORTED = VeilRenderSystem.glCapability(caps -> caps.OpenGL42 || caps.GL_ARB_base_instance);
+    private static final BooleanSupplier BUFFER_STORAGE_SUPPORTED = VeilRenderSystem.glCapability(caps -> caps.OpenGL44 || caps.GL_ARB_buffer_storage);
     private static final IntSupplier MAX_COMBINED_TEXTURE_IMAGE_UNITS = VeilRenderSystem.glGetter(() -> glGetInteger(GL_MAX_COMBINED_TEXTURE_IMAGE_UNITS));
     private static final IntSupplier MAX_COLOR_ATTACHMENTS = VeilRenderSystem.glGetter(() -> glGetInteger(GL_MAX_COLOR_ATTACHMENTS));
     private static final IntSupplier MAX_SAMPLES = VeilRenderSystem.glGetter(() -> glGetInteger(GL_MAX_SAMPLES));
@@ -612,6 +614,20 @@ public final class VeilRenderSystem {
         return VeilRenderSystem.MULTI_DRAW_INDIRECT_SUPPORTED.getAsBoolean();
     }
 
+    /**
+     * @return Whether {@link ARBBaseInstance} is supported
+     */
+    public static boolean baseInstanceSupported() {
+        return VeilRenderSystem.BASE_INSTANCE_SUPPORTED.getAsBoolean();
+    }
+
+    /**
+     * @return Whether {@link ARBBufferStorage} is supported
+     */
+    public static boolean bufferStorageSupported() {
+        return VeilRenderSystem.BUFFER_STORAGE_SUPPORTED.getAsBoolean();
+    }
+
     /**
      * @return The GL maximum number of texture units that can be bound
      */
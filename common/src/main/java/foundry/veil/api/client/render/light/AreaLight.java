@@ -9,6 +9,7 @@ import imgui.type.ImFloat;
 import net.minecraft.client.Camera;
 import net.minecraft.util.Mth;
 import net.minecraft.world.phys.Vec3;
+import org.jetbrains.annotations.ApiStatus;
 import org.joml.*;
 
 import java.lang.Math;
@@ -26,6 +27,8 @@ public class AreaLight extends Light implements InstancedLight, PositionedLight<
 
     protected float angle;
     protected float distance;
+    protected boolean castsShadows;
+    private final Vector4f shadowTile;
 
     public AreaLight() {
         this.matrix = new Matrix4d();
@@ -36,6 +39,7 @@ public class AreaLight extends Light implements InstancedLight, PositionedLight<
 
         this.angle = (float) Math.toRadians(45);
         this.distance = 1.0F;
+        this.shadowTile = new Vector4f();
     }
 
     @Override
@@ -52,6 +56,14 @@ public class AreaLight extends Light implements InstancedLight, PositionedLight<
 
         buffer.putShort((short) Mth.clamp((int) (this.angle * MAX_ANGLE_SIZE), 0, 65535));
         buffer.putFloat(this.distance);
+
+        // A tile size of 0 disables shadows in the shader
+        if (this.castsShadows) {
+            this.shadowTile.get(buffer.position(), buffer);
+            buffer.position(buffer.position() + Float.BYTES * 4);
+        } else {
+            buffer.putFloat(0.0F).putFloat(0.0F).putFloat(0.0F).putFloat(0.0F);
+        }
     }
 
     @Override
@@ -92,6 +104,19 @@ public class AreaLight extends Light implements InstancedLight, PositionedLight<
         return this.distance;
     }
 
+    /**
+     * @return Whether the light is blocked by terrain
+     */
+    public boolean castsShadows() {
+        return this.castsShadows;
+    }
+
+    @Override
+    public float getInfluenceRadius() {
+        // The corners of the surface are the furthest points from the center
+        return this.size.length() + this.distance;
+    }
+
     @Override
     public AreaLight setColor(float red, float green, float blue) {
         return (AreaLight) super.setColor(red, green, blue);
@@ -159,6 +184,33 @@ public class AreaLight extends Light implements InstancedLight, PositionedLight<
         return this;
     }
 
+    /**
+     * Sets whether terrain blocks this light. Shadows are drawn from the center of the light's surface.
+     *
+     * @param castsShadows Whether the light should cast shadows
+     */
+    public AreaLight setCastsShadows(boolean castsShadows) {
+        this.castsShadows = castsShadows;
+        this.markDirty();
+        return this;
+    }
+
+    /**
+     * Sets the region of the shadow atlas this light's shadow map is drawn into.
+     *
+     * @param u          The x position of the tile in the atlas from 0 to 1
+     * @param v          The y position of the tile in the atlas from 0 to 1
+     * @param size       The size of the tile in the atlas from 0 to 1 or <code>0</code> to disable shadows
+     * @param tanHalfFov The tangent of half the field of view the shadow map was drawn with
+     */
+    @ApiStatus.Internal
+    public void setShadowTile(float u, float v, float size, float tanHalfFov) {
+        if (this.shadowTile.x != u || this.shadowTile.y != v || this.shadowTile.z != size || this.shadowTile.w != tanHalfFov) {
+            this.shadowTile.set(u, v, size, tanHalfFov);
+            this.markDirty();
+        }
+    }
+
     @Override
     public Light setTo(Camera camera) {
         Vec3 pos = camera.getPosition();
@@ -236,5 +288,9 @@ public class AreaLight extends Light implements InstancedLight, PositionedLight<
         if (ImGui.dragScalar("distance", ImGuiDataType.Float, editDistance, 0.02F, 0.0F)) {
             this.setDistance(editDistance.get());
         }
+
+        if (ImGui.checkbox("shadows", this.castsShadows)) {
+            this.setCastsShadows(!this.castsShadows);
+        }
     }
 }
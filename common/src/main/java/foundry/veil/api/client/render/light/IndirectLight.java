@@ -14,6 +14,11 @@ public interface IndirectLight<T extends PositionedLight<T>> extends PositionedL
      */
     float getRadius();
 
+    @Override
+    default float getInfluenceRadius() {
+        return this.getRadius();
+    }
+
     /**
      * Sets the maximum radius the light can influence.
      *
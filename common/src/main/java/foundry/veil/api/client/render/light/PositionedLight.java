@@ -15,6 +15,14 @@ public interface PositionedLight<T extends PositionedLight<T>> {
      */
     Vector3dc getPosition();
 
+    /**
+     * @return The distance from the position this light can affect. Used to cull and look up lights.
+     * Lights that don't know their reach are always considered visible
+     */
+    default float getInfluenceRadius() {
+        return Float.POSITIVE_INFINITY;
+    }
+
     /**
      * Sets the origin position of this light.
      *
@@ -21,18 +21,25 @@ import org.joml.Vector4fc;
 import org.lwjgl.system.MemoryStack;
 
 import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 import java.util.List;
 import java.util.Set;
 
 import static org.lwjgl.opengl.GL15C.*;
-import static org.lwjgl.opengl.GL30C.glBindBufferRange;
+import static org.lwjgl.opengl.GL30C.*;
+import static org.lwjgl.opengl.GL31C.*;
+import static org.lwjgl.opengl.GL32C.*;
 import static org.lwjgl.opengl.GL40C.GL_DRAW_INDIRECT_BUFFER;
 import static org.lwjgl.opengl.GL42C.*;
 import static org.lwjgl.opengl.GL43C.glDispatchCompute;
 import static org.lwjgl.opengl.GL45C.glNamedBufferData;
 
 /**
- * Draws lights as indirect instanced quads in the scene.
+ * <p>Draws lights as indirect instanced quads in the scene.</p>
+ * <p>When compute shaders are supported, lights are culled and their draw commands are written on the GPU, so the CPU
+ * only uploads lights that changed. The visible count is copied back without waiting for the GPU, so it is reported a few
+ * frames late. Set the <code>veil.validateLightCulling</code> system property to read back the GPU visible count
+ * immediately every frame and compare it against CPU culling.</p>
  *
  * @param <T> The type of lights to render
  * @author Ocelot
@@ -41,6 +48,9 @@ public abstract class IndirectLightRenderer<T extends Light & IndirectLight<T>>
 
     private static final ResourceLocation CULL_SHADER = Veil.veilPath("light/indirect_sphere");
     private static final int MIN_LIGHTS = 20;
+    private static final int COMMAND_SIZE = Integer.BYTES * 5;
+    private static final int CULL_GROUP_SIZE = 64;
+    private static final int READBACK_FRAMES = 3;
 
     protected final int lightSize;
     protected final int highResSize;
@@ -53,10 +63,16 @@ public abstract class IndirectLightRenderer<T extends Light & IndirectLight<T>>
     private final int instancedVbo;
     private final int indirectVbo;
     private final int sizeVbo;
+    private final int readbackVbo;
+    private final long[] readbackFences;
     private final DynamicShaderBlock<?> instancedBlock;
     private final DynamicShaderBlock<?> indirectBlock;
+    private final boolean validateCulling;
 
     private int visibleLights;
+    private int drawCount;
+    private long lastMismatch;
+    private int readbackIndex;
 
     /**
      * Creates a new instanced light renderer with a resizeable light buffer.
@@ -75,23 +91,32 @@ public abstract class IndirectLightRenderer<T extends Light & IndirectLight<T>>
         this.instancedVbo = this.vertexArray.getOrCreateBuffer(2);
         this.indirectVbo = this.vertexArray.getOrCreateBuffer(3);
 
-        // TODO fix compute shader
-        if (false && VeilRenderSystem.computeSupported() && VeilRenderSystem.atomicCounterSupported()) {
+        this.validateCulling = System.getProperty("veil.validateLightCulling") != null;
+        if (VeilRenderSystem.computeSupported() && VeilRenderSystem.atomicCounterSupported() && VeilRenderSystem.shaderStorageBufferSupported()) {
             Veil.LOGGER.info("Using GPU Frustum Culling for {} renderer", this.getClass().getSimpleName());
             this.sizeVbo = this.vertexArray.getOrCreateBuffer(4);
             this.instancedBlock = ShaderBlock.wrapper(ShaderBlock.BufferBinding.SHADER_STORAGE, this.instancedVbo);
             this.indirectBlock = ShaderBlock.wrapper(ShaderBlock.BufferBinding.SHADER_STORAGE, this.indirectVbo);
 
+            this.readbackVbo = glGenBuffers();
+            this.readbackFences = new long[READBACK_FRAMES];
+
             if (VeilRenderSystem.directStateAccessSupported()) {
                 glNamedBufferData(this.sizeVbo, Integer.BYTES, GL_DYNAMIC_DRAW);
+                glNamedBufferData(this.readbackVbo, (long) Integer.BYTES * READBACK_FRAMES, GL_STREAM_READ);
             } else {
                 RenderSystem.glBindBuffer(GL_ATOMIC_COUNTER_BUFFER, this.sizeVbo);
                 glBufferData(GL_ATOMIC_COUNTER_BUFFER, Integer.BYTES, GL_DYNAMIC_DRAW);
                 RenderSystem.glBindBuffer(GL_ATOMIC_COUNTER_BUFFER, 0);
+                RenderSystem.glBindBuffer(GL_COPY_WRITE_BUFFER, this.readbackVbo);
+                glBufferData(GL_COPY_WRITE_BUFFER, (long) Integer.BYTES * READBACK_FRAMES, GL_STREAM_READ);
+                RenderSystem.glBindBuffer(GL_COPY_WRITE_BUFFER, 0);
             }
         } else {
             Veil.LOGGER.info("Using CPU Frustum Culling for {} renderer", this.getClass().getSimpleName());
             this.sizeVbo = 0;
+            this.readbackVbo = 0;
+            this.readbackFences = null;
             this.instancedBlock = null;
             this.indirectBlock = null;
         }
@@ -143,16 +168,16 @@ public abstract class IndirectLightRenderer<T extends Light & IndirectLight<T>>
     private void initBuffers() {
         if (VeilRenderSystem.directStateAccessSupported()) {
             glNamedBufferData(this.instancedVbo, (long) this.maxLights * this.lightSize, GL_DYNAMIC_DRAW);
-            glNamedBufferData(this.indirectVbo, (long) this.maxLights * Integer.BYTES * 5, GL_DYNAMIC_DRAW);
+            glNamedBufferData(this.indirectVbo, (long) this.maxLights * COMMAND_SIZE, GL_DYNAMIC_DRAW);
         } else {
             RenderSystem.glBindBuffer(GL_ARRAY_BUFFER, this.instancedVbo);
             RenderSystem.glBindBuffer(GL_DRAW_INDIRECT_BUFFER, this.indirectVbo);
             glBufferData(GL_ARRAY_BUFFER, (long) this.maxLights * this.lightSize, GL_DYNAMIC_DRAW);
-            glBufferData(GL_DRAW_INDIRECT_BUFFER, (long) this.maxLights * Integer.BYTES * 5, GL_DYNAMIC_DRAW);
+            glBufferData(GL_DRAW_INDIRECT_BUFFER, (long) this.maxLights * COMMAND_SIZE, GL_DYNAMIC_DRAW);
         }
         if (this.sizeVbo != 0) {
             this.instancedBlock.setSize((long) this.maxLights * this.lightSize);
-            this.indirectBlock.setSize((long) this.maxLights * Integer.BYTES * 5);
+            this.indirectBlock.setSize((long) this.maxLights * COMMAND_SIZE);
         }
     }
 
@@ -182,83 +207,164 @@ public abstract class IndirectLightRenderer<T extends Light & IndirectLight<T>>
         glUnmapBuffer(GL_ARRAY_BUFFER);
     }
 
-    private int updateVisibility(List<T> lights, CullFrustum frustum) {
-        if (this.sizeVbo != 0) {
-            VeilRenderSystem.setShader(CULL_SHADER);
-            ShaderProgram shader = VeilRenderSystem.getShader();
-            if (shader != null && shader.isCompute()) {
-                try (MemoryStack stack = MemoryStack.stackPush()) {
-                    VeilRenderSystem.bind("VeilLightInstanced", this.instancedBlock);
-                    VeilRenderSystem.bind("VeilLightIndirect", this.indirectBlock);
-
-                    glBindBufferRange(GL_ATOMIC_COUNTER_BUFFER, 0, this.sizeVbo, 0, Integer.BYTES);
-                    glBufferSubData(GL_ATOMIC_COUNTER_BUFFER, 0, stack.callocInt(1));
-
-                    int maxX = VeilRenderSystem.maxComputeWorkGroupCountX();
-                    int maxY = VeilRenderSystem.maxComputeWorkGroupCountY();
-
-                    shader.setInt("HighResSize", this.highResSize);
-                    shader.setInt("LowResSize", this.lowResSize);
-                    shader.setInt("LightSize", this.lightSize / Float.BYTES);
-                    shader.setInt("PositionOffset", this.positionOffset);
-                    shader.setInt("RangeOffset", this.rangeOffset);
-
-                    Vector4fc[] planes = frustum.getPlanes();
-                    float[] values = new float[4 * planes.length];
-                    for (int i = 0; i < planes.length; i++) {
-                        Vector4fc plane = planes[i];
-                        values[i * 4] = plane.x();
-                        values[i * 4 + 1] = plane.y();
-                        values[i * 4 + 2] = plane.z();
-                        values[i * 4 + 3] = plane.w();
-                    }
-                    shader.setFloats("FrustumPlanes", values);
-                    shader.setInt("Width", maxX);
-
-                    shader.bind();
+    private boolean updateVisibilityGpu(List<T> lights, CullFrustum frustum) {
+        VeilRenderSystem.setShader(CULL_SHADER);
+        ShaderProgram shader = VeilRenderSystem.getShader();
+        if (shader == null || !shader.isCompute()) {
+            return false;
+        }
 
-                    glDispatchCompute(Math.min(lights.size(), maxX), Math.min(1 + lights.size() / maxX, maxY), 1);
-                    glMemoryBarrier(GL_BUFFER_UPDATE_BARRIER_BIT | GL_ATOMIC_COUNTER_BARRIER_BIT);
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VeilRenderSystem.bind("VeilLightInstanced", this.instancedBlock);
+            VeilRenderSystem.bind("VeilLightIndirect", this.indirectBlock);
+
+            glBindBufferRange(GL_ATOMIC_COUNTER_BUFFER, 0, this.sizeVbo, 0, Integer.BYTES);
+            glBufferSubData(GL_ATOMIC_COUNTER_BUFFER, 0, stack.callocInt(1));
+
+            int groups = (lights.size() + CULL_GROUP_SIZE - 1) / CULL_GROUP_SIZE;
+            int groupsX = Math.min(groups, VeilRenderSystem.maxComputeWorkGroupCountX());
+            int groupsY = (groups + groupsX - 1) / groupsX;
+
+            shader.setInt("HighResSize", this.highResSize);
+            shader.setInt("LowResSize", this.lowResSize);
+            shader.setInt("LightSize", this.lightSize / Float.BYTES);
+            shader.setInt("PositionOffset", this.positionOffset);
+            shader.setInt("RangeOffset", this.rangeOffset);
+            shader.setInt("LightCount", lights.size());
+
+            Vector3dc frustumPosition = frustum.getPosition();
+            shader.setVector("FrustumPosition", (float) frustumPosition.x(), (float) frustumPosition.y(), (float) frustumPosition.z());
+            Vector4fc[] planes = frustum.getPlanes();
+            float[] values = new float[4 * planes.length];
+            for (int i = 0; i < planes.length; i++) {
+                Vector4fc plane = planes[i];
+                values[i * 4] = plane.x();
+                values[i * 4 + 1] = plane.y();
+                values[i * 4 + 2] = plane.z();
+                values[i * 4 + 3] = plane.w();
+            }
+            shader.setFloats("FrustumPlanes", values);
+            shader.setInt("Width", groupsX * CULL_GROUP_SIZE);
+
+            shader.bind();
+            glDispatchCompute(groupsX, groupsY, 1);
+            // The counter is copied or mapped afterwards, which needs the buffer update barrier
+            glMemoryBarrier(GL_COMMAND_BARRIER_BIT | GL_ATOMIC_COUNTER_BARRIER_BIT | GL_BUFFER_UPDATE_BARRIER_BIT);
+            ShaderProgram.unbind();
+
+            // Culled lights keep their command with 0 instances, so every command is drawn without waiting for the count
+            this.drawCount = lights.size();
+            if (this.validateCulling) {
+                this.validateVisibility(lights, frustum);
+            } else {
+                this.readVisibleCount();
+                this.copyVisibleCount();
+            }
+        } finally {
+            VeilRenderSystem.unbind(this.instancedBlock);
+            VeilRenderSystem.unbind(this.indirectBlock);
+            glBindBufferRange(GL_ATOMIC_COUNTER_BUFFER, 0, 0, 0, Integer.BYTES);
+        }
+        return true;
+    }
 
-                    ShaderProgram.unbind();
+    /**
+     * Reads the visible count from every copy the GPU has finished, oldest first.
+     */
+    private void readVisibleCount() {
+        RenderSystem.glBindBuffer(GL_COPY_READ_BUFFER, this.readbackVbo);
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            for (int i = 0; i < READBACK_FRAMES; i++) {
+                int slot = (this.readbackIndex + i) % READBACK_FRAMES;
+                long fence = this.readbackFences[slot];
+                if (fence == 0L) {
+                    continue;
+                }
 
-                    ByteBuffer counter = glMapBufferRange(GL_ATOMIC_COUNTER_BUFFER, 0, Integer.BYTES, GL_MAP_READ_BIT);
-                    return counter != null ? counter.getInt(0) : 0;
-                } finally {
-                    VeilRenderSystem.unbind(this.instancedBlock);
-                    VeilRenderSystem.unbind(this.indirectBlock);
-                    glUnmapBuffer(GL_ATOMIC_COUNTER_BUFFER);
-                    glBindBufferRange(GL_ATOMIC_COUNTER_BUFFER, 0, 0, 0, Integer.BYTES);
+                int status = glClientWaitSync(fence, 0, 0L);
+                if (status != GL_ALREADY_SIGNALED && status != GL_CONDITION_SATISFIED) {
+                    // Newer copies can't be done before this one
+                    break;
                 }
+
+                IntBuffer count = stack.mallocInt(1);
+                glGetBufferSubData(GL_COPY_READ_BUFFER, (long) slot * Integer.BYTES, count);
+                this.visibleLights = count.get(0);
+                glDeleteSync(fence);
+                this.readbackFences[slot] = 0L;
+            }
+        }
+        RenderSystem.glBindBuffer(GL_COPY_READ_BUFFER, 0);
+    }
+
+    /**
+     * Copies the visible count into the next readback slot, so it can be read without stalling on a later frame.
+     */
+    private void copyVisibleCount() {
+        int slot = this.readbackIndex;
+        if (this.readbackFences[slot] != 0L) {
+            // The GPU is more than a few frames behind, so skip this count
+            return;
+        }
+
+        RenderSystem.glBindBuffer(GL_COPY_READ_BUFFER, this.sizeVbo);
+        RenderSystem.glBindBuffer(GL_COPY_WRITE_BUFFER, this.readbackVbo);
+        glCopyBufferSubData(GL_COPY_READ_BUFFER, GL_COPY_WRITE_BUFFER, 0L, (long) slot * Integer.BYTES, Integer.BYTES);
+        RenderSystem.glBindBuffer(GL_COPY_READ_BUFFER, 0);
+        RenderSystem.glBindBuffer(GL_COPY_WRITE_BUFFER, 0);
+
+        this.readbackFences[slot] = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        this.readbackIndex = (slot + 1) % READBACK_FRAMES;
+    }
+
+    private void validateVisibility(List<T> lights, CullFrustum frustum) {
+        // Reading the counter waits for the GPU, so this is only done when debugging
+        ByteBuffer counter = glMapBufferRange(GL_ATOMIC_COUNTER_BUFFER, 0, Integer.BYTES, GL_MAP_READ_BIT);
+        int gpuCount = counter != null ? counter.getInt(0) : 0;
+        glUnmapBuffer(GL_ATOMIC_COUNTER_BUFFER);
+
+        int cpuCount = 0;
+        for (T light : lights) {
+            if (this.isVisible(light, frustum)) {
+                cpuCount++;
             }
         }
+        // Only log when the counts change, otherwise the same mismatch is reported every frame
+        long mismatch = gpuCount != cpuCount ? (long) gpuCount << 32 | cpuCount : 0L;
+        if (mismatch != 0L && mismatch != this.lastMismatch) {
+            Veil.LOGGER.warn("GPU light culling for {} renderer found {} visible lights, but CPU culling found {}", this.getClass().getSimpleName(), gpuCount, cpuCount);
+        }
+        this.lastMismatch = mismatch;
+        this.visibleLights = gpuCount;
+    }
+
+    private void updateVisibility(List<T> lights, CullFrustum frustum) {
+        if (this.sizeVbo != 0 && this.updateVisibilityGpu(lights, frustum)) {
+            return;
+        }
 
         int count = 0;
         RenderSystem.glBindBuffer(GL_DRAW_INDIRECT_BUFFER, this.indirectVbo);
         try (MemoryStack stack = MemoryStack.stackPush()) {
-            ByteBuffer buffer = stack.malloc(this.lowResSize > 0 ? Integer.BYTES * 5 : Integer.BYTES);
+            ByteBuffer buffer = stack.malloc(COMMAND_SIZE);
 
             int index = 0;
             for (T light : lights) {
                 if (this.isVisible(light, frustum)) {
-                    if (this.lowResSize > 0) {
-                        boolean highRes = this.shouldDrawHighResolution(light, frustum);
-                        buffer.putInt(0, highRes ? this.highResSize : this.lowResSize);
-                        buffer.putInt(4, 1);
-                        buffer.putInt(8, !highRes ? this.highResSize : 0);
-                        buffer.putInt(12, 0);
-                        buffer.putInt(16, index);
-                        glBufferSubData(GL_DRAW_INDIRECT_BUFFER, count * Integer.BYTES * 5L, buffer);
-                    } else {
-                        buffer.putInt(0, index);
-                        glBufferSubData(GL_DRAW_INDIRECT_BUFFER, count * Integer.BYTES * 5L + 16, buffer);
-                    }
+                    boolean highRes = this.lowResSize == 0 || this.shouldDrawHighResolution(light, frustum);
+                    buffer.putInt(0, highRes ? this.highResSize : this.lowResSize);
+                    buffer.putInt(4, 1);
+                    buffer.putInt(8, !highRes ? this.highResSize : 0);
+                    buffer.putInt(12, 0);
+                    buffer.putInt(16, index);
+                    glBufferSubData(GL_DRAW_INDIRECT_BUFFER, (long) count * COMMAND_SIZE, buffer);
                     count++;
                 }
                 index++;
             }
         }
-        return count;
+        this.drawCount = count;
+        this.visibleLights = count;
     }
 
     @Override
@@ -299,7 +405,12 @@ public abstract class IndirectLightRenderer<T extends Light & IndirectLight<T>>
         profiler.popPush("visibility");
 
         // Fill indirect buffer draw calls
-        this.visibleLights = !lights.isEmpty() ? this.updateVisibility(lights, frustum) : 0;
+        if (!lights.isEmpty()) {
+            this.updateVisibility(lights, frustum);
+        } else {
+            this.drawCount = 0;
+            this.visibleLights = 0;
+        }
 
         profiler.pop();
     }
@@ -314,7 +425,7 @@ public abstract class IndirectLightRenderer<T extends Light & IndirectLight<T>>
 
         this.vertexArray.bind();
         RenderSystem.glBindBuffer(GL_DRAW_INDIRECT_BUFFER, this.indirectVbo);
-        this.vertexArray.drawIndirect(0L, this.visibleLights, 0);
+        this.vertexArray.drawIndirect(0L, this.drawCount, 0);
         RenderSystem.glBindBuffer(GL_DRAW_INDIRECT_BUFFER, 0);
         VertexBuffer.unbind();
 
@@ -327,12 +438,24 @@ public abstract class IndirectLightRenderer<T extends Light & IndirectLight<T>>
         return this.visibleLights;
     }
 
+    @Override
+    public boolean hasVisibleLights() {
+        // The GPU visible count arrives a few frames late, so draw whenever there are commands
+        return this.drawCount > 0;
+    }
+
     @Override
     public void free() {
         this.vertexArray.free();
         if (this.sizeVbo != 0) {
             this.instancedBlock.free();
             this.indirectBlock.free();
+            for (long fence : this.readbackFences) {
+                if (fence != 0L) {
+                    glDeleteSync(fence);
+                }
+            }
+            glDeleteBuffers(this.readbackVbo);
         }
     }
 }
@@ -3,6 +3,7 @@ package foundry.veil.api.client.render.light.renderer;
 import com.mojang.blaze3d.systems.RenderSystem;
 import com.mojang.blaze3d.vertex.MeshData;
 import com.mojang.blaze3d.vertex.VertexBuffer;
+import foundry.veil.api.client.registry.LightTypeRegistry;
 import foundry.veil.api.client.render.CullFrustum;
 import foundry.veil.api.client.render.VeilRenderSystem;
 import foundry.veil.api.client.render.light.InstancedLight;
@@ -10,35 +11,58 @@ import foundry.veil.api.client.render.light.Light;
 import foundry.veil.api.client.render.shader.program.ShaderProgram;
 import foundry.veil.api.client.render.vertex.VertexArray;
 import foundry.veil.api.client.render.vertex.VertexArrayBuilder;
-import org.lwjgl.system.MemoryStack;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import org.lwjgl.system.MemoryUtil;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 
+import static org.lwjgl.opengl.ARBBufferStorage.*;
 import static org.lwjgl.opengl.GL15C.*;
 import static org.lwjgl.opengl.GL30C.*;
+import static org.lwjgl.opengl.GL32C.*;
 import static org.lwjgl.opengl.GL45C.glNamedBufferData;
-import static org.lwjgl.system.MemoryUtil.memAddress;
 
 /**
- * Draws lights as instanced quads in the scene.
+ * <p>Draws lights as instanced quads in the scene.</p>
+ * <p>Every light keeps the same slot in the instance buffer until it is removed, so only lights that changed are uploaded.
+ * Visible lights are found with {@link LightRenderer#forEachVisibleLight} and drawn in contiguous ranges of slots.
+ * When buffer storage is supported, the instance buffer is a persistently mapped ring of {@value #BUFFER_COUNT} copies
+ * that are each protected by a fence.</p>
  *
  * @param <T> The type of lights to render
  * @author Ocelot
  */
 public abstract class InstancedLightRenderer<T extends Light & InstancedLight> implements LightTypeRenderer<T> {
 
-    private static final int MAX_UPLOADS = 400;
+    private static final int MIN_LIGHTS = 100;
+    private static final int BUFFER_COUNT = 3;
+    private static final long FENCE_TIMEOUT = 1_000_000_000L;
 
     protected final int lightSize;
     protected int maxLights;
 
+    private final Reference2IntMap<T> slots;
+    private final List<T> slotLights;
+    private final IntArrayList freeSlots;
+    private final IntArrayList uploadSlots;
+    private final IntArrayList visibleSlots;
     private final List<T> visibleLights;
     private final VertexArray vertexArray;
-    private final int instancedVbo;
-    private ByteBuffer scratch;
+    private final boolean persistent;
+    private final boolean baseInstance;
+    private final int bufferCount;
+    private final long[] fences;
+    private byte[] pendingUploads;
+    private int instancedVbo;
+    private ByteBuffer data;
+    private int bufferIndex;
 
     /**
      * Creates a new instanced light renderer with a resizeable light buffer.
@@ -47,25 +71,57 @@ public abstract class InstancedLightRenderer<T extends Light & InstancedLight> i
      */
     public InstancedLightRenderer(int lightSize) {
         this.lightSize = lightSize;
-        this.maxLights = 100;
+        this.maxLights = MIN_LIGHTS;
+        this.slots = new Reference2IntOpenHashMap<>();
+        this.slots.defaultReturnValue(-1);
+        this.slotLights = new ArrayList<>();
+        this.freeSlots = new IntArrayList();
+        this.uploadSlots = new IntArrayList();
+        this.visibleSlots = new IntArrayList();
         this.visibleLights = new ArrayList<>();
         this.vertexArray = VertexArray.create();
+        this.baseInstance = VeilRenderSystem.baseInstanceSupported();
+        this.persistent = this.baseInstance && VeilRenderSystem.bufferStorageSupported();
+        this.bufferCount = this.persistent ? BUFFER_COUNT : 1;
+        this.fences = new long[this.bufferCount];
+        this.pendingUploads = new byte[this.maxLights];
 
         MeshData mesh = this.createMesh();
         this.vertexArray.upload(mesh, VertexArray.DrawUsage.STATIC);
-        this.instancedVbo = this.vertexArray.getOrCreateBuffer(2);
+        if (!this.persistent) {
+            this.instancedVbo = this.vertexArray.getOrCreateBuffer(2);
+        }
+        this.allocate();
+    }
 
-        if (VeilRenderSystem.directStateAccessSupported()) {
-            glNamedBufferData(this.instancedVbo, (long) this.maxLights * this.lightSize, GL_DYNAMIC_DRAW);
-        } else {
+    private void allocate() {
+        long size = (long) this.maxLights * this.lightSize;
+        if (this.persistent) {
+            // Immutable storage can't be resized, so a new buffer is created every time
+            if (this.instancedVbo != 0) {
+                RenderSystem.glBindBuffer(GL_ARRAY_BUFFER, this.instancedVbo);
+                glUnmapBuffer(GL_ARRAY_BUFFER);
+                glDeleteBuffers(this.instancedVbo);
+            }
+            this.instancedVbo = glGenBuffers();
             RenderSystem.glBindBuffer(GL_ARRAY_BUFFER, this.instancedVbo);
-            glBufferData(GL_ARRAY_BUFFER, (long) this.maxLights * this.lightSize, GL_DYNAMIC_DRAW);
-            RenderSystem.glBindBuffer(GL_ARRAY_BUFFER, 0);
+            glBufferStorage(GL_ARRAY_BUFFER, size * this.bufferCount, GL_MAP_WRITE_BIT | GL_MAP_PERSISTENT_BIT | GL_MAP_COHERENT_BIT);
+            this.data = glMapBufferRange(GL_ARRAY_BUFFER, 0, size * this.bufferCount, GL_MAP_WRITE_BIT | GL_MAP_PERSISTENT_BIT | GL_MAP_COHERENT_BIT);
+        } else {
+            if (VeilRenderSystem.directStateAccessSupported()) {
+                glNamedBufferData(this.instancedVbo, size, GL_DYNAMIC_DRAW);
+            } else {
+                RenderSystem.glBindBuffer(GL_ARRAY_BUFFER, this.instancedVbo);
+                glBufferData(GL_ARRAY_BUFFER, size, GL_DYNAMIC_DRAW);
+            }
+            this.data = MemoryUtil.memRealloc(this.data, (int) size);
         }
+        RenderSystem.glBindBuffer(GL_ARRAY_BUFFER, 0);
 
         VertexArrayBuilder builder = this.vertexArray.editFormat();
         builder.defineVertexBuffer(2, this.instancedVbo, 0, this.lightSize, 1);
         this.setupBufferState(builder);
+        VertexArray.unbind();
     }
 
     /**
@@ -82,7 +138,7 @@ public abstract class InstancedLightRenderer<T extends Light & InstancedLight> i
      * Sets up the render state for drawing all lights.
      *
      * @param lightRenderer The renderer instance
-     * @param lights        All lights in the order they are in the instanced buffer
+     * @param lights        All visible lights in the order of their slots in the instanced buffer
      */
     protected abstract void setupRenderState(LightRenderer lightRenderer, List<T> lights);
 
@@ -90,7 +146,7 @@ public abstract class InstancedLightRenderer<T extends Light & InstancedLight> i
      * Clears the render state after drawing all lights.
      *
      * @param lightRenderer The renderer instance
-     * @param lights        All lights in the order they are in the instanced buffer
+     * @param lights        All visible lights in the order of their slots in the instanced buffer
      */
     protected abstract void clearRenderState(LightRenderer lightRenderer, List<T> lights);
 
@@ -103,77 +159,190 @@ public abstract class InstancedLightRenderer<T extends Light & InstancedLight> i
      */
     protected abstract boolean isVisible(T light, CullFrustum frustum);
 
-    private void updateAllLights(List<T> lights) {
-        try (MemoryStack stack = MemoryStack.stackPush()) {
-            int pointer = 0;
-            long offset = 0;
-            ByteBuffer dataBuffer = stack.malloc(Math.min(MAX_UPLOADS, lights.size()) * this.lightSize);
-            for (T light : lights) {
-                light.clean();
-                dataBuffer.position((pointer++) * this.lightSize);
-                light.store(dataBuffer);
-                if (pointer >= MAX_UPLOADS) {
-                    dataBuffer.rewind();
-                    glBufferSubData(GL_ARRAY_BUFFER, offset, dataBuffer);
-                    offset += dataBuffer.capacity();
-                    pointer = 0;
-                }
-            }
+    private void addLight(T light) {
+        int slot;
+        if (!this.freeSlots.isEmpty()) {
+            slot = this.freeSlots.popInt();
+            this.slotLights.set(slot, light);
+        } else {
+            slot = this.slotLights.size();
+            this.slotLights.add(light);
+        }
+        this.slots.put(light, slot);
+        light.markDirty();
+    }
+
+    @SuppressWarnings("unchecked")
+    private LightTypeRegistry.LightType<? extends T> getType(List<T> lights) {
+        return (LightTypeRegistry.LightType<? extends T>) lights.getFirst().getType();
+    }
+
+    private void markDirty(int slot) {
+        if (this.pendingUploads[slot] == 0) {
+            this.uploadSlots.add(slot);
+        }
+        // Every copy in the ring has to be updated once
+        this.pendingUploads[slot] = (byte) this.bufferCount;
+    }
+
+    private void resize() {
+        for (int i = 0; i < this.bufferCount; i++) {
+            this.waitFence(i);
+        }
+
+        this.maxLights = Math.max(this.maxLights * 2, this.slotLights.size());
+        this.pendingUploads = Arrays.copyOf(this.pendingUploads, this.maxLights);
+        this.allocate();
 
-            if (pointer > 0) {
-                dataBuffer.rewind();
-                nglBufferSubData(GL_ARRAY_BUFFER, offset, (long) pointer * this.lightSize, memAddress(dataBuffer));
+        // The new buffer is empty, so every light has to be uploaded again
+        for (int i = 0; i < this.slotLights.size(); i++) {
+            if (this.slotLights.get(i) != null) {
+                this.markDirty(i);
             }
         }
     }
 
-    @Override
-    public void prepareLights(LightRenderer lightRenderer, List<T> lights, Set<T> removedLights, CullFrustum frustum) {
-        this.visibleLights.clear();
-        for (T light : lights) {
-            if (this.isVisible(light, frustum)) {
-                this.visibleLights.add(light);
+    private void waitFence(int index) {
+        long fence = this.fences[index];
+        if (fence != 0L) {
+            // This only blocks if the GPU is still drawing from this copy
+            glClientWaitSync(fence, GL_SYNC_FLUSH_COMMANDS_BIT, FENCE_TIMEOUT);
+            glDeleteSync(fence);
+            this.fences[index] = 0L;
+        }
+    }
+
+    private void uploadLights() {
+        if (this.uploadSlots.isEmpty()) {
+            return;
+        }
+
+        if (this.persistent) {
+            this.waitFence(this.bufferIndex);
+        }
+
+        int[] slots = this.uploadSlots.elements();
+        int count = this.uploadSlots.size();
+        IntArrays.quickSort(slots, 0, count);
+
+        long base = (long) this.bufferIndex * this.maxLights * this.lightSize;
+        int remaining = 0;
+        int rangeStart = -1;
+        int rangeEnd = -1;
+        for (int i = 0; i < count; i++) {
+            int slot = slots[i];
+            T light = this.slotLights.get(slot);
+            if (light == null) {
+                this.pendingUploads[slot] = 0;
+                continue;
+            }
+
+            this.data.position((int) (base + (long) slot * this.lightSize));
+            light.store(this.data);
+            if (--this.pendingUploads[slot] > 0) {
+                slots[remaining++] = slot;
+            }
+
+            if (!this.persistent) {
+                // Merge neighboring slots into a single upload
+                if (slot != rangeEnd) {
+                    this.uploadRange(rangeStart, rangeEnd);
+                    rangeStart = slot;
+                }
+                rangeEnd = slot + 1;
             }
         }
+        this.uploadRange(rangeStart, rangeEnd);
+        this.uploadSlots.size(remaining);
+        this.data.rewind();
+    }
 
-        if (this.visibleLights.isEmpty()) {
+    private void uploadRange(int start, int end) {
+        if (start == -1 || start >= end) {
             return;
         }
 
+        long offset = (long) start * this.lightSize;
+        long size = (long) (end - start) * this.lightSize;
         RenderSystem.glBindBuffer(GL_ARRAY_BUFFER, this.instancedVbo);
+        nglBufferSubData(GL_ARRAY_BUFFER, offset, size, MemoryUtil.memAddress(this.data, 0) + offset);
+    }
 
-        // If there is no space, then resize
-        boolean rebuild = false;
-        if (this.visibleLights.size() > this.maxLights) {
-            rebuild = true;
-            this.maxLights = (int) Math.max(Math.ceil(this.maxLights / 2.0), this.visibleLights.size() * 1.5);
-            glBufferData(GL_ARRAY_BUFFER, (long) this.maxLights * this.lightSize, GL_STREAM_DRAW);
+    @Override
+    public void prepareLights(LightRenderer lightRenderer, List<T> lights, Set<T> removedLights, CullFrustum frustum) {
+        for (T light : removedLights) {
+            int slot = this.slots.removeInt(light);
+            if (slot != -1) {
+                this.slotLights.set(slot, null);
+                this.freeSlots.add(slot);
+            }
         }
 
-        if (rebuild || !removedLights.isEmpty()) {
-            this.updateAllLights(this.visibleLights);
-        } else {
-            this.scratch = glMapBufferRange(GL_ARRAY_BUFFER, 0, (long) this.visibleLights.size() * this.lightSize, GL_MAP_WRITE_BIT | GL_MAP_FLUSH_EXPLICIT_BIT, this.scratch);
-            for (int i = 0; i < this.visibleLights.size(); i++) {
-                T light = this.visibleLights.get(i);
-                if (light.isDirty()) {
-                    if (this.scratch != null) {
-                        this.scratch.position(i * this.lightSize);
-                        light.clean();
-                        light.store(this.scratch);
-                    }
-                    glFlushMappedBufferRange(GL_ARRAY_BUFFER, (long) i * this.lightSize, this.lightSize);
+        // Removed lights are already gone from the list, so a size difference means lights were added
+        if (lights.size() != this.slots.size()) {
+            for (T light : lights) {
+                if (!this.slots.containsKey(light)) {
+                    this.addLight(light);
                 }
             }
-            if (this.scratch != null) {
-                this.scratch.rewind();
+        }
+
+        if (this.slotLights.size() > this.maxLights) {
+            this.resize();
+        }
+
+        for (int i = 0; i < this.slotLights.size(); i++) {
+            T light = this.slotLights.get(i);
+            if (light != null && light.isDirty()) {
+                light.clean();
+                this.markDirty(i);
             }
-            glUnmapBuffer(GL_ARRAY_BUFFER);
         }
+
+        this.visibleSlots.clear();
+        this.visibleLights.clear();
+        if (!lights.isEmpty()) {
+            lightRenderer.forEachVisibleLight(this.getType(lights), frustum, light -> {
+                int slot = this.slots.getInt(light);
+                if (slot != -1 && this.isVisible(light, frustum)) {
+                    this.visibleSlots.add(slot);
+                }
+            });
+
+            // The tree returns lights in any order, but they have to be sorted to draw neighboring slots together
+            int[] slots = this.visibleSlots.elements();
+            int count = this.visibleSlots.size();
+            IntArrays.quickSort(slots, 0, count);
+            for (int i = 0; i < count; i++) {
+                this.visibleLights.add(this.slotLights.get(slots[i]));
+            }
+        }
+
+        if (this.persistent) {
+            this.bufferIndex = (this.bufferIndex + 1) % this.bufferCount;
+        }
+        this.uploadLights();
+    }
+
+    private void drawRange(int first, int count) {
+        if (this.baseInstance) {
+            this.vertexArray.drawInstanced(count, first);
+            return;
+        }
+
+        // Without base instance support the instanced attributes have to be moved to the start of the range
+        VertexArrayBuilder builder = this.vertexArray.editFormat();
+        builder.defineVertexBuffer(2, this.instancedVbo, first * this.lightSize, this.lightSize, 1);
+        this.setupBufferState(builder);
+        this.vertexArray.drawInstanced(count);
     }
 
     @Override
     public void renderLights(LightRenderer lightRenderer, List<T> lights) {
+        if (this.visibleSlots.isEmpty()) {
+            return;
+        }
+
         this.setupRenderState(lightRenderer, this.visibleLights);
         if (lightRenderer.applyShader()) {
             this.clearRenderState(lightRenderer, this.visibleLights);
@@ -181,7 +350,23 @@ public abstract class InstancedLightRenderer<T extends Light & InstancedLight> i
         }
 
         this.vertexArray.bind();
-        this.vertexArray.drawInstanced(this.visibleLights.size());
+        int[] slots = this.visibleSlots.elements();
+        int count = this.visibleSlots.size();
+        int base = this.bufferIndex * this.maxLights;
+        int start = 0;
+        for (int i = 1; i <= count; i++) {
+            if (i == count || slots[i] != slots[i - 1] + 1) {
+                this.drawRange(base + slots[start], i - start);
+                start = i;
+            }
+        }
+        if (this.persistent) {
+            // Only uploads have to wait for the previous fence, so it can be replaced without waiting here
+            if (this.fences[this.bufferIndex] != 0L) {
+                glDeleteSync(this.fences[this.bufferIndex]);
+            }
+            this.fences[this.bufferIndex] = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        }
         VertexBuffer.unbind();
         ShaderProgram.unbind();
         this.clearRenderState(lightRenderer, this.visibleLights);
@@ -189,11 +374,30 @@ public abstract class InstancedLightRenderer<T extends Light & InstancedLight> i
 
     @Override
     public int getVisibleLights() {
-        return this.visibleLights.size();
+        return this.visibleSlots.size();
     }
 
     @Override
     public void free() {
+        for (int i = 0; i < this.bufferCount; i++) {
+            long fence = this.fences[i];
+            if (fence != 0L) {
+                glDeleteSync(fence);
+                this.fences[i] = 0L;
+            }
+        }
+        if (this.persistent) {
+            if (this.instancedVbo != 0) {
+                RenderSystem.glBindBuffer(GL_ARRAY_BUFFER, this.instancedVbo);
+                glUnmapBuffer(GL_ARRAY_BUFFER);
+                RenderSystem.glBindBuffer(GL_ARRAY_BUFFER, 0);
+                glDeleteBuffers(this.instancedVbo);
+                this.instancedVbo = 0;
+            }
+        } else if (this.data != null) {
+            MemoryUtil.memFree(this.data);
+        }
+        this.data = null;
         this.vertexArray.free();
     }
 }
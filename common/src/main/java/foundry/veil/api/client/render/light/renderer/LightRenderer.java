@@ -9,9 +9,15 @@ import foundry.veil.api.client.render.VeilRenderSystem;
 import foundry.veil.api.client.render.VeilRenderer;
 import foundry.veil.api.client.render.dynamicbuffer.DynamicBufferType;
 import foundry.veil.api.client.render.framebuffer.AdvancedFbo;
+import foundry.veil.api.client.render.light.AreaLight;
 import foundry.veil.api.client.render.light.Light;
 import foundry.veil.api.client.render.shader.program.ShaderProgram;
 import foundry.veil.impl.client.render.dynamicbuffer.DynamicBufferManger;
+import foundry.veil.impl.client.render.light.ClusteredLightRenderer;
+import foundry.veil.impl.client.render.light.LightOctree;
+import foundry.veil.impl.client.render.light.shadow.AreaLightShadowRenderer;
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
 import net.minecraft.resources.ResourceLocation;
 import org.jetbrains.annotations.ApiStatus;
 import org.lwjgl.system.NativeResource;
@@ -27,6 +33,10 @@ import java.util.function.Consumer;
  * </p>
  * <p>There is no way to retrieve a light, so care should be taken to keep track of what lights
  * have been added to the scene and when they should be removed.</p>
+ * <p>Point and area lights can optionally be drawn with {@link #enableClusteredLighting() clustered lighting},
+ * which shades every pixel once with only the lights near it instead of blending a volume for every light.</p>
+ * <p>Area lights that {@link foundry.veil.api.client.render.light.AreaLight#castsShadows() cast shadows} are given a tile
+ * in a shared shadow atlas. Tiles are only redrawn when the light moves or nearby terrain changes.</p>
  *
  * @author Ocelot
  */
@@ -35,6 +45,9 @@ public final class LightRenderer implements NativeResource {
     private static final ResourceLocation BUFFER_ID = Veil.veilPath("lights");
     private final Map<LightTypeRegistry.LightType<?>, LightData<?>> lights;
 
+    private final AreaLightShadowRenderer shadowRenderer;
+    private ClusteredLightRenderer clusteredRenderer;
+    private boolean clusteredLighting;
     private boolean ambientOcclusionEnabled;
 
     /**
@@ -42,6 +55,7 @@ public final class LightRenderer implements NativeResource {
      */
     public LightRenderer() {
         this.lights = new HashMap<>();
+        this.shadowRenderer = new AreaLightShadowRenderer();
         this.ambientOcclusionEnabled = true;
     }
 
@@ -70,9 +84,25 @@ public final class LightRenderer implements NativeResource {
 
     @ApiStatus.Internal
     public void setup(CullFrustum frustum) {
-        for (Map.Entry<LightTypeRegistry.LightType<?>, LightData<?>> entry : this.lights.entrySet()) {
-            entry.getValue().prepare(this, frustum);
+        for (LightData<?> data : this.lights.values()) {
+            data.update();
+        }
+        // Shadow tiles have to be assigned before area lights are uploaded
+        this.shadowRenderer.update(this, frustum);
+        // Type renderers are still prepared in clustered mode, so their buffers are up to date if it is turned off again
+        for (LightData<?> data : this.lights.values()) {
+            data.prepare(this, frustum);
         }
+        if (this.clusteredLighting) {
+            if (this.clusteredRenderer == null) {
+                this.clusteredRenderer = new ClusteredLightRenderer();
+            }
+            this.clusteredRenderer.prepareLights(this, frustum);
+        }
+    }
+
+    private boolean isClustered(LightTypeRegistry.LightType<?> type) {
+        return this.clusteredRenderer != null && (type == LightTypeRegistry.POINT.get() || type == LightTypeRegistry.AREA.get());
     }
 
     /**
@@ -86,18 +116,15 @@ public final class LightRenderer implements NativeResource {
         boolean hasRendered = false;
         VeilRenderer renderer = VeilRenderSystem.renderer();
 
-        for (LightData<?> value : this.lights.values()) {
+        for (Map.Entry<LightTypeRegistry.LightType<?>, LightData<?>> entry : this.lights.entrySet()) {
+            LightData<?> value = entry.getValue();
             // If there are no visible lights, then don't render anything
-            if (value.renderer.getVisibleLights() <= 0) {
+            if (!value.renderer.hasVisibleLights() || this.isClustered(entry.getKey())) {
                 continue;
             }
 
             if (!hasRendered) {
-                RenderSystem.enableBlend();
-                RenderSystem.blendFunc(GlStateManager.SourceFactor.ONE, GlStateManager.DestFactor.ONE);
-                RenderSystem.depthMask(false);
-                lightFbo.bind(true);
-                lightFbo.clear();
+                beginLights(lightFbo);
             }
 
             hasRendered = true;
@@ -107,6 +134,16 @@ public final class LightRenderer implements NativeResource {
 
             value.render(this);
         }
+        if (this.clusteredRenderer != null && this.clusteredRenderer.getVisibleLights() > 0) {
+            if (!hasRendered) {
+                beginLights(lightFbo);
+            }
+
+            hasRendered = true;
+            if (!renderer.enableBuffers(BUFFER_ID, DynamicBufferType.ALBEDO, DynamicBufferType.NORMAL)) {
+                this.clusteredRenderer.renderLights(this);
+            }
+        }
         if (hasRendered) {
             RenderSystem.depthMask(true);
             RenderSystem.defaultBlendFunc();
@@ -117,6 +154,14 @@ public final class LightRenderer implements NativeResource {
         return hasRendered;
     }
 
+    private static void beginLights(AdvancedFbo lightFbo) {
+        RenderSystem.enableBlend();
+        RenderSystem.blendFunc(GlStateManager.SourceFactor.ONE, GlStateManager.DestFactor.ONE);
+        RenderSystem.depthMask(false);
+        lightFbo.bind(true);
+        lightFbo.clear();
+    }
+
     /**
      * Adds a light to the renderer.
      *
@@ -142,6 +187,9 @@ public final class LightRenderer implements NativeResource {
         if (data != null) {
             data.removedLights.add(light);
         }
+        if (light instanceof AreaLight areaLight) {
+            this.shadowRenderer.removeLight(areaLight);
+        }
     }
 
     /**
@@ -160,6 +208,75 @@ public final class LightRenderer implements NativeResource {
         return (List<T>) data.lightsView;
     }
 
+    /**
+     * Runs the specified action for every light of the specified type that could be visible in the frustum.
+     * Whole regions of lights are skipped at once, so this is much faster than testing every light.
+     *
+     * @param type    The type of lights to check
+     * @param frustum The frustum to check visibility with
+     * @param action  The action to run for each light
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends Light> void forEachVisibleLight(LightTypeRegistry.LightType<? extends T> type, CullFrustum frustum, Consumer<? super T> action) {
+        LightData<T> data = (LightData<T>) this.lights.get(type);
+        if (data != null) {
+            data.tree.forEachVisible(frustum, action);
+        }
+    }
+
+    /**
+     * Runs the specified action for every light of the specified type that can reach into the specified sphere.
+     *
+     * @param type   The type of lights to check
+     * @param x      The x position of the sphere center
+     * @param y      The y position of the sphere center
+     * @param z      The z position of the sphere center
+     * @param radius The radius of the sphere
+     * @param action The action to run for each light
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends Light> void forEachLightNear(LightTypeRegistry.LightType<? extends T> type, double x, double y, double z, double radius, Consumer<? super T> action) {
+        LightData<T> data = (LightData<T>) this.lights.get(type);
+        if (data != null) {
+            data.tree.forEachNear(x, y, z, radius, action);
+        }
+    }
+
+    /**
+     * Runs the specified action for every light that can reach into the specified sphere.
+     *
+     * @param x      The x position of the sphere center
+     * @param y      The y position of the sphere center
+     * @param z      The z position of the sphere center
+     * @param radius The radius of the sphere
+     * @param action The action to run for each light
+     */
+    public void forEachLightNear(double x, double y, double z, double radius, Consumer<? super Light> action) {
+        for (LightData<?> data : this.lights.values()) {
+            data.tree.forEachNear(x, y, z, radius, action);
+        }
+    }
+
+    /**
+     * Marks all shadows that can see the specified chunk section as out of date.
+     *
+     * @param sectionX The x position of the section
+     * @param sectionY The y position of the section
+     * @param sectionZ The z position of the section
+     */
+    @ApiStatus.Internal
+    public void invalidateShadows(int sectionX, int sectionY, int sectionZ) {
+        this.shadowRenderer.invalidateSection(this, sectionX, sectionY, sectionZ);
+    }
+
+    /**
+     * @return The OpenGL id of the depth texture area light shadows are drawn into
+     */
+    @ApiStatus.Internal
+    public int getShadowAtlasTexture() {
+        return this.shadowRenderer.getAtlasTexture();
+    }
+
     /**
      * Enables ambient occlusion.
      */
@@ -187,10 +304,42 @@ public final class LightRenderer implements NativeResource {
         return this.ambientOcclusionEnabled;
     }
 
+    /**
+     * Enables clustered lighting for point and area lights. This does nothing if the device doesn't support shader storage buffers.
+     */
+    public void enableClusteredLighting() {
+        this.clusteredLighting = ClusteredLightRenderer.isSupported();
+    }
+
+    /**
+     * Disables clustered lighting, so point and area lights are drawn by their own renderers again.
+     */
+    public void disableClusteredLighting() {
+        RenderSystem.assertOnRenderThreadOrInit();
+        this.clusteredLighting = false;
+        this.freeClusteredRenderer();
+    }
+
+    private void freeClusteredRenderer() {
+        if (this.clusteredRenderer != null) {
+            this.clusteredRenderer.free();
+            this.clusteredRenderer = null;
+        }
+    }
+
+    /**
+     * @return Whether point and area lights are drawn with clustered lighting
+     */
+    public boolean isClusteredLightingEnabled() {
+        return this.clusteredLighting;
+    }
+
     @Override
     public void free() {
         this.lights.values().forEach(LightData::free);
         this.lights.clear();
+        this.shadowRenderer.free();
+        this.freeClusteredRenderer();
     }
 
     @ApiStatus.Internal
@@ -198,6 +347,10 @@ public final class LightRenderer implements NativeResource {
         int visible = this.lights.values().stream().mapToInt(data -> data.renderer.getVisibleLights()).sum();
         int all = this.lights.values().stream().mapToInt(data -> data.lights.size()).sum();
         consumer.accept("Lights: " + visible + " / " + all);
+        int shadowed = this.shadowRenderer.getShadowedLights();
+        if (shadowed > 0) {
+            consumer.accept("Shadowed Lights: " + shadowed + " (" + Math.round(this.shadowRenderer.getAtlasUsage() * 100) + "% atlas)");
+        }
     }
 
     @ApiStatus.Internal
@@ -207,12 +360,17 @@ public final class LightRenderer implements NativeResource {
         private final List<T> lights;
         private final List<T> lightsView;
         private final Set<T> removedLights;
+        private final Reference2IntMap<T> indices;
+        private final LightOctree<T> tree;
 
         private LightData(LightTypeRenderer<T> renderer) {
             this.renderer = renderer;
             this.lights = new ArrayList<>();
             this.lightsView = Collections.unmodifiableList(this.lights);
             this.removedLights = new HashSet<>();
+            this.indices = new Reference2IntOpenHashMap<>();
+            this.indices.defaultReturnValue(-1);
+            this.tree = new LightOctree<>();
         }
 
         @SuppressWarnings("unchecked")
@@ -220,8 +378,19 @@ public final class LightRenderer implements NativeResource {
             this((LightTypeRenderer<T>) Objects.requireNonNull(type, "type").rendererFactory().createRenderer());
         }
 
+        private void update() {
+            for (T light : this.removedLights) {
+                this.remove(light);
+            }
+            // Renderers clean lights after uploading them, so the tree has to be updated first
+            for (T light : this.lights) {
+                if (light.isDirty()) {
+                    this.tree.update(light);
+                }
+            }
+        }
+
         private void prepare(LightRenderer lightRenderer, CullFrustum frustum) {
-            this.lights.removeAll(this.removedLights);
             this.renderer.prepareLights(lightRenderer, this.lights, this.removedLights, frustum);
             this.removedLights.clear();
         }
@@ -230,9 +399,29 @@ public final class LightRenderer implements NativeResource {
             this.renderer.renderLights(lightRenderer, this.lights);
         }
 
+        private void remove(T light) {
+            int index = this.indices.removeInt(light);
+            if (index == -1) {
+                return;
+            }
+
+            this.tree.remove(light);
+
+            // Move the last light into the gap so nothing has to be shifted
+            T last = this.lights.removeLast();
+            if (index < this.lights.size()) {
+                this.lights.set(index, last);
+                this.indices.put(last, index);
+            }
+        }
+
         @SuppressWarnings("unchecked")
         private void addLight(Light light) {
-            this.lights.add((T) light);
+            T value = (T) light;
+            if (this.indices.putIfAbsent(value, this.lights.size()) == -1) {
+                this.lights.add(value);
+                this.tree.update(value);
+            }
         }
 
         @Override
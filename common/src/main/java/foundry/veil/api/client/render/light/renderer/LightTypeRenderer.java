@@ -42,6 +42,13 @@ public interface LightTypeRenderer<T extends Light> extends NativeResource {
      */
     int getVisibleLights();
 
+    /**
+     * @return Whether anything has to be drawn this frame. Renderers that only learn the visible count a few frames later should override this
+     */
+    default boolean hasVisibleLights() {
+        return this.getVisibleLights() > 0;
+    }
+
     /**
      * Draws a unit quad into the specified buffer
      *
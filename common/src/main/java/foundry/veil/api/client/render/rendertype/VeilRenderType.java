@@ -57,6 +57,10 @@ public final class VeilRenderType extends RenderType {
     }
 
     private static final ShaderStateShard PARTICLE = VeilRenderBridge.shaderState(Veil.veilPath("quasar/particle"));
+    private static final ShaderStateShard PARTICLE_INSTANCED = VeilRenderBridge.shaderState(Veil.veilPath("quasar/particle_instanced"));
+    private static final ShaderStateShard PARTICLE_ARRAY = VeilRenderBridge.shaderState(Veil.veilPath("quasar/particle_array"));
+    private static final ShaderStateShard PARTICLE_GPU = VeilRenderBridge.shaderState(Veil.veilPath("quasar/particle_gpu"));
+    private static final ShaderStateShard TRAIL = VeilRenderBridge.shaderState(Veil.veilPath("quasar/trail"));
 
     private static final BiFunction<ResourceLocation, Boolean, RenderType> QUASAR_PARTICLE = Util.memoize((texture, additive) -> {
         CompositeState state = RenderType.CompositeState.builder()
@@ -68,6 +72,35 @@ public final class VeilRenderType extends RenderType {
                 .createCompositeState(false);
         return create(Veil.MODID + ":quasar_particle", VeilVertexFormat.QUASAR_PARTICLE, VertexFormat.Mode.QUADS, SMALL_BUFFER_SIZE, false, !additive, state);
     });
+    private static final BiFunction<ResourceLocation, Boolean, RenderType> QUASAR_PARTICLE_INSTANCED = Util.memoize((texture, additive) -> {
+        CompositeState state = RenderType.CompositeState.builder()
+                .setShaderState(PARTICLE_INSTANCED)
+                .setTextureState(new TextureStateShard(texture, false, false))
+                .setTransparencyState(additive ? ADDITIVE_TRANSPARENCY : TRANSLUCENT_TRANSPARENCY)
+                .setLightmapState(LIGHTMAP)
+                .setWriteMaskState(COLOR_WRITE)
+                .createCompositeState(false);
+        return create(Veil.MODID + ":quasar_particle_instanced", DefaultVertexFormat.EMPTY, VertexFormat.Mode.TRIANGLES, SMALL_BUFFER_SIZE, false, !additive, state);
+    });
+    private static final Function<Boolean, RenderType> QUASAR_PARTICLE_ARRAY = Util.memoize((additive) -> {
+        CompositeState state = RenderType.CompositeState.builder()
+                .setShaderState(PARTICLE_ARRAY)
+                .setTransparencyState(additive ? ADDITIVE_TRANSPARENCY : TRANSLUCENT_TRANSPARENCY)
+                .setLightmapState(LIGHTMAP)
+                .setWriteMaskState(COLOR_WRITE)
+                .createCompositeState(false);
+        return create(Veil.MODID + ":quasar_particle_array", DefaultVertexFormat.EMPTY, VertexFormat.Mode.TRIANGLES, SMALL_BUFFER_SIZE, false, !additive, state);
+    });
+    private static final BiFunction<ResourceLocation, Boolean, RenderType> QUASAR_PARTICLE_GPU = Util.memoize((texture, additive) -> {
+        CompositeState state = RenderType.CompositeState.builder()
+                .setShaderState(PARTICLE_GPU)
+                .setTextureState(new TextureStateShard(texture, false, false))
+                .setTransparencyState(additive ? ADDITIVE_TRANSPARENCY : TRANSLUCENT_TRANSPARENCY)
+                .setLightmapState(LIGHTMAP)
+                .setWriteMaskState(COLOR_WRITE)
+                .createCompositeState(false);
+        return create(Veil.MODID + ":quasar_particle_gpu", DefaultVertexFormat.EMPTY, VertexFormat.Mode.TRIANGLES, SMALL_BUFFER_SIZE, false, !additive, state);
+    });
     private static final Function<ResourceLocation, RenderType> QUASAR_TRAIL = Util.memoize((texture) -> {
         CompositeState state = CompositeState.builder()
                 .setShaderState(RENDERTYPE_ENTITY_TRANSLUCENT_EMISSIVE_SHADER)
@@ -78,15 +111,53 @@ public final class VeilRenderType extends RenderType {
                 .createCompositeState(false);
         return RenderType.create(Veil.MODID + ":quasar_trail", DefaultVertexFormat.NEW_ENTITY, VertexFormat.Mode.TRIANGLE_STRIP, TRANSIENT_BUFFER_SIZE, false, false, state);
     });
+    private static final Function<ResourceLocation, RenderType> QUASAR_TRAIL_INSTANCED = Util.memoize((texture) -> {
+        CompositeState state = CompositeState.builder()
+                .setShaderState(TRAIL)
+                .setTextureState(new TextureStateShard(texture, false, false))
+                .setTransparencyState(ADDITIVE_TRANSPARENCY)
+                .setWriteMaskState(COLOR_WRITE)
+                .setCullState(NO_CULL)
+                .createCompositeState(false);
+        return create(Veil.MODID + ":quasar_trail_instanced", DefaultVertexFormat.EMPTY, VertexFormat.Mode.TRIANGLE_STRIP, SMALL_BUFFER_SIZE, false, false, state);
+    });
 
     public static RenderType quasarParticle(ResourceLocation texture, boolean additive) {
         return QUASAR_PARTICLE.apply(texture, additive);
     }
 
+    /**
+     * Render type for particles drawn as instances. Each instance is expanded into a billboard or cube in the vertex shader, so nothing should be written into this type.
+     */
+    public static RenderType quasarParticleInstanced(ResourceLocation texture, boolean additive) {
+        return QUASAR_PARTICLE_INSTANCED.apply(texture, additive);
+    }
+
+    /**
+     * Render type for instanced particles that sample the particle texture array. The array has to be bound to <code>Sampler0</code> manually.
+     */
+    public static RenderType quasarParticleArray(boolean additive) {
+        return QUASAR_PARTICLE_ARRAY.apply(additive);
+    }
+
+    /**
+     * Render type for particles simulated on the GPU. All vertex data is read from the particle storage buffer, so nothing should be written into this type.
+     */
+    public static RenderType quasarParticleGpu(ResourceLocation texture, boolean additive) {
+        return QUASAR_PARTICLE_GPU.apply(texture, additive);
+    }
+
     public static RenderType quasarTrail(ResourceLocation texture) {
         return QUASAR_TRAIL.apply(texture);
     }
 
+    /**
+     * Render type for trails drawn as instances. Each instance is a strip expanded from the trail point storage buffer, so nothing should be written into this type.
+     */
+    public static RenderType quasarTrailInstanced(ResourceLocation texture) {
+        return QUASAR_TRAIL_INSTANCED.apply(texture);
+    }
+
     public static TransparencyStateShard noTransparencyShard() {
         return RenderStateShard.NO_TRANSPARENCY;
     }
@@ -24,6 +24,7 @@ import java.nio.IntBuffer;
 import java.util.function.Function;
 import java.util.function.IntFunction;
 
+import static org.lwjgl.opengl.ARBBaseInstance.glDrawElementsInstancedBaseInstance;
 import static org.lwjgl.opengl.ARBDirectStateAccess.glCreateVertexArrays;
 import static org.lwjgl.opengl.ARBDirectStateAccess.glNamedBufferData;
 import static org.lwjgl.opengl.ARBMultiDrawIndirect.glMultiDrawElementsIndirect;
@@ -295,6 +296,22 @@ public abstract class VertexArray implements NativeResource {
         glDrawElementsInstanced(this.drawMode, this.indexCount, this.indexType.getGlType(), 0L, instances);
     }
 
+    /**
+     * Draws {@link #indexCount} number of indices with the previously defined draw mode a number of times, starting at the specified instance.
+     * <br>
+     * <strong>Note: This only works if {@link VeilRenderSystem#baseInstanceSupported()} is <code>true</code></strong>
+     *
+     * @param instances    The number of instances to draw
+     * @param baseInstance The first instance to read instanced attributes from
+     */
+    public void drawInstanced(int instances, int baseInstance) {
+        if (!VeilRenderSystem.baseInstanceSupported()) {
+            throw new UnsupportedOperationException("Base instance rendering is not supported");
+        }
+
+        glDrawElementsInstancedBaseInstance(this.drawMode, this.indexCount, this.indexType.getGlType(), 0L, instances, baseInstance);
+    }
+
     /**
      * Draws {@link #indexCount} number of indices with the previously defined draw mode a number of times.
      * <br>
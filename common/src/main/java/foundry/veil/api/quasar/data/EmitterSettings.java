@@ -9,12 +9,16 @@ import java.util.List;
 
 public record EmitterSettings(List<Holder<EmitterShapeSettings>> emitterShapeSettingsHolders,
                               Holder<ParticleSettings> particleSettingsHolder,
-                              boolean forceSpawn) {
+                              boolean forceSpawn,
+                              ParticlePriority priority,
+                              boolean lod) {
 
     public static final Codec<EmitterSettings> CODEC = RecordCodecBuilder.create(instance -> instance.group(
             CodecUtil.singleOrList(EmitterShapeSettings.CODEC).fieldOf("shape").forGetter(EmitterSettings::emitterShapeSettingsHolders),
             ParticleSettings.CODEC.fieldOf("particle_settings").forGetter(EmitterSettings::particleSettingsHolder),
-            Codec.BOOL.optionalFieldOf("force_spawn", false).forGetter(EmitterSettings::forceSpawn)
+            Codec.BOOL.optionalFieldOf("force_spawn", false).forGetter(EmitterSettings::forceSpawn),
+            ParticlePriority.CODEC.optionalFieldOf("priority", ParticlePriority.AMBIENT).forGetter(EmitterSettings::priority),
+            Codec.BOOL.optionalFieldOf("lod", true).forGetter(EmitterSettings::lod)
     ).apply(instance, EmitterSettings::new));
 
     public List<EmitterShapeSettings> emitterShapeSettings() {
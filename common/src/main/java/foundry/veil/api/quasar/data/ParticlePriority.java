@@ -0,0 +1,36 @@
+package foundry.veil.api.quasar.data;
+
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.DataResult;
+
+import java.util.Locale;
+
+/**
+ * How important particles from an emitter are when the global particle budget is full.
+ * Particles are always removed from lower priorities first, then from the farthest emitters of the same priority.
+ *
+ * @author Ocelot
+ */
+public enum ParticlePriority {
+    /**
+     * Decorative particles that can be removed whenever something more important needs to spawn.
+     */
+    AMBIENT,
+    /**
+     * Particles that communicate gameplay information. These are only removed for other critical or forced particles.
+     */
+    CRITICAL,
+    /**
+     * Particles that always spawn and are never removed to make room, even if the budget is exceeded.
+     */
+    FORCED;
+
+    public static final Codec<ParticlePriority> CODEC = Codec.STRING.flatXmap(name -> {
+        for (ParticlePriority value : ParticlePriority.values()) {
+            if (value.name().equalsIgnoreCase(name)) {
+                return DataResult.success(value);
+            }
+        }
+        return DataResult.error(() -> "Unknown Particle Priority: " + name);
+    }, priority -> DataResult.success(priority.name().toLowerCase(Locale.ROOT)));
+}
@@ -6,6 +6,7 @@ import foundry.veil.Veil;
 import foundry.veil.api.client.render.VeilRenderSystem;
 import foundry.veil.api.quasar.data.module.ParticleModuleData;
 import foundry.veil.api.quasar.particle.ParticleEmitter;
+import foundry.veil.api.quasar.particle.ParticleSystemManager;
 import foundry.veil.api.resource.VeilDynamicRegistry;
 import net.minecraft.commands.SharedSuggestionProvider;
 import net.minecraft.core.Registry;
@@ -76,7 +77,9 @@ public final class QuasarParticles {
             }
 
             Veil.LOGGER.info("Loaded {} quasar particles", registryAccess.registryOrThrow(EMITTER).size());
-            VeilRenderSystem.renderer().getParticleManager().clear();
+            ParticleSystemManager particleManager = VeilRenderSystem.renderer().getParticleManager();
+            particleManager.clear();
+            particleManager.invalidateTemplates();
         }
 
         @Override
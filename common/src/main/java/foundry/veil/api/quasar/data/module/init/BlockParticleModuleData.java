@@ -8,6 +8,7 @@ import foundry.veil.api.quasar.data.module.ParticleModuleData;
 import foundry.veil.api.quasar.emitters.module.InitParticleModule;
 import foundry.veil.api.quasar.emitters.module.UpdateParticleModule;
 import foundry.veil.api.quasar.particle.ParticleModuleSet;
+import foundry.veil.api.quasar.particle.QuasarParticle;
 import net.minecraft.client.Minecraft;
 import net.minecraft.world.level.block.state.BlockState;
 
@@ -17,19 +18,17 @@ public record BlockParticleModuleData(boolean dynamic) implements ParticleModule
 
     @Override
     public void addModules(ParticleModuleSet.Builder builder) {
-        builder.addModule((InitParticleModule) particle -> {
-            BlockState state = particle.getBlockStateInOrUnder();
-            if (!state.isAir()) {
-                particle.getRenderData().setAtlasSprite(Minecraft.getInstance().getBlockRenderer().getBlockModelShaper().getParticleIcon(state));
-            }
-        });
+        builder.addModule((InitParticleModule) BlockParticleModuleData::updateSprite);
         if (this.dynamic) {
-            builder.addModule((UpdateParticleModule) particle -> {
-                BlockState state = particle.getBlockStateInOrUnder();
-                if (!state.isAir()) {
-                    particle.getRenderData().setAtlasSprite(Minecraft.getInstance().getBlockRenderer().getBlockModelShaper().getParticleIcon(state));
-                }
-            });
+            // Updates may run on worker threads, so the level is only read from the main thread
+            builder.addModule((UpdateParticleModule) particle -> particle.getEmitter().runOnMainThread(particle, BlockParticleModuleData::updateSprite));
+        }
+    }
+
+    private static void updateSprite(QuasarParticle particle) {
+        BlockState state = particle.getBlockStateInOrUnder();
+        if (!state.isAir()) {
+            particle.getRenderData().setAtlasSprite(Minecraft.getInstance().getBlockRenderer().getBlockModelShaper().getParticleIcon(state));
         }
     }
 
@@ -1,29 +1,52 @@
 package foundry.veil.api.quasar.data.module.init;
 
+import com.mojang.serialization.Codec;
 import com.mojang.serialization.MapCodec;
 import com.mojang.serialization.codecs.RecordCodecBuilder;
 import foundry.veil.api.molang.MolangExpressionCodec;
 import foundry.veil.api.quasar.data.ParticleModuleTypeRegistry;
 import foundry.veil.api.quasar.data.module.ModuleType;
 import foundry.veil.api.quasar.data.module.ParticleModuleData;
+import foundry.veil.api.quasar.emitters.module.render.ClusteredLightModule;
 import foundry.veil.api.quasar.emitters.module.render.DynamicLightModule;
 import foundry.veil.api.quasar.emitters.module.render.StaticLightModule;
 import foundry.veil.api.quasar.particle.ParticleModuleSet;
 import foundry.veil.impl.quasar.ColorGradient;
 import gg.moonflower.molangcompiler.api.MolangExpression;
 
+/**
+ * Adds a point light to particles.
+ *
+ * @param color       The color of the light over the life of the particle
+ * @param brightness  The brightness of the light
+ * @param radius      The radius of the light
+ * @param clusterSize The size of the grid cells particle lights are merged in or <code>0</code> to give each particle its own light
+ * @param maxLights   The maximum number of merged lights each emitter can create
+ */
 public record LightModuleData(ColorGradient color,
                               MolangExpression brightness,
-                              MolangExpression radius) implements ParticleModuleData {
+                              MolangExpression radius,
+                              float clusterSize,
+                              int maxLights) implements ParticleModuleData {
 
     public static final MapCodec<LightModuleData> CODEC = RecordCodecBuilder.mapCodec(instance -> instance.group(
             ColorGradient.CODEC.fieldOf("gradient").forGetter(LightModuleData::color),
             MolangExpressionCodec.CODEC.fieldOf("brightness").forGetter(LightModuleData::brightness),
-            MolangExpressionCodec.CODEC.fieldOf("radius").forGetter(LightModuleData::radius)
+            MolangExpressionCodec.CODEC.fieldOf("radius").forGetter(LightModuleData::radius),
+            Codec.floatRange(0.0F, Float.MAX_VALUE).optionalFieldOf("cluster_size", 0.0F).forGetter(LightModuleData::clusterSize),
+            Codec.intRange(1, 256).optionalFieldOf("max_lights", 16).forGetter(LightModuleData::maxLights)
     ).apply(instance, LightModuleData::new));
 
+    public LightModuleData(ColorGradient color, MolangExpression brightness, MolangExpression radius) {
+        this(color, brightness, radius, 0.0F, 16);
+    }
+
     @Override
     public void addModules(ParticleModuleSet.Builder builder) {
+        if (this.clusterSize > 0.0F) {
+            builder.addModule(new ClusteredLightModule(this));
+            return;
+        }
         if (this.color.isConstant() && this.brightness.isConstant() && this.radius.isConstant()) {
             StaticLightModule module = new StaticLightModule(this);
             if (module.isVisible()) {
@@ -8,6 +8,7 @@ import foundry.veil.api.quasar.data.module.ModuleType;
 import foundry.veil.api.quasar.data.module.ParticleModuleData;
 import foundry.veil.api.quasar.emitters.module.InitParticleModule;
 import foundry.veil.api.quasar.emitters.module.render.ColorRenderModule;
+import foundry.veil.api.quasar.particle.ParticleExpression;
 import foundry.veil.api.quasar.particle.ParticleModuleSet;
 import foundry.veil.impl.quasar.ColorGradient;
 import gg.moonflower.molangcompiler.api.MolangExpression;
@@ -23,10 +24,11 @@ public record ColorParticleModuleData(ColorGradient gradient,
 
     @Override
     public void addModules(ParticleModuleSet.Builder builder) {
-        if (this.gradient.isConstant() || this.interpolant.isConstant()) {
-            builder.addModule((InitParticleModule) particle -> particle.getRenderData().setColor(this.gradient.getColor(particle.getEnvironment().safeResolve(this.interpolant))));
+        ParticleExpression interpolant = ParticleExpression.of(this.interpolant);
+        if (this.gradient.isConstant() || interpolant.isConstant()) {
+            builder.addModule((InitParticleModule) particle -> particle.getRenderData().setColor(this.gradient.getColor(interpolant.safeResolve(particle))));
         } else {
-            builder.addModule(new ColorRenderModule(this.gradient, this.interpolant));
+            builder.addModule(new ColorRenderModule(this.gradient, interpolant));
         }
     }
 
@@ -6,6 +6,7 @@ import foundry.veil.api.quasar.data.ParticleModuleTypeRegistry;
 import foundry.veil.api.quasar.data.module.ModuleType;
 import foundry.veil.api.quasar.data.module.ParticleModuleData;
 import foundry.veil.api.quasar.emitters.module.UpdateParticleModule;
+import foundry.veil.api.quasar.particle.ParticleExpression;
 import foundry.veil.api.quasar.particle.ParticleModuleSet;
 import gg.moonflower.molangcompiler.api.MolangExpression;
 import gg.moonflower.molangcompiler.api.exception.MolangRuntimeException;
@@ -16,9 +17,10 @@ public record TickSizeParticleModuleData(MolangExpression size) implements Parti
 
     @Override
     public void addModules(ParticleModuleSet.Builder builder) {
+        ParticleExpression size = ParticleExpression.of(this.size);
         builder.addModule((UpdateParticleModule) particle -> {
             try {
-                particle.setRadius(particle.getEnvironment().resolve(this.size));
+                particle.setRadius(size.resolve(particle));
             } catch (MolangRuntimeException e) {
                 e.printStackTrace();
                 particle.setRadius(1.0F);
@@ -1,11 +1,24 @@
 package foundry.veil.api.quasar.emitters.module;
 
+import foundry.veil.api.quasar.particle.ParticleBatch;
 import foundry.veil.api.quasar.particle.QuasarParticle;
 
 public interface ForceParticleModule extends ParticleModule {
 
     void applyForce(QuasarParticle particle);
 
+    /**
+     * Applies this force to every particle in an emitter. Modules that can work directly on the particle columns should override this.
+     *
+     * @param batch All particles to apply the force to
+     */
+    default void applyForceBatch(ParticleBatch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            this.applyForce(batch.load(i));
+            batch.store();
+        }
+    }
+
     void setStrength(float strength);
 
 }
@@ -1,9 +1,12 @@
 package foundry.veil.api.quasar.emitters.module;
 
+import foundry.veil.api.quasar.particle.ParticleStorage;
 import foundry.veil.api.quasar.particle.QuasarParticle;
 
 /**
- * A single module instance on a {@link QuasarParticle} that has a specific function.
+ * <p>A single module instance on a particle emitter that has a specific function.</p>
+ * <p>Modules are created once per emitter and shared by all of its particles,
+ * so any per-particle state must be stored in columns allocated from {@link #attach(ParticleStorage)}.</p>
  *
  * @author amo
  * @author Ocelot
@@ -14,6 +17,22 @@ import foundry.veil.api.quasar.particle.QuasarParticle;
  */
 public interface ParticleModule {
 
+    /**
+     * Called once when the module is added to an emitter to allocate per-particle columns.
+     *
+     * @param storage The storage for all particles in the emitter
+     */
+    default void attach(ParticleStorage storage) {
+    }
+
+    /**
+     * Called when a single particle is removed.
+     *
+     * @param particle The particle being removed
+     */
+    default void onRemove(QuasarParticle particle) {
+    }
+
     /**
      * Called when the module is removed.
      */
@@ -1,5 +1,6 @@
 package foundry.veil.api.quasar.emitters.module;
 
+import foundry.veil.api.quasar.particle.ParticleBatch;
 import foundry.veil.api.quasar.particle.QuasarParticle;
 
 /**
@@ -8,9 +9,21 @@ import foundry.veil.api.quasar.particle.QuasarParticle;
 public interface UpdateParticleModule extends ParticleModule {
 
     /**
-     * Updates this module with the
+     * Updates this module for a single particle.
      *
      * @param particle The particle to update for
      */
     void update(QuasarParticle particle);
+
+    /**
+     * Updates this module for every particle in an emitter. Modules that can work directly on the particle columns should override this.
+     *
+     * @param batch All particles to update
+     */
+    default void updateBatch(ParticleBatch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            this.update(batch.load(i));
+            batch.store();
+        }
+    }
 }
@@ -1,6 +1,7 @@
 package foundry.veil.api.quasar.emitters.module.force;
 
 import foundry.veil.api.quasar.emitters.module.ForceParticleModule;
+import foundry.veil.api.quasar.particle.ParticleBatch;
 import foundry.veil.api.quasar.particle.QuasarParticle;
 import org.joml.Vector3d;
 import org.joml.Vector3dc;
@@ -24,11 +25,29 @@ public class ConstantForceModule implements ForceParticleModule {
         particle.getVelocity().add(this.acceleration.x * this.strength, this.acceleration.y * this.strength, this.acceleration.z * this.strength);
     }
 
+    @Override
+    public void applyForceBatch(ParticleBatch batch) {
+        double x = this.acceleration.x * this.strength;
+        double y = this.acceleration.y * this.strength;
+        double z = this.acceleration.z * this.strength;
+        double[] velocity = batch.getStorage().velocity();
+        int end = batch.size() * 3;
+        for (int i = 0; i < end; i += 3) {
+            velocity[i] += x;
+            velocity[i + 1] += y;
+            velocity[i + 2] += z;
+        }
+    }
+
     @Override
     public void setStrength(float strength) {
         this.strength = strength;
     }
 
+    public float getStrength() {
+        return this.strength;
+    }
+
     public Vector3d getAcceleration() {
         return this.acceleration;
     }
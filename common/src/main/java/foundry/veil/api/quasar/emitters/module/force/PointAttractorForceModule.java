@@ -1,6 +1,7 @@
 package foundry.veil.api.quasar.emitters.module.force;
 
 import foundry.veil.api.quasar.data.module.force.PointAttractorForceData;
+import foundry.veil.api.quasar.particle.ParticleBatch;
 import foundry.veil.api.quasar.particle.QuasarParticle;
 import org.joml.Vector3d;
 import org.joml.Vector3dc;
@@ -52,6 +53,36 @@ public class PointAttractorForceModule extends SimplePositionedForce {
         particle.getVelocity().add(diff.normalize(strength));
     }
 
+    @Override
+    public void applyForceBatch(ParticleBatch batch) {
+        Vector3d origin = this.getOrigin(batch.getEmitter());
+        double[] position = batch.getStorage().position();
+        double[] velocity = batch.getStorage().velocity();
+        int end = batch.size() * 3;
+        for (int i = 0; i < end; i += 3) {
+            double dx = origin.x - position[i];
+            double dy = origin.y - position[i + 1];
+            double dz = origin.z - position[i + 2];
+            double distanceSq = dx * dx + dy * dy + dz * dz;
+            if (distanceSq >= this.rangeSq) {
+                continue;
+            }
+
+            double strength;
+            if (this.strengthByDistance) {
+                double factor = this.invertDistanceModifier ? (distanceSq / this.rangeSq) * 2 : (1 - distanceSq / this.rangeSq);
+                strength = this.strength * factor;
+            } else {
+                strength = this.strength;
+            }
+
+            double scale = strength / Math.sqrt(distanceSq);
+            velocity[i] += dx * scale;
+            velocity[i + 1] += dy * scale;
+            velocity[i + 2] += dz * scale;
+        }
+    }
+
     public void setRange(double range) {
         this.rangeSq = range * range;
     }
@@ -61,6 +92,22 @@ public class PointAttractorForceModule extends SimplePositionedForce {
         this.strength = strength;
     }
 
+    public double getRangeSquared() {
+        return this.rangeSq;
+    }
+
+    public float getStrength() {
+        return this.strength;
+    }
+
+    public boolean isStrengthByDistance() {
+        return this.strengthByDistance;
+    }
+
+    public boolean isInvertDistanceModifier() {
+        return this.invertDistanceModifier;
+    }
+
     public void setStrengthByDistance(boolean strengthByDistance) {
         this.strengthByDistance = strengthByDistance;
     }
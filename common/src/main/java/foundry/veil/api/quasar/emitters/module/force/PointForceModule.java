@@ -1,6 +1,7 @@
 package foundry.veil.api.quasar.emitters.module.force;
 
 import foundry.veil.api.quasar.data.module.force.PointForceData;
+import foundry.veil.api.quasar.particle.ParticleBatch;
 import foundry.veil.api.quasar.particle.QuasarParticle;
 import org.joml.Vector3d;
 import org.joml.Vector3dc;
@@ -38,6 +39,28 @@ public class PointForceModule extends SimplePositionedForce {
         particle.getVelocity().add(diff.normalize(this.strength));
     }
 
+    @Override
+    public void applyForceBatch(ParticleBatch batch) {
+        Vector3d origin = this.getOrigin(batch.getEmitter());
+        double[] position = batch.getStorage().position();
+        double[] velocity = batch.getStorage().velocity();
+        int end = batch.size() * 3;
+        for (int i = 0; i < end; i += 3) {
+            double dx = origin.x - position[i];
+            double dy = origin.y - position[i + 1];
+            double dz = origin.z - position[i + 2];
+            double distanceSq = dx * dx + dy * dy + dz * dz;
+            if (distanceSq >= this.rangeSq) {
+                continue;
+            }
+
+            double scale = this.strength / Math.sqrt(distanceSq);
+            velocity[i] += dx * scale;
+            velocity[i + 1] += dy * scale;
+            velocity[i + 2] += dz * scale;
+        }
+    }
+
     public void setRange(double range) {
         this.rangeSq = range * range;
     }
@@ -46,4 +69,12 @@ public class PointForceModule extends SimplePositionedForce {
     public void setStrength(float strength) {
         this.strength = strength;
     }
+
+    public double getRangeSquared() {
+        return this.rangeSq;
+    }
+
+    public float getStrength() {
+        return this.strength;
+    }
 }
@@ -1,6 +1,7 @@
 package foundry.veil.api.quasar.emitters.module.force;
 
 import foundry.veil.api.quasar.emitters.module.ForceParticleModule;
+import foundry.veil.api.quasar.particle.ParticleBatch;
 import foundry.veil.api.quasar.particle.QuasarParticle;
 import org.joml.Vector3d;
 import org.joml.Vector3dc;
@@ -28,11 +29,29 @@ public class ScaleForceModule implements ForceParticleModule {
                 1.0 + (this.scale.z - 1.0) * this.strength);
     }
 
+    @Override
+    public void applyForceBatch(ParticleBatch batch) {
+        double x = 1.0 + (this.scale.x - 1.0) * this.strength;
+        double y = 1.0 + (this.scale.y - 1.0) * this.strength;
+        double z = 1.0 + (this.scale.z - 1.0) * this.strength;
+        double[] velocity = batch.getStorage().velocity();
+        int end = batch.size() * 3;
+        for (int i = 0; i < end; i += 3) {
+            velocity[i] *= x;
+            velocity[i + 1] *= y;
+            velocity[i + 2] *= z;
+        }
+    }
+
     @Override
     public void setStrength(float strength) {
         this.strength = strength;
     }
 
+    public float getStrength() {
+        return this.strength;
+    }
+
     public Vector3d getScale() {
         return this.scale;
     }
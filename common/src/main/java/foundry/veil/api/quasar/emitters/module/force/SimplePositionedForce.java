@@ -1,6 +1,7 @@
 package foundry.veil.api.quasar.emitters.module.force;
 
 import foundry.veil.api.quasar.emitters.module.ForceParticleModule;
+import foundry.veil.api.quasar.particle.ParticleEmitter;
 import foundry.veil.api.quasar.particle.QuasarParticle;
 import org.joml.Vector3d;
 import org.joml.Vector3dc;
@@ -28,6 +29,19 @@ public abstract class SimplePositionedForce implements ForceParticleModule, Posi
         return this.position.sub(particle.getPosition(), this.tempPos);
     }
 
+    /**
+     * Calculates the world position of this force for all particles in the specified emitter.
+     *
+     * @param emitter The emitter to get the origin for
+     * @return The origin of this force. This vector is reused, so it should not be stored
+     */
+    protected Vector3d getOrigin(ParticleEmitter emitter) {
+        if (this.localPosition) {
+            return this.position.add(emitter.getPosition(), this.tempPos);
+        }
+        return this.tempPos.set(this.position);
+    }
+
     @Override
     public Vector3d getPosition() {
         return this.position;
@@ -2,9 +2,12 @@ package foundry.veil.api.quasar.emitters.module.force;
 
 import foundry.veil.api.quasar.data.module.force.VectorFieldForceData;
 import foundry.veil.api.quasar.emitters.module.ForceParticleModule;
+import foundry.veil.api.quasar.emitters.module.update.BakedVectorField;
 import foundry.veil.api.quasar.emitters.module.update.VectorField;
+import foundry.veil.api.quasar.particle.ParticleBatch;
 import foundry.veil.api.quasar.particle.QuasarParticle;
 import org.joml.Vector3d;
+import org.joml.Vector3dc;
 
 public class VectorFieldForceModule implements ForceParticleModule {
 
@@ -12,6 +15,7 @@ public class VectorFieldForceModule implements ForceParticleModule {
     private float strength;
 
     private final Vector3d temp;
+    private BakedVectorField tile;
 
     public VectorFieldForceModule(VectorFieldForceData data) {
         this(data.vectorField(), data.strength());
@@ -25,16 +29,54 @@ public class VectorFieldForceModule implements ForceParticleModule {
 
     @Override
     public void applyForce(QuasarParticle particle) {
-        Vector3d vector = this.vectorField.getVector(particle.getPosition(), this.temp);
+        Vector3d vector = this.getVector(particle.getPosition(), this.temp);
         particle.getVelocity().add(vector.mul(this.strength));
     }
 
+    @Override
+    public void applyForceBatch(ParticleBatch batch) {
+        Vector3d vector = this.temp;
+        double[] position = batch.getStorage().position();
+        double[] velocity = batch.getStorage().velocity();
+        int end = batch.size() * 3;
+        for (int i = 0; i < end; i += 3) {
+            vector.set(position[i], position[i + 1], position[i + 2]);
+            this.getVector(vector, vector).mul(this.strength);
+            velocity[i] += vector.x;
+            velocity[i + 1] += vector.y;
+            velocity[i + 2] += vector.z;
+        }
+    }
+
+    private Vector3d getVector(Vector3dc position, Vector3d result) {
+        VectorField field = this.vectorField;
+        if (!field.isBaked()) {
+            return field.getVector(position, result);
+        }
+
+        // Particles in an emitter are usually close together, so the last tile is almost always the right one
+        BakedVectorField tile = this.tile;
+        if (tile == null || !tile.contains(position.x(), position.y(), position.z())) {
+            tile = this.tile = BakedVectorField.getTile(field, position.x(), position.y(), position.z());
+        }
+        return field.getVector(tile, position, result);
+    }
+
     public void setVectorField(VectorField vectorField) {
         this.vectorField = vectorField;
+        this.tile = null;
     }
 
     @Override
     public void setStrength(float strength) {
         this.strength = strength;
     }
+
+    public VectorField getVectorField() {
+        return this.vectorField;
+    }
+
+    public float getStrength() {
+        return this.strength;
+    }
 }
@@ -1,6 +1,7 @@
 package foundry.veil.api.quasar.emitters.module.force;
 
 import foundry.veil.api.quasar.data.module.force.VortexForceData;
+import foundry.veil.api.quasar.particle.ParticleBatch;
 import foundry.veil.api.quasar.particle.QuasarParticle;
 import org.joml.Vector3d;
 import org.joml.Vector3dc;
@@ -44,6 +45,36 @@ public class VortexForceModule extends SimplePositionedForce {
         particle.getVelocity().add(particleToCenterOnAxis);
     }
 
+    @Override
+    public void applyForceBatch(ParticleBatch batch) {
+        Vector3d origin = this.getOrigin(batch.getEmitter());
+        double ax = this.vortexAxis.x;
+        double ay = this.vortexAxis.y;
+        double az = this.vortexAxis.z;
+        double[] position = batch.getStorage().position();
+        double[] velocity = batch.getStorage().velocity();
+        int end = batch.size() * 3;
+        for (int i = 0; i < end; i += 3) {
+            double dx = origin.x - position[i];
+            double dy = origin.y - position[i + 1];
+            double dz = origin.z - position[i + 2];
+            double distanceSq = dx * dx + dy * dy + dz * dz;
+            if (distanceSq >= this.rangeSq) {
+                continue;
+            }
+
+            // Remove the component along the axis, normalize, then rotate around the axis
+            double dot = dx * ax + dy * ay + dz * az;
+            double px = dx - ax * dot;
+            double py = dy - ay * dot;
+            double pz = dz - az * dot;
+            double scale = this.strength / Math.sqrt(px * px + py * py + pz * pz);
+            velocity[i] += (py * az - pz * ay) * scale;
+            velocity[i + 1] += (pz * ax - px * az) * scale;
+            velocity[i + 2] += (px * ay - py * ax) * scale;
+        }
+    }
+
     public Vector3dc getVortexAxis() {
         return this.vortexAxis;
     }
@@ -64,4 +95,12 @@ public class VortexForceModule extends SimplePositionedForce {
     public void setStrength(float strength) {
         this.strength = strength;
     }
+
+    public double getRangeSquared() {
+        return this.rangeSq;
+    }
+
+    public float getStrength() {
+        return this.strength;
+    }
 }
@@ -0,0 +1,269 @@
+package foundry.veil.api.quasar.emitters.module.render;
+
+import foundry.veil.api.client.render.VeilRenderSystem;
+import foundry.veil.api.client.render.light.PointLight;
+import foundry.veil.api.client.render.light.renderer.LightRenderer;
+import foundry.veil.api.quasar.data.module.init.LightModuleData;
+import foundry.veil.api.quasar.emitters.module.RenderParticleModule;
+import foundry.veil.api.quasar.emitters.module.UpdateParticleModule;
+import foundry.veil.api.quasar.particle.ParticleBatch;
+import foundry.veil.api.quasar.particle.ParticleExpression;
+import foundry.veil.api.quasar.particle.QuasarParticle;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import net.minecraft.core.BlockPos;
+import net.minecraft.util.Mth;
+import org.joml.Vector4f;
+
+import java.util.Arrays;
+
+/**
+ * <p>Merges the lights of all particles in an emitter into one light per grid cell.</p>
+ * <p>Each cluster is placed at the brightness-weighted centroid of its particles, uses their summed color,
+ * and is large enough to cover every particle light in it. Clusters are rebuilt in bulk each tick
+ * and moved once per frame. Once the light limit is reached, particles join the closest existing cluster.</p>
+ *
+ * @author Ocelot
+ */
+public class ClusteredLightModule implements UpdateParticleModule, RenderParticleModule {
+
+    private static final float MIN_BRIGHTNESS = 0.01F;
+
+    private final LightModuleData data;
+    private final ParticleExpression brightness;
+    private final ParticleExpression radius;
+    private final boolean constantColor;
+    private final float cellSize;
+    private final int maxLights;
+    private final Vector4f color;
+    private final Long2IntOpenHashMap cells;
+    private final Runnable applyClusters;
+
+    // Cluster state, the centroid is where the cluster is at the start of the tick and next is where it will be at the end
+    private final double[] anchor;
+    private final double[] centroid;
+    private final double[] next;
+    private final float[] weight;
+    private final float[] clusterColor;
+    private final float[] clusterRadius;
+    private final PointLight[] lights;
+    private int clusterCount;
+    private int activeLights;
+
+    private int[] particleCluster;
+    private float[] particleRadius;
+
+    public ClusteredLightModule(LightModuleData data) {
+        this.data = data;
+        this.brightness = ParticleExpression.of(data.brightness());
+        this.radius = ParticleExpression.of(data.radius());
+        this.constantColor = data.color().isConstant();
+        this.cellSize = data.clusterSize();
+        this.maxLights = Math.max(data.maxLights(), 1);
+        this.color = new Vector4f(1.0F);
+        this.cells = new Long2IntOpenHashMap();
+        this.cells.defaultReturnValue(-1);
+        this.applyClusters = this::applyClusters;
+
+        this.anchor = new double[this.maxLights * 3];
+        this.centroid = new double[this.maxLights * 3];
+        this.next = new double[this.maxLights * 3];
+        this.weight = new float[this.maxLights];
+        this.clusterColor = new float[this.maxLights * 3];
+        this.clusterRadius = new float[this.maxLights];
+        this.lights = new PointLight[this.maxLights];
+
+        this.particleCluster = new int[0];
+        this.particleRadius = new float[0];
+    }
+
+    @Override
+    public void update(QuasarParticle particle) {
+        // Clusters can only be built from every particle at once
+    }
+
+    @Override
+    public void updateBatch(ParticleBatch batch) {
+        int size = batch.size();
+        if (this.particleCluster.length < size) {
+            int capacity = Math.max(size, this.particleCluster.length * 2);
+            this.particleCluster = new int[capacity];
+            this.particleRadius = new float[capacity];
+        }
+
+        this.cells.clear();
+        this.clusterCount = 0;
+        Arrays.fill(this.weight, 0.0F);
+        Arrays.fill(this.centroid, 0.0);
+        Arrays.fill(this.next, 0.0);
+        Arrays.fill(this.clusterColor, 0.0F);
+        Arrays.fill(this.clusterRadius, 0.0F);
+
+        double[] position = batch.getStorage().position();
+        double[] velocity = batch.getStorage().velocity();
+        for (int i = 0; i < size; i++) {
+            QuasarParticle particle = batch.load(i);
+            this.data.color().getColor(this.constantColor ? 0.0F : (float) particle.getAge() / (float) particle.getLifetime(), this.color);
+            float weight = this.brightness.safeResolve(particle) * this.color.w;
+            if (weight < MIN_BRIGHTNESS) {
+                this.particleCluster[i] = -1;
+                continue;
+            }
+
+            int offset = i * 3;
+            double x = position[offset];
+            double y = position[offset + 1];
+            double z = position[offset + 2];
+            int cluster = this.getCluster(x, y, z);
+            this.particleCluster[i] = cluster;
+            this.particleRadius[i] = this.radius.safeResolve(particle);
+
+            int clusterOffset = cluster * 3;
+            this.weight[cluster] += weight;
+            this.centroid[clusterOffset] += x * weight;
+            this.centroid[clusterOffset + 1] += y * weight;
+            this.centroid[clusterOffset + 2] += z * weight;
+            this.next[clusterOffset] += (x + velocity[offset]) * weight;
+            this.next[clusterOffset + 1] += (y + velocity[offset + 1]) * weight;
+            this.next[clusterOffset + 2] += (z + velocity[offset + 2]) * weight;
+            this.clusterColor[clusterOffset] += this.color.x * weight;
+            this.clusterColor[clusterOffset + 1] += this.color.y * weight;
+            this.clusterColor[clusterOffset + 2] += this.color.z * weight;
+        }
+
+        for (int i = 0; i < this.clusterCount; i++) {
+            int offset = i * 3;
+            float weight = this.weight[i];
+            for (int j = 0; j < 3; j++) {
+                this.centroid[offset + j] /= weight;
+                this.next[offset + j] /= weight;
+                this.clusterColor[offset + j] /= weight;
+            }
+        }
+
+        // The light has to reach as far as the farthest particle light in the cluster
+        for (int i = 0; i < size; i++) {
+            int cluster = this.particleCluster[i];
+            if (cluster == -1) {
+                continue;
+            }
+
+            int offset = i * 3;
+            int clusterOffset = cluster * 3;
+            double dx = position[offset] - this.centroid[clusterOffset];
+            double dy = position[offset + 1] - this.centroid[clusterOffset + 1];
+            double dz = position[offset + 2] - this.centroid[clusterOffset + 2];
+            float reach = (float) Math.sqrt(dx * dx + dy * dy + dz * dz) + this.particleRadius[i];
+            this.clusterRadius[cluster] = Math.max(this.clusterRadius[cluster], reach);
+        }
+
+        batch.getEmitter().runOnMainThread(this.applyClusters);
+    }
+
+    private int getCluster(double x, double y, double z) {
+        int cellX = Mth.floor(x / this.cellSize);
+        int cellY = Mth.floor(y / this.cellSize);
+        int cellZ = Mth.floor(z / this.cellSize);
+        long key = BlockPos.asLong(cellX, cellY, cellZ);
+        int cluster = this.cells.get(key);
+        if (cluster != -1) {
+            return cluster;
+        }
+
+        double centerX = (cellX + 0.5) * this.cellSize;
+        double centerY = (cellY + 0.5) * this.cellSize;
+        double centerZ = (cellZ + 0.5) * this.cellSize;
+        if (this.clusterCount < this.maxLights) {
+            cluster = this.clusterCount++;
+            this.anchor[cluster * 3] = centerX;
+            this.anchor[cluster * 3 + 1] = centerY;
+            this.anchor[cluster * 3 + 2] = centerZ;
+        } else {
+            // Out of lights, so the whole cell joins the nearest cluster
+            double closest = Double.MAX_VALUE;
+            for (int i = 0; i < this.clusterCount; i++) {
+                double dx = this.anchor[i * 3] - centerX;
+                double dy = this.anchor[i * 3 + 1] - centerY;
+                double dz = this.anchor[i * 3 + 2] - centerZ;
+                double distanceSq = dx * dx + dy * dy + dz * dz;
+                if (distanceSq < closest) {
+                    closest = distanceSq;
+                    cluster = i;
+                }
+            }
+        }
+
+        this.cells.put(key, cluster);
+        return cluster;
+    }
+
+    private void applyClusters() {
+        LightRenderer lightRenderer = VeilRenderSystem.renderer().getLightRenderer();
+        for (int i = 0; i < this.clusterCount; i++) {
+            int offset = i * 3;
+            PointLight light = this.lights[i];
+            if (light == null) {
+                light = new PointLight();
+                light.setPosition(this.centroid[offset], this.centroid[offset + 1], this.centroid[offset + 2]);
+                lightRenderer.addLight(light);
+                this.lights[i] = light;
+            }
+
+            light.setColor(this.clusterColor[offset], this.clusterColor[offset + 1], this.clusterColor[offset + 2]);
+            light.setBrightness(this.weight[i]);
+            light.setRadius(this.clusterRadius[i]);
+        }
+        for (int i = this.clusterCount; i < this.activeLights; i++) {
+            lightRenderer.removeLight(this.lights[i]);
+            this.lights[i] = null;
+        }
+        this.activeLights = this.clusterCount;
+    }
+
+    @Override
+    public void render(QuasarParticle particle, float partialTicks) {
+        // Clusters aren't tied to a single particle, so they are all moved when the first particle is drawn
+        if (particle.getIndex() != 0) {
+            return;
+        }
+
+        for (int i = 0; i < this.activeLights; i++) {
+            int offset = i * 3;
+            this.lights[i].setPosition(
+                    Mth.lerp(partialTicks, this.centroid[offset], this.next[offset]),
+                    Mth.lerp(partialTicks, this.centroid[offset + 1], this.next[offset + 1]),
+                    Mth.lerp(partialTicks, this.centroid[offset + 2], this.next[offset + 2]));
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return this.activeLights > 0;
+    }
+
+    @Override
+    public void onRemove(QuasarParticle particle) {
+        // Empty emitters aren't updated, so the lights have to be removed with the last particle
+        if (particle.getEmitter().getParticleCount() <= 1) {
+            this.removeLights();
+        }
+    }
+
+    @Override
+    public void onRemove() {
+        this.removeLights();
+    }
+
+    private void removeLights() {
+        if (this.activeLights == 0) {
+            return;
+        }
+
+        LightRenderer lightRenderer = VeilRenderSystem.renderer().getLightRenderer();
+        for (int i = 0; i < this.activeLights; i++) {
+            lightRenderer.removeLight(this.lights[i]);
+            this.lights[i] = null;
+        }
+        this.activeLights = 0;
+        this.clusterCount = 0;
+    }
+}
@@ -2,9 +2,9 @@ package foundry.veil.api.quasar.emitters.module.render;
 
 import foundry.veil.Veil;
 import foundry.veil.api.quasar.emitters.module.RenderParticleModule;
+import foundry.veil.api.quasar.particle.ParticleExpression;
 import foundry.veil.api.quasar.particle.QuasarParticle;
 import foundry.veil.impl.quasar.ColorGradient;
-import gg.moonflower.molangcompiler.api.MolangExpression;
 import gg.moonflower.molangcompiler.api.exception.MolangRuntimeException;
 import org.joml.Vector4f;
 
@@ -13,10 +13,10 @@ public class ColorRenderModule implements RenderParticleModule {
     private static final ThreadLocal<Vector4f> COLOR = ThreadLocal.withInitial(Vector4f::new);
 
     private final ColorGradient gradient;
-    private final MolangExpression interpolant;
+    private final ParticleExpression interpolant;
     private boolean error;
 
-    public ColorRenderModule(ColorGradient gradient, MolangExpression interpolant) {
+    public ColorRenderModule(ColorGradient gradient, ParticleExpression interpolant) {
         this.gradient = gradient;
         this.interpolant = interpolant;
     }
@@ -25,7 +25,7 @@ public class ColorRenderModule implements RenderParticleModule {
     public void render(QuasarParticle particle, float partialTicks) {
         float percentage;
         try {
-            percentage = particle.getEnvironment().resolve(this.interpolant);
+            percentage = this.interpolant.resolve(particle);
         } catch (MolangRuntimeException e) {
             percentage = 0;
             if (!this.error) {
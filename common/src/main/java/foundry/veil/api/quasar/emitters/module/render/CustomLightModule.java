@@ -4,6 +4,8 @@ import foundry.veil.api.client.render.VeilRenderSystem;
 import foundry.veil.api.client.render.light.PointLight;
 import foundry.veil.api.quasar.emitters.module.RenderParticleModule;
 import foundry.veil.api.quasar.emitters.module.UpdateParticleModule;
+import foundry.veil.api.quasar.particle.ParticleBatch;
+import foundry.veil.api.quasar.particle.ParticleStorage;
 import foundry.veil.api.quasar.particle.QuasarParticle;
 import org.joml.Vector4f;
 
@@ -14,49 +16,70 @@ public class CustomLightModule implements UpdateParticleModule, RenderParticleMo
     private final Vector4f renderColor;
     private float brightness;
     private float radius;
-    private PointLight light;
+    private ParticleStorage.ObjectColumn<PointLight> lights;
 
     public CustomLightModule() {
         this.lastColor = new Vector4f(1.0F);
         this.color = new Vector4f(1.0F);
         this.renderColor = new Vector4f(1.0F);
-        this.light = null;
+    }
+
+    @Override
+    public void attach(ParticleStorage storage) {
+        this.lights = storage.createObjectColumn();
     }
 
     @Override
     public void update(QuasarParticle particle) {
-        this.lastColor.set(this.color);
+        int index = particle.getIndex();
+        PointLight light = this.lights.get(index);
         float brightness = this.brightness * this.color.w;
 
         if (this.color.lengthSquared() < 0.1 && brightness < 0.1) {
-            this.onRemove();
+            if (light != null) {
+                PointLight removed = light;
+                particle.getEmitter().runOnMainThread(() -> VeilRenderSystem.renderer().getLightRenderer().removeLight(removed));
+                this.lights.set(index, null);
+            }
         } else {
-            if (this.light == null) {
-                this.light = new PointLight().setRadius(this.radius);
-                VeilRenderSystem.renderer().getLightRenderer().addLight(this.light);
+            if (light == null) {
+                PointLight newLight = new PointLight().setRadius(this.radius);
+                particle.getEmitter().runOnMainThread(() -> VeilRenderSystem.renderer().getLightRenderer().addLight(newLight));
+                this.lights.set(index, newLight);
+                light = newLight;
             }
-            this.light.setColor(this.color.x, this.color.y, this.color.z);
-            this.light.setBrightness(this.brightness * this.color.w);
+            light.setColor(this.color.x, this.color.y, this.color.z);
+            light.setBrightness(this.brightness * this.color.w);
         }
     }
 
+    @Override
+    public void updateBatch(ParticleBatch batch) {
+        // The color is shared by all particles, so it only needs to be moved to last tick once
+        this.lastColor.set(this.color);
+        UpdateParticleModule.super.updateBatch(batch);
+    }
+
     @Override
     public void render(QuasarParticle particle, float partialTicks) {
-        if (this.light == null) {
+        PointLight light = this.lights.get(particle.getIndex());
+        if (light == null) {
             return;
         }
 
-        this.light.setPosition(particle.getRenderData().getRenderPosition());
+        light.setPosition(particle.getRenderData().getRenderPosition());
         this.lastColor.lerp(this.color, partialTicks, this.renderColor);
-        this.light.setColor(this.renderColor.x, this.renderColor.y, this.renderColor.z);
-        this.light.setBrightness(this.brightness * this.renderColor.w);
+        light.setColor(this.renderColor.x, this.renderColor.y, this.renderColor.z);
+        light.setBrightness(this.brightness * this.renderColor.w);
     }
 
     @Override
-    public void onRemove() {
-        if (this.light != null) {
-            VeilRenderSystem.renderer().getLightRenderer().removeLight(this.light);
-            this.light = null;
+    public void onRemove(QuasarParticle particle) {
+        int index = particle.getIndex();
+        PointLight light = this.lights.get(index);
+        if (light != null) {
+            VeilRenderSystem.renderer().getLightRenderer().removeLight(light);
+            this.lights.set(index, null);
         }
     }
 
@@ -5,108 +5,128 @@ import foundry.veil.api.client.render.light.PointLight;
 import foundry.veil.api.quasar.data.module.init.LightModuleData;
 import foundry.veil.api.quasar.emitters.module.RenderParticleModule;
 import foundry.veil.api.quasar.emitters.module.UpdateParticleModule;
+import foundry.veil.api.quasar.particle.ParticleExpression;
+import foundry.veil.api.quasar.particle.ParticleStorage;
 import foundry.veil.api.quasar.particle.QuasarParticle;
 import net.minecraft.util.Mth;
 import org.joml.Vector4f;
 
 public class DynamicLightModule implements UpdateParticleModule, RenderParticleModule {
 
-    private final LightModuleData data;
-    private float brightness;
-    private float lastRadius;
-    private float radius;
+    // Each value is followed by its value from the last tick
+    private static final int BRIGHTNESS = 0;
+    private static final int RADIUS = 2;
+    private static final int COLOR = 4;
+    private static final int LAST_COLOR = 8;
+    private static final int STRIDE = 12;
 
-    private final Vector4f lastColor;
+    private final LightModuleData data;
+    private final ParticleExpression brightness;
+    private final ParticleExpression radius;
     private final Vector4f color;
-    private final Vector4f renderColor;
-    private float lastBrightness;
-    private PointLight light;
 
     private final boolean constantColor;
     private final boolean constantBrightness;
     private final boolean constantRadius;
 
+    private ParticleStorage.FloatColumn state;
+    private ParticleStorage.ObjectColumn<PointLight> lights;
+
     public DynamicLightModule(LightModuleData data) {
         this.data = data;
+        this.brightness = ParticleExpression.of(data.brightness());
+        this.radius = ParticleExpression.of(data.radius());
 
         this.constantColor = data.color().isConstant();
-        this.constantBrightness = this.constantColor && data.brightness().isConstant();
-        this.constantRadius = data.radius().isConstant();
+        this.constantBrightness = this.constantColor && this.brightness.isConstant();
+        this.constantRadius = this.radius.isConstant();
 
-        this.lastColor = new Vector4f(1.0F);
         this.color = new Vector4f(1.0F);
-        this.renderColor = new Vector4f(1.0F);
-        this.light = null;
+    }
 
-        if (this.constantColor) {
-            data.color().getColor(0.0F, this.color);
-            this.lastColor.set(this.color);
-            this.renderColor.set(this.color);
-        }
+    @Override
+    public void attach(ParticleStorage storage) {
+        this.state = storage.createFloatColumn(STRIDE);
+        this.lights = storage.createObjectColumn();
     }
 
     @Override
     public void update(QuasarParticle particle) {
-        if (!this.constantColor) {
-            this.lastColor.set(this.color);
-            this.data.color().getColor((float) particle.getAge() / (float) particle.getLifetime(), this.color);
-        }
-        if (!this.constantBrightness) {
-            this.lastBrightness = this.brightness;
-            this.brightness = particle.getEnvironment().safeResolve(this.data.brightness());
-        }
-        if (!this.constantRadius) {
-            this.lastRadius = this.radius;
-            this.radius = particle.getEnvironment().safeResolve(this.data.radius());
-        }
-
-        float brightness = this.brightness * this.color.w;
+        int index = particle.getIndex();
+        float[] state = this.state.data();
+        int offset = index * STRIDE;
+
+        state[offset + BRIGHTNESS + 1] = state[offset + BRIGHTNESS];
+        state[offset + RADIUS + 1] = state[offset + RADIUS];
+        System.arraycopy(state, offset + COLOR, state, offset + LAST_COLOR, 4);
+
+        this.data.color().getColor(this.constantColor ? 0.0F : (float) particle.getAge() / (float) particle.getLifetime(), this.color);
+        state[offset + BRIGHTNESS] = this.brightness.safeResolve(particle);
+        state[offset + RADIUS] = this.radius.safeResolve(particle);
+        state[offset + COLOR] = this.color.x;
+        state[offset + COLOR + 1] = this.color.y;
+        state[offset + COLOR + 2] = this.color.z;
+        state[offset + COLOR + 3] = this.color.w;
+
+        PointLight light = this.lights.get(index);
+        float brightness = state[offset + BRIGHTNESS] * this.color.w;
         if (this.color.lengthSquared() < 0.1 && brightness < 0.1) {
-            this.onRemove();
+            if (light != null) {
+                particle.getEmitter().runOnMainThread(() -> VeilRenderSystem.renderer().getLightRenderer().removeLight(light));
+                this.lights.set(index, null);
+            }
             return;
         }
 
-        if (this.light == null) {
-            this.light = new PointLight();
-            if (this.constantColor) {
-                this.light.setColor(this.color.x, this.color.y, this.color.z);
-            }
-            if (this.constantBrightness) {
-                this.light.setBrightness(this.brightness * this.renderColor.w);
-            }
-            if (this.constantRadius) {
-                this.light.setBrightness(this.radius);
-            }
-            VeilRenderSystem.renderer().getLightRenderer().addLight(this.light);
+        if (light == null) {
+            // Start interpolating from the current values
+            state[offset + BRIGHTNESS + 1] = state[offset + BRIGHTNESS];
+            state[offset + RADIUS + 1] = state[offset + RADIUS];
+            System.arraycopy(state, offset + COLOR, state, offset + LAST_COLOR, 4);
+
+            PointLight newLight = new PointLight();
+            newLight.setColor(this.color.x, this.color.y, this.color.z);
+            newLight.setBrightness(brightness);
+            newLight.setRadius(state[offset + RADIUS]);
+            particle.getEmitter().runOnMainThread(() -> VeilRenderSystem.renderer().getLightRenderer().addLight(newLight));
+            this.lights.set(index, newLight);
         }
-        this.lastBrightness = brightness;
     }
 
     @Override
     public void render(QuasarParticle particle, float partialTicks) {
-        if (this.light == null) {
+        int index = particle.getIndex();
+        PointLight light = this.lights.get(index);
+        if (light == null) {
             return;
         }
 
-        this.light.setPosition(particle.getRenderData().getRenderPosition());
+        light.setPosition(particle.getRenderData().getRenderPosition());
 
+        float[] state = this.state.data();
+        int offset = index * STRIDE;
+        float alpha = Mth.lerp(partialTicks, state[offset + LAST_COLOR + 3], state[offset + COLOR + 3]);
         if (!this.constantColor) {
-            this.lastColor.lerp(this.color, partialTicks, this.renderColor);
-            this.light.setColor(this.renderColor.x, this.renderColor.y, this.renderColor.z);
+            light.setColor(
+                    Mth.lerp(partialTicks, state[offset + LAST_COLOR], state[offset + COLOR]),
+                    Mth.lerp(partialTicks, state[offset + LAST_COLOR + 1], state[offset + COLOR + 1]),
+                    Mth.lerp(partialTicks, state[offset + LAST_COLOR + 2], state[offset + COLOR + 2]));
         }
         if (!this.constantBrightness) {
-            this.light.setBrightness(Mth.lerp(partialTicks, this.lastBrightness, this.brightness) * this.renderColor.w);
+            light.setBrightness(Mth.lerp(partialTicks, state[offset + BRIGHTNESS + 1], state[offset + BRIGHTNESS]) * alpha);
         }
         if (!this.constantRadius) {
-            this.light.setRadius(Mth.lerp(partialTicks, this.lastRadius, this.radius));
+            light.setRadius(Mth.lerp(partialTicks, state[offset + RADIUS + 1], state[offset + RADIUS]));
         }
     }
 
     @Override
-    public void onRemove() {
-        if (this.light != null) {
-            VeilRenderSystem.renderer().getLightRenderer().removeLight(this.light);
-            this.light = null;
+    public void onRemove(QuasarParticle particle) {
+        int index = particle.getIndex();
+        PointLight light = this.lights.get(index);
+        if (light != null) {
+            VeilRenderSystem.renderer().getLightRenderer().removeLight(light);
+            this.lights.set(index, null);
         }
     }
 }
@@ -4,6 +4,7 @@ import foundry.veil.api.client.render.VeilRenderSystem;
 import foundry.veil.api.client.render.light.PointLight;
 import foundry.veil.api.quasar.data.module.init.LightModuleData;
 import foundry.veil.api.quasar.emitters.module.RenderParticleModule;
+import foundry.veil.api.quasar.particle.ParticleStorage;
 import foundry.veil.api.quasar.particle.QuasarParticle;
 import org.joml.Vector4f;
 import org.joml.Vector4fc;
@@ -14,7 +15,7 @@ public class StaticLightModule implements RenderParticleModule {
     private final float brightness;
     private final float radius;
 
-    private PointLight light;
+    private ParticleStorage.ObjectColumn<PointLight> lights;
 
     public StaticLightModule(LightModuleData data) {
         this(data.color().getColor(0.0F), data.brightness().getConstant(), data.radius().getConstant());
@@ -24,31 +25,40 @@ public class StaticLightModule implements RenderParticleModule {
         this.color = new Vector4f(color);
         this.brightness = brightness * this.color.w();
         this.radius = radius;
-        this.light = null;
     }
 
     public boolean isVisible() {
         return this.color.lengthSquared() < 0.1 && this.brightness < 0.1;
     }
 
+    @Override
+    public void attach(ParticleStorage storage) {
+        this.lights = storage.createObjectColumn();
+    }
+
     @Override
     public void render(QuasarParticle particle, float partialTicks) {
-        if (this.light == null) {
-            this.light = new PointLight()
+        int index = particle.getIndex();
+        PointLight light = this.lights.get(index);
+        if (light == null) {
+            light = new PointLight()
                     .setColor(this.color.x(), this.color.y(), this.color.z())
                     .setBrightness(this.brightness)
                     .setRadius(this.radius);
-            VeilRenderSystem.renderer().getLightRenderer().addLight(this.light);
+            VeilRenderSystem.renderer().getLightRenderer().addLight(light);
+            this.lights.set(index, light);
         }
 
-        this.light.setPosition(particle.getRenderData().getRenderPosition());
+        light.setPosition(particle.getRenderData().getRenderPosition());
     }
 
     @Override
-    public void onRemove() {
-        if (this.light != null) {
-            VeilRenderSystem.renderer().getLightRenderer().removeLight(this.light);
-            this.light = null;
+    public void onRemove(QuasarParticle particle) {
+        int index = particle.getIndex();
+        PointLight light = this.lights.get(index);
+        if (light != null) {
+            VeilRenderSystem.renderer().getLightRenderer().removeLight(light);
+            this.lights.set(index, null);
         }
     }
 }
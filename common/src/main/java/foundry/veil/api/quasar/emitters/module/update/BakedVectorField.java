@@ -0,0 +1,267 @@
+package foundry.veil.api.quasar.emitters.module.update;
+
+import com.mojang.blaze3d.platform.TextureUtil;
+import com.mojang.blaze3d.systems.RenderSystem;
+import net.minecraft.util.Mth;
+import org.joml.Vector3d;
+import org.lwjgl.system.MemoryUtil;
+import org.lwjgl.system.NativeResource;
+
+import java.nio.FloatBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.lwjgl.opengl.GL12C.*;
+import static org.lwjgl.opengl.GL30C.GL_RGB32F;
+
+/**
+ * <p>A {@link VectorField} sampled into a regular grid so particles can read it with trilinear interpolation instead of evaluating noise.</p>
+ * <p>Shared tiles are retrieved with {@link #getTile(VectorField, double, double, double)} and kept in a small cache keyed by the field,
+ * so every emitter using the same field in the same area reuses the same samples.
+ * Fields that need to be uploaded to the GPU should be baked with {@link #bake(VectorField, double, double, double, int)} and freed by their owner.</p>
+ *
+ * @author Ocelot
+ */
+public final class BakedVectorField implements NativeResource {
+
+    /**
+     * The number of cells along each side of a shared tile.
+     */
+    public static final int TILE_SIZE = 16;
+    private static final int MAX_CACHED_TILES = 64;
+    // Emitters are ticked in parallel, so tiles are baked outside the map to avoid blocking other threads
+    private static final Map<Key, BakedVectorField> CACHE = new ConcurrentHashMap<>();
+    private static final AtomicLong USE_COUNTER = new AtomicLong();
+
+    private final double minX;
+    private final double minY;
+    private final double minZ;
+    private final float cellSize;
+    private final int size;
+    private final int samples;
+    private final float[] data;
+    private final boolean shared;
+    private volatile long lastUsed;
+    private int texture;
+
+    private BakedVectorField(VectorField field, double minX, double minY, double minZ, int size, boolean shared) {
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.cellSize = field.resolution();
+        this.size = size;
+        this.samples = size + 1;
+        this.data = new float[this.samples * this.samples * this.samples * 3];
+        this.shared = shared;
+
+        float[] sample = new float[3];
+        int index = 0;
+        for (int z = 0; z < this.samples; z++) {
+            for (int y = 0; y < this.samples; y++) {
+                for (int x = 0; x < this.samples; x++) {
+                    field.sampleNoise((float) (minX + x * this.cellSize), (float) (minY + y * this.cellSize), (float) (minZ + z * this.cellSize), sample);
+                    this.data[index++] = sample[0];
+                    this.data[index++] = sample[1];
+                    this.data[index++] = sample[2];
+                }
+            }
+        }
+    }
+
+    /**
+     * Bakes a new field that is owned by the caller.
+     *
+     * @param field The field to bake
+     * @param minX  The minimum x position of the grid
+     * @param minY  The minimum y position of the grid
+     * @param minZ  The minimum z position of the grid
+     * @param size  The number of cells along each side, each {@link VectorField#resolution()} blocks long
+     * @return A new baked field
+     */
+    public static BakedVectorField bake(VectorField field, double minX, double minY, double minZ, int size) {
+        return new BakedVectorField(field, minX, minY, minZ, size, false);
+    }
+
+    /**
+     * Retrieves the shared tile that contains the specified position, baking it if it isn't cached.
+     *
+     * @param field The field to sample
+     * @param x     The x position in the tile
+     * @param y     The y position in the tile
+     * @param z     The z position in the tile
+     * @return The tile containing the position. This must not be freed
+     */
+    public static BakedVectorField getTile(VectorField field, double x, double y, double z) {
+        double tileSize = TILE_SIZE * field.resolution();
+        int tileX = Mth.floor(x / tileSize);
+        int tileY = Mth.floor(y / tileSize);
+        int tileZ = Mth.floor(z / tileSize);
+        Key key = new Key(field, tileX, tileY, tileZ);
+        BakedVectorField tile = CACHE.get(key);
+        if (tile == null) {
+            // Two threads may bake the same tile at once, but only the first one is kept
+            BakedVectorField baked = new BakedVectorField(field, tileX * tileSize, tileY * tileSize, tileZ * tileSize, TILE_SIZE, true);
+            baked.lastUsed = USE_COUNTER.incrementAndGet();
+            tile = CACHE.putIfAbsent(key, baked);
+            if (tile == null) {
+                tile = baked;
+                trimCache();
+            }
+        }
+        tile.lastUsed = USE_COUNTER.incrementAndGet();
+        return tile;
+    }
+
+    private static void trimCache() {
+        // Removes the least recently used tiles. Tiles that are still referenced by emitters stay valid
+        while (CACHE.size() > MAX_CACHED_TILES) {
+            Map.Entry<Key, BakedVectorField> oldest = null;
+            for (Map.Entry<Key, BakedVectorField> entry : CACHE.entrySet()) {
+                if (oldest == null || entry.getValue().lastUsed < oldest.getValue().lastUsed) {
+                    oldest = entry;
+                }
+            }
+            if (oldest == null) {
+                return;
+            }
+            CACHE.remove(oldest.getKey(), oldest.getValue());
+        }
+    }
+
+    /**
+     * Removes all shared tiles.
+     */
+    public static void clearCache() {
+        CACHE.clear();
+    }
+
+    /**
+     * Checks whether the specified position is inside the grid.
+     *
+     * @param x The x position
+     * @param y The y position
+     * @param z The z position
+     * @return Whether the position can be sampled without clamping
+     */
+    public boolean contains(double x, double y, double z) {
+        double extent = this.size * this.cellSize;
+        return x >= this.minX && y >= this.minY && z >= this.minZ && x < this.minX + extent && y < this.minY + extent && z < this.minZ + extent;
+    }
+
+    /**
+     * Samples the unscaled noise vector at the specified position. Positions outside the grid are clamped to the edge.
+     *
+     * @param x     The x position
+     * @param y     The y position
+     * @param z     The z position
+     * @param store The vector to store the result in
+     * @return The store vector
+     */
+    public Vector3d sample(double x, double y, double z, Vector3d store) {
+        double gx = Mth.clamp((x - this.minX) / this.cellSize, 0.0, this.size);
+        double gy = Mth.clamp((y - this.minY) / this.cellSize, 0.0, this.size);
+        double gz = Mth.clamp((z - this.minZ) / this.cellSize, 0.0, this.size);
+        int x0 = Math.min((int) gx, this.size - 1);
+        int y0 = Math.min((int) gy, this.size - 1);
+        int z0 = Math.min((int) gz, this.size - 1);
+        double fx = gx - x0;
+        double fy = gy - y0;
+        double fz = gz - z0;
+
+        int strideY = this.samples * 3;
+        int strideZ = this.samples * strideY;
+        int base = z0 * strideZ + y0 * strideY + x0 * 3;
+        float[] data = this.data;
+        for (int i = 0; i < 3; i++) {
+            int index = base + i;
+            double c00 = Mth.lerp(fx, data[index], data[index + 3]);
+            double c10 = Mth.lerp(fx, data[index + strideY], data[index + strideY + 3]);
+            double c01 = Mth.lerp(fx, data[index + strideZ], data[index + strideZ + 3]);
+            double c11 = Mth.lerp(fx, data[index + strideY + strideZ], data[index + strideY + strideZ + 3]);
+            store.setComponent(i, Mth.lerp(fz, Mth.lerp(fy, c00, c10), Mth.lerp(fy, c01, c11)));
+        }
+        return store;
+    }
+
+    /**
+     * Uploads this field into a 3D texture. Linear filtering gives the same trilinear interpolation as {@link #sample(double, double, double, Vector3d)}.
+     *
+     * @return The id of the <code>RGB32F</code> texture
+     * @throws IllegalStateException If this is a shared tile
+     */
+    public int getOrCreateTexture() {
+        if (this.shared) {
+            throw new IllegalStateException("Shared vector field tiles can't be uploaded");
+        }
+        if (this.texture != 0) {
+            return this.texture;
+        }
+
+        RenderSystem.assertOnRenderThread();
+        this.texture = TextureUtil.generateTextureId();
+        glBindTexture(GL_TEXTURE_3D, this.texture);
+        glTexParameteri(GL_TEXTURE_3D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+        glTexParameteri(GL_TEXTURE_3D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        glTexParameteri(GL_TEXTURE_3D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+        glTexParameteri(GL_TEXTURE_3D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+        glTexParameteri(GL_TEXTURE_3D, GL_TEXTURE_WRAP_R, GL_CLAMP_TO_EDGE);
+        glTexParameteri(GL_TEXTURE_3D, GL_TEXTURE_MAX_LEVEL, 0);
+
+        FloatBuffer buffer = MemoryUtil.memAllocFloat(this.data.length);
+        try {
+            buffer.put(this.data).flip();
+            glTexImage3D(GL_TEXTURE_3D, 0, GL_RGB32F, this.samples, this.samples, this.samples, 0, GL_RGB, GL_FLOAT, buffer);
+        } finally {
+            MemoryUtil.memFree(buffer);
+        }
+        glBindTexture(GL_TEXTURE_3D, 0);
+        return this.texture;
+    }
+
+    /**
+     * @return The minimum x position of the grid
+     */
+    public double getMinX() {
+        return this.minX;
+    }
+
+    /**
+     * @return The minimum y position of the grid
+     */
+    public double getMinY() {
+        return this.minY;
+    }
+
+    /**
+     * @return The minimum z position of the grid
+     */
+    public double getMinZ() {
+        return this.minZ;
+    }
+
+    /**
+     * @return The size of each cell in blocks
+     */
+    public float getCellSize() {
+        return this.cellSize;
+    }
+
+    /**
+     * @return The number of cells along each side of the grid. There is one more sample than cells
+     */
+    public int getSize() {
+        return this.size;
+    }
+
+    @Override
+    public void free() {
+        if (this.texture != 0) {
+            TextureUtil.releaseTextureId(this.texture);
+            this.texture = 0;
+        }
+    }
+
+    private record Key(VectorField field, int x, int y, int z) {
+    }
+}
@@ -1,6 +1,7 @@
 package foundry.veil.api.quasar.emitters.module.update;
 
 import foundry.veil.api.quasar.emitters.module.UpdateParticleModule;
+import foundry.veil.api.quasar.particle.ParticleBatch;
 import foundry.veil.api.quasar.particle.QuasarParticle;
 import foundry.veil.api.quasar.registry.RenderStyleRegistry;
 import net.minecraft.util.Mth;
@@ -25,4 +26,20 @@ public class FaceVelocityModule implements UpdateParticleModule {
             rotation.y += (float) (Math.PI / 2.0);
         }
     }
+
+    @Override
+    public void updateBatch(ParticleBatch batch) {
+        float yOffset = batch.getEmitter().getParticleData().renderStyle() == RenderStyleRegistry.BILLBOARD.get() ? (float) (Math.PI / 2.0) : 0.0F;
+        double[] velocity = batch.getStorage().velocity();
+        float[] rotation = batch.getStorage().rotation();
+        int end = batch.size() * 3;
+        for (int i = 0; i < end; i += 3) {
+            double length = Math.sqrt(velocity[i] * velocity[i] + velocity[i + 1] * velocity[i + 1] + velocity[i + 2] * velocity[i + 2]);
+            double x = velocity[i] / length;
+            double y = velocity[i + 1] / length;
+            double z = velocity[i + 2] / length;
+            rotation[i] = (float) Mth.atan2(y, Math.sqrt(x * x + z * z));
+            rotation[i + 1] = (float) Mth.atan2(x, z) + yOffset;
+        }
+    }
 }
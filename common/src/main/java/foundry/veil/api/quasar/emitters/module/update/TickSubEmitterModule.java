@@ -1,11 +1,10 @@
 package foundry.veil.api.quasar.emitters.module.update;
 
-import foundry.veil.api.client.render.VeilRenderSystem;
 import foundry.veil.api.quasar.data.module.update.TickSubEmitterModuleData;
 import foundry.veil.api.quasar.emitters.module.UpdateParticleModule;
 import foundry.veil.api.quasar.particle.ParticleEmitter;
-import foundry.veil.api.quasar.particle.ParticleSystemManager;
 import foundry.veil.api.quasar.particle.QuasarParticle;
+import org.joml.Vector3d;
 
 public class TickSubEmitterModule implements UpdateParticleModule {
 
@@ -17,17 +16,17 @@ public class TickSubEmitterModule implements UpdateParticleModule {
 
     @Override
     public void update(QuasarParticle particle) {
-        if (particle.getAge() % this.data.frequency() != 0) {
+        // Emitters that skip ticks cover several ages in one update, so this fires if any of them is on the cadence
+        ParticleEmitter emitter = particle.getEmitter();
+        int age = particle.getAge();
+        int elapsed = emitter.getTicksSinceUpdate(particle.getIndex());
+        int frequency = this.data.frequency();
+        if (Math.floorDiv(age + elapsed - 1, frequency) == Math.floorDiv(age - 1, frequency)) {
             return;
         }
 
-        ParticleSystemManager particleManager = VeilRenderSystem.renderer().getParticleManager();
-        ParticleEmitter instance = particleManager.createEmitter(this.data.subEmitter());
-        if (instance == null) {
-            return;
-        }
-
-        instance.setPosition(particle.getPosition());
-        particleManager.addParticleSystem(instance);
+        // The cursor is moved to other particles before the task runs
+        Vector3d position = new Vector3d(particle.getPosition());
+        emitter.runOnMainThread(() -> emitter.spawnSubEmitter(this.data.subEmitter(), position));
     }
 }
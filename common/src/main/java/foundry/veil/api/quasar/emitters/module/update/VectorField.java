@@ -14,15 +14,61 @@ import org.joml.Vector3dc;
  * The strength is used to scale the noise value.
  * The vector function is used to generate a vector if a custom vector field is desired.
  * If no vector function is provided, a default one is used that generates a vector based on the noise value.
+ * <p>
+ * The noise is sampled exactly by default. When the resolution is positive, the noise is baked into a {@link BakedVectorField}
+ * with cells of that size and particles sample it with trilinear interpolation instead of evaluating noise three times each tick.
  */
-public record VectorField(FastNoiseLite noise, float strength) {
+public record VectorField(FastNoiseLite noise, float strength, float resolution) {
 
     public static Codec<VectorField> CODEC = RecordCodecBuilder.create(instance -> instance.group(
             FastNoiseLite.CODEC.fieldOf("noise").forGetter(VectorField::noise),
-            Codec.FLOAT.fieldOf("strength").forGetter(VectorField::strength)
+            Codec.FLOAT.fieldOf("strength").forGetter(VectorField::strength),
+            Codec.FLOAT.optionalFieldOf("resolution", 0.0F).forGetter(VectorField::resolution)
     ).apply(instance, VectorField::new));
 
+    public VectorField(FastNoiseLite noise, float strength) {
+        this(noise, strength, 0.0F);
+    }
+
+    /**
+     * Evaluates the raw noise vector at the specified position.
+     *
+     * @param x     The x position
+     * @param y     The y position
+     * @param z     The z position
+     * @param store The array to store the x, y, and z noise in
+     */
+    public void sampleNoise(float x, float y, float z, float[] store) {
+        store[0] = this.noise.GetNoise(x, y, z);
+        store[1] = this.noise.GetNoise(x + 100, y + 100, z + 100);
+        store[2] = this.noise.GetNoise(x + 200, y + 200, z + 200);
+    }
+
+    /**
+     * @return Whether this field should be sampled from a {@link BakedVectorField}
+     */
+    public boolean isBaked() {
+        return this.resolution > 0;
+    }
+
+    /**
+     * Samples this field from an already baked grid. The position is clamped to the grid bounds.
+     *
+     * @param field    The baked grid to sample from
+     * @param position The position to sample at
+     * @param result   The vector to store the result in
+     * @return The result vector
+     */
+    public Vector3d getVector(BakedVectorField field, Vector3dc position, Vector3d result) {
+        field.sample(position.x(), position.y(), position.z(), result);
+        return result.lengthSquared() > 1.0E-12 ? result.normalize(this.strength) : result.zero();
+    }
+
     public Vector3d getVector(Vector3dc position, Vector3d result) {
+        if (this.isBaked()) {
+            return this.getVector(BakedVectorField.getTile(this, position.x(), position.y(), position.z()), position, result);
+        }
+
         float x = (float) position.x();
         float y = (float) position.y();
         float z = (float) position.z();
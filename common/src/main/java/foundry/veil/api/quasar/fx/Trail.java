@@ -33,8 +33,15 @@ public class Trail {
         }, tilingMode1 -> DataResult.success(tilingMode1.name().toLowerCase(Locale.ROOT)));
     }
 
-    private Vec3[] points;
-    private Vec3[] rotations;
+    private double originX;
+    private double originY;
+    private double originZ;
+    // Ring buffers of points relative to the origin, starting at head
+    private float[] points;
+    private float[] rotations;
+    private int head;
+    private int size;
+    private boolean hasRotations;
     private int color;
     private Function<Float, Float> widthFunction;
     private int length = 100;
@@ -49,7 +56,7 @@ public class Trail {
     public Trail(TrailSettings settings) {
         this(MathUtil.colorFromVec4f(settings.getTrailColor()), (ageScale) -> settings.getTrailWidthModifier().modify(ageScale, 1));
         this.billboard = settings.getBillboard();
-        this.length = settings.getTrailLength();
+        this.setLength(settings.getTrailLength());
         this.frequency = settings.getTrailFrequency();
         this.tilingMode = settings.getTilingMode();
         this.texture = settings.getTrailTexture();
@@ -57,13 +64,15 @@ public class Trail {
     }
 
     public Trail(Vec3[] points, int color, Function<Float, Float> widthFunction) {
-        this.points = points;
-        this.color = color;
-        this.widthFunction = widthFunction;
+        this(color, widthFunction);
+        this.setPoints(points);
     }
 
     public Trail(int color, Function<Float, Float> widthFunction) {
-        this(new Vec3[]{Vec3.ZERO}, color, widthFunction);
+        this.points = new float[0];
+        this.rotations = new float[0];
+        this.color = color;
+        this.widthFunction = widthFunction;
     }
 
     public void setParentRotation(boolean parentRotation) {
@@ -87,12 +96,12 @@ public class Trail {
     }
 
     public void setPoints(Vec3[] points) {
-        if (points.length > this.length) {
-            Vec3[] newPoints = new Vec3[this.length];
-            System.arraycopy(points, points.length - this.length, newPoints, 0, this.length);
-            points = newPoints;
+        this.head = 0;
+        this.size = 0;
+        this.hasRotations = false;
+        for (int i = Math.max(0, points.length - this.length); i < points.length; i++) {
+            this.add(points[i].x, points[i].y, points[i].z, 0.0F, 0.0F, 0.0F);
         }
-        this.points = points;
     }
 
     public void setColor(int color) {
@@ -100,6 +109,27 @@ public class Trail {
     }
 
     public void setLength(int length) {
+        if (this.length == length) {
+            return;
+        }
+
+        // Keep the newest points that still fit
+        int keep = Math.min(this.size, length);
+        float[] points = new float[this.points.length == 0 ? 0 : length * 3];
+        float[] rotations = new float[this.rotations.length == 0 ? 0 : length * 3];
+        for (int i = 0; i < keep; i++) {
+            int from = this.slot(this.size - keep + i) * 3;
+            if (points.length > 0) {
+                System.arraycopy(this.points, from, points, i * 3, 3);
+            }
+            if (rotations.length > 0) {
+                System.arraycopy(this.rotations, from, rotations, i * 3, 3);
+            }
+        }
+        this.points = points;
+        this.rotations = rotations;
+        this.head = 0;
+        this.size = keep;
         this.length = length;
     }
 
@@ -119,162 +149,214 @@ public class Trail {
         return this.length;
     }
 
-    public void pushPoint(Vec3 point) {
-        if (this.timeout > Minecraft.getInstance().getWindow().getRefreshRate() * 5 && this.timeout % 3 == 0) {
-            //remove the last point in the array
-            Vec3[] newPoints = new Vec3[this.points.length - 1];
-            System.arraycopy(this.points, 1, newPoints, 0, this.points.length - 1);
-            this.points = newPoints;
+    private int slot(int index) {
+        int slot = this.head + index;
+        return slot >= this.length ? slot - this.length : slot;
+    }
+
+    private void add(double x, double y, double z, float xRot, float yRot, float zRot) {
+        if (this.length <= 0) {
             return;
         }
         if (this.points.length == 0) {
-            this.points = new Vec3[]{point};
-            return;
-        }
-        if (this.points[this.points.length - 1].distanceTo(point) < this.minDistance) {
-            this.timeout++;
-            return;
+            this.points = new float[this.length * 3];
+            this.rotations = new float[this.length * 3];
         }
-        // test if point is same as last point
-        if (this.points[this.points.length - 1].equals(point)) {
-            this.timeout++;
-            return;
-        }
-        // add point to end of array and remove first point if array is longer than length
-        if (this.points[0] == Vec3.ZERO) {
-            this.points[0] = point;
-            return;
+        if (this.size == 0) {
+            // Points are stored relative to the first point to keep float precision far from the world origin
+            this.head = 0;
+            this.originX = x;
+            this.originY = y;
+            this.originZ = z;
         }
-        this.timeout = 0;
-        Vec3[] newPoints = new Vec3[this.points.length + 1];
-        System.arraycopy(this.points, 0, newPoints, 0, this.points.length);
-        newPoints[this.points.length] = point;
-        if (newPoints.length > this.length) {
-            Vec3[] newPoints2 = new Vec3[this.length];
-            System.arraycopy(newPoints, 1, newPoints2, 0, this.length);
-            newPoints = newPoints2;
+
+        int slot;
+        if (this.size < this.length) {
+            slot = this.slot(this.size);
+            this.size++;
+        } else {
+            // Overwrite the oldest point
+            slot = this.head;
+            this.head = this.slot(1);
         }
-        this.points = newPoints;
+
+        int offset = slot * 3;
+        this.points[offset] = (float) (x - this.originX);
+        this.points[offset + 1] = (float) (y - this.originY);
+        this.points[offset + 2] = (float) (z - this.originZ);
+        this.rotations[offset] = xRot;
+        this.rotations[offset + 1] = yRot;
+        this.rotations[offset + 2] = zRot;
     }
 
-    public void pushRotatedPoint(Vec3 point, Vec3 rotation) {
-        if (this.timeout > Minecraft.getInstance().getWindow().getRefreshRate() * 5 && this.timeout % 5 == 0 && this.points.length > 0) {
-            //remove the last point in the array
-            Vec3[] newPoints = new Vec3[this.points.length - 1];
-            System.arraycopy(this.points, 1, newPoints, 0, this.points.length - 1);
-            this.points = newPoints;
-            Vec3[] newRotations = new Vec3[this.rotations.length - 1];
-            System.arraycopy(this.rotations, 1, newRotations, 0, this.rotations.length - 1);
-            this.rotations = newRotations;
-            return;
+    private void removeOldest() {
+        if (this.size > 0) {
+            this.head = this.slot(1);
+            this.size--;
         }
-        if (this.points.length == 0) {
-            this.points = new Vec3[]{point};
-            this.rotations = new Vec3[]{rotation};
+    }
+
+    private boolean isNearLast(double x, double y, double z) {
+        int offset = this.slot(this.size - 1) * 3;
+        double dx = this.originX + this.points[offset] - x;
+        double dy = this.originY + this.points[offset + 1] - y;
+        double dz = this.originZ + this.points[offset + 2] - z;
+        double distanceSq = dx * dx + dy * dy + dz * dz;
+        return distanceSq == 0.0 || distanceSq < this.minDistance * this.minDistance;
+    }
+
+    public void pushPoint(Vec3 point) {
+        this.pushPoint(point.x, point.y, point.z);
+    }
+
+    public void pushPoint(double x, double y, double z) {
+        if (this.timeout > Minecraft.getInstance().getWindow().getRefreshRate() * 5 && this.timeout % 3 == 0) {
+            this.removeOldest();
             return;
         }
-        if (this.points[0] == Vec3.ZERO) {
-            this.points[0] = point;
-            this.rotations = new Vec3[]{rotation};
+        if (this.size > 0 && this.isNearLast(x, y, z)) {
+            this.timeout++;
             return;
         }
-        if (this.points[this.points.length - 1].distanceTo(point) < this.minDistance) {
-            this.timeout++;
+        this.timeout = 0;
+        this.add(x, y, z, 0.0F, 0.0F, 0.0F);
+    }
+
+    public void pushRotatedPoint(Vec3 point, Vec3 rotation) {
+        this.pushRotatedPoint(point.x, point.y, point.z, (float) rotation.x, (float) rotation.y, (float) rotation.z);
+    }
+
+    public void pushRotatedPoint(double x, double y, double z, float xRot, float yRot, float zRot) {
+        if (this.timeout > Minecraft.getInstance().getWindow().getRefreshRate() * 5 && this.timeout % 5 == 0 && this.size > 0) {
+            this.removeOldest();
             return;
         }
-        // test if point is same as last point
-        if (this.points.length > 0 && this.points[this.points.length - 1].equals(point)) {
+        if (this.size > 0 && this.isNearLast(x, y, z)) {
             this.timeout++;
             return;
         }
-        if (this.rotations == null) {
-            this.rotations = new Vec3[]{rotation};
-        }
-        // add point to end of array and remove first point if array is longer than length
-        Vec3[] newPoints = new Vec3[this.points.length + 1];
-        Vec3[] newRotations = new Vec3[this.points.length + 1];
-        System.arraycopy(this.points, 0, newPoints, 0, this.points.length);
-        System.arraycopy(this.rotations, 0, newRotations, 0, this.rotations.length);
-        newPoints[this.points.length] = point;
-        newRotations[this.rotations.length] = rotation;
-        if (newPoints.length > this.length) {
-            Vec3[] newPoints2 = new Vec3[this.length];
-            Vec3[] newRotations2 = new Vec3[this.length];
-            System.arraycopy(newPoints, 1, newPoints2, 0, this.length);
-            System.arraycopy(newRotations, 1, newRotations2, 0, this.length);
-            newPoints = newPoints2;
-            newRotations = newRotations2;
-        }
-        this.points = newPoints;
-        this.rotations = newRotations;
+        this.hasRotations = true;
+        this.add(x, y, z, xRot, yRot, zRot);
+    }
+
+    /**
+     * @return The number of points currently in the trail
+     */
+    public int getPointCount() {
+        return this.size;
+    }
+
+    /**
+     * Retrieves a point relative to the specified position.
+     *
+     * @param index The index of the point, where <code>0</code> is the oldest point
+     * @param x     The x position to make the point relative to
+     * @param y     The y position to make the point relative to
+     * @param z     The z position to make the point relative to
+     * @param store The vector to store the result in
+     * @return The store vector
+     */
+    public Vector3f getPoint(int index, double x, double y, double z, Vector3f store) {
+        int offset = this.slot(index) * 3;
+        return store.set(
+                (float) (this.originX - x + this.points[offset]),
+                (float) (this.originY - y + this.points[offset + 1]),
+                (float) (this.originZ - z + this.points[offset + 2]));
+    }
+
+    /**
+     * Retrieves the rotation pushed with a point.
+     *
+     * @param index The index of the point, where <code>0</code> is the oldest point
+     * @param store The vector to store the result in
+     * @return The store vector
+     */
+    public Vector3f getRotation(int index, Vector3f store) {
+        int offset = this.slot(index) * 3;
+        return store.set(this.rotations[offset], this.rotations[offset + 1], this.rotations[offset + 2]);
+    }
+
+    /**
+     * @param index The index of the point, where <code>0</code> is the oldest point
+     * @return The width of the trail at the specified point
+     */
+    public float getWidth(int index) {
+        return this.widthFunction.apply((float) index / (this.size - 1));
+    }
+
+    public int getColor() {
+        return this.color;
+    }
+
+    public int getFrequency() {
+        return this.frequency;
+    }
+
+    public boolean isBillboard() {
+        return this.billboard;
+    }
+
+    /**
+     * @return Whether points are expanded along the rotation they were pushed with
+     */
+    public boolean isParentRotation() {
+        return this.parentRotation && this.hasRotations;
+    }
+
+    public TilingMode getTilingMode() {
+        return this.tilingMode;
     }
 
     public void render(MatrixStack stack, VertexConsumer consumer, int light) {
-        Vector3f[][] corners = new Vector3f[this.points.length][2];
-        for (int i = 0; i < this.points.length; i++) {
-            if (i % this.frequency != 0) {
-                continue;
-            }
-            float width = this.widthFunction.apply((float) i / (this.points.length - 1));
-            Vector3f topOffset = new Vector3f(0, (width / 2f), 0);
-            Vector3f bottomOffset = new Vector3f(0, -(width / 2f), 0);
-            if (this.billboard) {
-                Vec3 a = Minecraft.getInstance().gameRenderer.getMainCamera().getPosition().subtract(this.points[i]).normalize();
-                Vector3f cameraDirection = new Vector3f((float) a.x, (float) a.y, (float) a.z);
-                Vec3 b = this.points[Math.min(i + this.frequency, this.points.length - 1)].subtract(this.points[i]).normalize();
-                Vector3f dirToNextPoint = new Vector3f((float) b.x(), (float) b.y(), (float) b.z());
-                Vector3f axis = new Vector3f(cameraDirection);
-                // invert the axis
-                axis.mul(-1);
-                axis.cross(dirToNextPoint);
-                topOffset = new Vector3f(axis);
-                topOffset.mul(width / 2f);
-                bottomOffset = new Vector3f(axis);
-                bottomOffset.mul(-width / 2f);
-            } else if (this.rotations[i] != null && this.parentRotation) {
-                Vec3 a = this.rotations[Math.min(i + this.frequency, this.rotations.length - 1)];
-                Vector3f cameraDirection = new Vector3f((float) a.x, (float) a.y, (float) a.z);
-                Vec3 b = this.points[Math.min(i + this.frequency, this.points.length - 1)].subtract(this.points[i]).normalize();
-                Vector3f dirToNextPoint = new Vector3f((float) b.x(), (float) b.y(), (float) b.z());
-                Vector3f axis = new Vector3f(cameraDirection);
-                // invert the axis
-                axis.mul(-1);
-                axis.cross(dirToNextPoint);
-                topOffset = new Vector3f(axis);
-                topOffset.mul(width / 2f);
-                bottomOffset = new Vector3f(axis);
-                bottomOffset.mul(-width / 2f);
-            }
-            topOffset.add((float) this.points[i].x, (float) this.points[i].y, (float) this.points[i].z);
-            bottomOffset.add((float) this.points[i].x, (float) this.points[i].y, (float) this.points[i].z);
-            corners[i / this.frequency][0] = topOffset;
-            corners[i / this.frequency][1] = bottomOffset;
+        if (this.size == 0) {
+            return;
         }
-        this.renderPoints(stack, consumer, light, corners, this.color);
-    }
-
-    private void renderPoints(MatrixStack stack, VertexConsumer consumer, int light, Vector3f[][] corners, int color) {
-        int r = color >> 16 & 255;
-        int g = color >> 8 & 255;
-        int b = color & 255;
-        int a = color >> 24 & 255;
-        for (int i = 0; i < corners.length; i++) {
-            Vector3f top = corners[i][0];
-            Vector3f bottom = corners[i][1];
-//            Vector3f nextTop = corners[i + 1][0];
-//            Vector3f nextBottom = corners[i + 1][1];
-            if (top == null || bottom == null) {
-                continue;
+
+        Vec3 cameraPos = Minecraft.getInstance().gameRenderer.getMainCamera().getPosition();
+        Matrix4f matrix4f = stack.position();
+        int r = this.color >> 16 & 255;
+        int g = this.color >> 8 & 255;
+        int b = this.color & 255;
+        int a = this.color >> 24 & 255;
+
+        Vector3f point = new Vector3f();
+        Vector3f next = new Vector3f();
+        Vector3f axis = new Vector3f();
+        Vector3f direction = new Vector3f();
+        for (int i = 0, slot = 0; i < this.size; i += this.frequency, slot++) {
+            float width = this.getWidth(i);
+            int nextIndex = Math.min(i + this.frequency, this.size - 1);
+            this.getPoint(i, cameraPos.x, cameraPos.y, cameraPos.z, point);
+            this.getPoint(nextIndex, cameraPos.x, cameraPos.y, cameraPos.z, next);
+            normalize(next.sub(point, direction));
+
+            if (this.billboard) {
+                // The camera direction is inverted, so the axis is point x direction
+                normalize(axis.set(point)).cross(direction);
+            } else if (this.isParentRotation()) {
+                this.getRotation(nextIndex, axis).negate().cross(direction);
+            } else {
+                axis.set(0.0F, 1.0F, 0.0F);
             }
+            axis.mul(width / 2.0F);
+
             float u = 0;
             if (this.tilingMode == TilingMode.STRETCH) {
-                u = (float) i / (corners.length - 1);
+                u = (float) slot / (this.size - 1);
             }
-            Matrix4f matrix4f = stack.position();
-            consumer.addVertex(matrix4f, bottom.x(), bottom.y(), bottom.z()).setColor(r, g, b, a).setUv(u, 0).setOverlay(OverlayTexture.NO_OVERLAY).setLight(light).setNormal(0, 1, 0);
-            consumer.addVertex(matrix4f, top.x(), top.y(), top.z()).setColor(r, g, b, a).setUv(u, 1).setOverlay(OverlayTexture.NO_OVERLAY).setLight(light).setNormal(0, 1, 0);
-//            consumer.vertex(matrix4f, nextTop.x(), nextTop.y(), nextTop.z()).color(r, g, b, a).uv(u1, 1).overlayCoords(OverlayTexture.NO_OVERLAY).uv2(light).normal(0, 1, 0).endVertex();
-//            consumer.vertex(matrix4f, nextBottom.x(), nextBottom.y(), nextBottom.z()).color(r, g, b, a).uv(u1, 0).overlayCoords(OverlayTexture.NO_OVERLAY).uv2(light).normal(0, 1, 0).endVertex();
+
+            // The stack is relative to the world origin
+            float x = (float) (point.x + cameraPos.x);
+            float y = (float) (point.y + cameraPos.y);
+            float z = (float) (point.z + cameraPos.z);
+            consumer.addVertex(matrix4f, x - axis.x, y - axis.y, z - axis.z).setColor(r, g, b, a).setUv(u, 0).setOverlay(OverlayTexture.NO_OVERLAY).setLight(light).setNormal(0, 1, 0);
+            consumer.addVertex(matrix4f, x + axis.x, y + axis.y, z + axis.z).setColor(r, g, b, a).setUv(u, 1).setOverlay(OverlayTexture.NO_OVERLAY).setLight(light).setNormal(0, 1, 0);
         }
     }
+
+    // Matches Vec3#normalize, which returns zero for very short vectors
+    private static Vector3f normalize(Vector3f vector) {
+        float length = vector.length();
+        return length < 1.0E-4F ? vector.zero() : vector.div(length);
+    }
 }
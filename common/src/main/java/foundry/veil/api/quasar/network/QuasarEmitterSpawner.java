@@ -0,0 +1,70 @@
+package foundry.veil.api.quasar.network;
+
+import foundry.veil.impl.network.ClientboundSpawnEmittersPayload;
+import foundry.veil.impl.network.EmitterSpawnQueue;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.phys.Vec3;
+
+/**
+ * <p>Spawns Quasar emitters on clients from the server.</p>
+ * <p>Spawns are queued and sent at the end of the server tick. Every spawn with the same receivers in a tick is sent in one packet,
+ * so spawning hundreds of emitters for an explosion only costs a single packet per player.
+ * All methods must be called on the server thread.</p>
+ *
+ * @author Ocelot
+ */
+public final class QuasarEmitterSpawner {
+
+    private QuasarEmitterSpawner() {
+    }
+
+    /**
+     * Spawns an emitter for all players tracking the chunk at the specified position.
+     *
+     * @param level   The level to spawn the emitter in
+     * @param emitter The registry name of the emitter to spawn
+     * @param x       The x position to spawn at
+     * @param y       The y position to spawn at
+     * @param z       The z position to spawn at
+     */
+    public static void spawn(ServerLevel level, ResourceLocation emitter, double x, double y, double z) {
+        EmitterSpawnQueue.trackingChunk(level, new ClientboundSpawnEmittersPayload.Spawn(emitter, x, y, z, -1));
+    }
+
+    /**
+     * Spawns an emitter for all players tracking the chunk at the specified position.
+     *
+     * @param level    The level to spawn the emitter in
+     * @param emitter  The registry name of the emitter to spawn
+     * @param position The position to spawn at
+     */
+    public static void spawn(ServerLevel level, ResourceLocation emitter, Vec3 position) {
+        spawn(level, emitter, position.x, position.y, position.z);
+    }
+
+    /**
+     * Spawns an emitter for a single player.
+     *
+     * @param player  The player to spawn the emitter for
+     * @param emitter The registry name of the emitter to spawn
+     * @param x       The x position to spawn at
+     * @param y       The y position to spawn at
+     * @param z       The z position to spawn at
+     */
+    public static void spawn(ServerPlayer player, ResourceLocation emitter, double x, double y, double z) {
+        EmitterSpawnQueue.player(player, new ClientboundSpawnEmittersPayload.Spawn(emitter, x, y, z, -1));
+    }
+
+    /**
+     * Spawns an emitter attached to the specified entity for all players tracking the entity and the entity itself.
+     *
+     * @param entity  The entity to attach the emitter to
+     * @param emitter The registry name of the emitter to spawn
+     */
+    public static void spawnAttached(Entity entity, ResourceLocation emitter) {
+        EmitterSpawnQueue.trackingEntity(entity, new ClientboundSpawnEmittersPayload.Spawn(emitter, entity.getX(), entity.getY(), entity.getZ(), entity.getId()));
+    }
+}
@@ -0,0 +1,67 @@
+package foundry.veil.api.quasar.particle;
+
+/**
+ * <p>All live particles of a single emitter, passed to modules so they can update every particle in one tight loop.</p>
+ * <p>Modules can either read and write the columns of {@link #getStorage()} directly,
+ * or move the shared {@link QuasarParticle} cursor with {@link #load(int)} and write it back with {@link #store()}.</p>
+ *
+ * @author Ocelot
+ */
+public class ParticleBatch {
+
+    private final ParticleEmitter emitter;
+    private final ParticleStorage storage;
+    private final QuasarParticle particle;
+
+    public ParticleBatch(ParticleEmitter emitter, ParticleStorage storage, QuasarParticle particle) {
+        this.emitter = emitter;
+        this.storage = storage;
+        this.particle = particle;
+    }
+
+    /**
+     * Moves the shared cursor to the specified particle.
+     *
+     * @param index The index of the particle to load
+     * @return The cursor pointing at that particle
+     */
+    public QuasarParticle load(int index) {
+        this.particle.load(index);
+        return this.particle;
+    }
+
+    /**
+     * Writes any vector changes made through the cursor back into the storage.
+     */
+    public void store() {
+        this.particle.store();
+    }
+
+    /**
+     * @return The number of particles in this batch
+     */
+    public int size() {
+        return this.storage.size();
+    }
+
+    /**
+     * @return The emitter all particles belong to
+     */
+    public ParticleEmitter getEmitter() {
+        return this.emitter;
+    }
+
+    /**
+     * @return The columns of all particles
+     */
+    public ParticleStorage getStorage() {
+        return this.storage;
+    }
+
+    /**
+     * @return The shared particle cursor
+     */
+    public QuasarParticle getParticle() {
+        return this.particle;
+    }
+}
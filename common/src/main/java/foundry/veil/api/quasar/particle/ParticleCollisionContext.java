@@ -0,0 +1,235 @@
+package foundry.veil.api.quasar.particle;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.client.multiplayer.ClientLevel;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.util.Mth;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.entity.LivingEntity;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.phys.AABB;
+import net.minecraft.world.phys.shapes.Shapes;
+import net.minecraft.world.phys.shapes.VoxelShape;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Collision state shared by all particles in an emitter for a single tick.</p>
+ * <p>Block collision shapes are fetched from the level once per block and cached until the next tick.
+ * Entities near the emitter are fetched once and stored in a spatial hash, so each particle only checks entities close to it.</p>
+ *
+ * @author Ocelot
+ */
+public class ParticleCollisionContext {
+
+    // Entities are hashed into 4x4x4 cells
+    private static final int CELL_BITS = 2;
+
+    private final Long2ObjectMap<VoxelShape> blockShapes;
+    private final Long2ObjectMap<List<Entity>> entityCells;
+    private final List<VoxelShape> shapes;
+    private final List<Entity> entities;
+    private final BlockPos.MutableBlockPos pos;
+    private ClientLevel level;
+
+    @ApiStatus.Internal
+    public ParticleCollisionContext() {
+        this.blockShapes = new Long2ObjectOpenHashMap<>();
+        this.entityCells = new Long2ObjectOpenHashMap<>();
+        this.shapes = new ArrayList<>();
+        this.entities = new ArrayList<>();
+        this.pos = new BlockPos.MutableBlockPos();
+    }
+
+    /**
+     * Clears the last tick and fetches all entities that could collide with particles in the specified region.
+     *
+     * @param level  The level to collide with
+     * @param region The area all particles will move in this tick
+     */
+    @ApiStatus.Internal
+    public void prepare(ClientLevel level, AABB region) {
+        this.clear();
+        this.level = level;
+
+        for (Entity entity : level.getEntities((Entity) null, region, entity -> entity instanceof LivingEntity || entity.canBeCollidedWith())) {
+            AABB box = entity.getBoundingBox();
+            int minX = Mth.floor(box.minX) >> CELL_BITS;
+            int minY = Mth.floor(box.minY) >> CELL_BITS;
+            int minZ = Mth.floor(box.minZ) >> CELL_BITS;
+            int maxX = Mth.floor(box.maxX) >> CELL_BITS;
+            int maxY = Mth.floor(box.maxY) >> CELL_BITS;
+            int maxZ = Mth.floor(box.maxZ) >> CELL_BITS;
+            for (int x = minX; x <= maxX; x++) {
+                for (int y = minY; y <= maxY; y++) {
+                    for (int z = minZ; z <= maxZ; z++) {
+                        this.entityCells.computeIfAbsent(BlockPos.asLong(x, y, z), unused -> new ArrayList<>()).add(entity);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Releases all cached state.
+     */
+    @ApiStatus.Internal
+    public void clear() {
+        this.blockShapes.clear();
+        this.entityCells.clear();
+        this.level = null;
+    }
+
+    /**
+     * Retrieves the collision shape of the block at the specified position, already moved to that position.
+     *
+     * @param x The x position of the block
+     * @param y The y position of the block
+     * @param z The z position of the block
+     * @return The collision shape of the block in world space
+     */
+    public VoxelShape getBlockShape(int x, int y, int z) {
+        long key = BlockPos.asLong(x, y, z);
+        VoxelShape shape = this.blockShapes.get(key);
+        if (shape == null) {
+            BlockState state = this.level.getBlockState(this.pos.set(x, y, z));
+            shape = state.getCollisionShape(this.level, this.pos);
+            shape = shape.isEmpty() ? Shapes.empty() : shape.move(x, y, z);
+            this.blockShapes.put(key, shape);
+        }
+        return shape;
+    }
+
+    /**
+     * Finds all entities in cells touched by the specified box.
+     *
+     * @param box The box to search in
+     * @return The entities near the box. This list is reused between calls
+     */
+    public List<Entity> getEntities(AABB box) {
+        this.entities.clear();
+        if (this.entityCells.isEmpty()) {
+            return this.entities;
+        }
+
+        int minX = Mth.floor(box.minX) >> CELL_BITS;
+        int minY = Mth.floor(box.minY) >> CELL_BITS;
+        int minZ = Mth.floor(box.minZ) >> CELL_BITS;
+        int maxX = Mth.floor(box.maxX) >> CELL_BITS;
+        int maxY = Mth.floor(box.maxY) >> CELL_BITS;
+        int maxZ = Mth.floor(box.maxZ) >> CELL_BITS;
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                for (int z = minZ; z <= maxZ; z++) {
+                    List<Entity> cell = this.entityCells.get(BlockPos.asLong(x, y, z));
+                    if (cell == null) {
+                        continue;
+                    }
+                    for (Entity entity : cell) {
+                        // Large entities are in multiple cells
+                        if (!this.entities.contains(entity) && entity.getBoundingBox().intersects(box)) {
+                            this.entities.add(entity);
+                        }
+                    }
+                }
+            }
+        }
+        return this.entities;
+    }
+
+    /**
+     * Checks whether the specified box touches any living entity.
+     *
+     * @param box The box to check
+     * @return Whether a living entity is inside the box
+     */
+    public boolean isTouchingLivingEntity(AABB box) {
+        for (Entity entity : this.getEntities(box)) {
+            if (entity instanceof LivingEntity livingEntity && livingEntity.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves the specified box as far as possible along the movement without going through blocks or solid entities.
+     * This matches {@link Entity#collideBoundingBox} without the world border.
+     *
+     * @param box The box to move
+     * @param dx  The x movement
+     * @param dy  The y movement
+     * @param dz  The z movement
+     * @param out The array to store the allowed x, y, and z movement into
+     */
+    public void collide(AABB box, double dx, double dy, double dz, double[] out) {
+        AABB swept = box.expandTowards(dx, dy, dz);
+        List<VoxelShape> shapes = this.shapes;
+        shapes.clear();
+
+        // Some blocks like fences extend into the block above them
+        int minX = Mth.floor(swept.minX - 1.0E-7);
+        int minY = Mth.floor(swept.minY - 1.0E-7) - 1;
+        int minZ = Mth.floor(swept.minZ - 1.0E-7);
+        int maxX = Mth.floor(swept.maxX + 1.0E-7);
+        int maxY = Mth.floor(swept.maxY + 1.0E-7);
+        int maxZ = Mth.floor(swept.maxZ + 1.0E-7);
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                for (int z = minZ; z <= maxZ; z++) {
+                    VoxelShape shape = this.getBlockShape(x, y, z);
+                    if (!shape.isEmpty()) {
+                        shapes.add(shape);
+                    }
+                }
+            }
+        }
+        for (Entity entity : this.getEntities(swept)) {
+            if (entity.canBeCollidedWith()) {
+                shapes.add(Shapes.create(entity.getBoundingBox()));
+            }
+        }
+
+        if (shapes.isEmpty()) {
+            out[0] = dx;
+            out[1] = dy;
+            out[2] = dz;
+            return;
+        }
+
+        // Same order as Entity#collideWithShapes
+        if (dy != 0.0) {
+            dy = Shapes.collide(Direction.Axis.Y, box, shapes, dy);
+            if (dy != 0.0) {
+                box = box.move(0.0, dy, 0.0);
+            }
+        }
+
+        boolean zFirst = Math.abs(dx) < Math.abs(dz);
+        if (zFirst && dz != 0.0) {
+            dz = Shapes.collide(Direction.Axis.Z, box, shapes, dz);
+            if (dz != 0.0) {
+                box = box.move(0.0, 0.0, dz);
+            }
+        }
+
+        if (dx != 0.0) {
+            dx = Shapes.collide(Direction.Axis.X, box, shapes, dx);
+            if (!zFirst && dx != 0.0) {
+                box = box.move(dx, 0.0, 0.0);
+            }
+        }
+
+        if (!zFirst && dz != 0.0) {
+            dz = Shapes.collide(Direction.Axis.Z, box, shapes, dz);
+        }
+
+        out[0] = dx;
+        out[1] = dy;
+        out[2] = dz;
+    }
+}
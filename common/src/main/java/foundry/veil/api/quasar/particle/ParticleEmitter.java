@@ -3,11 +3,27 @@ package foundry.veil.api.quasar.particle;
 import com.mojang.blaze3d.vertex.VertexConsumer;
 import foundry.veil.Veil;
 import foundry.veil.api.TickTaskScheduler;
+import foundry.veil.api.client.render.CachedBufferSource;
+import foundry.veil.api.client.render.CullFrustum;
 import foundry.veil.api.client.render.MatrixStack;
 import foundry.veil.api.quasar.data.*;
 import foundry.veil.api.quasar.data.module.CodeModule;
 import foundry.veil.api.quasar.data.module.ParticleModuleData;
+import foundry.veil.api.quasar.emitters.module.ForceParticleModule;
+import foundry.veil.api.quasar.emitters.module.ParticleModule;
+import foundry.veil.api.quasar.emitters.module.UpdateParticleModule;
 import foundry.veil.api.quasar.emitters.module.update.FaceVelocityModule;
+import foundry.veil.api.quasar.fx.Trail;
+import foundry.veil.impl.quasar.EmitterTemplate;
+import foundry.veil.impl.quasar.ParticleDepthSorter;
+import foundry.veil.impl.quasar.ParticleInstanceRenderer;
+import foundry.veil.impl.quasar.ParticleLightCache;
+import foundry.veil.impl.quasar.QuasarParticleHandler;
+import foundry.veil.impl.quasar.TrailRenderer;
+import foundry.veil.impl.quasar.gpu.GpuParticleProgram;
+import foundry.veil.impl.quasar.gpu.GpuParticleSimulation;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import net.minecraft.client.Camera;
 import net.minecraft.client.multiplayer.ClientLevel;
 import net.minecraft.client.renderer.LightTexture;
@@ -16,8 +32,10 @@ import net.minecraft.client.renderer.RenderType;
 import net.minecraft.client.renderer.texture.TextureAtlasSprite;
 import net.minecraft.core.Holder;
 import net.minecraft.resources.ResourceLocation;
+import net.minecraft.util.Mth;
 import net.minecraft.util.RandomSource;
 import net.minecraft.world.entity.Entity;
+import net.minecraft.world.phys.AABB;
 import net.minecraft.world.phys.Vec3;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.Nullable;
@@ -28,6 +46,7 @@ import org.joml.Vector3fc;
 
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /*
  *  TODO:
@@ -45,16 +64,38 @@ import java.util.concurrent.CompletableFuture;
 public class ParticleEmitter {
 
     private static final Set<Holder<ParticleModuleData>> REPORTED_MODULES = new HashSet<>();
+    // Emitters at this level of detail or above only sample light once per chunk section
+    private static final int COARSE_LIGHT_LOD_LEVEL = 2;
 
     private final ParticleSystemManager particleManager;
     private final ClientLevel level;
-    private final ParticleEmitterData emitterData;
     private final List<ParticleModuleData> modules;
     private final RandomSource randomSource;
     private final Vector3d position;
     private final Vector3d offset;
-    private final List<QuasarParticle> particles;
+    private final ParticleStorage particles;
+    private final QuasarParticle particle;
+    private final ParticleBatch batch;
+    private final Vector3d boundsMin;
+    private final Vector3d boundsMax;
+    private final ParticleCollisionContext collisionContext;
+    private ParticleModuleSet moduleSet;
+    private final List<Runnable> commandBuffer;
+    private final Map<ResourceLocation, ParticleEmitter> subEmitters;
+    private final DoubleArrayList sourcePositions;
+    private final IntArrayList sourceAges;
+    private boolean deferCommands;
+    private double[] velocityScratch;
+    private int lodLevel;
+    private int ticksSinceUpdate;
+    private int tickCount;
+    @Nullable
+    private GpuParticleProgram gpuProgram;
+    @Nullable
+    private GpuParticleSimulation gpuSimulation;
 
+    private EmitterTemplate template;
+    private ParticleEmitterData emitterData;
     private int maxLifetime;
     private boolean loop;
     private int rate;
@@ -63,6 +104,8 @@ public class ParticleEmitter {
     private List<EmitterShapeSettings> emitterShapeSettings;
     private ParticleSettings particleSettings;
     private boolean forceSpawn;
+    private ParticlePriority priority;
+    private boolean lod;
     private QuasarParticleData particleData;
 
     @Nullable
@@ -70,16 +113,61 @@ public class ParticleEmitter {
     private CompletableFuture<?> spawnTask;
     private CompletableFuture<?> removeTask;
     private boolean removed;
+    private boolean recyclable;
+    private boolean spawnSources;
+    // Managed by the particle budget in ParticleSystemManager
+    int budgetCount;
+    double budgetDistanceSq;
 
-    ParticleEmitter(ParticleSystemManager particleManager, ClientLevel level, ParticleEmitterData data) {
+    ParticleEmitter(ParticleSystemManager particleManager, ClientLevel level, EmitterTemplate template, RandomSource randomSource) {
         this.particleManager = particleManager;
         this.level = level;
-        this.emitterData = data;
-        this.modules = createModuleSet(data.particleData());
-        this.randomSource = RandomSource.create();
+        this.modules = new ArrayList<>();
+        this.randomSource = randomSource;
         this.position = new Vector3d();
         this.offset = new Vector3d();
-        this.particles = new ArrayList<>();
+        this.particles = new ParticleStorage();
+        this.particle = new QuasarParticle(level, this.randomSource, particleManager.getScheduler(), this, this.particles);
+        this.batch = new ParticleBatch(this, this.particles, this.particle);
+        this.boundsMin = new Vector3d();
+        this.boundsMax = new Vector3d();
+        this.collisionContext = new ParticleCollisionContext();
+        this.commandBuffer = new ArrayList<>();
+        this.velocityScratch = new double[0];
+        this.subEmitters = new HashMap<>();
+        this.sourcePositions = new DoubleArrayList();
+        this.sourceAges = new IntArrayList();
+        this.init(template);
+    }
+
+    /**
+     * Sets all state back to the specified template. This is used both for new emitters and emitters reused from the pool.
+     *
+     * @param template The template to create the emitter from
+     */
+    @ApiStatus.Internal
+    void init(EmitterTemplate template) {
+        ParticleEmitterData data = template.data();
+        this.template = template;
+        this.emitterData = data;
+        this.modules.clear();
+        this.modules.addAll(template.modules());
+        this.position.set(0);
+        this.offset.set(0);
+        this.boundsMin.set(0);
+        this.boundsMax.set(0);
+        this.commandBuffer.clear();
+        this.deferCommands = false;
+        this.lodLevel = 0;
+        this.ticksSinceUpdate = 0;
+        this.tickCount = 0;
+        this.attachedEntity = null;
+        this.removed = false;
+        this.recyclable = true;
+        this.spawnSources = false;
+        this.sourcePositions.clear();
+        this.sourceAges.clear();
+        this.subEmitters.clear();
 
         this.maxLifetime = data.maxLifetime();
         this.loop = data.loop();
@@ -90,9 +178,15 @@ public class ParticleEmitter {
         this.emitterShapeSettings = emitterSettings.emitterShapeSettings();
         this.particleSettings = emitterSettings.particleSettings();
         this.forceSpawn = emitterSettings.forceSpawn();
+        this.priority = emitterSettings.priority();
+        this.lod = emitterSettings.lod();
         this.particleData = data.particleData();
+        // Modules keep per-particle state in storage columns, so reused emitters need new columns
+        this.particles.clearColumns();
+        this.moduleSet = this.createModules(this.modules);
+        this.gpuProgram = this.particleManager.isGpuSimulation() && GpuParticleSimulation.isSupported() ? template.gpuProgram() : null;
 
-        TickTaskScheduler scheduler = particleManager.getScheduler();
+        TickTaskScheduler scheduler = this.particleManager.getScheduler();
         this.spawnTask = scheduler.scheduleAtFixedRate(this::spawn, 0, data.rate());
         this.reset();
     }
@@ -103,11 +197,17 @@ public class ParticleEmitter {
     }
 
     private void spawn() {
-        int count = Math.min(this.maxParticles, this.count);
-        this.particleManager.reserve(count);
+        this.spawn(this.position);
+    }
+
+    private void spawn(Vector3dc origin) {
+        int count = this.particleManager.reserve(this, Math.min(this.maxParticles, this.count));
+        if (count <= 0) {
+            return;
+        }
 
         for (int i = 0; i < count; i++) {
-            Vector3dc particlePos = this.emitterShapeSettings.get(i % this.emitterShapeSettings.size()).getPos(this.randomSource, this.position);
+            Vector3dc particlePos = this.emitterShapeSettings.get(i % this.emitterShapeSettings.size()).getPos(this.randomSource, origin);
             Vector3fc particleDirection = this.particleSettings.particleDirection(this.randomSource);
 
             // TODO
@@ -122,23 +222,37 @@ public class ParticleEmitter {
 //            }
 //        });
 
-            ParticleModuleSet.Builder builder = ParticleModuleSet.builder();
-            for (ParticleModuleData module : this.modules) {
-                module.addModules(builder);
-            }
-            if (this.particleData.faceVelocity()) {
-                builder.addModule(new FaceVelocityModule());
-            }
-
-            QuasarParticle particle = new QuasarParticle(this.level, this.randomSource, this.particleManager.getScheduler(), this.particleData, builder.build(), this.particleSettings, this);
+            int index = this.particles.add();
+            QuasarParticle particle = this.particle;
+            particle.load(index);
             particle.getPosition().set(particlePos);
             particle.getVelocity().set(particleDirection);
-            particle.init();
-            this.particles.add(particle);
+            particle.init(this.particleData, this.particleSettings);
+            particle.store();
+            // New particles haven't been updated for the current tick yet
+            this.particles.lastUpdate()[index] = this.tickCount;
         }
+        this.particleManager.updateBudget(this);
     }
 
-    private static List<ParticleModuleData> createModuleSet(QuasarParticleData data) {
+    private ParticleModuleSet createModules(List<? extends ParticleModuleData> modules) {
+        ParticleModuleSet.Builder builder = ParticleModuleSet.builder();
+        for (ParticleModuleData module : modules) {
+            module.addModules(builder);
+        }
+        if (this.particleData.faceVelocity()) {
+            builder.addModule(new FaceVelocityModule());
+        }
+
+        ParticleModuleSet set = builder.build();
+        for (ParticleModule module : set.getAllModules()) {
+            module.attach(this.particles);
+        }
+        return set;
+    }
+
+    @ApiStatus.Internal
+    static List<ParticleModuleData> createModuleSet(QuasarParticleData data) {
         List<ParticleModuleData> list = new ArrayList<>();
         data.allModules().forEach(module -> {
             if (!module.isBound()) {
@@ -172,7 +286,7 @@ public class ParticleEmitter {
     }
 
     @ApiStatus.Internal
-    void tick() {
+    void tickPosition() {
         this.position.set(0);
         if (this.attachedEntity != null) {
             if (this.attachedEntity.isAlive()) {
@@ -185,43 +299,383 @@ public class ParticleEmitter {
         }
 
         this.position.add(this.offset);
-        Iterator<QuasarParticle> iterator = this.particles.iterator();
-        while (iterator.hasNext()) {
-            QuasarParticle particle = iterator.next();
-            particle.tick();
-
-            if (particle.isRemoved()) {
-                iterator.remove();
-                particle.onRemove();
+        if (this.spawnSources) {
+            this.tickSpawnSources();
+        }
+        this.tickCount++;
+    }
+
+    private void tickSpawnSources() {
+        double[] positions = this.sourcePositions.elements();
+        int[] ages = this.sourceAges.elements();
+        Vector3d origin = new Vector3d();
+        int i = 0;
+        while (i < this.sourceAges.size()) {
+            int age = ages[i];
+            if (age % this.rate == 0) {
+                this.spawn(origin.set(positions[i * 3], positions[i * 3 + 1], positions[i * 3 + 2]));
+            }
+
+            ages[i] = age + 1;
+            if (this.loop || ages[i] < this.maxLifetime) {
+                i++;
+                continue;
             }
+
+            // Swap the last source into this slot
+            int last = this.sourceAges.size() - 1;
+            ages[i] = ages[last];
+            System.arraycopy(positions, last * 3, positions, i * 3, 3);
+            this.sourceAges.removeInt(last);
+            this.sourcePositions.size(last * 3);
         }
 
-//        if (this.removed) {
-//            this.cancelTasks();
-//        } else {
-//            // Let particles finish before removing the emitter
-//            if (this.age > this.emitterData.maxLifetime()) {
-//                if (this.emitterData.loop()) {
-//                    this.reset();
-//                } else {
-//                    this.remove();
-//                }
-//            }
-//        }
+        if (this.sourceAges.isEmpty()) {
+            this.remove();
+        }
+    }
+
+    /**
+     * Spawns the specified sub-emitter at a position. All sub-emitters with the same name spawned from this emitter
+     * share a single child emitter, so each spawn only adds another source position to that emitter.
+     *
+     * @param name     The name of the sub-emitter to spawn
+     * @param position The position to start spawning particles at
+     */
+    public void spawnSubEmitter(ResourceLocation name, Vector3dc position) {
+        ParticleEmitter child = this.subEmitters.get(name);
+        if (child == null || child.removed) {
+            child = this.particleManager.createEmitter(name);
+            if (child == null) {
+                return;
+            }
+
+            // The child only spawns particles at the source positions it is given
+            child.cancelTasks();
+            child.spawnSources = true;
+            // This emitter keeps a reference to the child, so it must never be handed out to anything else
+            child.recyclable = false;
+            this.subEmitters.put(name, child);
+            this.particleManager.addParticleSystem(child);
+        }
+
+        child.sourcePositions.add(position.x());
+        child.sourcePositions.add(position.y());
+        child.sourcePositions.add(position.z());
+        child.sourceAges.add(0);
+        // The most recent source is used for the level of detail
+        child.setPosition(position);
+    }
+
+    /**
+     * Updates all particles without accessing the level. This may be called from a worker thread if <code>parallel</code> is set,
+     * in which case anything passed to {@link #runOnMainThread(Runnable)} is deferred until {@link #finishTick()}.
+     *
+     * @param parallel Whether this emitter is being ticked off the main thread
+     */
+    @ApiStatus.Internal
+    void tickParticles(boolean parallel) {
+        // New particles are uploaded and simulated in finishTick
+        if (this.gpuProgram != null) {
+            return;
+        }
+
+        this.deferCommands = parallel;
+        try {
+            this.updateParticles();
+        } finally {
+            this.deferCommands = false;
+        }
+    }
+
+    private void updateParticles() {
+        ParticleStorage storage = this.particles;
+        int size = storage.size();
+        if (size == 0) {
+            return;
+        }
+
+        // Particles were extrapolated along their velocity while this emitter was skipped, so continue from where they were drawn.
+        // Particles spawned in between only catch up on the ticks they existed for
+        boolean skipped = this.ticksSinceUpdate > 0;
+        int tick = this.tickCount;
+        int[] lastUpdate = storage.lastUpdate();
+        double[] velocity = storage.velocity();
+        if (skipped) {
+            double[] position = storage.position();
+            for (int i = 0; i < size; i++) {
+                int extrapolate = tick - lastUpdate[i] - 1;
+                if (extrapolate > 0) {
+                    int offset = i * 3;
+                    position[offset] += velocity[offset] * extrapolate;
+                    position[offset + 1] += velocity[offset + 1] * extrapolate;
+                    position[offset + 2] += velocity[offset + 2] * extrapolate;
+                }
+            }
+        }
+
+        // Store the last state for interpolation
+        System.arraycopy(storage.position(), 0, storage.prevPosition(), 0, size * 3);
+        System.arraycopy(storage.rotation(), 0, storage.prevRotation(), 0, size * 3);
+        System.arraycopy(storage.radius(), 0, storage.prevRadius(), 0, size);
+
+        ParticleModuleSet modules = this.moduleSet;
+        modules.updateEnabled();
+        for (UpdateParticleModule updateModule : modules.getUpdateModules()) {
+            updateModule.updateBatch(this.batch);
+        }
+
+        ForceParticleModule[] forceModules = modules.getForceModules();
+        if (skipped && forceModules.length > 0) {
+            if (this.velocityScratch.length < size * 3) {
+                this.velocityScratch = new double[velocity.length];
+            }
+            System.arraycopy(velocity, 0, this.velocityScratch, 0, size * 3);
+        }
+        for (ForceParticleModule forceModule : forceModules) {
+            forceModule.applyForceBatch(this.batch);
+        }
+        if (skipped && forceModules.length > 0) {
+            // Forces are only applied once per update, so scale the change by the number of ticks it covers
+            double[] scratch = this.velocityScratch;
+            for (int i = 0; i < size * 3; i++) {
+                velocity[i] = scratch[i] + (velocity[i] - scratch[i]) * (tick - lastUpdate[i / 3]);
+            }
+        }
+
+        // Collision needs the level, so it is done in finishTick
+        if (modules.getCollisionModules().length == 0) {
+            double[] position = storage.position();
+            for (int i = 0; i < size * 3; i++) {
+                position[i] += velocity[i];
+            }
+        }
+    }
+
+    /**
+     * Runs all deferred commands, then does everything that requires the level and removes dead particles.
+     * This must always be called on the main thread after {@link #tickParticles(boolean)}.
+     */
+    @ApiStatus.Internal
+    void finishTick() {
+        for (Runnable command : this.commandBuffer) {
+            command.run();
+        }
+        this.commandBuffer.clear();
+
+        this.ticksSinceUpdate = 0;
+        if (this.gpuProgram != null) {
+            if (this.gpuSimulation == null) {
+                this.gpuSimulation = new GpuParticleSimulation(this, this.gpuProgram);
+            }
+            this.gpuSimulation.tick(this.level, this.particleManager.getLightCache(), this.particles);
+            this.particleManager.updateBudget(this);
+            return;
+        }
+
+        this.finishParticles();
+        this.updateBounds();
+        this.particleManager.updateBudget(this);
+    }
+
+    /**
+     * Advances this emitter by a tick without updating any particles. They are extrapolated along their velocity when drawn.
+     */
+    @ApiStatus.Internal
+    void skipTick() {
+        this.ticksSinceUpdate++;
+    }
+
+    private void finishParticles() {
+        ParticleStorage storage = this.particles;
+        int size = storage.size();
+        if (size == 0) {
+            return;
+        }
+
+        // The previous position is where the particle was at the start of the tick
+        double[] prevPosition = storage.prevPosition();
+        int[] light = storage.light();
+        boolean deferredLights = this.gatherDeferredLights(prevPosition, size);
+        ParticleLightCache lightCache = this.particleManager.getLightCache();
+        for (int i = 0; i < size; i++) {
+            double x = prevPosition[i * 3];
+            double y = prevPosition[i * 3 + 1];
+            double z = prevPosition[i * 3 + 2];
+            light[i] = this.sampleLight(x, y, z);
+            if (deferredLights) {
+                light[i] = lightCache.applyDeferredLights(light[i], x, y, z);
+            }
+        }
+
+        if (this.moduleSet.getCollisionModules().length > 0) {
+            this.prepareCollision(size);
+            QuasarParticle particle = this.particle;
+            for (int i = 0; i < size; i++) {
+                particle.load(i);
+                particle.move();
+                particle.store();
+            }
+            this.collisionContext.clear();
+        }
+
+        int[] age = storage.age();
+        int[] lifetime = storage.lifetime();
+        int[] lastUpdate = storage.lastUpdate();
+        int tick = this.tickCount;
+        int i = 0;
+        while (i < storage.size()) {
+            // Particles are aged by the ticks since they were last updated, which is less than a full skip for new particles
+            if (age[i] >= 0 && (age[i] += tick - lastUpdate[i]) < lifetime[i]) {
+                lastUpdate[i] = tick;
+                i++;
+                continue;
+            }
+
+            this.particle.load(i);
+            this.particle.onRemove();
+            storage.remove(i);
+        }
+    }
+
+    /**
+     * Looks up the deferred lights that can reach any particle once for the whole emitter.
+     */
+    private boolean gatherDeferredLights(double[] position, int size) {
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double minZ = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        double maxZ = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < size; i++) {
+            int offset = i * 3;
+            minX = Math.min(minX, position[offset]);
+            minY = Math.min(minY, position[offset + 1]);
+            minZ = Math.min(minZ, position[offset + 2]);
+            maxX = Math.max(maxX, position[offset]);
+            maxY = Math.max(maxY, position[offset + 1]);
+            maxZ = Math.max(maxZ, position[offset + 2]);
+        }
+
+        double radius = Math.sqrt((maxX - minX) * (maxX - minX) + (maxY - minY) * (maxY - minY) + (maxZ - minZ) * (maxZ - minZ)) / 2.0;
+        return this.particleManager.getLightCache().gatherDeferredLights((minX + maxX) / 2.0, (minY + maxY) / 2.0, (minZ + maxZ) / 2.0, radius);
+    }
+
+    /**
+     * Samples the light at the specified position through the shared light cache. Far away emitters use a single value per chunk section.
+     */
+    int sampleLight(double x, double y, double z) {
+        ParticleLightCache lightCache = this.particleManager.getLightCache();
+        if (this.lodLevel >= COARSE_LIGHT_LOD_LEVEL) {
+            return lightCache.getSectionLightColor(this.level, x, y, z);
+        }
+        return lightCache.getLightColor(this.level, x, y, z);
+    }
+
+    private void prepareCollision(int size) {
+        // Fetch everything particles could hit this tick at once instead of querying the level per particle
+        double[] position = this.particles.position();
+        double[] velocity = this.particles.velocity();
+        float[] radius = this.particles.radius();
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double minZ = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        double maxZ = Double.NEGATIVE_INFINITY;
+        float maxRadius = 0.0F;
+        for (int i = 0; i < size; i++) {
+            int offset = i * 3;
+            double x = position[offset];
+            double y = position[offset + 1];
+            double z = position[offset + 2];
+            minX = Math.min(minX, Math.min(x, x + velocity[offset]));
+            minY = Math.min(minY, Math.min(y, y + velocity[offset + 1]));
+            minZ = Math.min(minZ, Math.min(z, z + velocity[offset + 2]));
+            maxX = Math.max(maxX, Math.max(x, x + velocity[offset]));
+            maxY = Math.max(maxY, Math.max(y, y + velocity[offset + 1]));
+            maxZ = Math.max(maxZ, Math.max(z, z + velocity[offset + 2]));
+            maxRadius = Math.max(maxRadius, radius[i]);
+        }
+        this.collisionContext.prepare(this.level, new AABB(minX, minY, minZ, maxX, maxY, maxZ).inflate(maxRadius));
+    }
+
+    private void updateBounds() {
+        ParticleStorage storage = this.particles;
+        int size = storage.size();
+        if (size == 0) {
+            this.boundsMin.set(this.position);
+            this.boundsMax.set(this.position);
+            return;
+        }
+
+        // Particles are interpolated between the last and current position, so both need to be inside the bounds
+        double[] position = storage.position();
+        double[] prevPosition = storage.prevPosition();
+        float[] radius = storage.radius();
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double minZ = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        double maxZ = Double.NEGATIVE_INFINITY;
+        float maxRadius = 0.0F;
+        // Skipped ticks are drawn ahead of the last update
+        double[] velocity = storage.velocity();
+        int ahead = (1 << this.lodLevel) - 1;
+        for (int i = 0; i < size; i++) {
+            int offset = i * 3;
+            if (ahead > 0) {
+                double x = position[offset] + velocity[offset] * ahead;
+                double y = position[offset + 1] + velocity[offset + 1] * ahead;
+                double z = position[offset + 2] + velocity[offset + 2] * ahead;
+                minX = Math.min(minX, x);
+                minY = Math.min(minY, y);
+                minZ = Math.min(minZ, z);
+                maxX = Math.max(maxX, x);
+                maxY = Math.max(maxY, y);
+                maxZ = Math.max(maxZ, z);
+            }
+            minX = Math.min(minX, Math.min(position[offset], prevPosition[offset]));
+            minY = Math.min(minY, Math.min(position[offset + 1], prevPosition[offset + 1]));
+            minZ = Math.min(minZ, Math.min(position[offset + 2], prevPosition[offset + 2]));
+            maxX = Math.max(maxX, Math.max(position[offset], prevPosition[offset]));
+            maxY = Math.max(maxY, Math.max(position[offset + 1], prevPosition[offset + 1]));
+            maxZ = Math.max(maxZ, Math.max(position[offset + 2], prevPosition[offset + 2]));
+            maxRadius = Math.max(maxRadius, radius[i]);
+        }
+
+        // Cube corners are up to sqrt(3) radii away from the center and stretched particles are longer
+        double margin = maxRadius * 1.75 * (1.0 + Math.abs(this.particleData.velocityStretchFactor()));
+        this.boundsMin.set(minX - margin, minY - margin, minZ - margin);
+        this.boundsMax.set(maxX + margin, maxY + margin, maxZ + margin);
     }
 
     // TODO move to renderer
     @ApiStatus.Internal
     public void render(MatrixStack matrixStack, MultiBufferSource bufferSource, Camera camera, float partialTicks) {
+        if (this.gpuSimulation != null) {
+            this.gpuSimulation.render(matrixStack, camera, partialTicks);
+            return;
+        }
+
         Vec3 projectedView = camera.getPosition();
         RenderStyle renderStyle = this.particleData.renderStyle();
+        if (ParticleInstanceRenderer.isSupported(renderStyle)) {
+            this.renderInstanced(matrixStack, bufferSource, projectedView, partialTicks);
+            return;
+        }
 
         Vector3f renderOffset = new Vector3f();
         RenderType lastRenderType = null;
         VertexConsumer builder = null;
-        for (QuasarParticle particle : this.particles) {
-            RenderData renderData = particle.getRenderData();
+        QuasarParticle particle = this.particle;
+        RenderData renderData = particle.getRenderData();
+        TrailRenderer trailRenderer = beginTrails(matrixStack, projectedView);
 
+        for (int i = 0; i < this.particles.size(); i++) {
+            particle.load(i);
             particle.render(partialTicks);
 //        double ageMultiplier = 1; //1 - Math.pow(Mth.clamp(age + partialTicks, 0, lifetime), 3) / Math.pow(lifetime, 3);
 //        float lX = (float) (Mth.lerp(partialTicks, this.xo, this.x));
@@ -253,7 +707,7 @@ public class ParticleEmitter {
 //                ps.popPose();
 //            });
 //        }
-            renderData.renderTrails(matrixStack, bufferSource, projectedView, LightTexture.FULL_BRIGHT);
+            renderTrails(trailRenderer, renderData, matrixStack, bufferSource, projectedView);
 
             Vector3dc renderPosition = renderData.getRenderPosition();
             renderOffset.set(
@@ -274,41 +728,341 @@ public class ParticleEmitter {
 
             renderStyle.render(matrixStack, particle, renderData, renderOffset, builder, 1, partialTicks);
         }
+
+        if (trailRenderer != null) {
+            trailRenderer.end();
+        }
+    }
+
+    private void renderInstanced(MatrixStack matrixStack, MultiBufferSource bufferSource, Vec3 projectedView, float partialTicks) {
+        renderInstanced(List.of(this), this.particleData.additive(), matrixStack, bufferSource, projectedView, partialTicks);
+    }
+
+    /**
+     * Draws the particles of all specified emitters in as few instanced batches as possible.
+     * All emitters must be {@link #isInstanced() instanced} and use the specified blending.
+     */
+    static void renderInstanced(List<ParticleEmitter> emitters, boolean additive, MatrixStack matrixStack, MultiBufferSource bufferSource, Vec3 cameraPos, float partialTicks) {
+        ParticleInstanceRenderer instanceRenderer = QuasarParticleHandler.getInstanceRenderer();
+        instanceRenderer.begin(matrixStack, additive);
+        TrailRenderer trailRenderer = beginTrails(matrixStack, cameraPos);
+        Vector3f renderOffset = new Vector3f();
+        for (ParticleEmitter emitter : emitters) {
+            emitter.addInstances(instanceRenderer, trailRenderer, matrixStack, bufferSource, cameraPos, renderOffset, partialTicks);
+        }
+        instanceRenderer.end();
+        if (trailRenderer != null) {
+            trailRenderer.end();
+        }
+    }
+
+    private void addInstances(ParticleInstanceRenderer instanceRenderer, @Nullable TrailRenderer trailRenderer, MatrixStack matrixStack, MultiBufferSource bufferSource, Vec3 projectedView, Vector3f renderOffset, float partialTicks) {
+        QuasarParticle particle = this.particle;
+        RenderData renderData = particle.getRenderData();
+        for (int i = 0; i < this.particles.size(); i++) {
+            particle.load(i);
+            particle.render(partialTicks);
+            renderTrails(trailRenderer, renderData, matrixStack, bufferSource, projectedView);
+
+            Vector3dc renderPosition = renderData.getRenderPosition();
+            renderOffset.set(
+                    (float) (renderPosition.x() - projectedView.x()),
+                    (float) (renderPosition.y() - projectedView.y()),
+                    (float) (renderPosition.z() - projectedView.z()));
+            instanceRenderer.add(this.particleData, renderData, renderOffset);
+        }
+    }
+
+    private static @Nullable TrailRenderer beginTrails(MatrixStack matrixStack, Vec3 projectedView) {
+        if (TrailRenderer.isSupported()) {
+            TrailRenderer trailRenderer = QuasarParticleHandler.getTrailRenderer();
+            trailRenderer.begin(matrixStack, projectedView);
+            return trailRenderer;
+        }
+        return null;
+    }
+
+    private static void renderTrails(@Nullable TrailRenderer trailRenderer, RenderData renderData, MatrixStack matrixStack, MultiBufferSource bufferSource, Vec3 projectedView) {
+        if (trailRenderer == null) {
+            renderData.renderTrails(matrixStack, bufferSource, projectedView, LightTexture.FULL_BRIGHT);
+            return;
+        }
+
+        // All trails in the emitter are drawn together once every particle has been visited
+        List<Trail> trails = renderData.updateTrails();
+        if (trails != null) {
+            for (Trail trail : trails) {
+                trailRenderer.add(trail);
+            }
+        }
+    }
+
+    /**
+     * @return Whether particles in this emitter are simulated on the CPU and drawn as instances
+     */
+    boolean isInstanced() {
+        return this.gpuSimulation == null && ParticleInstanceRenderer.isSupported(this.particleData.renderStyle());
+    }
+
+    /**
+     * @return Whether particles in this emitter need to be drawn back to front with particles from other emitters
+     */
+    boolean isDepthSorted() {
+        return this.gpuSimulation == null && !this.particleData.additive();
+    }
+
+    /**
+     * Adds the view depth of every particle in this emitter to the sorter.
+     *
+     * @param sorter       The sorter to add particles to
+     * @param id           The id to identify this emitter with in the sorter
+     * @param cameraPos    The position of the camera
+     * @param look         The direction the camera is facing
+     * @param partialTicks The percentage from last tick to this tick
+     */
+    void collectDepths(ParticleDepthSorter sorter, int id, Vec3 cameraPos, Vector3fc look, float partialTicks) {
+        ParticleStorage storage = this.particles;
+        double[] position = storage.position();
+        double[] prevPosition = storage.prevPosition();
+        double[] velocity = storage.velocity();
+        int[] lastUpdate = storage.lastUpdate();
+        for (int i = 0; i < storage.size(); i++) {
+            int offset = i * 3;
+            // Matches the render position in RenderData
+            double skipped = this.tickCount - lastUpdate[i];
+            double x = Mth.lerp(partialTicks, prevPosition[offset], position[offset]) + velocity[offset] * skipped - cameraPos.x;
+            double y = Mth.lerp(partialTicks, prevPosition[offset + 1], position[offset + 1]) + velocity[offset + 1] * skipped - cameraPos.y;
+            double z = Mth.lerp(partialTicks, prevPosition[offset + 2], position[offset + 2]) + velocity[offset + 2] * skipped - cameraPos.z;
+            sorter.add(id, i, (float) (x * look.x() + y * look.y() + z * look.z()));
+        }
+    }
+
+    /**
+     * Draws translucent particles from many emitters in the order of the sorter.
+     * Instanced styles are drawn in as few batches as possible and all other styles are written into the buffer source in order.
+     * Whichever path has pending particles is drawn before switching to the other one, so the order is kept across both.
+     *
+     * @param emitters     The emitters referenced by id in the sorter
+     * @param sorter       The sorted particles
+     * @param matrixStack  The current transform
+     * @param bufferSource The buffer source to write non-instanced particles into
+     * @param cameraPos    The position of the camera
+     * @param partialTicks The percentage from last tick to this tick
+     */
+    static void renderSorted(List<ParticleEmitter> emitters, ParticleDepthSorter sorter, MatrixStack matrixStack, MultiBufferSource bufferSource, Vec3 cameraPos, float partialTicks) {
+        ParticleInstanceRenderer instanceRenderer = QuasarParticleHandler.getInstanceRenderer();
+        instanceRenderer.begin(matrixStack, false);
+        TrailRenderer trailRenderer = beginTrails(matrixStack, cameraPos);
+
+        Vector3f renderOffset = new Vector3f();
+        ParticleEmitter lastEmitter = null;
+        RenderType lastRenderType = null;
+        VertexConsumer builder = null;
+        boolean lastInstanced = false;
+        for (int i = 0; i < sorter.size(); i++) {
+            ParticleEmitter emitter = emitters.get(sorter.getEmitter(i));
+            QuasarParticle particle = emitter.particle;
+            RenderData renderData = particle.getRenderData();
+            particle.load(sorter.getParticle(i));
+            particle.render(partialTicks);
+            renderTrails(trailRenderer, renderData, matrixStack, bufferSource, cameraPos);
+
+            Vector3dc renderPosition = renderData.getRenderPosition();
+            renderOffset.set(
+                    (float) (renderPosition.x() - cameraPos.x()),
+                    (float) (renderPosition.y() - cameraPos.y()),
+                    (float) (renderPosition.z() - cameraPos.z()));
+
+            QuasarParticleData particleData = emitter.particleData;
+            RenderStyle renderStyle = particleData.renderStyle();
+            boolean instanced = ParticleInstanceRenderer.isSupported(renderStyle);
+            // Instanced and buffered particles are drawn separately, so the pending path has to be drawn before switching to keep the order
+            if (instanced != lastInstanced && i > 0) {
+                if (instanced) {
+                    endBatch(bufferSource);
+                    lastEmitter = null;
+                    lastRenderType = null;
+                } else {
+                    instanceRenderer.flush();
+                }
+            }
+            lastInstanced = instanced;
+
+            if (instanced) {
+                instanceRenderer.add(particleData, renderData, renderOffset);
+                continue;
+            }
+
+            // Each emitter may wrap the builder with a different sprite
+            RenderType renderType = renderData.getRenderType();
+            if (emitter != lastEmitter || !renderType.equals(lastRenderType)) {
+                lastEmitter = emitter;
+                lastRenderType = renderType;
+                builder = bufferSource.getBuffer(renderType);
+
+                TextureAtlasSprite sprite = renderData.getAtlasSprite();
+                if (sprite != null) {
+                    builder = sprite.wrap(builder);
+                }
+            }
+
+            renderStyle.render(matrixStack, particle, renderData, renderOffset, builder, 1, partialTicks);
+        }
+
+        instanceRenderer.end();
+        if (trailRenderer != null) {
+            trailRenderer.end();
+        }
+    }
+
+    private static void endBatch(MultiBufferSource bufferSource) {
+        if (bufferSource instanceof MultiBufferSource.BufferSource source) {
+            source.endBatch();
+        } else if (bufferSource instanceof CachedBufferSource source) {
+            source.endBatch();
+        }
     }
 
     @ApiStatus.Internal
     void onRemoved() {
         this.cancelTasks();
-        for (QuasarParticle particle : this.particles) {
-            particle.onRemove();
+        this.subEmitters.clear();
+        for (int i = 0; i < this.particles.size(); i++) {
+            this.particle.load(i);
+            this.particle.onRemove();
         }
         this.particles.clear();
+        for (ParticleModule module : this.moduleSet.getAllModules()) {
+            module.onRemove();
+        }
+        this.freeGpuSimulation();
+        this.particleManager.updateBudget(this);
+    }
+
+    private void freeGpuSimulation() {
+        if (this.gpuSimulation != null) {
+            this.gpuSimulation.free();
+            this.gpuSimulation = null;
+        }
     }
 
     /**
-     * <p>Adds a custom module with user code that is added to all particles spawned after this is called.</p>
+     * <p>Adds a custom module with user code that is applied to all particles in this emitter.
+     * Init modules are only run for particles spawned after this is called.</p>
      * <p>The module is not able to be serialized and does not affect the state of any other emitters.</p>
      *
      * @param module The module to add
      */
     public void addCodeModule(CodeModule module) {
         this.modules.add(module);
+        this.recyclable = false;
+
+        ParticleModuleSet.Builder builder = ParticleModuleSet.builder();
+        module.addModules(builder);
+        ParticleModuleSet added = builder.build();
+        for (ParticleModule particleModule : added.getAllModules()) {
+            particleModule.attach(this.particles);
+        }
+
+        ParticleModuleSet.Builder merged = ParticleModuleSet.builder();
+        merged.addModules(this.moduleSet);
+        merged.addModules(added);
+        this.moduleSet = merged.build();
+
+        // Code modules can do anything, so the emitter has to move back to the CPU. Particles already on the GPU are lost
+        this.gpuProgram = null;
+        this.freeGpuSimulation();
     }
 
     /**
-     * Attempts to remove the oldest specified number of particles.
+     * Attempts to remove the specified number of particles, oldest first.
      *
      * @param count The number of particles to attempt to remove
      * @return The number of particles removed
      */
     public int trim(int count) {
         // Don't allow high-priority particles to be trimmed
-        if (this.forceSpawn) {
+        if (this.getPriority() == ParticlePriority.FORCED) {
+            return 0;
+        }
+        if (this.gpuSimulation != null) {
+            int removeCount = this.gpuSimulation.trim(count);
+            this.particleManager.updateBudget(this);
+            return removeCount;
+        }
+        int size = this.particles.size();
+        int removeCount = Math.min(count, size);
+        if (removeCount <= 0) {
             return 0;
         }
-        int removeCount = Math.min(count, this.particles.size());
-        this.particles.subList(0, removeCount).clear();
-        return removeCount;
+
+        // Removed particles are swapped with the last one, so the oldest particles can be anywhere in storage
+        int[] age = this.particles.age();
+        int threshold = Integer.MIN_VALUE;
+        if (removeCount < size) {
+            int[] sorted = Arrays.copyOf(age, size);
+            Arrays.sort(sorted);
+            threshold = sorted[size - removeCount];
+        }
+
+        // Remove everything older than the threshold first, then as many particles exactly at the threshold as needed
+        int removed = 0;
+        for (int pass = 0; pass < 2 && removed < removeCount; pass++) {
+            int i = 0;
+            while (i < this.particles.size() && removed < removeCount) {
+                if (pass == 0 ? age[i] > threshold : age[i] == threshold) {
+                    this.particle.load(i);
+                    this.particle.onRemove();
+                    this.particles.remove(i);
+                    removed++;
+                } else {
+                    i++;
+                }
+            }
+        }
+        this.particleManager.updateBudget(this);
+        return removed;
+    }
+
+    /**
+     * <p>Runs the specified task on the main thread.</p>
+     * <p>Modules must use this for anything that touches shared state, like spawning emitters or adding lights.
+     * While emitters are ticked in parallel, tasks are deferred until all emitters have finished updating
+     * and then run in the order they were submitted. Otherwise, the task is run immediately.</p>
+     *
+     * @param task The task to run
+     */
+    public void runOnMainThread(Runnable task) {
+        if (this.deferCommands) {
+            this.commandBuffer.add(task);
+        } else {
+            task.run();
+        }
+    }
+
+    /**
+     * <p>Runs the specified task for the particle the cursor currently points to on the main thread.</p>
+     * <p>Modules must use this to query the level for a single particle. Deferred tasks move the cursor back to the same particle
+     * and store it again afterward. The task is skipped if the particle was removed in the meantime.</p>
+     *
+     * @param particle The cursor pointing at the particle to run the task for
+     * @param task     The task to run
+     */
+    public void runOnMainThread(QuasarParticle particle, Consumer<QuasarParticle> task) {
+        if (!this.deferCommands) {
+            task.accept(particle);
+            return;
+        }
+
+        int index = particle.getIndex();
+        this.commandBuffer.add(() -> {
+            if (index >= this.particles.size()) {
+                return;
+            }
+            particle.load(index);
+            task.accept(particle);
+            particle.store();
+        });
     }
 
     /**
@@ -335,10 +1089,51 @@ public class ParticleEmitter {
     }
 
     /**
-     * Whether the emitter has completed its lifetime
+     * Whether the emitter has completed its lifetime. If {@link ParticleSystemManager#setEmitterPooling(boolean) pooling} is enabled,
+     * removed emitters may be reused by {@link ParticleSystemManager#createEmitter(ResourceLocation)}, so references should not be kept after this returns <code>true</code>.
      */
     public boolean isRemoved() {
-        return this.removed && this.particles.isEmpty();
+        return this.removed && this.getParticleCount() == 0;
+    }
+
+    /**
+     * @return The template this emitter was created from
+     */
+    @ApiStatus.Internal
+    public EmitterTemplate getTemplate() {
+        return this.template;
+    }
+
+    /**
+     * @return Whether this emitter can be reset and reused once it is removed
+     */
+    @ApiStatus.Internal
+    boolean isRecyclable() {
+        return this.recyclable;
+    }
+
+    /**
+     * @return The smallest box that contains every particle in this emitter as of the last tick
+     */
+    public AABB getBoundingBox() {
+        return new AABB(this.boundsMin.x, this.boundsMin.y, this.boundsMin.z, this.boundsMax.x, this.boundsMax.y, this.boundsMax.z);
+    }
+
+    /**
+     * @return Whether {@link #getBoundingBox()} contains all particles. Particles simulated on the GPU are never read back, so they could be anywhere
+     */
+    public boolean isBounded() {
+        return this.gpuSimulation == null;
+    }
+
+    /**
+     * Checks whether any particles in this emitter could be visible.
+     *
+     * @param frustum The frustum to check
+     * @return Whether this emitter should be drawn
+     */
+    public boolean isVisible(CullFrustum frustum) {
+        return !this.isBounded() || frustum.testAab(this.boundsMin, this.boundsMax);
     }
 
     /**
@@ -352,8 +1147,64 @@ public class ParticleEmitter {
         return this.emitterData;
     }
 
+    /**
+     * @return The collision state shared by all particles in this emitter during the current tick
+     */
+    public ParticleCollisionContext getCollisionContext() {
+        return this.collisionContext;
+    }
+
+    /**
+     * @return The module instances shared by all particles in this emitter
+     */
+    public ParticleModuleSet getModules() {
+        return this.moduleSet;
+    }
+
+    /**
+     * @return The current level of detail. Particles are updated every <code>2^level</code> ticks
+     */
+    public int getLodLevel() {
+        return this.lodLevel;
+    }
+
+    /**
+     * @return The number of ticks since particles were last updated
+     */
+    public int getTicksSinceUpdate() {
+        return this.ticksSinceUpdate;
+    }
+
+    /**
+     * @param index The index of the particle to check
+     * @return The number of ticks since the specified particle was last updated. This is less than {@link #getTicksSinceUpdate()} for particles spawned while this emitter was skipped
+     */
+    public int getTicksSinceUpdate(int index) {
+        return this.tickCount - this.particles.lastUpdate()[index];
+    }
+
+    /**
+     * @return Whether this emitter should be updated this tick
+     */
+    @ApiStatus.Internal
+    boolean isUpdateDue() {
+        return this.ticksSinceUpdate + 1 >= 1 << this.lodLevel;
+    }
+
+    @ApiStatus.Internal
+    void setLodLevel(int lodLevel) {
+        this.lodLevel = lodLevel;
+    }
+
     public int getParticleCount() {
-        return this.particles.size();
+        return this.gpuSimulation != null ? this.particles.size() + this.gpuSimulation.getParticleCount() : this.particles.size();
+    }
+
+    /**
+     * @return Whether particles in this emitter are simulated on the GPU
+     */
+    public boolean isGpuSimulated() {
+        return this.gpuProgram != null;
     }
 
     public int getMaxLifetime() {
@@ -388,6 +1239,21 @@ public class ParticleEmitter {
         return this.forceSpawn;
     }
 
+    /**
+     * @return How important particles from this emitter are when the particle budget is full
+     */
+    public ParticlePriority getPriority() {
+        return this.forceSpawn ? ParticlePriority.FORCED : this.priority;
+    }
+
+    /**
+     * @return Whether this emitter may be updated less often when far away or when particles are taking too long to update
+     */
+    public boolean isLod() {
+        // Skipped ticks move particles without collision, which would push them into blocks
+        return this.lod && this.moduleSet.getCollisionModules().length == 0;
+    }
+
     public QuasarParticleData getParticleData() {
         return this.particleData;
     }
@@ -461,6 +1327,14 @@ public class ParticleEmitter {
         this.forceSpawn = forceSpawn;
     }
 
+    public void setPriority(ParticlePriority priority) {
+        this.priority = priority;
+    }
+
+    public void setLod(boolean lod) {
+        this.lod = lod;
+    }
+
     public void setParticleData(QuasarParticleData particleData) {
         this.particleData = particleData;
     }
@@ -474,6 +1348,8 @@ public class ParticleEmitter {
     public void setAttachedEntity(@Nullable Entity entity) {
         this.attachedEntity = entity;
         if (entity != null) {
+            // Entities may keep references to their emitters
+            this.recyclable = false;
             this.position.set(entity.getX(), entity.getY(), entity.getZ()).add(this.offset);
         } else {
             this.position.set(this.offset);
@@ -0,0 +1,184 @@
+package foundry.veil.api.quasar.particle;
+
+import gg.moonflower.molangcompiler.api.MolangExpression;
+import gg.moonflower.molangcompiler.api.MolangRuntime;
+import gg.moonflower.molangcompiler.api.exception.MolangRuntimeException;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * <p>A MoLang expression that has been analysed so it can be evaluated for particles without going through the runtime.</p>
+ * <p>Expressions the compiler folded into a constant are resolved once. Expressions that only depend on <code>query.agePercent</code> or <code>query.age</code>
+ * are sampled into lookup tables and linearly interpolated. Anything else is resolved through {@link QuasarParticle#getEnvironment()}.</p>
+ *
+ * @author Ocelot
+ */
+public final class ParticleExpression {
+
+    // The analysis doesn't reference the expression, so expressions from old registries can still be collected
+    private static final Map<MolangExpression, Analysis> CACHE = Collections.synchronizedMap(new WeakHashMap<>());
+    private static final int AGE_PERCENT_SAMPLES = 64;
+    private static final int AGE_SAMPLES = 256;
+
+    private final MolangExpression expression;
+    private final Analysis analysis;
+
+    private ParticleExpression(MolangExpression expression, Analysis analysis) {
+        this.expression = expression;
+        this.analysis = analysis;
+    }
+
+    /**
+     * Analyses the specified expression. Results are cached, so this is cheap to call for every emitter.
+     *
+     * @param expression The expression to analyse
+     * @return The analysed expression
+     */
+    public static ParticleExpression of(MolangExpression expression) {
+        return new ParticleExpression(expression, CACHE.computeIfAbsent(expression, ParticleExpression::analyse));
+    }
+
+    private static Analysis analyse(MolangExpression expression) {
+        // Only trust the compiler here. A random expression can resolve to the same value twice by chance
+        if (expression.isConstant()) {
+            return new Analysis(Type.CONSTANT, expression.getConstant(), null);
+        }
+
+        float[] agePercent = sample(expression, "agePercent", AGE_PERCENT_SAMPLES, 1.0F / (AGE_PERCENT_SAMPLES - 1));
+        if (agePercent != null) {
+            return new Analysis(Type.AGE_PERCENT, 0.0F, agePercent);
+        }
+
+        float[] age = sample(expression, "age", AGE_SAMPLES, 1.0F);
+        if (age != null) {
+            return new Analysis(Type.AGE, 0.0F, age);
+        }
+
+        return new Analysis(Type.DYNAMIC, 0.0F, null);
+    }
+
+    /**
+     * Samples an expression over a single query.
+     *
+     * @param expression The expression to sample
+     * @param query      The only query the expression is allowed to use
+     * @param samples    The number of samples to take
+     * @param step       The amount to increase the query by for each sample
+     * @return The sampled values or <code>null</code> if the expression depends on anything else
+     */
+    private static float @Nullable [] sample(MolangExpression expression, String query, int samples, float step) {
+        float[] input = new float[1];
+        MolangRuntime runtime = MolangRuntime.runtime().setQuery(query, MolangExpression.of(() -> input[0])).create();
+
+        float[] values = new float[samples];
+        try {
+            for (int i = 0; i < samples; i++) {
+                input[0] = i * step;
+                float value = runtime.resolve(expression);
+                // Random values can't be stored in a table
+                if (Float.compare(value, runtime.resolve(expression)) != 0) {
+                    return null;
+                }
+                values[i] = value;
+            }
+        } catch (MolangRuntimeException e) {
+            // Any other query is unknown to this runtime
+            return null;
+        }
+        return values;
+    }
+
+    private static float lerp(float[] table, float index) {
+        int i = (int) index;
+        if (i >= table.length - 1) {
+            return table[table.length - 1];
+        }
+        float a = table[i];
+        return a + (table[i + 1] - a) * (index - i);
+    }
+
+    /**
+     * Evaluates this expression for the particle the specified cursor is currently loaded at.
+     *
+     * @param particle The particle to evaluate for
+     * @return The resolved value
+     * @throws MolangRuntimeException If the expression has to be resolved by the runtime and fails
+     */
+    public float resolve(QuasarParticle particle) throws MolangRuntimeException {
+        Analysis analysis = this.analysis;
+        return switch (analysis.type) {
+            case CONSTANT -> analysis.constant;
+            case AGE_PERCENT -> lerp(analysis.table, Math.max(particle.getRenderData().getAgePercent(), 0.0F) * (AGE_PERCENT_SAMPLES - 1));
+            case AGE -> {
+                float age = Math.max(particle.getRenderData().getRenderAge(), 0.0F);
+                // Particles older than the table are rare, so they fall back to the runtime
+                yield age < AGE_SAMPLES - 1 ? lerp(analysis.table, age) : particle.getEnvironment().resolve(this.expression);
+            }
+            case DYNAMIC -> particle.getEnvironment().resolve(this.expression);
+        };
+    }
+
+    /**
+     * Evaluates this expression for the particle the specified cursor is currently loaded at.
+     *
+     * @param particle The particle to evaluate for
+     * @return The resolved value or <code>0.0</code> if the expression failed
+     */
+    public float safeResolve(QuasarParticle particle) {
+        try {
+            return this.resolve(particle);
+        } catch (MolangRuntimeException e) {
+            return 0.0F;
+        }
+    }
+
+    /**
+     * Samples this expression over the life of a particle at exact positions.
+     *
+     * @param samples The number of samples to take
+     * @return The samples from <code>agePercent=0</code> to <code>agePercent=1</code> or <code>null</code> if the expression depends on more than the age percentage
+     */
+    public float @Nullable [] sampleCurve(int samples) {
+        return switch (this.analysis.type) {
+            case CONSTANT -> {
+                float[] curve = new float[samples];
+                Arrays.fill(curve, this.analysis.constant);
+                yield curve;
+            }
+            case AGE_PERCENT -> sample(this.expression, "agePercent", samples, 1.0F / (samples - 1));
+            default -> null;
+        };
+    }
+
+    /**
+     * @return Whether the compiler folded this expression into a single value
+     */
+    public boolean isConstant() {
+        return this.analysis.type == Type.CONSTANT;
+    }
+
+    /**
+     * @return Whether this expression has to be resolved by the runtime for each particle
+     */
+    public boolean isDynamic() {
+        return this.analysis.type == Type.DYNAMIC;
+    }
+
+    /**
+     * @return The source expression
+     */
+    public MolangExpression getExpression() {
+        return this.expression;
+    }
+
+    private enum Type {
+        CONSTANT, AGE_PERCENT, AGE, DYNAMIC
+    }
+
+    private record Analysis(Type type, float constant, float @Nullable [] table) {
+    }
+}
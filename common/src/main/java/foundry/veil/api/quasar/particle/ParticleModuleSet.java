@@ -127,6 +127,17 @@ public class ParticleModuleSet {
             }
         }
 
+        /**
+         * Adds all module instances from an existing set.
+         *
+         * @param set The set to copy modules from
+         */
+        public void addModules(ParticleModuleSet set) {
+            for (ParticleModule module : set.getAllModules()) {
+                this.addModule(module);
+            }
+        }
+
         public ParticleModuleSet build() {
             ParticleModule[] modules = this.modules.toArray(ParticleModule[]::new);
             InitParticleModule[] initModules = this.initModules.toArray(InitParticleModule[]::new);
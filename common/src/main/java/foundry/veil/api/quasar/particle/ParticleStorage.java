@@ -0,0 +1,448 @@
+package foundry.veil.api.quasar.particle;
+
+import foundry.veil.api.quasar.fx.Trail;
+import net.minecraft.client.renderer.LightTexture;
+import net.minecraft.client.renderer.RenderType;
+import net.minecraft.client.renderer.texture.TextureAtlasSprite;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>Stores the state of every particle in a single emitter as primitive columns.</p>
+ * <p>Particles are addressed by index. Removing a particle moves the last particle into the freed slot,
+ * so indices are only stable until the next call to {@link #remove(int)}.</p>
+ * <p>Vector columns are tightly packed, so the X component of particle <code>i</code> is stored at <code>i * 3</code>
+ * and colors are stored as RGBA at <code>i * 4</code>.</p>
+ *
+ * @author Ocelot
+ * @see QuasarParticle
+ */
+public class ParticleStorage {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int size;
+    private int capacity;
+
+    private double[] position;
+    private double[] prevPosition;
+    private double[] velocity;
+    private float[] rotation;
+    private float[] prevRotation;
+    private float[] radius;
+    private float[] prevRadius;
+    private int[] age;
+    private int[] lifetime;
+    private int[] lastUpdate;
+    private float[] color;
+    private int[] light;
+    private boolean[] stoppedByCollision;
+
+    private SpriteData[] spriteData;
+    private TextureAtlasSprite[] atlasSprite;
+    private RenderType[] renderType;
+    private List<Trail>[] trails;
+
+    private final List<FloatColumn> floatColumns;
+    private final List<ObjectColumn<?>> objectColumns;
+
+    public ParticleStorage() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    @SuppressWarnings("unchecked")
+    public ParticleStorage(int capacity) {
+        this.size = 0;
+        this.capacity = Math.max(capacity, 1);
+
+        this.position = new double[this.capacity * 3];
+        this.prevPosition = new double[this.capacity * 3];
+        this.velocity = new double[this.capacity * 3];
+        this.rotation = new float[this.capacity * 3];
+        this.prevRotation = new float[this.capacity * 3];
+        this.radius = new float[this.capacity];
+        this.prevRadius = new float[this.capacity];
+        this.age = new int[this.capacity];
+        this.lifetime = new int[this.capacity];
+        this.lastUpdate = new int[this.capacity];
+        this.color = new float[this.capacity * 4];
+        this.light = new int[this.capacity];
+        this.stoppedByCollision = new boolean[this.capacity];
+
+        this.spriteData = new SpriteData[this.capacity];
+        this.atlasSprite = new TextureAtlasSprite[this.capacity];
+        this.renderType = new RenderType[this.capacity];
+        this.trails = new List[this.capacity];
+
+        this.floatColumns = new ArrayList<>();
+        this.objectColumns = new ArrayList<>();
+    }
+
+    private void grow(int minCapacity) {
+        int newCapacity = Math.max(minCapacity, this.capacity + (this.capacity >> 1));
+
+        this.position = Arrays.copyOf(this.position, newCapacity * 3);
+        this.prevPosition = Arrays.copyOf(this.prevPosition, newCapacity * 3);
+        this.velocity = Arrays.copyOf(this.velocity, newCapacity * 3);
+        this.rotation = Arrays.copyOf(this.rotation, newCapacity * 3);
+        this.prevRotation = Arrays.copyOf(this.prevRotation, newCapacity * 3);
+        this.radius = Arrays.copyOf(this.radius, newCapacity);
+        this.prevRadius = Arrays.copyOf(this.prevRadius, newCapacity);
+        this.age = Arrays.copyOf(this.age, newCapacity);
+        this.lifetime = Arrays.copyOf(this.lifetime, newCapacity);
+        this.lastUpdate = Arrays.copyOf(this.lastUpdate, newCapacity);
+        this.color = Arrays.copyOf(this.color, newCapacity * 4);
+        this.light = Arrays.copyOf(this.light, newCapacity);
+        this.stoppedByCollision = Arrays.copyOf(this.stoppedByCollision, newCapacity);
+
+        this.spriteData = Arrays.copyOf(this.spriteData, newCapacity);
+        this.atlasSprite = Arrays.copyOf(this.atlasSprite, newCapacity);
+        this.renderType = Arrays.copyOf(this.renderType, newCapacity);
+        this.trails = Arrays.copyOf(this.trails, newCapacity);
+
+        for (FloatColumn column : this.floatColumns) {
+            column.data = Arrays.copyOf(column.data, newCapacity * column.stride);
+        }
+        for (ObjectColumn<?> column : this.objectColumns) {
+            column.data = Arrays.copyOf(column.data, newCapacity);
+        }
+
+        this.capacity = newCapacity;
+    }
+
+    /**
+     * Makes sure there is enough room to store the specified number of particles without resizing.
+     *
+     * @param capacity The number of particles to fit
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity > this.capacity) {
+            this.grow(capacity);
+        }
+    }
+
+    /**
+     * Allocates a new particle at the end of the storage with all columns set to their default values.
+     *
+     * @return The index of the new particle
+     */
+    public int add() {
+        if (this.size >= this.capacity) {
+            this.grow(this.size + 1);
+        }
+
+        int index = this.size++;
+        Arrays.fill(this.position, index * 3, index * 3 + 3, 0.0);
+        Arrays.fill(this.prevPosition, index * 3, index * 3 + 3, 0.0);
+        Arrays.fill(this.velocity, index * 3, index * 3 + 3, 0.0);
+        Arrays.fill(this.rotation, index * 3, index * 3 + 3, 0.0F);
+        Arrays.fill(this.prevRotation, index * 3, index * 3 + 3, 0.0F);
+        this.radius[index] = 1.0F;
+        this.prevRadius[index] = 1.0F;
+        this.age[index] = 0;
+        this.lifetime[index] = 0;
+        this.lastUpdate[index] = 0;
+        Arrays.fill(this.color, index * 4, index * 4 + 4, 1.0F);
+        this.light[index] = LightTexture.FULL_BRIGHT;
+        this.stoppedByCollision[index] = false;
+
+        for (FloatColumn column : this.floatColumns) {
+            Arrays.fill(column.data, index * column.stride, (index + 1) * column.stride, 0.0F);
+        }
+        return index;
+    }
+
+    /**
+     * Removes the particle at the specified index by moving the last particle into its slot.
+     *
+     * @param index The index of the particle to remove
+     */
+    public void remove(int index) {
+        if (index < 0 || index >= this.size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+        }
+
+        int last = --this.size;
+        if (index != last) {
+            System.arraycopy(this.position, last * 3, this.position, index * 3, 3);
+            System.arraycopy(this.prevPosition, last * 3, this.prevPosition, index * 3, 3);
+            System.arraycopy(this.velocity, last * 3, this.velocity, index * 3, 3);
+            System.arraycopy(this.rotation, last * 3, this.rotation, index * 3, 3);
+            System.arraycopy(this.prevRotation, last * 3, this.prevRotation, index * 3, 3);
+            this.radius[index] = this.radius[last];
+            this.prevRadius[index] = this.prevRadius[last];
+            this.age[index] = this.age[last];
+            this.lifetime[index] = this.lifetime[last];
+            this.lastUpdate[index] = this.lastUpdate[last];
+            System.arraycopy(this.color, last * 4, this.color, index * 4, 4);
+            this.light[index] = this.light[last];
+            this.stoppedByCollision[index] = this.stoppedByCollision[last];
+
+            this.spriteData[index] = this.spriteData[last];
+            this.atlasSprite[index] = this.atlasSprite[last];
+            this.renderType[index] = this.renderType[last];
+            this.trails[index] = this.trails[last];
+
+            for (FloatColumn column : this.floatColumns) {
+                System.arraycopy(column.data, last * column.stride, column.data, index * column.stride, column.stride);
+            }
+            for (ObjectColumn<?> column : this.objectColumns) {
+                column.data[index] = column.data[last];
+            }
+        }
+
+        // Release references so they can be collected
+        this.spriteData[last] = null;
+        this.atlasSprite[last] = null;
+        this.renderType[last] = null;
+        this.trails[last] = null;
+        for (ObjectColumn<?> column : this.objectColumns) {
+            column.data[last] = null;
+        }
+    }
+
+    /**
+     * Removes all particles without releasing the backing arrays.
+     */
+    public void clear() {
+        Arrays.fill(this.spriteData, 0, this.size, null);
+        Arrays.fill(this.atlasSprite, 0, this.size, null);
+        Arrays.fill(this.renderType, 0, this.size, null);
+        Arrays.fill(this.trails, 0, this.size, null);
+        for (ObjectColumn<?> column : this.objectColumns) {
+            Arrays.fill(column.data, 0, this.size, null);
+        }
+        this.size = 0;
+    }
+
+    /**
+     * Releases all columns allocated with {@link #createFloatColumn(int)} and {@link #createObjectColumn()}.
+     */
+    public void clearColumns() {
+        this.floatColumns.clear();
+        this.objectColumns.clear();
+    }
+
+    /**
+     * Allocates an additional float column that is resized and compacted together with the built-in columns.
+     * This is used by modules to store per-particle state.
+     *
+     * @param stride The number of floats to store for each particle
+     * @return A new column
+     */
+    public FloatColumn createFloatColumn(int stride) {
+        if (stride <= 0) {
+            throw new IllegalArgumentException("Invalid stride: " + stride);
+        }
+        FloatColumn column = new FloatColumn(stride, new float[this.capacity * stride]);
+        this.floatColumns.add(column);
+        return column;
+    }
+
+    /**
+     * Allocates an additional object column that is resized and compacted together with the built-in columns.
+     * This is used by modules to store per-particle state.
+     *
+     * @param <T> The type of object to store
+     * @return A new column
+     */
+    public <T> ObjectColumn<T> createObjectColumn() {
+        ObjectColumn<T> column = new ObjectColumn<>(new Object[this.capacity]);
+        this.objectColumns.add(column);
+        return column;
+    }
+
+    /**
+     * @return The number of live particles
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return Whether there are no live particles
+     */
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * @return The number of particles that can be stored before the columns need to be resized
+     */
+    public int capacity() {
+        return this.capacity;
+    }
+
+    /**
+     * @return The XYZ position column
+     */
+    public double[] position() {
+        return this.position;
+    }
+
+    /**
+     * @return The XYZ position column from the previous tick
+     */
+    public double[] prevPosition() {
+        return this.prevPosition;
+    }
+
+    /**
+     * @return The XYZ velocity column
+     */
+    public double[] velocity() {
+        return this.velocity;
+    }
+
+    /**
+     * @return The XYZ rotation column in radians
+     */
+    public float[] rotation() {
+        return this.rotation;
+    }
+
+    /**
+     * @return The XYZ rotation column from the previous tick in radians
+     */
+    public float[] prevRotation() {
+        return this.prevRotation;
+    }
+
+    /**
+     * @return The radius column
+     */
+    public float[] radius() {
+        return this.radius;
+    }
+
+    /**
+     * @return The radius column from the previous tick
+     */
+    public float[] prevRadius() {
+        return this.prevRadius;
+    }
+
+    /**
+     * @return The age column in ticks. Negative values mark particles as removed
+     */
+    public int[] age() {
+        return this.age;
+    }
+
+    /**
+     * @return The lifetime column in ticks
+     */
+    public int[] lifetime() {
+        return this.lifetime;
+    }
+
+    /**
+     * @return The emitter tick each particle was last updated on. Emitters that skip ticks use this to catch up particles spawned in between
+     */
+    public int[] lastUpdate() {
+        return this.lastUpdate;
+    }
+
+    /**
+     * @return The RGBA color column
+     */
+    public float[] color() {
+        return this.color;
+    }
+
+    /**
+     * @return The packed light column
+     */
+    public int[] light() {
+        return this.light;
+    }
+
+    /**
+     * @return Whether each particle has been stopped by a collision
+     */
+    public boolean[] stoppedByCollision() {
+        return this.stoppedByCollision;
+    }
+
+    /**
+     * @return The sprite data column
+     */
+    public @Nullable SpriteData[] spriteData() {
+        return this.spriteData;
+    }
+
+    /**
+     * @return The atlas sprite column
+     */
+    public @Nullable TextureAtlasSprite[] atlasSprite() {
+        return this.atlasSprite;
+    }
+
+    /**
+     * @return The render type column
+     */
+    public RenderType[] renderType() {
+        return this.renderType;
+    }
+
+    /**
+     * @return The trail column. Particles without trails have <code>null</code> entries
+     */
+    public @Nullable List<Trail>[] trails() {
+        return this.trails;
+    }
+
+    /**
+     * A module-defined column of floats with a fixed number of values per particle.
+     */
+    public static final class FloatColumn {
+
+        private final int stride;
+        private float[] data;
+
+        private FloatColumn(int stride, float[] data) {
+            this.stride = stride;
+            this.data = data;
+        }
+
+        /**
+         * @return The number of floats stored for each particle
+         */
+        public int stride() {
+            return this.stride;
+        }
+
+        /**
+         * @return The backing array. This changes when the storage is resized, so it should not be held onto
+         */
+        public float[] data() {
+            return this.data;
+        }
+    }
+
+    /**
+     * A module-defined column of objects with one value per particle.
+     *
+     * @param <T> The type of object stored
+     */
+    public static final class ObjectColumn<T> {
+
+        private Object[] data;
+
+        private ObjectColumn(Object[] data) {
+            this.data = data;
+        }
+
+        @SuppressWarnings("unchecked")
+        public @Nullable T get(int index) {
+            return (T) this.data[index];
+        }
+
+        public void set(int index, @Nullable T value) {
+            this.data[index] = value;
+        }
+    }
+}
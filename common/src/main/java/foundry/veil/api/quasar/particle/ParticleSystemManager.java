@@ -5,42 +5,110 @@ import foundry.veil.api.TickTaskScheduler;
 import foundry.veil.api.client.render.CullFrustum;
 import foundry.veil.api.client.render.MatrixStack;
 import foundry.veil.api.quasar.data.ParticleEmitterData;
+import foundry.veil.api.quasar.data.ParticlePriority;
 import foundry.veil.api.quasar.data.QuasarParticles;
+import foundry.veil.api.quasar.data.module.ParticleModuleData;
+import foundry.veil.api.quasar.emitters.module.update.BakedVectorField;
 import foundry.veil.impl.TickTaskSchedulerImpl;
+import foundry.veil.impl.quasar.EmitterTemplate;
+import foundry.veil.impl.quasar.ParticleDepthSorter;
+import foundry.veil.impl.quasar.ParticleEmitterIndex;
+import foundry.veil.impl.quasar.ParticleLightCache;
+import foundry.veil.impl.quasar.QuasarParticleHandler;
+import foundry.veil.impl.quasar.gpu.GpuParticleProgram;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
 import net.minecraft.client.Camera;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.multiplayer.ClientLevel;
 import net.minecraft.client.renderer.MultiBufferSource;
 import net.minecraft.resources.ResourceLocation;
-import net.minecraft.util.Mth;
-import net.minecraft.world.entity.Entity;
+import net.minecraft.util.RandomSource;
+import net.minecraft.world.phys.Vec3;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.Nullable;
 import org.joml.Vector3d;
+import org.joml.Vector3fc;
 
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
 
 public class ParticleSystemManager {
 
-    private static final int MAX_PARTICLES = 10000;
-    private static final double PERSISTENT_DISTANCE_SQ = 32.0 * 32.0;
-    private static final double REMOVAL_DISTANCE_SQ = 128.0 * 128.0;
+    private static final int DEFAULT_PARTICLE_BUDGET = 10000;
+    // Farthest emitters are trimmed first
+    private static final Comparator<ParticleEmitter> BUDGET_ORDER = (a, b) -> Double.compare(b.budgetDistanceSq, a.budgetDistanceSq);
+    private static final int PARALLEL_THRESHOLD = 8;
+    // Emitters past each distance are updated half as often as the level before
+    private static final double[] LOD_DISTANCES_SQ = {32.0 * 32.0, 64.0 * 64.0, 128.0 * 128.0};
+    private static final int MAX_LOD_LEVEL = LOD_DISTANCES_SQ.length;
+    private static final int MAX_LOD_BIAS = 3;
+    private static final long DEFAULT_TICK_BUDGET = 4_000_000L;
+    private static final int MAX_POOLED_EMITTERS = 64;
+    private static final int MAX_POOLED_PER_TEMPLATE = 8;
 
     private final List<ParticleEmitter> particleEmitters;
+    private final ParticleEmitterIndex emitterIndex;
+    private final ParticleLightCache lightCache;
+    private final List<ParticleEmitter> visibleEmitters;
+    private final Set<ParticleEmitter> visibleEmitterSet;
+    private final List<ParticleEmitter> sortedEmitters;
+    private final List<ParticleEmitter> instancedEmitters;
+    private final ParticleDepthSorter depthSorter;
+    private final List<ParticleEmitter> updatingEmitters;
+    private final int[] lodCounts;
     private final Set<ResourceLocation> invalidEmitters;
-    private final AtomicInteger particleCount;
+    private final Map<ParticleEmitterData, EmitterTemplate> templates;
+    private final Map<ResourceLocation, EmitterTemplate> namedTemplates;
+    private final Map<EmitterTemplate, Deque<ParticleEmitter>> emitterPool;
+    private final List<ParticleEmitter>[] budgetEmitters;
+    private final Vector3d budgetCameraPos;
 
     private ClientLevel level;
     private TickTaskSchedulerImpl scheduler;
+    private RandomSource randomSource;
+    private boolean parallelTick;
+    private boolean emitterPooling;
+    private boolean gpuSimulation;
+    private boolean lod;
+    private long tickBudget;
+    private int lodBias;
+    private long lastTickTime;
+    private int pooledEmitters;
+    private int particleBudget;
+    private int particleCount;
 
+    @SuppressWarnings("unchecked")
     public ParticleSystemManager() {
         this.particleEmitters = new ArrayList<>();
+        this.emitterIndex = new ParticleEmitterIndex();
+        this.lightCache = new ParticleLightCache();
+        this.visibleEmitters = new ArrayList<>();
+        this.visibleEmitterSet = new ReferenceOpenHashSet<>();
+        this.sortedEmitters = new ArrayList<>();
+        this.instancedEmitters = new ArrayList<>();
+        this.depthSorter = new ParticleDepthSorter();
+        this.updatingEmitters = new ArrayList<>();
+        this.lodCounts = new int[MAX_LOD_LEVEL + 1];
         this.invalidEmitters = new HashSet<>();
+        this.templates = new Reference2ObjectOpenHashMap<>();
+        this.namedTemplates = new HashMap<>();
+        this.emitterPool = new Reference2ObjectOpenHashMap<>();
 
-        this.particleCount = new AtomicInteger();
+        // Forced emitters are never trimmed, so they don't need to be tracked
+        this.budgetEmitters = new List[ParticlePriority.FORCED.ordinal()];
+        for (int i = 0; i < this.budgetEmitters.length; i++) {
+            this.budgetEmitters[i] = new ArrayList<>();
+        }
+        this.budgetCameraPos = new Vector3d();
         this.level = null;
         this.scheduler = null;
+        this.randomSource = RandomSource.create();
+        this.parallelTick = System.getProperty("veil.parallelParticles") != null;
+        this.emitterPooling = System.getProperty("veil.poolParticleEmitters") != null;
+        this.gpuSimulation = System.getProperty("veil.disableGpuParticles") == null;
+        this.lod = System.getProperty("veil.disableParticleLod") == null;
+        this.tickBudget = DEFAULT_TICK_BUDGET;
+        this.particleBudget = Integer.getInteger("veil.particleBudget", DEFAULT_PARTICLE_BUDGET);
     }
 
     @ApiStatus.Internal
@@ -52,20 +120,80 @@ public class ParticleSystemManager {
 
         this.level = level;
         this.scheduler = new TickTaskSchedulerImpl();
+        this.randomSource = RandomSource.create();
     }
 
     public @Nullable ParticleEmitter createEmitter(ResourceLocation name) {
         if (this.level == null) {
             return null;
         }
-        ParticleEmitterData data = QuasarParticles.registryAccess().registry(QuasarParticles.EMITTER).map(registry -> registry.get(name)).orElse(null);
-        if (data == null) {
-            if (this.invalidEmitters.add(name)) {
-                Veil.LOGGER.error("Unknown Quasar Particle Emitter: {}", name);
+        EmitterTemplate template = this.namedTemplates.get(name);
+        if (template == null) {
+            ParticleEmitterData data = QuasarParticles.registryAccess().registry(QuasarParticles.EMITTER).map(registry -> registry.get(name)).orElse(null);
+            if (data == null) {
+                if (this.invalidEmitters.add(name)) {
+                    Veil.LOGGER.error("Unknown Quasar Particle Emitter: {}", name);
+                }
+                return null;
             }
-            return null;
+            template = this.getTemplate(data);
+            this.namedTemplates.put(name, template);
+        }
+
+        Deque<ParticleEmitter> pool = this.emitterPool.get(template);
+        if (pool != null && !pool.isEmpty()) {
+            ParticleEmitter emitter = pool.pop();
+            this.pooledEmitters--;
+            emitter.init(template);
+            return emitter;
+        }
+        return new ParticleEmitter(this, this.level, template, this.randomSource.fork());
+    }
+
+    /**
+     * Retrieves the template for the specified emitter, resolving all modules if it hasn't been used since the last reload.
+     *
+     * @param data The emitter data to get the template for
+     * @return The template to create emitters with
+     */
+    @ApiStatus.Internal
+    public EmitterTemplate getTemplate(ParticleEmitterData data) {
+        return this.templates.computeIfAbsent(data, unused -> {
+            List<ParticleModuleData> modules = ParticleEmitter.createModuleSet(data.particleData());
+            return new EmitterTemplate(data, modules, GpuParticleProgram.create(data.particleData(), modules));
+        });
+    }
+
+    /**
+     * Clears all templates and pooled emitters. This is called when Quasar particles are reloaded.
+     */
+    @ApiStatus.Internal
+    public void invalidateTemplates() {
+        this.templates.clear();
+        this.namedTemplates.clear();
+        this.emitterPool.clear();
+        this.pooledEmitters = 0;
+        this.invalidEmitters.clear();
+        BakedVectorField.clearCache();
+        QuasarParticleHandler.clearTextureArray();
+    }
+
+    private void recycle(ParticleEmitter emitter) {
+        if (!this.emitterPooling || !emitter.isRecyclable() || this.pooledEmitters >= MAX_POOLED_EMITTERS) {
+            return;
+        }
+
+        // Only keep templates that are still loaded
+        EmitterTemplate template = emitter.getTemplate();
+        if (this.templates.get(template.data()) != template) {
+            return;
+        }
+
+        Deque<ParticleEmitter> pool = this.emitterPool.computeIfAbsent(template, unused -> new ArrayDeque<>());
+        if (pool.size() < MAX_POOLED_PER_TEMPLATE) {
+            pool.push(emitter);
+            this.pooledEmitters++;
         }
-        return new ParticleEmitter(this, this.level, data);
     }
 
     public void addParticleSystem(ParticleEmitter particleEmitter) {
@@ -77,6 +205,18 @@ public class ParticleSystemManager {
             particleEmitter.onRemoved();
         }
         this.particleEmitters.clear();
+        // Pooled emitters belong to the old level
+        this.emitterPool.clear();
+        this.pooledEmitters = 0;
+        this.emitterIndex.clear();
+        this.lightCache.clear();
+        this.visibleEmitters.clear();
+        this.visibleEmitterSet.clear();
+        this.updatingEmitters.clear();
+        for (List<ParticleEmitter> emitters : this.budgetEmitters) {
+            emitters.clear();
+        }
+        this.particleCount = 0;
     }
 
     @ApiStatus.Internal
@@ -85,70 +225,373 @@ public class ParticleSystemManager {
             return;
         }
 
+        this.lightCache.tick();
         this.scheduler.run();
-        this.particleCount.set(0);
+        this.updateLod();
+
+        long start = System.nanoTime();
+        List<ParticleEmitter> updating = this.updatingEmitters;
+        updating.clear();
+        for (ParticleEmitter emitter : this.particleEmitters) {
+            emitter.tickPosition();
+            if (emitter.isUpdateDue()) {
+                updating.add(emitter);
+            } else {
+                emitter.skipTick();
+            }
+        }
+
+        if (this.parallelTick && updating.size() >= PARALLEL_THRESHOLD) {
+            // Emitters don't share any state while updating, so they can all run on the common fork/join pool
+            updating.parallelStream().forEach(emitter -> emitter.tickParticles(true));
+        } else {
+            for (ParticleEmitter emitter : updating) {
+                emitter.tickParticles(false);
+            }
+        }
+
+        // Deferred commands are applied in emitter order, so tasks are scheduled in the same order as a serial tick
+        for (ParticleEmitter emitter : updating) {
+            emitter.finishTick();
+        }
+        this.lastTickTime = System.nanoTime() - start;
+
         Iterator<ParticleEmitter> iterator = this.particleEmitters.iterator();
         while (iterator.hasNext()) {
             ParticleEmitter emitter = iterator.next();
-            emitter.tick();
             if (emitter.isRemoved()) {
                 emitter.onRemoved();
+                this.emitterIndex.remove(emitter);
                 iterator.remove();
-                continue;
+                this.recycle(emitter);
+            }
+        }
+        this.emitterIndex.update(this.particleEmitters);
+        this.updateBudgetOrder();
+    }
+
+    /**
+     * Sorts all emitters that can be trimmed by priority and distance to the camera.
+     */
+    private void updateBudgetOrder() {
+        for (List<ParticleEmitter> emitters : this.budgetEmitters) {
+            emitters.clear();
+        }
+
+        Vec3 cameraPos = Minecraft.getInstance().gameRenderer.getMainCamera().getPosition();
+        this.budgetCameraPos.set(cameraPos.x, cameraPos.y, cameraPos.z);
+        for (ParticleEmitter emitter : this.particleEmitters) {
+            emitter.budgetDistanceSq = emitter.getPosition().distanceSquared(this.budgetCameraPos);
+            ParticlePriority priority = emitter.getPriority();
+            if (priority != ParticlePriority.FORCED) {
+                this.budgetEmitters[priority.ordinal()].add(emitter);
             }
+        }
+        for (List<ParticleEmitter> emitters : this.budgetEmitters) {
+            emitters.sort(BUDGET_ORDER);
+        }
+    }
 
-            this.particleCount.addAndGet(emitter.getParticleCount());
+    /**
+     * Picks how often each emitter is updated based on the distance to the camera, whether it was visible last frame,
+     * and how long the last tick took.
+     */
+    private void updateLod() {
+        Arrays.fill(this.lodCounts, 0);
+
+        // Push emitters further away until ticks fit in the budget again. Far away emitters are degraded first
+        if (this.lastTickTime > this.tickBudget) {
+            this.lodBias = Math.min(this.lodBias + 1, MAX_LOD_BIAS);
+        } else if (this.lastTickTime < this.tickBudget / 2 && this.lodBias > 0) {
+            this.lodBias--;
+        }
+
+        this.visibleEmitterSet.clear();
+        this.visibleEmitterSet.addAll(this.visibleEmitters);
+        Vec3 cameraPos = Minecraft.getInstance().gameRenderer.getMainCamera().getPosition();
+        for (ParticleEmitter emitter : this.particleEmitters) {
+            int level = 0;
+            if (this.lod && emitter.isLod() && !emitter.isGpuSimulated()) {
+                // Each bias level doubles the effective distance
+                double distanceSq = emitter.getPosition().distanceSquared(cameraPos.x, cameraPos.y, cameraPos.z) * (1L << (this.lodBias * 2));
+                if (!this.visibleEmitterSet.contains(emitter)) {
+                    distanceSq *= 4.0;
+                }
+                while (level < MAX_LOD_LEVEL && distanceSq > LOD_DISTANCES_SQ[level]) {
+                    level++;
+                }
+            }
+            emitter.setLodLevel(level);
+            this.lodCounts[level]++;
         }
     }
 
     @ApiStatus.Internal
     public void render(MatrixStack matrixStack, MultiBufferSource bufferSource, Camera camera, CullFrustum frustum, float partialTicks) {
-        // TODO store emitters per-chunk and fetch them from the renderer
+        this.visibleEmitters.clear();
+        this.emitterIndex.collectVisible(frustum, this.visibleEmitters);
 
-        this.particleEmitters.sort(Comparator.comparingDouble(a -> -a.getPosition().distanceSquared(camera.getPosition().x, camera.getPosition().y, camera.getPosition().z)));
-        for (ParticleEmitter emitter : this.particleEmitters) {
-            emitter.render(matrixStack, bufferSource, camera, partialTicks);
+        // Additive and GPU particles look the same in any order, so only translucent particles are sorted
+        Vec3 cameraPos = camera.getPosition();
+        Vector3fc look = camera.getLookVector();
+        this.sortedEmitters.clear();
+        this.instancedEmitters.clear();
+        this.depthSorter.clear();
+        for (ParticleEmitter emitter : this.visibleEmitters) {
+            if (emitter.isDepthSorted()) {
+                emitter.collectDepths(this.depthSorter, this.sortedEmitters.size(), cameraPos, look, partialTicks);
+                this.sortedEmitters.add(emitter);
+            } else if (emitter.isInstanced()) {
+                this.instancedEmitters.add(emitter);
+            } else {
+                emitter.render(matrixStack, bufferSource, camera, partialTicks);
+            }
         }
+
+        // Everything left is additive, so all instanced emitters can share the same batches
+        if (!this.instancedEmitters.isEmpty()) {
+            ParticleEmitter.renderInstanced(this.instancedEmitters, true, matrixStack, bufferSource, cameraPos, partialTicks);
+            this.instancedEmitters.clear();
+        }
+
+        if (this.depthSorter.size() > 0) {
+            this.depthSorter.sort();
+            ParticleEmitter.renderSorted(this.sortedEmitters, this.depthSorter, matrixStack, bufferSource, cameraPos, partialTicks);
+        }
+        this.sortedEmitters.clear();
+    }
+
+    /**
+     * <p>Makes room in the particle budget for the specified emitter to spawn particles.</p>
+     * <p>If the budget is full, the oldest particles are removed from emitters with a lower priority,
+     * then from emitters with the same priority that are farther from the camera. Only as many emitters as needed are visited.</p>
+     *
+     * @param emitter   The emitter spawning particles
+     * @param particles The number of particles being spawned
+     * @return The number of particles the emitter is allowed to spawn. {@link ParticlePriority#FORCED Forced} emitters can always spawn everything
+     */
+    @ApiStatus.Internal
+    public int reserve(ParticleEmitter emitter, int particles) {
+        return this.reserve(emitter, emitter.getPriority(), emitter.getPosition().distanceSquared(this.budgetCameraPos), particles);
     }
 
     /**
-     * Attempts to remove particles from the most dense and farthest particle emitters to make room for closer emitters.
+     * Attempts to remove particles from other emitters to make room for the specified number of particles.
      *
      * @param particles The number of particles being spawned
+     * @deprecated The budget is now managed per emitter. This only makes room by removing particles from other {@link ParticlePriority#AMBIENT ambient} emitters
      */
+    @Deprecated
     public void reserve(int particles) {
-        int freeSpace = MAX_PARTICLES - this.particleCount.getAndAdd(-particles); // This isn't correct, but it doesn't really matter
-        if (particles <= freeSpace) {
-            return;
+        // Acts like an ambient emitter at the camera, so it is allowed to trim every other ambient emitter
+        this.reserve(null, ParticlePriority.AMBIENT, 0.0, particles);
+    }
+
+    private int reserve(@Nullable ParticleEmitter emitter, ParticlePriority priority, double distanceSq, int particles) {
+        int needed = particles - (this.particleBudget - this.particleCount);
+        if (needed <= 0) {
+            return particles;
         }
 
-        particles -= freeSpace;
-        Entity cameraEntity = Minecraft.getInstance().cameraEntity;
-        for (ParticleEmitter emitter : this.particleEmitters) {
-            Vector3d pos = emitter.getPosition();
-            double scaleFactor = Math.min(cameraEntity != null ? (cameraEntity.distanceToSqr(pos.x, pos.y, pos.z) - PERSISTENT_DISTANCE_SQ) / REMOVAL_DISTANCE_SQ : 1.0, 1.0);
-            if (scaleFactor > 0) {
-                particles -= emitter.trim(Math.min(particles, Mth.ceil(emitter.getParticleCount() * scaleFactor)));
-                if (particles <= 0) {
+        for (int i = 0; i < this.budgetEmitters.length && i <= priority.ordinal() && needed > 0; i++) {
+            for (ParticleEmitter other : this.budgetEmitters[i]) {
+                // Emitters with the same priority only give up particles for closer emitters
+                if (i == priority.ordinal() && other.budgetDistanceSq <= distanceSq) {
+                    break;
+                }
+                if (other == emitter || other.budgetCount == 0) {
+                    continue;
+                }
+
+                needed -= other.trim(Math.min(needed, other.budgetCount));
+                if (needed <= 0) {
                     break;
                 }
             }
         }
+
+        if (priority == ParticlePriority.FORCED) {
+            return particles;
+        }
+        return Math.max(0, Math.min(particles, this.particleBudget - this.particleCount));
+    }
+
+    /**
+     * Updates the number of particles the specified emitter has in the budget.
+     *
+     * @param emitter The emitter that spawned or removed particles
+     */
+    void updateBudget(ParticleEmitter emitter) {
+        int count = emitter.getParticleCount();
+        this.particleCount += count - emitter.budgetCount;
+        emitter.budgetCount = count;
     }
 
     public ClientLevel getLevel() {
         return this.level;
     }
 
+    /**
+     * @return The light values shared by all emitters. This must only be used on the main thread
+     */
+    @ApiStatus.Internal
+    public ParticleLightCache getLightCache() {
+        return this.lightCache;
+    }
+
     public TickTaskScheduler getScheduler() {
         return this.scheduler;
     }
 
+    /**
+     * @return Whether emitters are updated in parallel
+     */
+    public boolean isParallelTick() {
+        return this.parallelTick;
+    }
+
+    /**
+     * <p>Sets whether emitters should be updated in parallel on the common fork/join pool.</p>
+     * <p>Anything that touches the level or other shared state is still run on the main thread after all emitters finish,
+     * so {@link TickTaskScheduler} tasks run in the same order either way.
+     * This can also be enabled at startup with the <code>veil.parallelParticles</code> system property.</p>
+     *
+     * @param parallelTick Whether to tick emitters in parallel
+     */
+    public void setParallelTick(boolean parallelTick) {
+        this.parallelTick = parallelTick;
+    }
+
+    /**
+     * @return Whether removed emitters are kept and reused by {@link #createEmitter(ResourceLocation)}
+     */
+    public boolean isEmitterPooling() {
+        return this.emitterPooling;
+    }
+
+    /**
+     * <p>Sets whether removed emitters should be kept and reused by {@link #createEmitter(ResourceLocation)}.</p>
+     * <p>A reused emitter is the same object as the removed one, so anything still holding a reference to the old emitter
+     * would control an unrelated effect. Only enable this if no code keeps emitters after they are removed.
+     * This can also be enabled at startup with the <code>veil.poolParticleEmitters</code> system property.</p>
+     *
+     * @param emitterPooling Whether to reuse removed emitters
+     */
+    public void setEmitterPooling(boolean emitterPooling) {
+        this.emitterPooling = emitterPooling;
+        if (!emitterPooling) {
+            this.emitterPool.clear();
+            this.pooledEmitters = 0;
+        }
+    }
+
+    /**
+     * @return Whether new emitters may simulate their particles on the GPU
+     */
+    public boolean isGpuSimulation() {
+        return this.gpuSimulation;
+    }
+
+    /**
+     * <p>Sets whether new emitters may simulate their particles on the GPU.</p>
+     * <p>Only emitters that don't need the CPU are moved to the GPU, like additive billboards without collision or custom code modules.
+     * Translucent particles stay on the CPU so they can be depth sorted.
+     * Existing emitters are not affected. This can also be disabled at startup with the <code>veil.disableGpuParticles</code> system property.</p>
+     *
+     * @param gpuSimulation Whether to simulate particles on the GPU when possible
+     */
+    public void setGpuSimulation(boolean gpuSimulation) {
+        this.gpuSimulation = gpuSimulation;
+    }
+
+    /**
+     * @return Whether far away emitters are updated less often
+     */
+    public boolean isLod() {
+        return this.lod;
+    }
+
+    /**
+     * <p>Sets whether far away and off-screen emitters are updated less often.
+     * Particles in skipped ticks are moved along their last velocity, so they still move smoothly.</p>
+     * <p>Emitters can opt out with the <code>lod</code> field in their emitter settings.
+     * This can also be disabled at startup with the <code>veil.disableParticleLod</code> system property.</p>
+     *
+     * @param lod Whether to enable level of detail for particle updates
+     */
+    public void setLod(boolean lod) {
+        this.lod = lod;
+    }
+
+    /**
+     * @return The maximum time in nanoseconds updating particles should take each tick
+     */
+    public long getTickBudget() {
+        return this.tickBudget;
+    }
+
+    /**
+     * Sets the maximum time updating particles should take each tick. If a tick takes longer, far away emitters are updated less often until it fits again.
+     *
+     * @param tickBudget The maximum time in nanoseconds
+     */
+    public void setTickBudget(long tickBudget) {
+        this.tickBudget = tickBudget;
+    }
+
+    /**
+     * @param level The level of detail to check
+     * @return The number of emitters that were at that level of detail last tick
+     */
+    public int getLodCount(int level) {
+        return level >= 0 && level < this.lodCounts.length ? this.lodCounts[level] : 0;
+    }
+
+    /**
+     * @return The highest level of detail an emitter can have
+     */
+    public int getMaxLodLevel() {
+        return MAX_LOD_LEVEL;
+    }
+
+    /**
+     * @return How much further away emitters are treated because of the tick budget
+     */
+    public int getLodBias() {
+        return this.lodBias;
+    }
+
     public int getEmitterCount() {
         return this.particleEmitters.size();
     }
 
+    /**
+     * @return The exact number of particles alive in all emitters
+     */
     public int getParticleCount() {
-        return this.particleCount.get();
+        return this.particleCount;
+    }
+
+    /**
+     * @return The maximum number of particles before particles from lower priority emitters are removed
+     */
+    public int getParticleBudget() {
+        return this.particleBudget;
+    }
+
+    /**
+     * Sets the maximum number of particles allowed at once. This can also be set at startup with the <code>veil.particleBudget</code> system property.
+     *
+     * @param particleBudget The new maximum number of particles
+     */
+    public void setParticleBudget(int particleBudget) {
+        this.particleBudget = Math.max(particleBudget, 0);
+    }
+
+    /**
+     * @return The number of emitters that passed frustum culling last frame
+     */
+    public int getVisibleEmitterCount() {
+        return this.visibleEmitters.size();
     }
 }
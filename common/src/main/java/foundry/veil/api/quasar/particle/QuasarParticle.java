@@ -9,23 +9,24 @@ import gg.moonflower.molangcompiler.api.MolangEnvironment;
 import gg.moonflower.molangcompiler.api.MolangExpression;
 import gg.moonflower.molangcompiler.api.MolangRuntime;
 import net.minecraft.client.multiplayer.ClientLevel;
-import net.minecraft.client.renderer.LevelRenderer;
 import net.minecraft.core.BlockPos;
 import net.minecraft.util.Mth;
 import net.minecraft.util.RandomSource;
-import net.minecraft.world.entity.Entity;
-import net.minecraft.world.entity.LivingEntity;
 import net.minecraft.world.level.block.state.BlockState;
 import net.minecraft.world.phys.AABB;
-import net.minecraft.world.phys.Vec3;
 import org.jetbrains.annotations.ApiStatus;
 import org.joml.Vector3d;
 import org.joml.Vector3f;
 
 import java.util.Iterator;
-import java.util.List;
 import java.util.function.Supplier;
 
+/**
+ * <p>A cursor over a single particle in a {@link ParticleStorage}.</p>
+ * <p>Each emitter owns a single instance that is moved between particles with {@link #load(int)} and {@link #store()}.
+ * The vectors returned by {@link #getPosition()}, {@link #getVelocity()}, and {@link #getRotation()} are only valid
+ * until the cursor is moved to another particle.</p>
+ */
 public class QuasarParticle {
 
     private static final double MAXIMUM_COLLISION_VELOCITY_SQUARED = Mth.square(100.0D);
@@ -33,43 +34,33 @@ public class QuasarParticle {
     private final ClientLevel level;
     private final RandomSource randomSource;
     private final TickTaskScheduler scheduler;
-    private final QuasarParticleData data;
-    private final ParticleSettings settings;
     private final ParticleEmitter emitter;
-    private final ParticleModuleSet modules;
+    private final ParticleStorage storage;
     private final Vector3d position;
     private final Vector3d velocity;
     private final Vector3f rotation;
     private final BlockPos.MutableBlockPos blockPosition;
-    private final boolean hasCollision;
-    private float radius;
-    private final int lifetime;
-    private int age;
-    private AABB boundingBox;
-    private boolean stoppedByCollision;
+    private final double[] movement;
+    private int index;
 
     private final Supplier<MolangRuntime> environment;
     private final RenderData renderData;
 
-    public QuasarParticle(ClientLevel level, RandomSource randomSource, TickTaskScheduler scheduler, QuasarParticleData data, ParticleModuleSet modules, ParticleSettings settings, ParticleEmitter emitter) {
+    public QuasarParticle(ClientLevel level, RandomSource randomSource, TickTaskScheduler scheduler, ParticleEmitter emitter, ParticleStorage storage) {
         this.level = level;
         this.randomSource = randomSource;
         this.scheduler = scheduler;
-        this.data = data;
-        this.settings = settings;
         this.emitter = emitter;
-        this.modules = modules;
+        this.storage = storage;
         this.position = new Vector3d();
         this.velocity = new Vector3d();
         this.rotation = new Vector3f();
         this.blockPosition = new BlockPos.MutableBlockPos();
-        this.hasCollision = this.modules.getCollisionModules().length > 0;
-        this.radius = settings.particleSize(this.randomSource);
-        this.lifetime = settings.particleLifetime(this.randomSource);
-        this.age = 0;
+        this.movement = new double[3];
+        this.index = -1;
 
-        this.renderData = new RenderData(data);
-        // Don't create the environment if the particle never uses it
+        this.renderData = new RenderData(this, storage);
+        // Don't create the environment if no particle ever uses it. The queries always read from the current particle
         this.environment = Suppliers.memoize(() -> MolangRuntime.runtime()
                 .setQuery("x", MolangExpression.of(() -> (float) this.renderData.getRenderPosition().x()))
                 .setQuery("y", MolangExpression.of(() -> (float) this.renderData.getRenderPosition().y()))
@@ -85,112 +76,129 @@ public class QuasarParticle {
                 .setQuery("scale", MolangExpression.of(this.renderData::getRenderRadius))
                 .setQuery("age", MolangExpression.of(this.renderData::getRenderAge))
                 .setQuery("agePercent", MolangExpression.of(this.renderData::getAgePercent))
-                .setQuery("lifetime", this.lifetime)
+                .setQuery("lifetime", MolangExpression.of(() -> (float) this.getLifetime()))
                 .create());
     }
 
-    private void move(double dx, double dy, double dz) {
-        if (this.stoppedByCollision || (dx == 0.0D && dy == 0.0D && dz == 0.0D)) {
+    /**
+     * Moves this cursor to the particle at the specified index and loads its vector state.
+     *
+     * @param index The index of the particle in the storage
+     */
+    @ApiStatus.Internal
+    public void load(int index) {
+        this.index = index;
+        int offset = index * 3;
+        double[] position = this.storage.position();
+        double[] velocity = this.storage.velocity();
+        float[] rotation = this.storage.rotation();
+        this.position.set(position[offset], position[offset + 1], position[offset + 2]);
+        this.velocity.set(velocity[offset], velocity[offset + 1], velocity[offset + 2]);
+        this.rotation.set(rotation[offset], rotation[offset + 1], rotation[offset + 2]);
+        this.renderData.load();
+    }
+
+    /**
+     * Writes the vector state of the current particle back into the storage.
+     */
+    @ApiStatus.Internal
+    public void store() {
+        int offset = this.index * 3;
+        double[] position = this.storage.position();
+        double[] velocity = this.storage.velocity();
+        float[] rotation = this.storage.rotation();
+        position[offset] = this.position.x;
+        position[offset + 1] = this.position.y;
+        position[offset + 2] = this.position.z;
+        velocity[offset] = this.velocity.x;
+        velocity[offset + 1] = this.velocity.y;
+        velocity[offset + 2] = this.velocity.z;
+        rotation[offset] = this.rotation.x;
+        rotation[offset + 1] = this.rotation.y;
+        rotation[offset + 2] = this.rotation.z;
+    }
+
+    /**
+     * Moves the current particle by its velocity while colliding with the level.
+     */
+    @ApiStatus.Internal
+    public void move() {
+        double dx = this.velocity.x;
+        double dy = this.velocity.y;
+        double dz = this.velocity.z;
+        boolean[] stoppedByCollision = this.storage.stoppedByCollision();
+        if (stoppedByCollision[this.index] || (dx == 0.0D && dy == 0.0D && dz == 0.0D)) {
             return;
         }
 
+        ParticleModuleSet modules = this.getModules();
+        ParticleCollisionContext collisionContext = this.emitter.getCollisionContext();
+
         AABB box = this.getBoundingBox();
         double d0 = dx;
         double d1 = dy;
         double d2 = dz;
-        if (this.hasCollision && dx * dx + dy * dy + dz * dz < MAXIMUM_COLLISION_VELOCITY_SQUARED) {
-            Vec3 vec3 = Entity.collideBoundingBox(null, new Vec3(dx, dy, dz), box, this.level, List.of());
-            dx = vec3.x;
-            dy = vec3.y;
-            dz = vec3.z;
+        if (dx * dx + dy * dy + dz * dz < MAXIMUM_COLLISION_VELOCITY_SQUARED) {
+            double[] movement = this.movement;
+            collisionContext.collide(box, dx, dy, dz, movement);
+            dx = movement[0];
+            dy = movement[1];
+            dz = movement[2];
         }
 
         if (dx != 0.0D || dy != 0.0D || dz != 0.0D) {
             this.position.add(dx, dy, dz);
-            this.updateBoundingBox();
         }
 
-        if (!this.hasCollision) {
-            return;
-        }
-
-        List<Entity> entities = this.level.getEntities(null, box);
-        for (Entity entity : entities) {
-            if (entity instanceof LivingEntity livingEntity && livingEntity.isAlive()) {
-                this.stoppedByCollision = true;
-                break;
-            }
-        }
+        boolean stopped = collisionContext.isTouchingLivingEntity(box);
 
         if (Math.abs(d1) >= (double) 1.0E-5F && Math.abs(dy) < (double) 1.0E-5F) {
-            this.stoppedByCollision = true;
+            stopped = true;
         }
 
         if (d0 != dx) {
             this.velocity.x = 0;
-            this.stoppedByCollision = true;
+            stopped = true;
         }
 
         if (d1 != dy) {
             this.velocity.y = 0;
-            this.stoppedByCollision = true;
+            stopped = true;
         }
 
         if (d2 != dz) {
             this.velocity.z = 0;
-            this.stoppedByCollision = true;
+            stopped = true;
         }
 
         // Notify listeners
-        if (this.stoppedByCollision) {
-            for (CollisionParticleModule collisionParticle : this.modules.getCollisionModules()) {
+        if (stopped) {
+            stoppedByCollision[this.index] = true;
+            for (CollisionParticleModule collisionParticle : modules.getCollisionModules()) {
                 collisionParticle.collide(this);
             }
         }
     }
 
-    private void updateBoundingBox() {
-        double r = this.radius / 2.0;
-        this.boundingBox = new AABB(this.position.x - r, this.position.y - r, this.position.z - r, this.position.x + r, this.position.y + r, this.position.z + r);
-    }
-
     private int getLightColor() {
-        return LevelRenderer.getLightColor(this.level, this.getBlockPosition());
+        return this.emitter.sampleLight(this.position.x, this.position.y, this.position.z);
     }
 
     @ApiStatus.Internal
-    public void init() {
-        for (InitParticleModule initModule : this.modules.getInitModules()) {
+    public void init(QuasarParticleData data, ParticleSettings settings) {
+        this.storage.radius()[this.index] = settings.particleSize(this.randomSource);
+        this.storage.lifetime()[this.index] = settings.particleLifetime(this.randomSource);
+        this.renderData.init(data);
+
+        for (InitParticleModule initModule : this.getModules().getInitModules()) {
             initModule.init(this);
         }
         this.renderData.tick(this, this.getLightColor());
-        this.updateBoundingBox();
-    }
-
-    @ApiStatus.Internal
-    public void tick() {
-        this.renderData.tick(this, this.getLightColor());
-        this.modules.updateEnabled();
-        for (UpdateParticleModule updateModule : this.modules.getUpdateModules()) {
-            updateModule.update(this);
-        }
-
-        // TODO properly do forces
-        for (ForceParticleModule updateModule : this.modules.getForceModules()) {
-            updateModule.applyForce(this);
-        }
-
-        this.move(this.velocity.x, this.velocity.y, this.velocity.z);
-
-        this.age++;
-        if (this.age >= this.lifetime) {
-            this.remove();
-        }
     }
 
     @ApiStatus.Internal
     public void render(float partialTicks) {
-        Iterator<RenderParticleModule> iterator = this.modules.getEnabledRenderModules();
+        Iterator<RenderParticleModule> iterator = this.getModules().getEnabledRenderModules();
         while (iterator.hasNext()) {
             iterator.next().render(this, partialTicks);
         }
@@ -199,17 +207,24 @@ public class QuasarParticle {
 
     @ApiStatus.Internal
     public void onRemove() {
-        for (ParticleModule module : this.modules.getAllModules()) {
-            module.onRemove();
+        for (ParticleModule module : this.getModules().getAllModules()) {
+            module.onRemove(this);
         }
     }
 
     public void remove() {
-        this.age = Integer.MIN_VALUE;
+        this.storage.age()[this.index] = Integer.MIN_VALUE;
     }
 
     public boolean isRemoved() {
-        return this.age < 0;
+        return this.storage.age()[this.index] < 0;
+    }
+
+    /**
+     * @return The index of the particle this cursor currently points to
+     */
+    public int getIndex() {
+        return this.index;
     }
 
     public ClientLevel getLevel() {
@@ -225,11 +240,11 @@ public class QuasarParticle {
     }
 
     public QuasarParticleData getData() {
-        return this.data;
+        return this.emitter.getParticleData();
     }
 
     public ParticleSettings getSettings() {
-        return this.settings;
+        return this.emitter.getParticleSettings();
     }
 
     public ParticleEmitter getEmitter() {
@@ -237,7 +252,7 @@ public class QuasarParticle {
     }
 
     public ParticleModuleSet getModules() {
-        return this.modules;
+        return this.emitter.getModules();
     }
 
     public Vector3d getPosition() {
@@ -253,12 +268,12 @@ public class QuasarParticle {
     }
 
     public BlockState getBlockStateInOrUnder() {
-        BlockState in = this.level.getBlockState(BlockPos.containing(this.position.x, this.position.y + 0.5, this.position.z));
+        BlockState in = this.level.getBlockState(this.blockPosition.set(this.position.x, this.position.y + 0.5, this.position.z));
         if (!in.isAir()) {
             return in;
         }
 
-        return this.level.getBlockState(BlockPos.containing(this.position.x, this.position.y - 0.5, this.position.z));
+        return this.level.getBlockState(this.blockPosition.set(this.position.x, this.position.y - 0.5, this.position.z));
     }
 
     public Vector3f getRotation() {
@@ -266,19 +281,23 @@ public class QuasarParticle {
     }
 
     public float getRadius() {
-        return this.radius;
+        return this.storage.radius()[this.index];
     }
 
     public int getAge() {
-        return this.age;
+        return this.storage.age()[this.index];
     }
 
     public int getLifetime() {
-        return this.settings.particleLifetime();
+        return this.storage.lifetime()[this.index];
     }
 
+    /**
+     * @return A new bounding box around the current position of the particle
+     */
     public AABB getBoundingBox() {
-        return this.boundingBox;
+        double r = this.getRadius() / 2.0;
+        return new AABB(this.position.x - r, this.position.y - r, this.position.z - r, this.position.x + r, this.position.y + r, this.position.z + r);
     }
 
     public RenderData getRenderData() {
@@ -294,11 +313,10 @@ public class QuasarParticle {
     }
 
     public void setRadius(float radius) {
-        this.radius = radius;
-        this.updateBoundingBox();
+        this.storage.radius()[this.index] = radius;
     }
 
     public void setAge(int age) {
-        this.age = age;
+        this.storage.age()[this.index] = age;
     }
 }
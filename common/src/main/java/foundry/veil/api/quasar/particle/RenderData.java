@@ -5,7 +5,6 @@ import foundry.veil.api.client.render.MatrixStack;
 import foundry.veil.api.client.render.rendertype.VeilRenderType;
 import foundry.veil.api.quasar.data.QuasarParticleData;
 import foundry.veil.api.quasar.fx.Trail;
-import net.minecraft.client.renderer.LightTexture;
 import net.minecraft.client.renderer.MultiBufferSource;
 import net.minecraft.client.renderer.RenderType;
 import net.minecraft.client.renderer.texture.TextureAtlasSprite;
@@ -20,74 +19,112 @@ import java.lang.Math;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Render state of the particle a {@link QuasarParticle} cursor currently points to. All values are read from and written to the backing {@link ParticleStorage}.
+ */
 public class RenderData {
 
     @Deprecated
     private static final ResourceLocation BLANK = Veil.veilPath("textures/special/blank.png");
 
-    private final Vector3d prevPosition;
+    private final QuasarParticle particle;
+    private final ParticleStorage storage;
     private final Vector3d renderPosition;
-    private final Vector3f prevRotation;
     private final Vector3f renderRotation;
-    private float prevRadius;
     private float renderRadius;
-    private int lightColor;
-    private float red;
-    private float green;
-    private float blue;
-    private float alpha;
     public float renderAge;
     public float agePercent;
-    private final boolean additive;
-    private SpriteData spriteData;
-    private TextureAtlasSprite atlasSprite;
-    private RenderType renderType;
-    private final List<Trail> trails;
-
-    public RenderData(QuasarParticleData data) {
-        this.prevPosition = new Vector3d();
+
+    @ApiStatus.Internal
+    public RenderData(QuasarParticle particle, ParticleStorage storage) {
+        this.particle = particle;
+        this.storage = storage;
         this.renderPosition = new Vector3d();
-        this.prevRotation = new Vector3f();
         this.renderRotation = new Vector3f();
-        this.prevRadius = 1.0F;
         this.renderRadius = 1.0F;
-        this.lightColor = LightTexture.FULL_BRIGHT;
-        this.red = 1.0F;
-        this.green = 1.0F;
-        this.blue = 1.0F;
-        this.alpha = 1.0F;
         this.renderAge = 0.0F;
-        this.additive = data.additive();
-        this.spriteData = data.spriteData();
-        this.atlasSprite = null;
-        this.updateRenderType();
-        this.trails = new ArrayList<>();
+        this.agePercent = 0.0F;
     }
 
-    private void updateRenderType() {
-        if (this.atlasSprite != null) {
-            this.renderType = VeilRenderType.quasarParticle(this.atlasSprite.atlasLocation(), this.additive);
-        } else if (this.spriteData != null) {
-            this.renderType = VeilRenderType.quasarParticle(this.spriteData.sprite(), this.additive);
+    private static ResourceLocation getTexture(@Nullable SpriteData spriteData, @Nullable TextureAtlasSprite atlasSprite) {
+        if (atlasSprite != null) {
+            return atlasSprite.atlasLocation();
+        } else if (spriteData != null) {
+            return spriteData.sprite();
         } else {
-            this.renderType = VeilRenderType.quasarParticle(BLANK, this.additive);
+            return BLANK;
         }
     }
 
+    private static RenderType getRenderType(@Nullable SpriteData spriteData, @Nullable TextureAtlasSprite atlasSprite, boolean additive) {
+        return VeilRenderType.quasarParticle(getTexture(spriteData, atlasSprite), additive);
+    }
+
+    private void updateRenderType() {
+        int index = this.particle.getIndex();
+        this.storage.renderType()[index] = getRenderType(this.storage.spriteData()[index], this.storage.atlasSprite()[index], this.particle.getData().additive());
+    }
+
+    @ApiStatus.Internal
+    public void init(QuasarParticleData data) {
+        int index = this.particle.getIndex();
+        this.storage.spriteData()[index] = data.spriteData();
+        this.storage.atlasSprite()[index] = null;
+        this.storage.renderType()[index] = getRenderType(data.spriteData(), null, data.additive());
+    }
+
+    @ApiStatus.Internal
+    public void load() {
+        int index = this.particle.getIndex();
+        int offset = index * 3;
+        double[] position = this.storage.position();
+        float[] rotation = this.storage.rotation();
+        this.renderPosition.set(position[offset], position[offset + 1], position[offset + 2]);
+        this.renderRotation.set(rotation[offset], rotation[offset + 1], rotation[offset + 2]);
+        this.renderRadius = this.storage.radius()[index];
+        this.renderAge = Math.max(this.storage.age()[index], 0);
+        this.agePercent = Math.min(this.renderAge / (float) this.storage.lifetime()[index], 1.0F);
+    }
+
     @ApiStatus.Internal
     public void tick(QuasarParticle particle, int lightColor) {
-        this.prevPosition.set(particle.getPosition());
-        this.prevRotation.set(particle.getRotation());
-        this.prevRadius = particle.getRadius();
-        this.lightColor = lightColor;
+        int index = particle.getIndex();
+        int offset = index * 3;
+        Vector3d position = particle.getPosition();
+        Vector3f rotation = particle.getRotation();
+        double[] prevPosition = this.storage.prevPosition();
+        float[] prevRotation = this.storage.prevRotation();
+        prevPosition[offset] = position.x;
+        prevPosition[offset + 1] = position.y;
+        prevPosition[offset + 2] = position.z;
+        prevRotation[offset] = rotation.x;
+        prevRotation[offset + 1] = rotation.y;
+        prevRotation[offset + 2] = rotation.z;
+        this.storage.prevRadius()[index] = particle.getRadius();
+        this.storage.light()[index] = lightColor;
     }
 
     @ApiStatus.Internal
     public void render(QuasarParticle particle, float partialTicks) {
-        this.prevPosition.lerp(particle.getPosition(), partialTicks, this.renderPosition);
-        this.prevRotation.lerp(particle.getRotation(), partialTicks, this.renderRotation);
-        this.renderRadius = Mth.lerp(partialTicks, this.prevRadius, particle.getRadius());
-        this.renderAge = particle.getAge() + partialTicks;
+        int index = particle.getIndex();
+        int offset = index * 3;
+        double[] prevPosition = this.storage.prevPosition();
+        float[] prevRotation = this.storage.prevRotation();
+        Vector3d position = particle.getPosition();
+        Vector3f rotation = particle.getRotation();
+        // Emitters that skip ticks keep moving their particles along the last velocity until the next update
+        int skipped = particle.getEmitter().getTicksSinceUpdate(index);
+        Vector3d velocity = particle.getVelocity();
+        this.renderPosition.set(
+                Mth.lerp(partialTicks, prevPosition[offset], position.x) + velocity.x * skipped,
+                Mth.lerp(partialTicks, prevPosition[offset + 1], position.y) + velocity.y * skipped,
+                Mth.lerp(partialTicks, prevPosition[offset + 2], position.z) + velocity.z * skipped);
+        this.renderRotation.set(
+                Mth.lerp(partialTicks, prevRotation[offset], rotation.x),
+                Mth.lerp(partialTicks, prevRotation[offset + 1], rotation.y),
+                Mth.lerp(partialTicks, prevRotation[offset + 2], rotation.z));
+        this.renderRadius = Mth.lerp(partialTicks, this.storage.prevRadius()[index], particle.getRadius());
+        this.renderAge = particle.getAge() + skipped + partialTicks;
         this.agePercent = Math.min(this.renderAge / (float) particle.getLifetime(), 1.0F);
     }
 
@@ -112,93 +149,131 @@ public class RenderData {
     }
 
     public int getLightColor() {
-        return this.lightColor;
+        return this.storage.light()[this.particle.getIndex()];
     }
 
     public float getRed() {
-        return this.red;
+        return this.storage.color()[this.particle.getIndex() * 4];
     }
 
     public float getGreen() {
-        return this.green;
+        return this.storage.color()[this.particle.getIndex() * 4 + 1];
     }
 
     public float getBlue() {
-        return this.blue;
+        return this.storage.color()[this.particle.getIndex() * 4 + 2];
     }
 
     public float getAlpha() {
-        return this.alpha;
+        return this.storage.color()[this.particle.getIndex() * 4 + 3];
     }
 
     public @Nullable SpriteData getSpriteData() {
-        return this.spriteData;
+        return this.storage.spriteData()[this.particle.getIndex()];
     }
 
     public TextureAtlasSprite getAtlasSprite() {
-        return this.atlasSprite;
+        return this.storage.atlasSprite()[this.particle.getIndex()];
     }
 
     public RenderType getRenderType() {
-        return this.renderType;
+        return this.storage.renderType()[this.particle.getIndex()];
     }
 
+    /**
+     * @return The texture the current particle is drawn with
+     */
+    public ResourceLocation getTexture() {
+        int index = this.particle.getIndex();
+        return getTexture(this.storage.spriteData()[index], this.storage.atlasSprite()[index]);
+    }
+
+    /**
+     * @return The trails attached to the current particle. Trails are only allocated once one is added
+     */
     public List<Trail> getTrails() {
-        return this.trails;
+        List<Trail>[] trails = this.storage.trails();
+        int index = this.particle.getIndex();
+        List<Trail> list = trails[index];
+        if (list == null) {
+            list = trails[index] = new ArrayList<>();
+        }
+        return list;
     }
 
     // TODO move to renderer
+    /**
+     * Pushes the last position of the current particle into all of its trails.
+     *
+     * @return The trails attached to the current particle or <code>null</code> if there are none
+     */
+    @ApiStatus.Internal
+    public @Nullable List<Trail> updateTrails() {
+        int index = this.particle.getIndex();
+        List<Trail> trails = this.storage.trails()[index];
+        if (trails == null || trails.isEmpty()) {
+            return null;
+        }
+
+        int offset = index * 3;
+        double[] prevPosition = this.storage.prevPosition();
+        float[] prevRotation = this.storage.prevRotation();
+        for (Trail trail : trails) {
+            trail.pushRotatedPoint(prevPosition[offset], prevPosition[offset + 1], prevPosition[offset + 2], prevRotation[offset], prevRotation[offset + 1], prevRotation[offset + 2]);
+        }
+        return trails;
+    }
+
     public void renderTrails(MatrixStack matrixStack, MultiBufferSource bufferSource, Vec3 cameraPos, int packedLight) {
-        if (this.trails.isEmpty()) {
+        List<Trail> trails = this.updateTrails();
+        if (trails == null) {
             return;
         }
 
         matrixStack.matrixPush();
         matrixStack.translate(-cameraPos.x(), -cameraPos.y(), -cameraPos.z());
-        for (Trail trail : this.trails) {
-            trail.pushRotatedPoint(new Vec3(this.prevPosition.x, this.prevPosition.y, this.prevPosition.z), new Vec3(this.prevRotation.x, this.prevRotation.y, this.prevRotation.z));
+        for (Trail trail : trails) {
             trail.render(matrixStack, bufferSource.getBuffer(VeilRenderType.quasarTrail(trail.getTexture())), packedLight);
         }
         matrixStack.matrixPop();
     }
 
     public void setRed(float red) {
-        this.red = red;
+        this.storage.color()[this.particle.getIndex() * 4] = red;
     }
 
     public void setGreen(float green) {
-        this.green = green;
+        this.storage.color()[this.particle.getIndex() * 4 + 1] = green;
     }
 
     public void setBlue(float blue) {
-        this.blue = blue;
+        this.storage.color()[this.particle.getIndex() * 4 + 2] = blue;
     }
 
     public void setAlpha(float alpha) {
-        this.alpha = alpha;
+        this.storage.color()[this.particle.getIndex() * 4 + 3] = alpha;
     }
 
     public void setColor(float red, float green, float blue, float alpha) {
-        this.red = red;
-        this.green = green;
-        this.blue = blue;
-        this.alpha = alpha;
+        float[] color = this.storage.color();
+        int offset = this.particle.getIndex() * 4;
+        color[offset] = red;
+        color[offset + 1] = green;
+        color[offset + 2] = blue;
+        color[offset + 3] = alpha;
     }
 
     public void setColor(Vector4fc color) {
-        this.red = color.x();
-        this.green = color.y();
-        this.blue = color.z();
-        this.alpha = color.w();
+        this.setColor(color.x(), color.y(), color.z(), color.w());
     }
 
     public void setSpriteData(@Nullable SpriteData spriteData) {
-        this.spriteData = spriteData;
+        this.storage.spriteData()[this.particle.getIndex()] = spriteData;
         this.updateRenderType();
     }
 
     public void setAtlasSprite(@Nullable TextureAtlasSprite atlasSprite) {
-        this.atlasSprite = atlasSprite;
+        this.storage.atlasSprite()[this.particle.getIndex()] = atlasSprite;
         this.updateRenderType();
     }
 }
@@ -116,6 +116,8 @@ public class DeviceInfoViewer extends SingleWindowInspector {
         flagText("inspector.veil.device_info.opengl.feature_flag.nv_draw_texture", VeilRenderSystem.nvDrawTextureSupported(), "Whether glDrawTextureNV can be used");
         flagText("inspector.veil.device_info.opengl.feature_flag.draw_indirect", VeilRenderSystem.drawIndirectSupported(), "Whether glDrawArraysInstanced and glDrawElementsInstancedBaseVertex can be used");
         flagText("inspector.veil.device_info.opengl.feature_flag.multi_draw_indirect", VeilRenderSystem.multiDrawIndirectSupported(), "Whether multiple indirect commands can be natively drawn in one command");
+        flagText("inspector.veil.device_info.opengl.feature_flag.base_instance", VeilRenderSystem.baseInstanceSupported(), "Whether instanced draws can start at any instance");
+        flagText("inspector.veil.device_info.opengl.feature_flag.buffer_storage", VeilRenderSystem.bufferStorageSupported(), "Whether immutable buffers can be persistently mapped");
         ImGui.separator();
 
         GLCapabilities caps = GL.getCapabilities();
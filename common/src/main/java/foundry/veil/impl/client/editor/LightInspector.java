@@ -37,11 +37,13 @@ public class LightInspector extends SingleWindowInspector {
     private static final Component SET_POSITION = Component.translatable("inspector.veil.light.button.set_position");
     private static final Component ATTRIBUTES = Component.translatable("inspector.veil.light.attributes");
     private static final Component ENABLE_AO = Component.translatable("inspector.veil.light.toggle.ao");
+    private static final Component ENABLE_CLUSTERED = Component.translatable("inspector.veil.light.toggle.clustered");
 
     private final List<ResourceKey<LightTypeRegistry.LightType<?>>> lightTypes = new ArrayList<>();
     private ResourceKey<LightTypeRegistry.LightType<?>> selectedTab;
 
     private final ImBoolean enableAmbientOcclusion = new ImBoolean();
+    private final ImBoolean enableClusteredLighting = new ImBoolean();
 
     @Override
     public Component getDisplayName() {
@@ -109,6 +111,16 @@ public class LightInspector extends SingleWindowInspector {
             }
         }
 
+        ImGui.sameLine();
+        this.enableClusteredLighting.set(lightRenderer.isClusteredLightingEnabled());
+        if (ImGui.checkbox(ENABLE_CLUSTERED.getString(), this.enableClusteredLighting)) {
+            if (this.enableClusteredLighting.get()) {
+                lightRenderer.enableClusteredLighting();
+            } else {
+                lightRenderer.disableClusteredLighting();
+            }
+        }
+
         ImGui.beginTabBar("##lights");
         for (ResourceKey<LightTypeRegistry.LightType<?>> key : this.lightTypes) {
             ResourceLocation id = key.location();
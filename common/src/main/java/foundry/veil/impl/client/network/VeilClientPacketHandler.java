@@ -0,0 +1,46 @@
+package foundry.veil.impl.client.network;
+
+import foundry.veil.api.client.render.VeilRenderSystem;
+import foundry.veil.api.network.handler.ClientPacketContext;
+import foundry.veil.api.quasar.particle.ParticleEmitter;
+import foundry.veil.api.quasar.particle.ParticleSystemManager;
+import foundry.veil.impl.network.ClientboundSpawnEmittersPayload;
+import net.minecraft.client.multiplayer.ClientLevel;
+import net.minecraft.world.entity.Entity;
+import org.jetbrains.annotations.ApiStatus;
+
+/**
+ * Handles packets sent to the client by Veil.
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public final class VeilClientPacketHandler {
+
+    private VeilClientPacketHandler() {
+    }
+
+    public static void handleSpawnEmitters(ClientboundSpawnEmittersPayload payload, ClientPacketContext ctx) {
+        ClientLevel level = ctx.client().level;
+        if (level == null) {
+            return;
+        }
+
+        ParticleSystemManager particleManager = VeilRenderSystem.renderer().getParticleManager();
+        for (ClientboundSpawnEmittersPayload.Spawn spawn : payload.spawns()) {
+            ParticleEmitter emitter = particleManager.createEmitter(spawn.emitter());
+            if (emitter == null) {
+                continue;
+            }
+
+            emitter.setPosition(spawn.x(), spawn.y(), spawn.z());
+            if (spawn.entityId() != -1) {
+                Entity entity = level.getEntity(spawn.entityId());
+                if (entity != null) {
+                    emitter.setAttachedEntity(entity);
+                }
+            }
+            particleManager.addParticleSystem(emitter);
+        }
+    }
+}
@@ -12,6 +12,7 @@ import foundry.veil.api.client.render.light.AreaLight;
 import foundry.veil.api.client.render.light.renderer.InstancedLightRenderer;
 import foundry.veil.api.client.render.light.renderer.LightRenderer;
 import foundry.veil.api.client.render.light.renderer.LightTypeRenderer;
+import foundry.veil.api.client.render.shader.program.ShaderProgram;
 import foundry.veil.api.client.render.vertex.VertexArrayBuilder;
 import net.minecraft.resources.ResourceLocation;
 import org.jetbrains.annotations.ApiStatus;
@@ -27,7 +28,7 @@ public class AreaLightRenderer extends InstancedLightRenderer<AreaLight> {
     private static final ResourceLocation SHADER = Veil.veilPath("light/area");
 
     public AreaLightRenderer() {
-        super(Float.BYTES * 22 + 2);
+        super(Float.BYTES * 26 + 2);
     }
 
     @Override
@@ -47,11 +48,15 @@ public class AreaLightRenderer extends InstancedLightRenderer<AreaLight> {
         builder.setVertexAttribute(6, 2, 2, VertexArrayBuilder.DataType.FLOAT, false, Float.BYTES * 19); // size
         builder.setVertexAttribute(7, 2, 1, VertexArrayBuilder.DataType.UNSIGNED_SHORT, true, Float.BYTES * 21); // angle
         builder.setVertexAttribute(8, 2, 1, VertexArrayBuilder.DataType.FLOAT, false, Float.BYTES * 21 + 2); // distance
+        builder.setVertexAttribute(9, 2, 4, VertexArrayBuilder.DataType.FLOAT, false, Float.BYTES * 22 + 2); // shadow tile
     }
 
     @Override
     protected void setupRenderState(@NotNull LightRenderer lightRenderer, @NotNull List<AreaLight> lights) {
-        VeilRenderSystem.setShader(SHADER);
+        ShaderProgram shader = VeilRenderSystem.setShader(SHADER);
+        if (shader != null) {
+            shader.setSampler("ShadowAtlasSampler", lightRenderer.getShadowAtlasTexture());
+        }
     }
 
     @Override
@@ -0,0 +1,335 @@
+package foundry.veil.impl.client.render.light;
+
+import foundry.veil.Veil;
+import foundry.veil.api.client.registry.LightTypeRegistry;
+import foundry.veil.api.client.render.CameraMatrices;
+import foundry.veil.api.client.render.CullFrustum;
+import foundry.veil.api.client.render.VeilRenderSystem;
+import foundry.veil.api.client.render.light.AreaLight;
+import foundry.veil.api.client.render.light.PointLight;
+import foundry.veil.api.client.render.light.renderer.LightRenderer;
+import foundry.veil.api.client.render.shader.block.DynamicShaderBlock;
+import foundry.veil.api.client.render.shader.block.ShaderBlock;
+import foundry.veil.api.client.render.shader.program.ShaderProgram;
+import foundry.veil.api.client.render.vertex.VertexArray;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.util.Mth;
+import org.jetbrains.annotations.ApiStatus;
+import org.joml.Matrix4f;
+import org.joml.Vector2fc;
+import org.joml.Vector3dc;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+import org.lwjgl.system.MemoryUtil;
+import org.lwjgl.system.NativeResource;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import static org.lwjgl.opengl.GL15C.glDeleteBuffers;
+import static org.lwjgl.opengl.GL15C.glGenBuffers;
+
+/**
+ * <p>Draws point and area lights in a single full-screen pass using a grid of view-space clusters.</p>
+ * <p>The view frustum is split into {@value #CLUSTERS_X}x{@value #CLUSTERS_Y} screen tiles and {@value #CLUSTERS_Z}
+ * exponential depth slices. Each frame the bounding sphere of every visible light is assigned to the clusters it touches,
+ * then every pixel is shaded with only the lights in its cluster. Overlapping lights no longer cost an extra blended
+ * fragment each, which is where instanced light volumes spend most of their time in dense scenes.</p>
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public class ClusteredLightRenderer implements NativeResource {
+
+    public static final int CLUSTERS_X = 16;
+    public static final int CLUSTERS_Y = 9;
+    public static final int CLUSTERS_Z = 24;
+    private static final int CLUSTER_COUNT = CLUSTERS_X * CLUSTERS_Y * CLUSTERS_Z;
+    private static final ResourceLocation SHADER = Veil.veilPath("light/clustered");
+
+    // vec4 position and radius, vec4 color and type, vec4 area size/angle/distance, mat4 area matrix
+    private static final int LIGHT_SIZE = Float.BYTES * 28;
+    private static final int POINT_LIGHT = 0;
+    private static final int AREA_LIGHT = 1;
+
+    private final List<PointLight> pointLights;
+    private final List<AreaLight> areaLights;
+    private final int lightBuffer;
+    private final int gridBuffer;
+    private final int indexBuffer;
+    private final DynamicShaderBlock<?> lightBlock;
+    private final DynamicShaderBlock<?> gridBlock;
+    private final DynamicShaderBlock<?> indexBlock;
+    private final int[] clusterCounts;
+    private final int[] clusterOffsets;
+    private final Matrix4f areaMatrix;
+    private final Vector3f center;
+    private final Vector3f corner;
+
+    private ByteBuffer lights;
+    private ByteBuffer grid;
+    private ByteBuffer indices;
+    // Inclusive cluster bounds of each light, min x/y/z then max x/y/z
+    private int[] lightClusters;
+    private int visibleLights;
+
+    public ClusteredLightRenderer() {
+        this.pointLights = new ArrayList<>();
+        this.areaLights = new ArrayList<>();
+        this.lightBuffer = glGenBuffers();
+        this.gridBuffer = glGenBuffers();
+        this.indexBuffer = glGenBuffers();
+        this.lightBlock = ShaderBlock.wrapper(ShaderBlock.BufferBinding.SHADER_STORAGE, this.lightBuffer);
+        this.gridBlock = ShaderBlock.wrapper(ShaderBlock.BufferBinding.SHADER_STORAGE, this.gridBuffer);
+        this.indexBlock = ShaderBlock.wrapper(ShaderBlock.BufferBinding.SHADER_STORAGE, this.indexBuffer);
+        this.clusterCounts = new int[CLUSTER_COUNT];
+        this.clusterOffsets = new int[CLUSTER_COUNT];
+        this.areaMatrix = new Matrix4f();
+        this.center = new Vector3f();
+        this.corner = new Vector3f();
+
+        this.lights = MemoryUtil.memAlloc(64 * LIGHT_SIZE);
+        this.grid = MemoryUtil.memAlloc(CLUSTER_COUNT * Integer.BYTES * 2);
+        this.indices = MemoryUtil.memAlloc(1024 * Integer.BYTES);
+        this.lightClusters = new int[64 * 6];
+    }
+
+    /**
+     * @return Whether clustered lighting can be used on this device
+     */
+    public static boolean isSupported() {
+        return VeilRenderSystem.shaderStorageBufferSupported();
+    }
+
+    /**
+     * Collects all visible lights to draw this frame.
+     *
+     * @param lightRenderer The light renderer to get lights from
+     * @param frustum       The culling view frustum
+     */
+    public void prepareLights(LightRenderer lightRenderer, CullFrustum frustum) {
+        this.pointLights.clear();
+        this.areaLights.clear();
+        lightRenderer.forEachVisibleLight(LightTypeRegistry.POINT.get(), frustum, this.pointLights::add);
+        lightRenderer.forEachVisibleLight(LightTypeRegistry.AREA.get(), frustum, this.areaLights::add);
+        this.visibleLights = this.pointLights.size() + this.areaLights.size();
+    }
+
+    /**
+     * Assigns all visible lights to clusters and shades the screen with them.
+     *
+     * @param lightRenderer The light renderer instance
+     */
+    public void renderLights(LightRenderer lightRenderer) {
+        if (this.visibleLights == 0) {
+            return;
+        }
+
+        CameraMatrices matrices = VeilRenderSystem.renderer().getCameraMatrices();
+        float near = Math.abs(matrices.getNearPlane());
+        float far = Math.abs(matrices.getFarPlane());
+        float sliceScale = CLUSTERS_Z / (float) Math.log(far / near);
+
+        this.ensureLightCapacity(this.visibleLights);
+        Arrays.fill(this.clusterCounts, 0);
+        long lightPointer = MemoryUtil.memAddress(this.lights);
+        int index = 0;
+        for (PointLight light : this.pointLights) {
+            this.storePoint(light, lightPointer + (long) index * LIGHT_SIZE);
+            this.assign(index, light.getPosition(), light.getRadius(), matrices, near, sliceScale);
+            index++;
+        }
+        for (AreaLight light : this.areaLights) {
+            this.storeArea(light, lightPointer + (long) index * LIGHT_SIZE);
+            this.assign(index, light.getPosition(), light.getInfluenceRadius(), matrices, near, sliceScale);
+            index++;
+        }
+
+        // Prefix sum the counts into offsets, then fill in the light indices of each cluster
+        int total = 0;
+        long gridPointer = MemoryUtil.memAddress(this.grid);
+        for (int i = 0; i < CLUSTER_COUNT; i++) {
+            this.clusterOffsets[i] = total;
+            MemoryUtil.memPutInt(gridPointer + i * 8L, total);
+            MemoryUtil.memPutInt(gridPointer + i * 8L + 4, this.clusterCounts[i]);
+            total += this.clusterCounts[i];
+        }
+        if (total == 0) {
+            return;
+        }
+
+        if (this.indices.capacity() < total * Integer.BYTES) {
+            this.indices = MemoryUtil.memRealloc(this.indices, Math.max(this.indices.capacity() * 2, total * Integer.BYTES));
+        }
+        long indexPointer = MemoryUtil.memAddress(this.indices);
+        for (int i = 0; i < this.visibleLights; i++) {
+            int offset = i * 6;
+            for (int z = this.lightClusters[offset + 2]; z <= this.lightClusters[offset + 5]; z++) {
+                for (int y = this.lightClusters[offset + 1]; y <= this.lightClusters[offset + 4]; y++) {
+                    for (int x = this.lightClusters[offset]; x <= this.lightClusters[offset + 3]; x++) {
+                        int cluster = (z * CLUSTERS_Y + y) * CLUSTERS_X + x;
+                        MemoryUtil.memPutInt(indexPointer + (long) this.clusterOffsets[cluster]++ * Integer.BYTES, i);
+                    }
+                }
+            }
+        }
+
+        this.lights.limit(this.visibleLights * LIGHT_SIZE);
+        VertexArray.upload(this.lightBuffer, this.lights, VertexArray.DrawUsage.STREAM);
+        this.lights.clear();
+        VertexArray.upload(this.gridBuffer, this.grid, VertexArray.DrawUsage.STREAM);
+        this.indices.limit(total * Integer.BYTES);
+        VertexArray.upload(this.indexBuffer, this.indices, VertexArray.DrawUsage.STREAM);
+        this.indices.clear();
+        this.lightBlock.setSize((long) this.visibleLights * LIGHT_SIZE);
+        this.gridBlock.setSize((long) CLUSTER_COUNT * Integer.BYTES * 2);
+        this.indexBlock.setSize((long) total * Integer.BYTES);
+
+        VeilRenderSystem.bind("VeilClusteredLights", this.lightBlock);
+        VeilRenderSystem.bind("VeilClusterGrid", this.gridBlock);
+        VeilRenderSystem.bind("VeilClusterIndices", this.indexBlock);
+        VeilRenderSystem.setShader(SHADER);
+        if (!lightRenderer.applyShader()) {
+            ShaderProgram shader = Objects.requireNonNull(VeilRenderSystem.getShader());
+            shader.setVectorI("ClusterCount", CLUSTERS_X, CLUSTERS_Y, CLUSTERS_Z);
+            shader.setVector("ClusterDepth", near, sliceScale);
+            VeilRenderSystem.drawScreenQuad();
+            ShaderProgram.unbind();
+        }
+        VeilRenderSystem.unbind(this.lightBlock);
+        VeilRenderSystem.unbind(this.gridBlock);
+        VeilRenderSystem.unbind(this.indexBlock);
+    }
+
+    private void assign(int light, Vector3dc position, float radius, CameraMatrices matrices, float near, float sliceScale) {
+        Vector3fc cameraPos = matrices.getCameraPosition();
+        Matrix4f viewMatrix = matrices.getViewMatrix();
+        Vector3f center = viewMatrix.transformPosition(
+                (float) (position.x() - cameraPos.x()),
+                (float) (position.y() - cameraPos.y()),
+                (float) (position.z() - cameraPos.z()), this.center);
+
+        // The view looks down -z, so depth is the negated z
+        float minDepth = -center.z - radius;
+        float maxDepth = -center.z + radius;
+        int offset = light * 6;
+        int minSlice = getSlice(minDepth, near, sliceScale);
+        int maxSlice = getSlice(maxDepth, near, sliceScale);
+
+        int minX = 0;
+        int minY = 0;
+        int maxX = CLUSTERS_X - 1;
+        int maxY = CLUSTERS_Y - 1;
+        if (minDepth > near) {
+            // The light is fully in front of the camera, so its bounding box can be projected to find the tiles it covers
+            Matrix4f projection = matrices.getProjectionMatrix();
+            float minScreenX = Float.POSITIVE_INFINITY;
+            float minScreenY = Float.POSITIVE_INFINITY;
+            float maxScreenX = Float.NEGATIVE_INFINITY;
+            float maxScreenY = Float.NEGATIVE_INFINITY;
+            for (int i = 0; i < 8; i++) {
+                projection.transformProject(
+                        center.x + ((i & 1) == 0 ? -radius : radius),
+                        center.y + ((i & 2) == 0 ? -radius : radius),
+                        center.z + ((i & 4) == 0 ? -radius : radius), this.corner);
+                minScreenX = Math.min(minScreenX, this.corner.x);
+                minScreenY = Math.min(minScreenY, this.corner.y);
+                maxScreenX = Math.max(maxScreenX, this.corner.x);
+                maxScreenY = Math.max(maxScreenY, this.corner.y);
+            }
+            minX = Mth.clamp((int) Math.floor((minScreenX * 0.5F + 0.5F) * CLUSTERS_X), 0, CLUSTERS_X - 1);
+            minY = Mth.clamp((int) Math.floor((minScreenY * 0.5F + 0.5F) * CLUSTERS_Y), 0, CLUSTERS_Y - 1);
+            maxX = Mth.clamp((int) Math.floor((maxScreenX * 0.5F + 0.5F) * CLUSTERS_X), 0, CLUSTERS_X - 1);
+            maxY = Mth.clamp((int) Math.floor((maxScreenY * 0.5F + 0.5F) * CLUSTERS_Y), 0, CLUSTERS_Y - 1);
+        }
+
+        this.lightClusters[offset] = minX;
+        this.lightClusters[offset + 1] = minY;
+        this.lightClusters[offset + 2] = minSlice;
+        this.lightClusters[offset + 3] = maxX;
+        this.lightClusters[offset + 4] = maxY;
+        this.lightClusters[offset + 5] = maxSlice;
+        for (int z = minSlice; z <= maxSlice; z++) {
+            for (int y = minY; y <= maxY; y++) {
+                for (int x = minX; x <= maxX; x++) {
+                    this.clusterCounts[(z * CLUSTERS_Y + y) * CLUSTERS_X + x]++;
+                }
+            }
+        }
+    }
+
+    private static int getSlice(float depth, float near, float sliceScale) {
+        if (depth <= near) {
+            return 0;
+        }
+        return Mth.clamp((int) (Math.log(depth / near) * sliceScale), 0, CLUSTERS_Z - 1);
+    }
+
+    private void storePoint(PointLight light, long pointer) {
+        Vector3dc position = light.getPosition();
+        Vector3fc color = light.getColor();
+        float brightness = light.getBrightness();
+        MemoryUtil.memPutFloat(pointer, (float) position.x());
+        MemoryUtil.memPutFloat(pointer + 4, (float) position.y());
+        MemoryUtil.memPutFloat(pointer + 8, (float) position.z());
+        MemoryUtil.memPutFloat(pointer + 12, light.getRadius());
+        MemoryUtil.memPutFloat(pointer + 16, color.x() * brightness);
+        MemoryUtil.memPutFloat(pointer + 20, color.y() * brightness);
+        MemoryUtil.memPutFloat(pointer + 24, color.z() * brightness);
+        MemoryUtil.memPutFloat(pointer + 28, POINT_LIGHT);
+    }
+
+    private void storeArea(AreaLight light, long pointer) {
+        Vector3dc position = light.getPosition();
+        Vector3fc color = light.getColor();
+        Vector2fc size = light.getSize();
+        float brightness = light.getBrightness();
+        MemoryUtil.memPutFloat(pointer, (float) position.x());
+        MemoryUtil.memPutFloat(pointer + 4, (float) position.y());
+        MemoryUtil.memPutFloat(pointer + 8, (float) position.z());
+        MemoryUtil.memPutFloat(pointer + 12, light.getInfluenceRadius());
+        MemoryUtil.memPutFloat(pointer + 16, color.x() * brightness);
+        MemoryUtil.memPutFloat(pointer + 20, color.y() * brightness);
+        MemoryUtil.memPutFloat(pointer + 24, color.z() * brightness);
+        MemoryUtil.memPutFloat(pointer + 28, AREA_LIGHT);
+        MemoryUtil.memPutFloat(pointer + 32, size.x());
+        MemoryUtil.memPutFloat(pointer + 36, size.y());
+        MemoryUtil.memPutFloat(pointer + 40, Mth.clamp(light.getAngle(), 0.0F, Mth.TWO_PI));
+        MemoryUtil.memPutFloat(pointer + 44, light.getDistance());
+        // Same matrix the instanced area light renderer uses
+        this.areaMatrix.rotation(light.getOrientation()).translate((float) position.x(), (float) position.y(), (float) position.z());
+        this.areaMatrix.getToAddress(pointer + 48);
+    }
+
+    private void ensureLightCapacity(int count) {
+        if (this.lights.capacity() < count * LIGHT_SIZE) {
+            this.lights = MemoryUtil.memRealloc(this.lights, Math.max(this.lights.capacity() * 2, count * LIGHT_SIZE));
+        }
+        if (this.lightClusters.length < count * 6) {
+            this.lightClusters = new int[Math.max(this.lightClusters.length * 2, count * 6)];
+        }
+    }
+
+    /**
+     * @return The number of lights visible last frame
+     */
+    public int getVisibleLights() {
+        return this.visibleLights;
+    }
+
+    @Override
+    public void free() {
+        this.lightBlock.free();
+        this.gridBlock.free();
+        this.indexBlock.free();
+        glDeleteBuffers(this.lightBuffer);
+        glDeleteBuffers(this.gridBuffer);
+        glDeleteBuffers(this.indexBuffer);
+        MemoryUtil.memFree(this.lights);
+        MemoryUtil.memFree(this.grid);
+        MemoryUtil.memFree(this.indices);
+    }
+}
@@ -8,27 +8,39 @@ import foundry.veil.api.client.render.VeilRenderSystem;
 import foundry.veil.api.client.render.light.DirectionalLight;
 import foundry.veil.api.client.render.light.renderer.LightRenderer;
 import foundry.veil.api.client.render.light.renderer.LightTypeRenderer;
-import foundry.veil.api.client.render.shader.program.ShaderProgram;
+import foundry.veil.api.client.render.shader.block.ShaderBlock;
 import foundry.veil.api.client.render.vertex.VertexArray;
 import net.minecraft.resources.ResourceLocation;
 import org.jetbrains.annotations.ApiStatus;
 import org.joml.Vector3f;
 import org.joml.Vector3fc;
 
+import java.nio.ByteBuffer;
 import java.util.List;
-import java.util.Objects;
 import java.util.Set;
 
+/**
+ * Draws all directional lights in a single full-screen pass. Lights are stored in a uniform block, so the G-buffer
+ * is only read once no matter how many lights there are.
+ */
 @ApiStatus.Internal
 public class DirectionalLightRenderer implements LightTypeRenderer<DirectionalLight> {
 
     private static final Vector3f DIRECTION = new Vector3f();
     private static final ResourceLocation SHADER = Veil.veilPath("light/directional");
 
+    // Must match MAX_DIRECTIONAL_LIGHTS in the directional light shader
+    private static final int MAX_LIGHTS = 64;
+    // std140 layout: int count padded to 16 bytes, then a vec3 color and vec3 direction per light
+    private static final int LIGHT_SIZE = Float.BYTES * 8;
+
     private final VertexArray vertexArray;
+    private final ShaderBlock<List<DirectionalLight>> lightBlock;
     private int visibleLights;
+    private boolean dirty;
 
     public DirectionalLightRenderer() {
+        this.lightBlock = ShaderBlock.withSize(ShaderBlock.BufferBinding.UNIFORM, 16 + (long) MAX_LIGHTS * LIGHT_SIZE, DirectionalLightRenderer::write);
         this.vertexArray = VertexArray.create();
         this.vertexArray.upload(createMesh(), VertexArray.DrawUsage.STATIC);
         VertexArray.unbind();
@@ -41,8 +53,32 @@ public class DirectionalLightRenderer implements LightTypeRenderer<DirectionalLi
         return bufferBuilder.buildOrThrow();
     }
 
+    private static void write(List<DirectionalLight> lights, ByteBuffer buffer) {
+        buffer.putInt(0, lights.size());
+        for (int i = 0; i < lights.size(); i++) {
+            DirectionalLight light = lights.get(i);
+            int offset = 16 + i * LIGHT_SIZE;
+            Vector3fc lightColor = light.getColor();
+            float brightness = light.getBrightness();
+            buffer.putFloat(offset, lightColor.x() * brightness);
+            buffer.putFloat(offset + Float.BYTES, lightColor.y() * brightness);
+            buffer.putFloat(offset + Float.BYTES * 2, lightColor.z() * brightness);
+            DIRECTION.set(light.getDirection()).normalize().get(offset + Float.BYTES * 4, buffer);
+        }
+    }
+
     @Override
     public void prepareLights(LightRenderer lightRenderer, List<DirectionalLight> lights, Set<DirectionalLight> removedLights, CullFrustum frustum) {
+        // Lights past the limit are drawn in more passes, which reuse the block
+        if (!removedLights.isEmpty() || lights.size() != this.visibleLights || lights.size() > MAX_LIGHTS) {
+            this.dirty = true;
+        }
+        for (DirectionalLight light : lights) {
+            if (light.isDirty()) {
+                light.clean();
+                this.dirty = true;
+            }
+        }
         this.visibleLights = lights.size();
     }
 
@@ -53,17 +89,18 @@ public class DirectionalLightRenderer implements LightTypeRenderer<DirectionalLi
             return;
         }
 
-        ShaderProgram shader = Objects.requireNonNull(VeilRenderSystem.getShader());
         this.vertexArray.bind();
-        for (DirectionalLight light : lights) {
-            Vector3fc lightColor = light.getColor();
-            float brightness = light.getBrightness();
-            shader.setVector("LightColor", lightColor.x() * brightness, lightColor.y() * brightness, lightColor.z() * brightness);
-            shader.setVector("LightDirection", DIRECTION.set(light.getDirection()).normalize());
+        for (int i = 0; i < lights.size(); i += MAX_LIGHTS) {
+            if (this.dirty) {
+                this.lightBlock.set(lights.subList(i, Math.min(i + MAX_LIGHTS, lights.size())));
+            }
+            VeilRenderSystem.bind("VeilDirectionalLights", this.lightBlock);
             this.vertexArray.draw();
         }
+        this.dirty = false;
 
         VertexArray.unbind();
+        VeilRenderSystem.unbind(this.lightBlock);
     }
 
     @Override
@@ -74,5 +111,6 @@ public class DirectionalLightRenderer implements LightTypeRenderer<DirectionalLi
     @Override
     public void free() {
         this.vertexArray.close();
+        this.lightBlock.free();
     }
 }
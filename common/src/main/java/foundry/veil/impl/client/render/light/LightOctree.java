@@ -0,0 +1,358 @@
+package foundry.veil.impl.client.render.light;
+
+import foundry.veil.api.client.render.CullFrustum;
+import foundry.veil.api.client.render.light.Light;
+import foundry.veil.api.client.render.light.PositionedLight;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import net.minecraft.core.BlockPos;
+import net.minecraft.util.Mth;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+import org.joml.Vector3dc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * <p>Loose octree of lights used to cull and look up lights without testing every light.</p>
+ * <p>The world is split into {@value #ROOT_SIZE} block root cells that are only created when a light is in them.
+ * Each light is stored in the smallest cell that is at least twice as large as its influence radius, so it always
+ * fits inside the loose bounds of that cell. Lights without a position or that are too large are always checked.</p>
+ *
+ * @param <T> The type of lights in the tree
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public class LightOctree<T extends Light> {
+
+    private static final int ROOT_SHIFT = 8;
+    private static final int ROOT_SIZE = 1 << ROOT_SHIFT;
+    private static final int MAX_DEPTH = 5;
+
+    private final Long2ObjectMap<Node<T>> roots;
+    private final Reference2ObjectMap<T, Entry<T>> entries;
+    private final List<Entry<T>> unbounded;
+
+    public LightOctree() {
+        this.roots = new Long2ObjectOpenHashMap<>();
+        this.entries = new Reference2ObjectOpenHashMap<>();
+        this.unbounded = new ArrayList<>();
+    }
+
+    /**
+     * Adds the specified light to the tree or moves it if it is already in the tree.
+     *
+     * @param light The light to add
+     */
+    public void update(T light) {
+        Entry<T> entry = this.entries.get(light);
+        if (entry == null) {
+            entry = new Entry<>(light);
+            this.entries.put(light, entry);
+        } else if (!entry.updateBounds()) {
+            // Still inside the same cell, so the loose bounds still contain the light
+            return;
+        } else {
+            this.unlink(entry);
+        }
+        this.link(entry);
+    }
+
+    /**
+     * Removes the specified light from the tree.
+     *
+     * @param light The light to remove
+     */
+    public void remove(T light) {
+        Entry<T> entry = this.entries.remove(light);
+        if (entry != null) {
+            this.unlink(entry);
+        }
+    }
+
+    /**
+     * Removes all lights from the tree.
+     */
+    public void clear() {
+        this.roots.clear();
+        this.entries.clear();
+        this.unbounded.clear();
+    }
+
+    private void link(Entry<T> entry) {
+        if (entry.level == -1) {
+            entry.node = null;
+            entry.index = this.unbounded.size();
+            this.unbounded.add(entry);
+            return;
+        }
+
+        int rootX = entry.cellX >> entry.level;
+        int rootY = entry.cellY >> entry.level;
+        int rootZ = entry.cellZ >> entry.level;
+        long key = BlockPos.asLong(rootX, rootY, rootZ);
+        Node<T> node = this.roots.get(key);
+        if (node == null) {
+            node = new Node<>(null, 0, 0, rootX, rootY, rootZ);
+            this.roots.put(key, node);
+        }
+
+        node.count++;
+        for (int level = 1; level <= entry.level; level++) {
+            int childShift = entry.level - level;
+            int x = entry.cellX >> childShift;
+            int y = entry.cellY >> childShift;
+            int z = entry.cellZ >> childShift;
+            int child = (x & 1) | (y & 1) << 1 | (z & 1) << 2;
+            if (node.children == null) {
+                //noinspection unchecked
+                node.children = new Node[8];
+            }
+            Node<T> next = node.children[child];
+            if (next == null) {
+                next = new Node<>(node, child, level, x, y, z);
+                node.children[child] = next;
+            }
+            node = next;
+            node.count++;
+        }
+
+        entry.node = node;
+        entry.index = node.entries.size();
+        node.entries.add(entry);
+    }
+
+    private void unlink(Entry<T> entry) {
+        Node<T> node = entry.node;
+        List<Entry<T>> list = node != null ? node.entries : this.unbounded;
+
+        // Move the last entry into the gap so nothing has to be shifted
+        Entry<T> last = list.removeLast();
+        if (entry.index < list.size()) {
+            list.set(entry.index, last);
+            last.index = entry.index;
+        }
+        entry.node = null;
+
+        while (node != null) {
+            node.count--;
+            if (node.count == 0) {
+                if (node.parent != null) {
+                    node.parent.children[node.childIndex] = null;
+                } else {
+                    this.roots.remove(BlockPos.asLong(node.x, node.y, node.z));
+                }
+            }
+            node = node.parent;
+        }
+    }
+
+    /**
+     * Runs the specified action for every light that could be visible in the specified frustum.
+     *
+     * @param frustum The frustum to check visibility with
+     * @param action  The action to run for each light
+     */
+    public void forEachVisible(CullFrustum frustum, Consumer<? super T> action) {
+        for (Entry<T> entry : this.unbounded) {
+            if (!entry.positioned || !Float.isFinite(entry.radius) || frustum.testSphere(entry.x, entry.y, entry.z, entry.radius)) {
+                action.accept(entry.light);
+            }
+        }
+        for (Node<T> root : this.roots.values()) {
+            this.forEachVisible(root, frustum, action);
+        }
+    }
+
+    private void forEachVisible(Node<T> node, CullFrustum frustum, Consumer<? super T> action) {
+        double size = ROOT_SIZE >> node.level;
+        double minX = node.x * size;
+        double minY = node.y * size;
+        double minZ = node.z * size;
+        double loose = size / 2.0;
+        if (!frustum.testAab(minX - loose, minY - loose, minZ - loose, minX + size + loose, minY + size + loose, minZ + size + loose)) {
+            return;
+        }
+
+        for (Entry<T> entry : node.entries) {
+            if (frustum.testSphere(entry.x, entry.y, entry.z, entry.radius)) {
+                action.accept(entry.light);
+            }
+        }
+        if (node.children != null) {
+            for (Node<T> child : node.children) {
+                if (child != null) {
+                    this.forEachVisible(child, frustum, action);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the specified action for every light that can reach into the specified sphere.
+     *
+     * @param x      The x position of the sphere center
+     * @param y      The y position of the sphere center
+     * @param z      The z position of the sphere center
+     * @param radius The radius of the sphere
+     * @param action The action to run for each light
+     */
+    public void forEachNear(double x, double y, double z, double radius, Consumer<? super T> action) {
+        for (Entry<T> entry : this.unbounded) {
+            if (!entry.positioned || entry.intersects(x, y, z, radius)) {
+                action.accept(entry.light);
+            }
+        }
+
+        // Any light that reaches the sphere must be in a root whose loose bounds touch it
+        double reach = radius + ROOT_SIZE / 2.0;
+        int minX = Mth.floor(x - reach) >> ROOT_SHIFT;
+        int minY = Mth.floor(y - reach) >> ROOT_SHIFT;
+        int minZ = Mth.floor(z - reach) >> ROOT_SHIFT;
+        int maxX = Mth.floor(x + reach) >> ROOT_SHIFT;
+        int maxY = Mth.floor(y + reach) >> ROOT_SHIFT;
+        int maxZ = Mth.floor(z + reach) >> ROOT_SHIFT;
+        for (int rootX = minX; rootX <= maxX; rootX++) {
+            for (int rootY = minY; rootY <= maxY; rootY++) {
+                for (int rootZ = minZ; rootZ <= maxZ; rootZ++) {
+                    Node<T> root = this.roots.get(BlockPos.asLong(rootX, rootY, rootZ));
+                    if (root != null) {
+                        this.forEachNear(root, x, y, z, radius, action);
+                    }
+                }
+            }
+        }
+    }
+
+    private void forEachNear(Node<T> node, double x, double y, double z, double radius, Consumer<? super T> action) {
+        double size = ROOT_SIZE >> node.level;
+        double loose = size / 2.0;
+        double minX = node.x * size - loose;
+        double minY = node.y * size - loose;
+        double minZ = node.z * size - loose;
+        double maxX = minX + size * 2.0;
+        double maxY = minY + size * 2.0;
+        double maxZ = minZ + size * 2.0;
+        double dx = x - Mth.clamp(x, minX, maxX);
+        double dy = y - Mth.clamp(y, minY, maxY);
+        double dz = z - Mth.clamp(z, minZ, maxZ);
+        if (dx * dx + dy * dy + dz * dz > radius * radius) {
+            return;
+        }
+
+        for (Entry<T> entry : node.entries) {
+            if (entry.intersects(x, y, z, radius)) {
+                action.accept(entry.light);
+            }
+        }
+        if (node.children != null) {
+            for (Node<T> child : node.children) {
+                if (child != null) {
+                    this.forEachNear(child, x, y, z, radius, action);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The number of lights in the tree
+     */
+    public int size() {
+        return this.entries.size();
+    }
+
+    private static class Node<T extends Light> {
+
+        private final @Nullable Node<T> parent;
+        private final int childIndex;
+        private final int level;
+        private final int x;
+        private final int y;
+        private final int z;
+        private final List<Entry<T>> entries;
+        private Node<T>[] children;
+        private int count;
+
+        private Node(@Nullable Node<T> parent, int childIndex, int level, int x, int y, int z) {
+            this.parent = parent;
+            this.childIndex = childIndex;
+            this.level = level;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.entries = new ArrayList<>();
+        }
+    }
+
+    private static class Entry<T extends Light> {
+
+        private final T light;
+        private final boolean positioned;
+        private @Nullable Node<T> node;
+        private int index;
+        private double x;
+        private double y;
+        private double z;
+        private float radius;
+        private int level;
+        private int cellX;
+        private int cellY;
+        private int cellZ;
+
+        private Entry(T light) {
+            this.light = light;
+            this.positioned = light instanceof PositionedLight<?>;
+            this.updateBounds();
+        }
+
+        /**
+         * Reads the bounds of the light again.
+         *
+         * @return Whether the light has to be moved to a different cell
+         */
+        private boolean updateBounds() {
+            int level = -1;
+            int cellX = 0;
+            int cellY = 0;
+            int cellZ = 0;
+            if (this.light instanceof PositionedLight<?> positionedLight) {
+                Vector3dc position = positionedLight.getPosition();
+                this.x = position.x();
+                this.y = position.y();
+                this.z = position.z();
+                this.radius = positionedLight.getInfluenceRadius();
+
+                if (Float.isFinite(this.radius) && this.radius <= ROOT_SIZE / 2.0F) {
+                    level = 0;
+                    while (level < MAX_DEPTH && this.radius <= (ROOT_SIZE >> (level + 1)) / 2.0F) {
+                        level++;
+                    }
+
+                    int shift = ROOT_SHIFT - level;
+                    cellX = Mth.floor(this.x) >> shift;
+                    cellY = Mth.floor(this.y) >> shift;
+                    cellZ = Mth.floor(this.z) >> shift;
+                }
+            }
+
+            boolean moved = level != this.level || cellX != this.cellX || cellY != this.cellY || cellZ != this.cellZ;
+            this.level = level;
+            this.cellX = cellX;
+            this.cellY = cellY;
+            this.cellZ = cellZ;
+            return moved;
+        }
+
+        private boolean intersects(double x, double y, double z, double radius) {
+            double dx = this.x - x;
+            double dy = this.y - y;
+            double dz = this.z - z;
+            double reach = this.radius + radius;
+            return dx * dx + dy * dy + dz * dz <= reach * reach;
+        }
+    }
+}
@@ -0,0 +1,524 @@
+package foundry.veil.impl.client.render.light.shadow;
+
+import com.mojang.blaze3d.platform.GlStateManager;
+import com.mojang.blaze3d.systems.RenderSystem;
+import com.mojang.blaze3d.vertex.VertexBuffer;
+import foundry.veil.Veil;
+import foundry.veil.api.client.registry.LightTypeRegistry;
+import foundry.veil.api.client.render.CullFrustum;
+import foundry.veil.api.client.render.VeilRenderSystem;
+import foundry.veil.api.client.render.framebuffer.AdvancedFbo;
+import foundry.veil.api.client.render.light.AreaLight;
+import foundry.veil.api.client.render.light.renderer.LightRenderer;
+import foundry.veil.api.client.render.shader.program.ShaderProgram;
+import foundry.veil.mixin.perspective.accessor.LevelRendererAccessor;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.renderer.RenderType;
+import net.minecraft.client.renderer.ViewArea;
+import net.minecraft.client.renderer.chunk.SectionRenderDispatcher;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.resources.ResourceLocation;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+import org.joml.*;
+import org.lwjgl.system.NativeResource;
+
+import java.lang.Math;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.lwjgl.opengl.GL11C.*;
+import static org.lwjgl.opengl.GL14C.GL_DEPTH_COMPONENT24;
+import static org.lwjgl.opengl.GL30C.*;
+
+/**
+ * <p>Renders shadow maps for area lights into a single depth atlas.</p>
+ * <p>Shadow maps only contain static chunk geometry, so each tile is cached until the light moves or a chunk section
+ * the light can reach is rebuilt. Only a few tiles are drawn each frame, nearest lights first, so adding many shadowed
+ * lights spreads the cost over several frames instead of stalling a single one.</p>
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public class AreaLightShadowRenderer implements NativeResource {
+
+    private static final ResourceLocation SHADER = Veil.veilPath("light/shadow_depth");
+    private static final RenderType[] LAYERS = {RenderType.solid(), RenderType.cutoutMipped(), RenderType.cutout()};
+
+    // Must match SHADOW_NEAR in the area light shader
+    private static final float NEAR_PLANE = 0.05F;
+    private static final float MAX_HALF_FOV = (float) Math.toRadians(75.0);
+
+    private static final int ATLAS_SIZE = 4096;
+    private static final int MIN_TILE_SIZE = 128;
+    private static final int MAX_UPDATES_PER_FRAME = 4;
+    private static final int EVICT_FRAMES = 200;
+    // Sections that are never rebuilt still refresh their shadows eventually
+    private static final int MAX_REBUILD_FRAMES = 200;
+    // Radius of the sphere around a chunk section
+    private static final double SECTION_RADIUS = 8.0 * Math.sqrt(3.0);
+
+    private final ShadowTileAllocator allocator;
+    private final Reference2ObjectMap<AreaLight, ShadowState> states;
+    private final List<ShadowState> pending;
+    private final Reference2ObjectMap<SectionRenderDispatcher.RenderSection, RebuildingSection> rebuildingSections;
+    private final Matrix4f shadowMatrix;
+    private final FrustumIntersection frustum;
+    private int texture;
+    private int framebuffer;
+    private boolean unsupported;
+    private int frame;
+
+    public AreaLightShadowRenderer() {
+        this.allocator = new ShadowTileAllocator(ATLAS_SIZE, MIN_TILE_SIZE);
+        this.states = new Reference2ObjectOpenHashMap<>();
+        this.pending = new ArrayList<>();
+        this.rebuildingSections = new Reference2ObjectOpenHashMap<>();
+        this.shadowMatrix = new Matrix4f();
+        this.frustum = new FrustumIntersection();
+    }
+
+    private boolean allocateAtlas() {
+        if (this.framebuffer != 0) {
+            return true;
+        }
+        if (this.unsupported) {
+            return false;
+        }
+
+        int size = Math.min(ATLAS_SIZE, RenderSystem.maxSupportedTextureSize());
+        if (size < ATLAS_SIZE) {
+            Veil.LOGGER.warn("Shadow atlas requires {}x{} textures, but only {}x{} are supported", ATLAS_SIZE, ATLAS_SIZE, size, size);
+            this.unsupported = true;
+            return false;
+        }
+
+        this.texture = GlStateManager._genTexture();
+        RenderSystem.bindTexture(this.texture);
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_DEPTH_COMPONENT24, ATLAS_SIZE, ATLAS_SIZE, 0, GL_DEPTH_COMPONENT, GL_FLOAT, 0L);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+        RenderSystem.bindTexture(0);
+
+        this.framebuffer = GlStateManager.glGenFramebuffers();
+        GlStateManager._glBindFramebuffer(GL_FRAMEBUFFER, this.framebuffer);
+        glFramebufferTexture2D(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, GL_TEXTURE_2D, this.texture, 0);
+        glDrawBuffer(GL_NONE);
+        glReadBuffer(GL_NONE);
+        int status = glCheckFramebufferStatus(GL_FRAMEBUFFER);
+        AdvancedFbo.unbind();
+        if (status != GL_FRAMEBUFFER_COMPLETE) {
+            Veil.LOGGER.error("Failed to create shadow atlas framebuffer: 0x{}", Integer.toHexString(status));
+            this.free();
+            this.unsupported = true;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Assigns shadow tiles to visible shadowed lights and redraws as many out of date tiles as the frame budget allows.
+     *
+     * @param lightRenderer The renderer to get lights from
+     * @param cullFrustum   The camera frustum
+     */
+    public void update(LightRenderer lightRenderer, CullFrustum cullFrustum) {
+        this.frame++;
+        this.updateRebuiltSections(lightRenderer);
+        Vector3dc camera = cullFrustum.getPosition();
+        lightRenderer.forEachVisibleLight(LightTypeRegistry.AREA.get(), cullFrustum, light -> {
+            if (!light.castsShadows()) {
+                return;
+            }
+
+            ShadowState state = this.states.get(light);
+            if (state == null) {
+                state = new ShadowState(light);
+                this.states.put(light, state);
+            }
+            state.lastVisibleFrame = this.frame;
+            state.distanceSq = light.getPosition().distanceSquared(camera);
+        });
+
+        if (this.states.isEmpty()) {
+            return;
+        }
+
+        // Release lights that stopped casting shadows or haven't been seen in a while
+        Iterator<ShadowState> iterator = this.states.values().iterator();
+        while (iterator.hasNext()) {
+            ShadowState state = iterator.next();
+            if (!state.light.castsShadows() || this.frame - state.lastVisibleFrame > EVICT_FRAMES) {
+                this.release(state);
+                iterator.remove();
+                continue;
+            }
+
+            if (state.lastVisibleFrame == this.frame) {
+                state.checkLight();
+                if (state.dirty || state.tile == null || state.tile.size() != getTileSize(state.distanceSq)) {
+                    this.pending.add(state);
+                }
+            }
+        }
+
+        if (this.pending.isEmpty() || !this.allocateAtlas()) {
+            this.pending.clear();
+            return;
+        }
+
+        this.pending.sort((a, b) -> Double.compare(a.distanceSq, b.distanceSq));
+        int updates = Math.min(this.pending.size(), MAX_UPDATES_PER_FRAME);
+        boolean bound = false;
+        for (int i = 0; i < updates; i++) {
+            ShadowState state = this.pending.get(i);
+            if (!this.assignTile(state)) {
+                continue;
+            }
+
+            if (!bound) {
+                if (!this.beginShadows()) {
+                    break;
+                }
+                bound = true;
+            }
+            this.renderTile(state);
+        }
+        this.pending.clear();
+
+        if (bound) {
+            this.endShadows();
+        }
+    }
+
+    private boolean assignTile(ShadowState state) {
+        int size = getTileSize(state.distanceSq);
+        if (state.tile != null && state.tile.size() == size) {
+            return true;
+        }
+
+        if (state.tile != null) {
+            this.allocator.free(state.tile);
+        }
+        state.tile = this.allocator.allocate(size);
+        if (state.tile == null) {
+            // Make room by dropping tiles of lights that are not on screen
+            Iterator<ShadowState> iterator = this.states.values().iterator();
+            while (state.tile == null && iterator.hasNext()) {
+                ShadowState other = iterator.next();
+                if (other.tile != null && other.lastVisibleFrame != this.frame) {
+                    this.allocator.free(other.tile);
+                    other.tile = null;
+                    other.light.setShadowTile(0, 0, 0, 0);
+                    state.tile = this.allocator.allocate(size);
+                }
+            }
+        }
+        if (state.tile == null) {
+            state.light.setShadowTile(0, 0, 0, 0);
+            return false;
+        }
+
+        state.dirty = true;
+        return true;
+    }
+
+    private boolean beginShadows() {
+        ShaderProgram shader = VeilRenderSystem.setShader(SHADER);
+        if (shader == null) {
+            return false;
+        }
+
+        shader.bind();
+        GlStateManager._glBindFramebuffer(GL_FRAMEBUFFER, this.framebuffer);
+        RenderSystem.enableDepthTest();
+        RenderSystem.depthFunc(GL_LEQUAL);
+        RenderSystem.depthMask(true);
+        RenderSystem.disableBlend();
+        RenderSystem.disableCull();
+        GlStateManager._enableScissorTest();
+        return true;
+    }
+
+    private void endShadows() {
+        GlStateManager._disableScissorTest();
+        RenderSystem.enableCull();
+        ShaderProgram.unbind();
+        VertexBuffer.unbind();
+        AdvancedFbo.unbind();
+    }
+
+    private void renderTile(ShadowState state) {
+        AreaLight light = state.light;
+        ShadowTileAllocator.Tile tile = state.tile;
+        Vector3dc position = light.getPosition();
+        float halfFov = Math.min(light.getAngle(), MAX_HALF_FOV);
+        float far = light.getInfluenceRadius();
+
+        // Area lights shine along local +Z, but the projection looks down -Z
+        this.shadowMatrix.setPerspective(halfFov * 2.0F, 1.0F, NEAR_PLANE, Math.max(far, NEAR_PLANE * 2.0F))
+                .scale(1.0F, 1.0F, -1.0F)
+                .rotate(light.getOrientation());
+        this.frustum.set(this.shadowMatrix, false);
+
+        RenderSystem.viewport(tile.x(), tile.y(), tile.size(), tile.size());
+        GlStateManager._scissorBox(tile.x(), tile.y(), tile.size(), tile.size());
+        RenderSystem.clear(GL_DEPTH_BUFFER_BIT, Minecraft.ON_OSX);
+
+        ShaderProgram shader = VeilRenderSystem.getShader();
+        ViewArea viewArea = ((LevelRendererAccessor) Minecraft.getInstance().levelRenderer).getViewArea();
+        if (shader != null && viewArea != null) {
+            shader.setMatrix("ShadowMat", this.shadowMatrix);
+
+            int minX = SectionPos.blockToSectionCoord(position.x() - far);
+            int minY = SectionPos.blockToSectionCoord(position.y() - far);
+            int minZ = SectionPos.blockToSectionCoord(position.z() - far);
+            int maxX = SectionPos.blockToSectionCoord(position.x() + far);
+            int maxY = SectionPos.blockToSectionCoord(position.y() + far);
+            int maxZ = SectionPos.blockToSectionCoord(position.z() + far);
+            BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+            for (int x = minX; x <= maxX; x++) {
+                for (int y = minY; y <= maxY; y++) {
+                    for (int z = minZ; z <= maxZ; z++) {
+                        pos.set(SectionPos.sectionToBlockCoord(x), SectionPos.sectionToBlockCoord(y), SectionPos.sectionToBlockCoord(z));
+                        float offsetX = (float) (pos.getX() - position.x());
+                        float offsetY = (float) (pos.getY() - position.y());
+                        float offsetZ = (float) (pos.getZ() - position.z());
+                        if (!this.frustum.testAab(offsetX, offsetY, offsetZ, offsetX + 16, offsetY + 16, offsetZ + 16)) {
+                            continue;
+                        }
+
+                        // The view area wraps around, so make sure the section is actually the one at this position
+                        SectionRenderDispatcher.RenderSection section = viewArea.getRenderSectionAt(pos);
+                        if (section == null || !section.getOrigin().equals(pos)) {
+                            continue;
+                        }
+
+                        SectionRenderDispatcher.CompiledSection compiled = section.getCompiled();
+                        boolean offsetSet = false;
+                        for (RenderType layer : LAYERS) {
+                            if (compiled.isEmpty(layer)) {
+                                continue;
+                            }
+
+                            if (!offsetSet) {
+                                shader.setVector("ChunkOffset", offsetX, offsetY, offsetZ);
+                                offsetSet = true;
+                            }
+                            VertexBuffer buffer = section.getBuffer(layer);
+                            buffer.bind();
+                            buffer.draw();
+                        }
+                    }
+                }
+            }
+        }
+
+        state.dirty = false;
+        light.setShadowTile((float) tile.x() / ATLAS_SIZE, (float) tile.y() / ATLAS_SIZE, (float) tile.size() / ATLAS_SIZE, (float) Math.tan(halfFov));
+    }
+
+    private void release(ShadowState state) {
+        if (state.tile != null) {
+            this.allocator.free(state.tile);
+            state.tile = null;
+        }
+        state.light.setShadowTile(0, 0, 0, 0);
+    }
+
+    /**
+     * Frees the shadow tile of the specified light right away.
+     *
+     * @param light The light that was removed
+     */
+    public void removeLight(AreaLight light) {
+        ShadowState state = this.states.remove(light);
+        if (state != null) {
+            this.release(state);
+        }
+    }
+
+    /**
+     * Marks the shadows of all lights that can reach the specified section as out of date once the section has been rebuilt.
+     *
+     * @param lightRenderer The renderer to get lights from
+     * @param sectionX      The x position of the section
+     * @param sectionY      The y position of the section
+     * @param sectionZ      The z position of the section
+     */
+    public void invalidateSection(LightRenderer lightRenderer, int sectionX, int sectionY, int sectionZ) {
+        if (this.states.isEmpty()) {
+            return;
+        }
+
+        BlockPos origin = new BlockPos(SectionPos.sectionToBlockCoord(sectionX), SectionPos.sectionToBlockCoord(sectionY), SectionPos.sectionToBlockCoord(sectionZ));
+        ViewArea viewArea = ((LevelRendererAccessor) Minecraft.getInstance().levelRenderer).getViewArea();
+        SectionRenderDispatcher.RenderSection section = viewArea != null ? viewArea.getRenderSectionAt(origin) : null;
+        if (section == null || !section.getOrigin().equals(origin)) {
+            // There is no mesh to wait for
+            this.invalidateLights(lightRenderer, origin);
+            return;
+        }
+
+        // Chunks are meshed off thread, so the shadows are drawn again once the new mesh replaces the current one
+        if (!this.rebuildingSections.containsKey(section)) {
+            this.rebuildingSections.put(section, new RebuildingSection(origin, section.getCompiled(), this.frame));
+        }
+    }
+
+    private void updateRebuiltSections(LightRenderer lightRenderer) {
+        if (this.rebuildingSections.isEmpty()) {
+            return;
+        }
+
+        Iterator<Reference2ObjectMap.Entry<SectionRenderDispatcher.RenderSection, RebuildingSection>> iterator = this.rebuildingSections.reference2ObjectEntrySet().iterator();
+        while (iterator.hasNext()) {
+            Reference2ObjectMap.Entry<SectionRenderDispatcher.RenderSection, RebuildingSection> entry = iterator.next();
+            SectionRenderDispatcher.RenderSection section = entry.getKey();
+            RebuildingSection rebuilding = entry.getValue();
+
+            // The compiled section is only replaced after the new mesh has been uploaded
+            SectionRenderDispatcher.CompiledSection compiled = section.getCompiled();
+            boolean moved = !section.getOrigin().equals(rebuilding.origin);
+            if (compiled == rebuilding.compiled && !moved && this.frame - rebuilding.startFrame < MAX_REBUILD_FRAMES) {
+                continue;
+            }
+
+            this.invalidateLights(lightRenderer, rebuilding.origin);
+            if (!moved && section.isDirty()) {
+                // An older rebuild finished first, so keep waiting for the latest one
+                rebuilding.compiled = compiled;
+                rebuilding.startFrame = this.frame;
+                continue;
+            }
+            iterator.remove();
+        }
+    }
+
+    private void invalidateLights(LightRenderer lightRenderer, BlockPos origin) {
+        lightRenderer.forEachLightNear(LightTypeRegistry.AREA.get(),
+                origin.getX() + 8.0,
+                origin.getY() + 8.0,
+                origin.getZ() + 8.0,
+                SECTION_RADIUS,
+                light -> {
+                    ShadowState state = this.states.get(light);
+                    if (state != null) {
+                        state.dirty = true;
+                    }
+                });
+    }
+
+    private static int getTileSize(double distanceSq) {
+        if (distanceSq < 24 * 24) {
+            return 512;
+        }
+        if (distanceSq < 64 * 64) {
+            return 256;
+        }
+        return MIN_TILE_SIZE;
+    }
+
+    /**
+     * @return The OpenGL id of the shadow atlas depth texture or <code>0</code> if no shadows have been drawn yet
+     */
+    public int getAtlasTexture() {
+        return this.texture;
+    }
+
+    /**
+     * @return The number of lights with a shadow tile
+     */
+    public int getShadowedLights() {
+        int count = 0;
+        for (ShadowState state : this.states.values()) {
+            if (state.tile != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return The fraction of the atlas used by shadow tiles
+     */
+    public float getAtlasUsage() {
+        return this.allocator.getUsage();
+    }
+
+    @Override
+    public void free() {
+        for (ShadowState state : this.states.values()) {
+            state.light.setShadowTile(0, 0, 0, 0);
+        }
+        this.states.clear();
+        this.rebuildingSections.clear();
+        this.allocator.clear();
+        if (this.framebuffer != 0) {
+            GlStateManager._glDeleteFramebuffers(this.framebuffer);
+            this.framebuffer = 0;
+        }
+        if (this.texture != 0) {
+            RenderSystem.deleteTexture(this.texture);
+            this.texture = 0;
+        }
+    }
+
+    private static class RebuildingSection {
+
+        private final BlockPos origin;
+        private SectionRenderDispatcher.CompiledSection compiled;
+        private int startFrame;
+
+        private RebuildingSection(BlockPos origin, SectionRenderDispatcher.CompiledSection compiled, int startFrame) {
+            this.origin = origin;
+            this.compiled = compiled;
+            this.startFrame = startFrame;
+        }
+    }
+
+    private static class ShadowState {
+
+        private final AreaLight light;
+        private final Vector3d position;
+        private final Quaternionf orientation;
+        private float angle;
+        private float distance;
+        private @Nullable ShadowTileAllocator.Tile tile;
+        private boolean dirty;
+        private int lastVisibleFrame;
+        private double distanceSq;
+
+        private ShadowState(AreaLight light) {
+            this.light = light;
+            this.position = new Vector3d(light.getPosition());
+            this.orientation = new Quaternionf(light.getOrientation());
+            this.angle = light.getAngle();
+            this.distance = light.getInfluenceRadius();
+            this.dirty = true;
+        }
+
+        /**
+         * Marks the shadow as out of date if the light moved since it was last drawn.
+         */
+        private void checkLight() {
+            Vector3dc position = this.light.getPosition();
+            Quaternionfc orientation = this.light.getOrientation();
+            float angle = this.light.getAngle();
+            float distance = this.light.getInfluenceRadius();
+            if (!this.position.equals(position) || !this.orientation.equals(orientation) || this.angle != angle || this.distance != distance) {
+                this.position.set(position);
+                this.orientation.set(orientation);
+                this.angle = angle;
+                this.distance = distance;
+                this.dirty = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package foundry.veil.impl.client.render.light.shadow;
+
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * <p>Splits a square atlas into power of two tiles.</p>
+ * <p>Free space is kept per tile size. Large tiles are split into four when a smaller tile is needed and
+ * are merged again once all four quarters are free.</p>
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public class ShadowTileAllocator {
+
+    private final int size;
+    private final int minTileSize;
+    private final IntSet[] free;
+    private int usedArea;
+
+    /**
+     * Creates a new allocator.
+     *
+     * @param size        The width and height of the atlas. Must be a power of two
+     * @param minTileSize The smallest tile that can be allocated. Must be a power of two
+     */
+    public ShadowTileAllocator(int size, int minTileSize) {
+        if (Integer.bitCount(size) != 1 || Integer.bitCount(minTileSize) != 1 || minTileSize > size) {
+            throw new IllegalArgumentException("Invalid atlas size " + size + " with minimum tile size " + minTileSize);
+        }
+
+        this.size = size;
+        this.minTileSize = minTileSize;
+        this.free = new IntSet[Integer.numberOfTrailingZeros(size / minTileSize) + 1];
+        for (int i = 0; i < this.free.length; i++) {
+            this.free[i] = new IntOpenHashSet();
+        }
+        this.free[0].add(0);
+    }
+
+    private int getLevel(int tileSize) {
+        int clamped = Math.max(this.minTileSize, Math.min(this.size, Integer.highestOneBit(tileSize)));
+        return Integer.numberOfTrailingZeros(this.size / clamped);
+    }
+
+    /**
+     * Allocates a new tile.
+     *
+     * @param tileSize The size of the tile to allocate. This is rounded down to a power of two between the minimum tile size and the atlas size
+     * @return The allocated tile or <code>null</code> if there is no space left
+     */
+    public @Nullable Tile allocate(int tileSize) {
+        int level = this.getLevel(tileSize);
+
+        // Find the smallest free tile that is large enough
+        int found = level;
+        while (found >= 0 && this.free[found].isEmpty()) {
+            found--;
+        }
+        if (found < 0) {
+            return null;
+        }
+
+        IntIterator iterator = this.free[found].iterator();
+        int cell = iterator.nextInt();
+        iterator.remove();
+
+        // Split until the tile is the right size, keeping the first quarter every time
+        for (int i = found; i < level; i++) {
+            int cells = 1 << i;
+            int x = (cell % cells) * 2;
+            int y = (cell / cells) * 2;
+            int childCells = cells * 2;
+            this.free[i + 1].add(x + 1 + y * childCells);
+            this.free[i + 1].add(x + (y + 1) * childCells);
+            this.free[i + 1].add(x + 1 + (y + 1) * childCells);
+            cell = x + y * childCells;
+        }
+
+        int cells = 1 << level;
+        int size = this.size >> level;
+        this.usedArea += size * size;
+        return new Tile((cell % cells) * size, (cell / cells) * size, size);
+    }
+
+    /**
+     * Returns the space used by the specified tile to the atlas.
+     *
+     * @param tile The tile to free
+     */
+    public void free(Tile tile) {
+        int level = Integer.numberOfTrailingZeros(this.size / tile.size());
+        int cells = 1 << level;
+        int x = tile.x() / tile.size();
+        int y = tile.y() / tile.size();
+        this.usedArea -= tile.size() * tile.size();
+
+        while (level > 0) {
+            int baseX = x & ~1;
+            int baseY = y & ~1;
+            int cell = x + y * cells;
+            IntSet free = this.free[level];
+
+            boolean merge = true;
+            for (int i = 0; i < 4; i++) {
+                int sibling = baseX + (i & 1) + (baseY + (i >> 1)) * cells;
+                if (sibling != cell && !free.contains(sibling)) {
+                    merge = false;
+                    break;
+                }
+            }
+            if (!merge) {
+                free.add(cell);
+                return;
+            }
+
+            for (int i = 0; i < 4; i++) {
+                free.remove(baseX + (i & 1) + (baseY + (i >> 1)) * cells);
+            }
+            x >>= 1;
+            y >>= 1;
+            cells >>= 1;
+            level--;
+        }
+        this.free[0].add(0);
+    }
+
+    /**
+     * Frees every tile at once.
+     */
+    public void clear() {
+        for (IntSet set : this.free) {
+            set.clear();
+        }
+        this.free[0].add(0);
+        this.usedArea = 0;
+    }
+
+    /**
+     * @return The width and height of the atlas
+     */
+    public int getSize() {
+        return this.size;
+    }
+
+    /**
+     * @return The fraction of the atlas currently used by tiles
+     */
+    public float getUsage() {
+        return (float) this.usedArea / ((float) this.size * this.size);
+    }
+
+    /**
+     * A square region of the atlas.
+     *
+     * @param x    The x position of the tile in pixels
+     * @param y    The y position of the tile in pixels
+     * @param size The width and height of the tile in pixels
+     */
+    public record Tile(int x, int y, int size) {
+    }
+}
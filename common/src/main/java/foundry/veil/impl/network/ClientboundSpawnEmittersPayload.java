@@ -0,0 +1,122 @@
+package foundry.veil.impl.network;
+
+import foundry.veil.Veil;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import net.minecraft.core.SectionPos;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.network.codec.StreamCodec;
+import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
+import net.minecraft.resources.ResourceLocation;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Spawns any number of Quasar emitters on the client.</p>
+ * <p>Emitter names are written once into a palette and positions are written as fixed-point offsets from the origin section,
+ * so most spawns only take a few bytes.</p>
+ *
+ * @param origin The section all positions are relative to
+ * @param spawns All emitters to spawn
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public record ClientboundSpawnEmittersPayload(SectionPos origin, List<Spawn> spawns) implements CustomPacketPayload {
+
+    public static final Type<ClientboundSpawnEmittersPayload> TYPE = new Type<>(Veil.veilPath("spawn_emitters"));
+    public static final StreamCodec<FriendlyByteBuf, ClientboundSpawnEmittersPayload> CODEC = StreamCodec.ofMember(ClientboundSpawnEmittersPayload::write, ClientboundSpawnEmittersPayload::read);
+
+    /**
+     * The number of fixed-point steps in a single block.
+     */
+    private static final double PRECISION = 256.0;
+
+    public ClientboundSpawnEmittersPayload {
+        spawns = List.copyOf(spawns);
+    }
+
+    private static ClientboundSpawnEmittersPayload read(FriendlyByteBuf buf) {
+        SectionPos origin = SectionPos.of(buf.readLong());
+        int paletteSize = buf.readVarInt();
+        ResourceLocation[] palette = new ResourceLocation[paletteSize];
+        for (int i = 0; i < paletteSize; i++) {
+            palette[i] = buf.readResourceLocation();
+        }
+
+        double originX = origin.minBlockX();
+        double originY = origin.minBlockY();
+        double originZ = origin.minBlockZ();
+        int count = buf.readVarInt();
+        List<Spawn> spawns = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ResourceLocation emitter = palette[buf.readVarInt()];
+            double x = originX + readOffset(buf);
+            double y = originY + readOffset(buf);
+            double z = originZ + readOffset(buf);
+            spawns.add(new Spawn(emitter, x, y, z, buf.readVarInt() - 1));
+        }
+        return new ClientboundSpawnEmittersPayload(origin, spawns);
+    }
+
+    private void write(FriendlyByteBuf buf) {
+        buf.writeLong(this.origin.asLong());
+
+        Object2IntMap<ResourceLocation> palette = new Object2IntOpenHashMap<>();
+        List<ResourceLocation> names = new ArrayList<>();
+        for (Spawn spawn : this.spawns) {
+            if (!palette.containsKey(spawn.emitter)) {
+                palette.put(spawn.emitter, names.size());
+                names.add(spawn.emitter);
+            }
+        }
+        buf.writeVarInt(names.size());
+        for (ResourceLocation name : names) {
+            buf.writeResourceLocation(name);
+        }
+
+        double originX = this.origin.minBlockX();
+        double originY = this.origin.minBlockY();
+        double originZ = this.origin.minBlockZ();
+        buf.writeVarInt(this.spawns.size());
+        for (Spawn spawn : this.spawns) {
+            buf.writeVarInt(palette.getInt(spawn.emitter));
+            writeOffset(buf, spawn.x - originX);
+            writeOffset(buf, spawn.y - originY);
+            writeOffset(buf, spawn.z - originZ);
+            // Entity ids are never negative, so 0 can mean no entity
+            buf.writeVarInt(spawn.entityId + 1);
+        }
+    }
+
+    private static void writeOffset(FriendlyByteBuf buf, double offset) {
+        // A long fits any offset inside the world border, where an int would overflow past ~8M blocks
+        long value = Math.round(offset * PRECISION);
+        // Zig-zag encode so small negative offsets are small too
+        buf.writeVarLong(value << 1 ^ value >> 63);
+    }
+
+    private static double readOffset(FriendlyByteBuf buf) {
+        long value = buf.readVarLong();
+        return (value >>> 1 ^ -(value & 1)) / PRECISION;
+    }
+
+    @Override
+    public @NotNull Type<? extends CustomPacketPayload> type() {
+        return TYPE;
+    }
+
+    /**
+     * A single emitter to spawn.
+     *
+     * @param emitter  The registry name of the emitter
+     * @param x        The x position to spawn at
+     * @param y        The y position to spawn at
+     * @param z        The z position to spawn at
+     * @param entityId The id of the entity to attach the emitter to or <code>-1</code> to not attach it
+     */
+    public record Spawn(ResourceLocation emitter, double x, double y, double z, int entityId) {
+    }
+}
@@ -0,0 +1,134 @@
+package foundry.veil.impl.network;
+
+import foundry.veil.api.network.VeilPacketManager;
+import net.minecraft.core.SectionPos;
+import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.level.ChunkPos;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * <p>Collects emitter spawns on the server and sends them once at the end of the tick.</p>
+ * <p>Spawns are queued by target and resolved to the players that receive them when flushed,
+ * so each player gets a single packet with every spawn sent to them that tick, no matter how many chunks or entities they came from.</p>
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public final class EmitterSpawnQueue {
+
+    // Keeps each payload well below the vanilla custom payload limit
+    private static final int MAX_SPAWNS_PER_PAYLOAD = 4096;
+    private static final Map<Target, List<ClientboundSpawnEmittersPayload.Spawn>> QUEUE = new LinkedHashMap<>();
+    private static final Map<ServerPlayer, List<ClientboundSpawnEmittersPayload.Spawn>> RECIPIENTS = new LinkedHashMap<>();
+
+    private EmitterSpawnQueue() {
+    }
+
+    /**
+     * Queues an emitter to be sent to all players tracking the chunk at the specified position.
+     */
+    public static void trackingChunk(ServerLevel level, ClientboundSpawnEmittersPayload.Spawn spawn) {
+        ChunkPos pos = new ChunkPos(SectionPos.blockToSectionCoord(spawn.x()), SectionPos.blockToSectionCoord(spawn.z()));
+        QUEUE.computeIfAbsent(new ChunkTarget(level, pos), unused -> new ArrayList<>()).add(spawn);
+    }
+
+    /**
+     * Queues an emitter to be sent to all players tracking the specified entity and the entity itself.
+     */
+    public static void trackingEntity(Entity entity, ClientboundSpawnEmittersPayload.Spawn spawn) {
+        QUEUE.computeIfAbsent(new EntityTarget(entity), unused -> new ArrayList<>()).add(spawn);
+    }
+
+    /**
+     * Queues an emitter to be sent to a single player.
+     */
+    public static void player(ServerPlayer player, ClientboundSpawnEmittersPayload.Spawn spawn) {
+        QUEUE.computeIfAbsent(new PlayerTarget(player), unused -> new ArrayList<>()).add(spawn);
+    }
+
+    /**
+     * Sends all queued spawns. This is called at the end of every server tick.
+     */
+    public static void flush() {
+        if (QUEUE.isEmpty()) {
+            return;
+        }
+
+        for (Map.Entry<Target, List<ClientboundSpawnEmittersPayload.Spawn>> entry : QUEUE.entrySet()) {
+            List<ClientboundSpawnEmittersPayload.Spawn> spawns = entry.getValue();
+            entry.getKey().forEachRecipient(player -> RECIPIENTS.computeIfAbsent(player, unused -> new ArrayList<>()).addAll(spawns));
+        }
+        QUEUE.clear();
+
+        for (Map.Entry<ServerPlayer, List<ClientboundSpawnEmittersPayload.Spawn>> entry : RECIPIENTS.entrySet()) {
+            ServerPlayer player = entry.getKey();
+            List<ClientboundSpawnEmittersPayload.Spawn> spawns = entry.getValue();
+            // Spawns are usually near the player, so offsets from their section stay small
+            SectionPos origin = SectionPos.of(player);
+
+            int payloadCount = (spawns.size() + MAX_SPAWNS_PER_PAYLOAD - 1) / MAX_SPAWNS_PER_PAYLOAD;
+            CustomPacketPayload[] payloads = new CustomPacketPayload[payloadCount];
+            for (int i = 0; i < payloadCount; i++) {
+                int start = i * MAX_SPAWNS_PER_PAYLOAD;
+                payloads[i] = new ClientboundSpawnEmittersPayload(origin, spawns.subList(start, Math.min(start + MAX_SPAWNS_PER_PAYLOAD, spawns.size())));
+            }
+            VeilPacketManager.player(player).sendPacket(payloads);
+        }
+        RECIPIENTS.clear();
+    }
+
+    /**
+     * Removes all queued spawns without sending them.
+     */
+    public static void clear() {
+        QUEUE.clear();
+        RECIPIENTS.clear();
+    }
+
+    private sealed interface Target {
+
+        void forEachRecipient(Consumer<ServerPlayer> action);
+    }
+
+    private record ChunkTarget(ServerLevel level, ChunkPos pos) implements Target {
+
+        @Override
+        public void forEachRecipient(Consumer<ServerPlayer> action) {
+            this.level.getChunkSource().chunkMap.getPlayers(this.pos, false).forEach(action);
+        }
+    }
+
+    private record EntityTarget(Entity entity) implements Target {
+
+        @Override
+        public void forEachRecipient(Consumer<ServerPlayer> action) {
+            if (!(this.entity.level() instanceof ServerLevel level)) {
+                return;
+            }
+
+            // Players tracking the chunk but not the entity spawn the emitter at the entity's position instead
+            List<ServerPlayer> players = level.getChunkSource().chunkMap.getPlayers(this.entity.chunkPosition(), false);
+            players.forEach(action);
+            if (this.entity instanceof ServerPlayer player && !players.contains(player)) {
+                action.accept(player);
+            }
+        }
+    }
+
+    private record PlayerTarget(ServerPlayer player) implements Target {
+
+        @Override
+        public void forEachRecipient(Consumer<ServerPlayer> action) {
+            action.accept(this.player);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package foundry.veil.impl.network;
+
+import foundry.veil.Veil;
+import foundry.veil.api.network.VeilPacketManager;
+import foundry.veil.impl.client.network.VeilClientPacketHandler;
+import org.jetbrains.annotations.ApiStatus;
+
+/**
+ * Registers all packets sent by Veil itself.
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public final class VeilPackets {
+
+    private static final VeilPacketManager MANAGER = VeilPacketManager.create(Veil.MODID, "1");
+
+    private VeilPackets() {
+    }
+
+    public static void init() {
+        // The handler is wrapped in a lambda so dedicated servers never load the client handler
+        MANAGER.registerClientbound(ClientboundSpawnEmittersPayload.TYPE, ClientboundSpawnEmittersPayload.CODEC, (payload, ctx) -> VeilClientPacketHandler.handleSpawnEmitters(payload, ctx));
+    }
+}
@@ -0,0 +1,27 @@
+package foundry.veil.impl.quasar;
+
+import foundry.veil.api.quasar.data.ParticleEmitterData;
+import foundry.veil.api.quasar.data.module.ParticleModuleData;
+import foundry.veil.impl.quasar.gpu.GpuParticleProgram;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * Everything about an emitter that can be resolved once per registry load instead of every time an emitter is created.
+ *
+ * @param data       The emitter this template was created from
+ * @param modules    All bound modules used by particles in the emitter
+ * @param gpuProgram The GPU program to simulate particles with or <code>null</code> if particles need the CPU
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public record EmitterTemplate(ParticleEmitterData data,
+                              List<ParticleModuleData> modules,
+                              @Nullable GpuParticleProgram gpuProgram) {
+
+    public EmitterTemplate {
+        modules = List.copyOf(modules);
+    }
+}
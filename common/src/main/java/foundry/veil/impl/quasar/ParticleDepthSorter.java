@@ -0,0 +1,144 @@
+package foundry.veil.impl.quasar;
+
+import org.jetbrains.annotations.ApiStatus;
+
+import java.util.Arrays;
+
+/**
+ * <p>Sorts particles from many emitters back to front by view depth.</p>
+ * <p>Depths are quantized to 16 bits relative to the farthest particle and sorted with two 8-bit radix passes,
+ * so sorting is linear in the number of particles and never boxes or compares.</p>
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public class ParticleDepthSorter {
+
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX_SIZE = 1 << RADIX_BITS;
+    private static final int DEPTH_LEVELS = 0xFFFF;
+
+    private final int[] counts;
+    private int[] emitters;
+    private int[] particles;
+    private float[] depths;
+    private int[] keys;
+    private int[] order;
+    private int[] swap;
+    private int size;
+    private float maxDepth;
+
+    public ParticleDepthSorter() {
+        this.counts = new int[RADIX_SIZE];
+        this.emitters = new int[1024];
+        this.particles = new int[1024];
+        this.depths = new float[1024];
+        this.keys = new int[1024];
+        this.order = new int[1024];
+        this.swap = new int[1024];
+    }
+
+    /**
+     * Removes all particles from the last frame.
+     */
+    public void clear() {
+        this.size = 0;
+        this.maxDepth = 0.0F;
+    }
+
+    /**
+     * Adds a single particle to be sorted.
+     *
+     * @param emitter  The id of the emitter the particle is in
+     * @param particle The index of the particle in the emitter
+     * @param depth    The distance of the particle along the camera look direction
+     */
+    public void add(int emitter, int particle, float depth) {
+        if (this.size >= this.emitters.length) {
+            int capacity = this.emitters.length * 2;
+            this.emitters = Arrays.copyOf(this.emitters, capacity);
+            this.particles = Arrays.copyOf(this.particles, capacity);
+            this.depths = Arrays.copyOf(this.depths, capacity);
+            this.keys = new int[capacity];
+            this.order = new int[capacity];
+            this.swap = new int[capacity];
+        }
+
+        // Particles behind the camera are culled later anyway, so they can share the nearest bucket
+        depth = Math.max(depth, 0.0F);
+        this.emitters[this.size] = emitter;
+        this.particles[this.size] = particle;
+        this.depths[this.size] = depth;
+        this.maxDepth = Math.max(this.maxDepth, depth);
+        this.size++;
+    }
+
+    /**
+     * Sorts all added particles from farthest to nearest.
+     */
+    public void sort() {
+        int size = this.size;
+        if (size == 0) {
+            return;
+        }
+
+        // Farther particles get smaller keys so an ascending sort draws them first
+        float scale = this.maxDepth > 0.0F ? DEPTH_LEVELS / this.maxDepth : 0.0F;
+        for (int i = 0; i < size; i++) {
+            this.keys[i] = DEPTH_LEVELS - Math.min((int) (this.depths[i] * scale), DEPTH_LEVELS);
+            this.order[i] = i;
+        }
+
+        int[] from = this.order;
+        int[] to = this.swap;
+        for (int shift = 0; shift < 16; shift += RADIX_BITS) {
+            Arrays.fill(this.counts, 0);
+            for (int i = 0; i < size; i++) {
+                this.counts[this.keys[from[i]] >> shift & (RADIX_SIZE - 1)]++;
+            }
+
+            int offset = 0;
+            for (int i = 0; i < RADIX_SIZE; i++) {
+                int count = this.counts[i];
+                this.counts[i] = offset;
+                offset += count;
+            }
+
+            for (int i = 0; i < size; i++) {
+                int index = from[i];
+                to[this.counts[this.keys[index] >> shift & (RADIX_SIZE - 1)]++] = index;
+            }
+
+            int[] temp = from;
+            from = to;
+            to = temp;
+        }
+
+        // An even number of passes always ends in the original order array
+        this.order = from;
+        this.swap = to;
+    }
+
+    /**
+     * @return The number of particles added since the last clear
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @param index The sorted position
+     * @return The id of the emitter at the specified sorted position
+     */
+    public int getEmitter(int index) {
+        return this.emitters[this.order[index]];
+    }
+
+    /**
+     * @param index The sorted position
+     * @return The index of the particle in its emitter at the specified sorted position
+     */
+    public int getParticle(int index) {
+        return this.particles[this.order[index]];
+    }
+}
@@ -0,0 +1,152 @@
+package foundry.veil.impl.quasar;
+
+import foundry.veil.api.client.render.CullFrustum;
+import foundry.veil.api.quasar.particle.ParticleEmitter;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+import net.minecraft.core.SectionPos;
+import net.minecraft.world.phys.AABB;
+import org.jetbrains.annotations.ApiStatus;
+import org.joml.Vector3d;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * <p>Groups particle emitters by the chunk section the center of their bounds is in.</p>
+ * <p>Each section keeps the union of the bounds of its emitters, so whole sections can be culled before testing individual emitters.</p>
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public class ParticleEmitterIndex {
+
+    private final Long2ObjectMap<Section> sections;
+    private final Object2LongMap<ParticleEmitter> emitterSections;
+
+    public ParticleEmitterIndex() {
+        this.sections = new Long2ObjectOpenHashMap<>();
+        this.emitterSections = new Object2LongOpenHashMap<>();
+    }
+
+    /**
+     * Moves all emitters into the section their particles are currently in and recalculates the bounds of every section.
+     *
+     * @param emitters All emitters that should be in the index
+     */
+    public void update(Collection<ParticleEmitter> emitters) {
+        for (ParticleEmitter emitter : emitters) {
+            AABB bounds = emitter.getBoundingBox();
+            long section = SectionPos.asLong(
+                    SectionPos.blockToSectionCoord((bounds.minX + bounds.maxX) / 2.0),
+                    SectionPos.blockToSectionCoord((bounds.minY + bounds.maxY) / 2.0),
+                    SectionPos.blockToSectionCoord((bounds.minZ + bounds.maxZ) / 2.0));
+
+            if (this.emitterSections.containsKey(emitter)) {
+                long oldSection = this.emitterSections.getLong(emitter);
+                if (oldSection == section) {
+                    continue;
+                }
+                this.removeFromSection(emitter, oldSection);
+            }
+
+            this.emitterSections.put(emitter, section);
+            this.sections.computeIfAbsent(section, unused -> new Section()).emitters.add(emitter);
+        }
+
+        for (Section section : this.sections.values()) {
+            section.updateBounds();
+        }
+    }
+
+    /**
+     * Removes the specified emitter from the index.
+     *
+     * @param emitter The emitter to remove
+     */
+    public void remove(ParticleEmitter emitter) {
+        if (this.emitterSections.containsKey(emitter)) {
+            this.removeFromSection(emitter, this.emitterSections.removeLong(emitter));
+        }
+    }
+
+    private void removeFromSection(ParticleEmitter emitter, long sectionPos) {
+        Section section = this.sections.get(sectionPos);
+        if (section != null) {
+            section.emitters.remove(emitter);
+            if (section.emitters.isEmpty()) {
+                this.sections.remove(sectionPos);
+            }
+        }
+    }
+
+    /**
+     * Removes all emitters from the index.
+     */
+    public void clear() {
+        this.sections.clear();
+        this.emitterSections.clear();
+    }
+
+    /**
+     * Adds every emitter that could be visible in the specified frustum to the collection.
+     *
+     * @param frustum The frustum to cull with
+     * @param store   The collection to add visible emitters to
+     */
+    public void collectVisible(CullFrustum frustum, Collection<ParticleEmitter> store) {
+        for (Section section : this.sections.values()) {
+            if (section.bounded && !frustum.testAab(section.min, section.max)) {
+                continue;
+            }
+
+            // A single emitter has the same bounds as the section
+            boolean single = section.emitters.size() == 1;
+            for (ParticleEmitter emitter : section.emitters) {
+                if (single || emitter.isVisible(frustum)) {
+                    store.add(emitter);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The number of sections that contain at least one emitter
+     */
+    public int getSectionCount() {
+        return this.sections.size();
+    }
+
+    private static class Section {
+
+        private final List<ParticleEmitter> emitters;
+        private final Vector3d min;
+        private final Vector3d max;
+        private boolean bounded;
+
+        private Section() {
+            this.emitters = new ArrayList<>();
+            this.min = new Vector3d();
+            this.max = new Vector3d();
+        }
+
+        private void updateBounds() {
+            this.bounded = true;
+            this.min.set(Double.POSITIVE_INFINITY);
+            this.max.set(Double.NEGATIVE_INFINITY);
+            for (ParticleEmitter emitter : this.emitters) {
+                if (!emitter.isBounded()) {
+                    this.bounded = false;
+                    return;
+                }
+
+                AABB bounds = emitter.getBoundingBox();
+                this.min.set(Math.min(this.min.x, bounds.minX), Math.min(this.min.y, bounds.minY), Math.min(this.min.z, bounds.minZ));
+                this.max.set(Math.max(this.max.x, bounds.maxX), Math.max(this.max.y, bounds.maxY), Math.max(this.max.z, bounds.maxZ));
+            }
+        }
+    }
+}
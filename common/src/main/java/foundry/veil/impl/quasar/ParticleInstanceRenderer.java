@@ -0,0 +1,271 @@
+package foundry.veil.impl.quasar;
+
+import com.mojang.blaze3d.systems.RenderSystem;
+import com.mojang.blaze3d.vertex.VertexFormat;
+import foundry.veil.api.client.render.MatrixStack;
+import foundry.veil.api.client.render.VeilRenderSystem;
+import foundry.veil.api.client.render.rendertype.VeilRenderType;
+import foundry.veil.api.client.render.shader.program.ShaderProgram;
+import foundry.veil.api.client.render.vertex.VertexArray;
+import foundry.veil.api.client.render.vertex.VertexArrayBuilder;
+import foundry.veil.api.quasar.data.QuasarParticleData;
+import foundry.veil.api.quasar.particle.RenderData;
+import foundry.veil.api.quasar.particle.RenderStyle;
+import foundry.veil.api.quasar.particle.SpriteData;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.renderer.RenderType;
+import net.minecraft.client.renderer.ShaderInstance;
+import net.minecraft.client.renderer.texture.TextureAtlasSprite;
+import net.minecraft.resources.ResourceLocation;
+import org.jetbrains.annotations.ApiStatus;
+import org.joml.Matrix4f;
+import org.joml.Quaternionf;
+import org.joml.Vector3fc;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+import org.lwjgl.system.NativeResource;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>Draws {@link RenderStyle.Billboard} and {@link RenderStyle.Cube} particles as instances.</p>
+ * <p>Each particle is written as a single instance record instead of 4 or 24 full vertices.
+ * Expanding the quad or cube, facing the camera, and applying rotation are all done in <code>quasar/particle.vsh</code>.
+ * The style is stored per instance, so particles from different emitters can be drawn in the same batch.</p>
+ * <p>Standalone textures are packed into the {@link ParticleTextureArray} and the layer is stored per instance,
+ * so particles with different textures don't break the batch. Atlas sprites and textures that don't fit into the array
+ * are drawn in their own batches.</p>
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public class ParticleInstanceRenderer implements NativeResource {
+
+    // vec3 position, float radius, vec3 rotation, ubyte4 color, short2 light, ushort4 uv, float stretch, int flags
+    private static final int INSTANCE_SIZE = Float.BYTES * 7 + 4 + Short.BYTES * 2 + Short.BYTES * 4 + Float.BYTES + Integer.BYTES;
+    private static final int INSTANCE_BUFFER = 2;
+    private static final int MAX_INSTANCES = 4096;
+
+    private static final int FLAG_CUBE = 1;
+    private static final int FLAG_FACE_VELOCITY = 2;
+    private static final int LAYER_SHIFT = 8;
+    private static final int BILLBOARD_INDICES = 6;
+    private static final int CUBE_INDICES = 36;
+
+    private final VertexArray vertexArray;
+    private final int instanceVbo;
+    private final Matrix4f modelView;
+    private ByteBuffer instances;
+    private int instanceCount;
+
+    private MatrixStack matrixStack;
+    private boolean cubes;
+    private boolean additive;
+    private ResourceLocation texture;
+    private boolean textureArray;
+
+    public ParticleInstanceRenderer() {
+        this.vertexArray = VertexArray.create();
+        this.instanceVbo = this.vertexArray.getOrCreateBuffer(INSTANCE_BUFFER);
+        this.modelView = new Matrix4f();
+        this.instances = MemoryUtil.memAlloc(MAX_INSTANCES * INSTANCE_SIZE);
+
+        // Corners are selected from gl_VertexID, so the only per-vertex data is the index buffer
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            ByteBuffer indices = stack.malloc(CUBE_INDICES);
+            for (int i = 0; i < CUBE_INDICES / 6; i++) {
+                int start = i * 4;
+                indices.put((byte) start).put((byte) (start + 1)).put((byte) (start + 2));
+                indices.put((byte) (start + 2)).put((byte) (start + 3)).put((byte) start);
+            }
+            indices.flip();
+            this.vertexArray.bind();
+            this.vertexArray.uploadIndexBuffer(indices);
+        }
+        this.vertexArray.setDrawMode(VertexFormat.Mode.TRIANGLES);
+
+        VertexArrayBuilder builder = this.vertexArray.editFormat();
+        builder.defineVertexBuffer(INSTANCE_BUFFER, this.instanceVbo, 0, INSTANCE_SIZE, 1);
+        builder.setVertexAttribute(0, INSTANCE_BUFFER, 3, VertexArrayBuilder.DataType.FLOAT, false, 0);
+        builder.setVertexAttribute(1, INSTANCE_BUFFER, 1, VertexArrayBuilder.DataType.FLOAT, false, Float.BYTES * 3);
+        builder.setVertexAttribute(2, INSTANCE_BUFFER, 3, VertexArrayBuilder.DataType.FLOAT, false, Float.BYTES * 4);
+        builder.setVertexAttribute(3, INSTANCE_BUFFER, 4, VertexArrayBuilder.DataType.UNSIGNED_BYTE, true, Float.BYTES * 7);
+        builder.setVertexIAttribute(4, INSTANCE_BUFFER, 2, VertexArrayBuilder.DataType.SHORT, Float.BYTES * 7 + 4);
+        builder.setVertexAttribute(5, INSTANCE_BUFFER, 4, VertexArrayBuilder.DataType.UNSIGNED_SHORT, true, Float.BYTES * 7 + 8);
+        builder.setVertexAttribute(6, INSTANCE_BUFFER, 1, VertexArrayBuilder.DataType.FLOAT, false, Float.BYTES * 7 + 16);
+        builder.setVertexIAttribute(7, INSTANCE_BUFFER, 1, VertexArrayBuilder.DataType.INT, Float.BYTES * 8 + 16);
+        VertexArray.unbind();
+    }
+
+    /**
+     * @param style The style to check
+     * @return Whether the specified style can be drawn with instancing
+     */
+    public static boolean isSupported(RenderStyle style) {
+        return style instanceof RenderStyle.Billboard || style instanceof RenderStyle.Cube;
+    }
+
+    /**
+     * Starts drawing particles. Particles from any number of emitters can be added until {@link #end()} as long as they share blending.
+     *
+     * @param matrixStack The current transform
+     * @param additive    Whether particles use additive blending
+     */
+    public void begin(MatrixStack matrixStack, boolean additive) {
+        this.matrixStack = matrixStack;
+        this.additive = additive;
+        this.cubes = false;
+        this.texture = null;
+        this.textureArray = false;
+        this.instanceCount = 0;
+    }
+
+    /**
+     * Adds the particle the specified render data currently points to. Particles are drawn in the order they are added.
+     *
+     * @param data         The data of the particle. The style must be {@link #isSupported(RenderStyle) supported}
+     * @param renderData   The render data of the particle to draw
+     * @param renderOffset The position of the particle relative to the camera
+     */
+    public void add(QuasarParticleData data, RenderData renderData, Vector3fc renderOffset) {
+        ResourceLocation texture = renderData.getTexture();
+        TextureAtlasSprite sprite = renderData.getAtlasSprite();
+        ParticleTextureArray textureArray = QuasarParticleHandler.getTextureArray();
+        int layer = sprite == null ? textureArray.getLayer(texture) : -1;
+        if (layer >= 0) {
+            if (!this.textureArray) {
+                this.flush();
+                this.texture = null;
+                this.textureArray = true;
+            }
+        } else if (this.textureArray || !texture.equals(this.texture)) {
+            this.flush();
+            this.texture = texture;
+            this.textureArray = false;
+        }
+        if (this.instanceCount >= this.instances.capacity() / INSTANCE_SIZE) {
+            this.instances = MemoryUtil.memRealloc(this.instances, this.instances.capacity() * 2);
+        }
+
+        float u0 = 0.0F;
+        float v0 = 0.0F;
+        float u1 = 1.0F;
+        float v1 = 1.0F;
+        SpriteData spriteData = renderData.getSpriteData();
+        if (spriteData != null) {
+            float renderAge = renderData.getRenderAge();
+            float agePercent = renderData.getAgePercent();
+            u0 = spriteData.u(renderAge, agePercent, 0.0F);
+            v0 = spriteData.v(renderAge, agePercent, 0.0F);
+            u1 = spriteData.u(renderAge, agePercent, 1.0F);
+            v1 = spriteData.v(renderAge, agePercent, 1.0F);
+        }
+        if (sprite != null) {
+            u0 = sprite.getU(u0);
+            v0 = sprite.getV(v0);
+            u1 = sprite.getU(u1);
+            v1 = sprite.getV(v1);
+        } else if (layer >= 0) {
+            float scaleU = textureArray.getScaleU(layer);
+            float scaleV = textureArray.getScaleV(layer);
+            u0 *= scaleU;
+            v0 *= scaleV;
+            u1 *= scaleU;
+            v1 *= scaleV;
+        }
+
+        Vector3fc rotation = renderData.getRenderRotation();
+        int light = renderData.getLightColor();
+        long pointer = MemoryUtil.memAddress(this.instances) + (long) this.instanceCount * INSTANCE_SIZE;
+        MemoryUtil.memPutFloat(pointer, renderOffset.x());
+        MemoryUtil.memPutFloat(pointer + 4, renderOffset.y());
+        MemoryUtil.memPutFloat(pointer + 8, renderOffset.z());
+        MemoryUtil.memPutFloat(pointer + 12, renderData.getRenderRadius());
+        MemoryUtil.memPutFloat(pointer + 16, rotation.x());
+        MemoryUtil.memPutFloat(pointer + 20, rotation.y());
+        MemoryUtil.memPutFloat(pointer + 24, rotation.z());
+        MemoryUtil.memPutByte(pointer + 28, (byte) (int) (renderData.getRed() * 255.0F));
+        MemoryUtil.memPutByte(pointer + 29, (byte) (int) (renderData.getGreen() * 255.0F));
+        MemoryUtil.memPutByte(pointer + 30, (byte) (int) (renderData.getBlue() * 255.0F));
+        MemoryUtil.memPutByte(pointer + 31, (byte) (int) (renderData.getAlpha() * 255.0F));
+        MemoryUtil.memPutShort(pointer + 32, (short) (light & 0xFFFF));
+        MemoryUtil.memPutShort(pointer + 34, (short) (light >> 16 & 0xFFFF));
+        MemoryUtil.memPutShort(pointer + 36, (short) (u0 * 65535.0F));
+        MemoryUtil.memPutShort(pointer + 38, (short) (v0 * 65535.0F));
+        MemoryUtil.memPutShort(pointer + 40, (short) (u1 * 65535.0F));
+        MemoryUtil.memPutShort(pointer + 42, (short) (v1 * 65535.0F));
+        MemoryUtil.memPutFloat(pointer + 44, data.velocityStretchFactor());
+
+        int flags = Math.max(layer, 0) << LAYER_SHIFT;
+        if (data.renderStyle() instanceof RenderStyle.Cube) {
+            flags |= FLAG_CUBE;
+            this.cubes = true;
+        }
+        if (data.faceVelocity()) {
+            flags |= FLAG_FACE_VELOCITY;
+        }
+        MemoryUtil.memPutInt(pointer + 48, flags);
+        this.instanceCount++;
+    }
+
+    /**
+     * Draws all remaining particles.
+     */
+    public void end() {
+        this.flush();
+        this.matrixStack = null;
+    }
+
+    /**
+     * Draws all particles added so far. More particles can still be added until {@link #end()}.
+     */
+    public void flush() {
+        if (this.instanceCount == 0 || (this.texture == null && !this.textureArray)) {
+            this.instanceCount = 0;
+            this.cubes = false;
+            return;
+        }
+
+        RenderType renderType = this.textureArray ? VeilRenderType.quasarParticleArray(this.additive) : VeilRenderType.quasarParticleInstanced(this.texture, this.additive);
+        renderType.setupRenderState();
+        ShaderInstance shaderInstance = RenderSystem.getShader();
+        ShaderProgram shader = VeilRenderSystem.getShader();
+        if (shaderInstance == null || shader == null) {
+            renderType.clearRenderState();
+            this.instanceCount = 0;
+            this.cubes = false;
+            return;
+        }
+
+        // Stream the instances into a fresh buffer every draw so the driver never has to wait for the last one
+        this.instances.limit(this.instanceCount * INSTANCE_SIZE);
+        VertexArray.upload(this.instanceVbo, this.instances, VertexArray.DrawUsage.STREAM);
+        this.instances.clear();
+
+        this.modelView.set(RenderSystem.getModelViewMatrix()).mul(this.matrixStack.position());
+        shaderInstance.setDefaultUniforms(VertexFormat.Mode.TRIANGLES, this.modelView, RenderSystem.getProjectionMatrix(), Minecraft.getInstance().getWindow());
+        Quaternionf cameraOrientation = Minecraft.getInstance().getEntityRenderDispatcher().cameraOrientation();
+        shader.setVector("CameraOrientation", cameraOrientation.x, cameraOrientation.y, cameraOrientation.z, cameraOrientation.w);
+        if (this.textureArray) {
+            shader.setSampler("Sampler0", QuasarParticleHandler.getTextureArray().getId());
+        }
+        shaderInstance.apply();
+
+        // Billboards only use the first face, so they can be drawn with cubes by collapsing the other faces
+        this.vertexArray.bind();
+        this.vertexArray.setIndexCount(this.cubes ? CUBE_INDICES : BILLBOARD_INDICES, VertexArray.IndexType.BYTE);
+        this.vertexArray.drawInstanced(this.instanceCount);
+        VertexArray.unbind();
+
+        shaderInstance.clear();
+        renderType.clearRenderState();
+        this.instanceCount = 0;
+        this.cubes = false;
+    }
+
+    @Override
+    public void free() {
+        this.vertexArray.free();
+        MemoryUtil.memFree(this.instances);
+    }
+}
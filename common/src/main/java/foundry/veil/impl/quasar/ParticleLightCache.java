@@ -0,0 +1,205 @@
+package foundry.veil.impl.quasar;
+
+import foundry.veil.api.client.render.VeilRenderSystem;
+import foundry.veil.api.client.render.VeilRenderer;
+import foundry.veil.api.client.render.light.Light;
+import foundry.veil.api.client.render.light.PositionedLight;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import net.minecraft.client.renderer.LevelRenderer;
+import net.minecraft.client.renderer.LightTexture;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.util.Mth;
+import net.minecraft.world.level.BlockAndTintGetter;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>Caches packed light values sampled by particles so many particles in the same block only look up the level once.</p>
+ * <p>Values are stored per chunk section and stay valid until the section is marked dirty by a block or light update.
+ * Sections that haven't been sampled in a while are dropped to keep memory bounded. This is only accessed from the main thread.</p>
+ * <p>Deferred lights move every frame, so they are never cached. Emitters gather the lights near them once per tick
+ * through the light octree and apply them on top of the cached level light.</p>
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public class ParticleLightCache {
+
+    private static final int UNSAMPLED = -1;
+    private static final int EXPIRE_TICKS = 200;
+
+    private final Long2ObjectMap<Section> sections;
+    private final BlockPos.MutableBlockPos pos;
+    private final List<Light> deferredLights;
+    private long tick;
+
+    public ParticleLightCache() {
+        this.sections = new Long2ObjectOpenHashMap<>();
+        this.pos = new BlockPos.MutableBlockPos();
+        this.deferredLights = new ArrayList<>();
+    }
+
+    /**
+     * Advances the cache by one tick and drops sections that are no longer used.
+     */
+    public void tick() {
+        this.tick++;
+        ObjectIterator<Section> iterator = this.sections.values().iterator();
+        while (iterator.hasNext()) {
+            if (this.tick - iterator.next().lastUsed > EXPIRE_TICKS) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Marks all cached values in the specified section as outdated.
+     *
+     * @param sectionX The x position of the section
+     * @param sectionY The y position of the section
+     * @param sectionZ The z position of the section
+     */
+    public void invalidateSection(int sectionX, int sectionY, int sectionZ) {
+        this.sections.remove(SectionPos.asLong(sectionX, sectionY, sectionZ));
+    }
+
+    /**
+     * Removes all cached values.
+     */
+    public void clear() {
+        this.sections.clear();
+    }
+
+    private Section getSection(int x, int y, int z) {
+        Section section = this.sections.computeIfAbsent(SectionPos.asLong(SectionPos.blockToSectionCoord(x), SectionPos.blockToSectionCoord(y), SectionPos.blockToSectionCoord(z)), unused -> new Section());
+        section.lastUsed = this.tick;
+        return section;
+    }
+
+    /**
+     * Retrieves the light at the block containing the specified position.
+     *
+     * @param level The level to sample
+     * @param x     The x position
+     * @param y     The y position
+     * @param z     The z position
+     * @return The packed block and sky light
+     */
+    public int getLightColor(BlockAndTintGetter level, double x, double y, double z) {
+        int blockX = Mth.floor(x);
+        int blockY = Mth.floor(y);
+        int blockZ = Mth.floor(z);
+        Section section = this.getSection(blockX, blockY, blockZ);
+        int index = (blockY & 15) << 8 | (blockZ & 15) << 4 | (blockX & 15);
+        int[] light = section.getLight();
+        if (light[index] == UNSAMPLED) {
+            light[index] = LevelRenderer.getLightColor(level, this.pos.set(blockX, blockY, blockZ));
+        }
+        return light[index];
+    }
+
+    /**
+     * Retrieves a single light value for the entire section containing the specified position.
+     * This is much coarser than {@link #getLightColor(BlockAndTintGetter, double, double, double)},
+     * so it should only be used for particles far from the camera.
+     *
+     * @param level The level to sample
+     * @param x     The x position
+     * @param y     The y position
+     * @param z     The z position
+     * @return The packed block and sky light of the first position sampled in the section
+     */
+    public int getSectionLightColor(BlockAndTintGetter level, double x, double y, double z) {
+        Section section = this.getSection(Mth.floor(x), Mth.floor(y), Mth.floor(z));
+        if (section.sectionLight == UNSAMPLED) {
+            section.sectionLight = this.getLightColor(level, x, y, z);
+        }
+        return section.sectionLight;
+    }
+
+    /**
+     * Collects the deferred lights that can reach into the specified sphere.
+     * Following calls to {@link #applyDeferredLights(int, double, double, double)} only check these lights.
+     *
+     * @param x      The x position of the sphere center
+     * @param y      The y position of the sphere center
+     * @param z      The z position of the sphere center
+     * @param radius The radius of the sphere
+     * @return Whether any lights were found
+     */
+    public boolean gatherDeferredLights(double x, double y, double z, double radius) {
+        this.deferredLights.clear();
+        VeilRenderer renderer = VeilRenderSystem.renderer();
+        if (renderer == null) {
+            return false;
+        }
+
+        renderer.getLightRenderer().forEachLightNear(x, y, z, radius, light -> {
+            // Lights without a known reach would light everything, so only bounded lights are used
+            if (light instanceof PositionedLight<?> positioned && Float.isFinite(positioned.getInfluenceRadius()) && light.getBrightness() > 0.0F) {
+                this.deferredLights.add(light);
+            }
+        });
+        return !this.deferredLights.isEmpty();
+    }
+
+    /**
+     * Raises the block light of a packed light value by the lights collected with {@link #gatherDeferredLights(double, double, double, double)}.
+     *
+     * @param packedLight The packed block and sky light sampled from the level
+     * @param x           The x position
+     * @param y           The y position
+     * @param z           The z position
+     * @return The packed block and sky light including deferred lights
+     */
+    public int applyDeferredLights(int packedLight, double x, double y, double z) {
+        int blockLight = LightTexture.block(packedLight);
+        for (Light light : this.deferredLights) {
+            if (blockLight >= 15) {
+                break;
+            }
+
+            PositionedLight<?> positioned = (PositionedLight<?>) light;
+            float radius = positioned.getInfluenceRadius();
+            double distance = positioned.getPosition().distance(x, y, z);
+            if (distance < radius) {
+                // Falls off to nothing at the edge of the light like block light does
+                float strength = Math.min(light.getBrightness(), 1.0F) * (1.0F - (float) (distance / radius));
+                blockLight = Math.max(blockLight, Mth.ceil(strength * 15.0F));
+            }
+        }
+        return LightTexture.pack(Math.min(blockLight, 15), LightTexture.sky(packedLight));
+    }
+
+    /**
+     * @return The number of sections with cached light
+     */
+    public int getSectionCount() {
+        return this.sections.size();
+    }
+
+    private static class Section {
+
+        private int[] light;
+        private int sectionLight;
+        private long lastUsed;
+
+        private Section() {
+            this.sectionLight = UNSAMPLED;
+        }
+
+        private int[] getLight() {
+            if (this.light == null) {
+                this.light = new int[16 * 16 * 16];
+                Arrays.fill(this.light, UNSAMPLED);
+            }
+            return this.light;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package foundry.veil.impl.quasar;
+
+import com.mojang.blaze3d.platform.NativeImage;
+import com.mojang.blaze3d.platform.TextureUtil;
+import com.mojang.blaze3d.systems.RenderSystem;
+import foundry.veil.Veil;
+import foundry.veil.api.client.render.VeilRenderSystem;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import net.minecraft.client.Minecraft;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.packs.resources.Resource;
+import org.jetbrains.annotations.ApiStatus;
+import org.lwjgl.system.MemoryUtil;
+import org.lwjgl.system.NativeResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.lwjgl.opengl.GL30C.*;
+
+/**
+ * <p>Packs standalone particle textures into the layers of a single 2D texture array.</p>
+ * <p>Every layer is {@value #LAYER_SIZE}x{@value #LAYER_SIZE}. Textures smaller than a layer are placed in the corner
+ * and their UVs are scaled with {@link #getScaleU(int)} and {@link #getScaleV(int)}.
+ * Textures that are too large, not loaded from resources, or don't fit anymore are reported as <code>-1</code>
+ * and have to be drawn with their own texture instead.</p>
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public class ParticleTextureArray implements NativeResource {
+
+    public static final int LAYER_SIZE = 256;
+    private static final int MIN_LAYERS = 8;
+    private static final int MAX_LAYERS = 256;
+
+    private final Object2IntMap<ResourceLocation> layers;
+    private final List<ResourceLocation> textures;
+    private float[] scaleU;
+    private float[] scaleV;
+    private int texture;
+    private int capacity;
+
+    public ParticleTextureArray() {
+        this.layers = new Object2IntOpenHashMap<>();
+        this.layers.defaultReturnValue(-2);
+        this.textures = new ArrayList<>();
+        this.scaleU = new float[MIN_LAYERS];
+        this.scaleV = new float[MIN_LAYERS];
+    }
+
+    /**
+     * Retrieves the layer the specified texture is stored in, uploading it if this is the first time it is used.
+     *
+     * @param texture The location of the texture file
+     * @return The layer of the texture or <code>-1</code> if the texture can't be stored in the array
+     */
+    public int getLayer(ResourceLocation texture) {
+        int layer = this.layers.getInt(texture);
+        if (layer != -2) {
+            return layer;
+        }
+
+        layer = this.add(texture);
+        this.layers.put(texture, layer);
+        return layer;
+    }
+
+    private int add(ResourceLocation texture) {
+        int layer = this.textures.size();
+        if (layer >= Math.min(MAX_LAYERS, VeilRenderSystem.maxArrayTextureLayers())) {
+            return -1;
+        }
+
+        try (NativeImage image = read(texture)) {
+            if (image == null || image.getWidth() > LAYER_SIZE || image.getHeight() > LAYER_SIZE) {
+                return -1;
+            }
+
+            if (layer >= this.capacity) {
+                this.resize(Math.max(MIN_LAYERS, this.capacity * 2));
+            }
+            this.upload(layer, image);
+        }
+        this.textures.add(texture);
+        return layer;
+    }
+
+    private void resize(int capacity) {
+        RenderSystem.assertOnRenderThread();
+        if (this.texture == 0) {
+            this.texture = TextureUtil.generateTextureId();
+        }
+
+        glBindTexture(GL_TEXTURE_2D_ARRAY, this.texture);
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MAX_LEVEL, 0);
+        // Reallocating clears all layers, so existing textures are read again. This only happens a few times
+        glTexImage3D(GL_TEXTURE_2D_ARRAY, 0, GL_RGBA8, LAYER_SIZE, LAYER_SIZE, capacity, 0, GL_RGBA, GL_UNSIGNED_BYTE, (ByteBuffer) null);
+        glBindTexture(GL_TEXTURE_2D_ARRAY, 0);
+
+        this.capacity = capacity;
+        this.scaleU = Arrays.copyOf(this.scaleU, capacity);
+        this.scaleV = Arrays.copyOf(this.scaleV, capacity);
+        for (int i = 0; i < this.textures.size(); i++) {
+            try (NativeImage image = read(this.textures.get(i))) {
+                if (image != null) {
+                    this.upload(i, image);
+                }
+            }
+        }
+    }
+
+    private void upload(int layer, NativeImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        ByteBuffer pixels = MemoryUtil.memAlloc(width * height * 4);
+        try {
+            long pointer = MemoryUtil.memAddress(pixels);
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    // Pixels are stored as ABGR ints, which are RGBA bytes in little endian
+                    MemoryUtil.memPutInt(pointer, image.getPixelRGBA(x, y));
+                    pointer += 4;
+                }
+            }
+
+            glBindTexture(GL_TEXTURE_2D_ARRAY, this.texture);
+            glPixelStorei(GL_UNPACK_ROW_LENGTH, 0);
+            glPixelStorei(GL_UNPACK_SKIP_PIXELS, 0);
+            glPixelStorei(GL_UNPACK_SKIP_ROWS, 0);
+            glPixelStorei(GL_UNPACK_ALIGNMENT, 4);
+            glTexSubImage3D(GL_TEXTURE_2D_ARRAY, 0, 0, 0, layer, width, height, 1, GL_RGBA, GL_UNSIGNED_BYTE, pixels);
+            glBindTexture(GL_TEXTURE_2D_ARRAY, 0);
+        } finally {
+            MemoryUtil.memFree(pixels);
+        }
+
+        this.scaleU[layer] = (float) width / LAYER_SIZE;
+        this.scaleV[layer] = (float) height / LAYER_SIZE;
+    }
+
+    private static NativeImage read(ResourceLocation texture) {
+        Optional<Resource> resource = Minecraft.getInstance().getResourceManager().getResource(texture);
+        if (resource.isEmpty()) {
+            return null;
+        }
+
+        try (InputStream stream = resource.get().open()) {
+            return NativeImage.read(NativeImage.Format.RGBA, stream);
+        } catch (IOException e) {
+            Veil.LOGGER.error("Failed to load particle texture: {}", texture, e);
+            return null;
+        }
+    }
+
+    /**
+     * @param layer The layer to get the scale of
+     * @return The fraction of the layer width used by the texture
+     */
+    public float getScaleU(int layer) {
+        return this.scaleU[layer];
+    }
+
+    /**
+     * @param layer The layer to get the scale of
+     * @return The fraction of the layer height used by the texture
+     */
+    public float getScaleV(int layer) {
+        return this.scaleV[layer];
+    }
+
+    /**
+     * @return The id of the array texture
+     */
+    public int getId() {
+        return this.texture;
+    }
+
+    /**
+     * Removes all textures, so they are read again the next time they are used.
+     */
+    public void clear() {
+        this.layers.clear();
+        this.textures.clear();
+    }
+
+    @Override
+    public void free() {
+        this.clear();
+        if (this.texture != 0) {
+            TextureUtil.releaseTextureId(this.texture);
+            this.texture = 0;
+        }
+        this.capacity = 0;
+    }
+}
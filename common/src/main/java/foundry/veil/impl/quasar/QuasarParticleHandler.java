@@ -11,12 +11,54 @@ import org.jetbrains.annotations.ApiStatus;
 public class QuasarParticleHandler {
 
     private static CachedBufferSource cachedBufferSource;
+    private static ParticleInstanceRenderer instanceRenderer;
+    private static TrailRenderer trailRenderer;
+    private static ParticleTextureArray textureArray;
 
     public static void free() {
         if (cachedBufferSource != null) {
             cachedBufferSource.free();
             cachedBufferSource = null;
         }
+        if (instanceRenderer != null) {
+            instanceRenderer.free();
+            instanceRenderer = null;
+        }
+        if (trailRenderer != null) {
+            trailRenderer.free();
+            trailRenderer = null;
+        }
+        if (textureArray != null) {
+            textureArray.free();
+            textureArray = null;
+        }
+    }
+
+    public static ParticleInstanceRenderer getInstanceRenderer() {
+        if (instanceRenderer == null) {
+            instanceRenderer = new ParticleInstanceRenderer();
+        }
+        return instanceRenderer;
+    }
+
+    public static TrailRenderer getTrailRenderer() {
+        if (trailRenderer == null) {
+            trailRenderer = new TrailRenderer();
+        }
+        return trailRenderer;
+    }
+
+    public static ParticleTextureArray getTextureArray() {
+        if (textureArray == null) {
+            textureArray = new ParticleTextureArray();
+        }
+        return textureArray;
+    }
+
+    public static void clearTextureArray() {
+        if (textureArray != null) {
+            textureArray.clear();
+        }
     }
 
     public static void setLevel(ClientLevel level) {
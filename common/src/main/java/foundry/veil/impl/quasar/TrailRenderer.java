@@ -0,0 +1,258 @@
+package foundry.veil.impl.quasar;
+
+import com.mojang.blaze3d.systems.RenderSystem;
+import com.mojang.blaze3d.vertex.VertexFormat;
+import foundry.veil.api.client.render.MatrixStack;
+import foundry.veil.api.client.render.VeilRenderSystem;
+import foundry.veil.api.client.render.rendertype.VeilRenderType;
+import foundry.veil.api.client.render.shader.block.DynamicShaderBlock;
+import foundry.veil.api.client.render.shader.block.ShaderBlock;
+import foundry.veil.api.client.render.shader.program.ShaderProgram;
+import foundry.veil.api.client.render.vertex.VertexArray;
+import foundry.veil.api.client.render.vertex.VertexArrayBuilder;
+import foundry.veil.api.quasar.fx.Trail;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.renderer.RenderType;
+import net.minecraft.client.renderer.ShaderInstance;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.phys.Vec3;
+import org.jetbrains.annotations.ApiStatus;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.lwjgl.system.MemoryUtil;
+import org.lwjgl.system.NativeResource;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>Draws all {@link Trail trails} in an emitter as instanced triangle strips.</p>
+ * <p>Trail points are copied into a single storage buffer and each trail is one instance that selects its points from <code>gl_VertexID</code>.
+ * Expanding the ribbon along the camera or parent rotation is done in <code>quasar/trail.vsh</code>.</p>
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public class TrailRenderer implements NativeResource {
+
+    // vec4 position + width, vec4 rotation
+    private static final int POINT_SIZE = Float.BYTES * 8;
+    // ivec4 info, ubyte4 color
+    private static final int INSTANCE_SIZE = Integer.BYTES * 4 + 4;
+    private static final int INSTANCE_BUFFER = 2;
+    private static final int POINT_BUFFER = 3;
+
+    private static final int FLAG_BILLBOARD = 1;
+    private static final int FLAG_PARENT_ROTATION = 2;
+    private static final int FLAG_STRETCH = 4;
+
+    private final VertexArray vertexArray;
+    private final int instanceVbo;
+    private final int pointBuffer;
+    private final DynamicShaderBlock<?> pointBlock;
+    private final Matrix4f modelView;
+    private final Vector3f point;
+    private final Vector3f rotation;
+    private ByteBuffer instances;
+    private ByteBuffer points;
+    private int instanceCount;
+    private int pointCount;
+    private int maxVertices;
+    private int indexCapacity;
+
+    private MatrixStack matrixStack;
+    private double cameraX;
+    private double cameraY;
+    private double cameraZ;
+    private ResourceLocation texture;
+
+    public TrailRenderer() {
+        this.vertexArray = VertexArray.create();
+        this.instanceVbo = this.vertexArray.getOrCreateBuffer(INSTANCE_BUFFER);
+        this.pointBuffer = this.vertexArray.getOrCreateBuffer(POINT_BUFFER);
+        this.pointBlock = ShaderBlock.wrapper(ShaderBlock.BufferBinding.SHADER_STORAGE, this.pointBuffer);
+        this.modelView = new Matrix4f();
+        this.point = new Vector3f();
+        this.rotation = new Vector3f();
+        this.instances = MemoryUtil.memAlloc(256 * INSTANCE_SIZE);
+        this.points = MemoryUtil.memAlloc(4096 * POINT_SIZE);
+        this.vertexArray.setDrawMode(VertexFormat.Mode.TRIANGLE_STRIP);
+
+        VertexArrayBuilder builder = this.vertexArray.editFormat();
+        builder.defineVertexBuffer(INSTANCE_BUFFER, this.instanceVbo, 0, INSTANCE_SIZE, 1);
+        builder.setVertexIAttribute(0, INSTANCE_BUFFER, 4, VertexArrayBuilder.DataType.INT, 0);
+        builder.setVertexAttribute(1, INSTANCE_BUFFER, 4, VertexArrayBuilder.DataType.UNSIGNED_BYTE, true, Integer.BYTES * 4);
+        VertexArray.unbind();
+    }
+
+    /**
+     * @return Whether trails can be drawn with instancing on this device
+     */
+    public static boolean isSupported() {
+        return VeilRenderSystem.shaderStorageBufferSupported();
+    }
+
+    /**
+     * Starts drawing trails from a single emitter.
+     *
+     * @param matrixStack The current transform
+     * @param cameraPos   The position of the camera
+     */
+    public void begin(MatrixStack matrixStack, Vec3 cameraPos) {
+        this.matrixStack = matrixStack;
+        this.cameraX = cameraPos.x;
+        this.cameraY = cameraPos.y;
+        this.cameraZ = cameraPos.z;
+        this.texture = null;
+        this.instanceCount = 0;
+        this.pointCount = 0;
+        this.maxVertices = 0;
+    }
+
+    /**
+     * Adds all points in the specified trail.
+     *
+     * @param trail The trail to draw
+     */
+    public void add(Trail trail) {
+        int count = trail.getPointCount();
+        if (count < 2) {
+            return;
+        }
+
+        ResourceLocation texture = trail.getTexture();
+        if (!texture.equals(this.texture)) {
+            this.flush();
+            this.texture = texture;
+        }
+        if (this.instanceCount >= this.instances.capacity() / INSTANCE_SIZE) {
+            this.instances = MemoryUtil.memRealloc(this.instances, this.instances.capacity() * 2);
+        }
+        if (this.pointCount + count > this.points.capacity() / POINT_SIZE) {
+            this.points = MemoryUtil.memRealloc(this.points, Math.max(this.points.capacity() * 2, (this.pointCount + count) * POINT_SIZE));
+        }
+
+        int frequency = Math.max(trail.getFrequency(), 1);
+        long pointer = MemoryUtil.memAddress(this.points) + (long) this.pointCount * POINT_SIZE;
+        for (int i = 0; i < count; i++, pointer += POINT_SIZE) {
+            trail.getPoint(i, this.cameraX, this.cameraY, this.cameraZ, this.point);
+            trail.getRotation(i, this.rotation);
+            MemoryUtil.memPutFloat(pointer, this.point.x);
+            MemoryUtil.memPutFloat(pointer + 4, this.point.y);
+            MemoryUtil.memPutFloat(pointer + 8, this.point.z);
+            // Width is only read for points that emit vertices
+            MemoryUtil.memPutFloat(pointer + 12, i % frequency == 0 ? trail.getWidth(i) : 0.0F);
+            MemoryUtil.memPutFloat(pointer + 16, this.rotation.x);
+            MemoryUtil.memPutFloat(pointer + 20, this.rotation.y);
+            MemoryUtil.memPutFloat(pointer + 24, this.rotation.z);
+            MemoryUtil.memPutFloat(pointer + 28, 0.0F);
+        }
+
+        int flags = 0;
+        if (trail.isBillboard()) {
+            flags |= FLAG_BILLBOARD;
+        } else if (trail.isParentRotation()) {
+            flags |= FLAG_PARENT_ROTATION;
+        }
+        if (trail.getTilingMode() == Trail.TilingMode.STRETCH) {
+            flags |= FLAG_STRETCH;
+        }
+
+        int color = trail.getColor();
+        long instance = MemoryUtil.memAddress(this.instances) + (long) this.instanceCount * INSTANCE_SIZE;
+        MemoryUtil.memPutInt(instance, this.pointCount);
+        MemoryUtil.memPutInt(instance + 4, count);
+        MemoryUtil.memPutInt(instance + 8, frequency);
+        MemoryUtil.memPutInt(instance + 12, flags);
+        MemoryUtil.memPutByte(instance + 16, (byte) (color >> 16 & 0xFF));
+        MemoryUtil.memPutByte(instance + 17, (byte) (color >> 8 & 0xFF));
+        MemoryUtil.memPutByte(instance + 18, (byte) (color & 0xFF));
+        MemoryUtil.memPutByte(instance + 19, (byte) (color >> 24 & 0xFF));
+
+        this.maxVertices = Math.max(this.maxVertices, ((count - 1) / frequency + 1) * 2);
+        this.pointCount += count;
+        this.instanceCount++;
+    }
+
+    /**
+     * Draws all remaining trails from the current emitter.
+     */
+    public void end() {
+        this.flush();
+        this.matrixStack = null;
+    }
+
+    private void flush() {
+        if (this.instanceCount == 0 || this.texture == null) {
+            this.instanceCount = 0;
+            this.pointCount = 0;
+            this.maxVertices = 0;
+            return;
+        }
+
+        RenderType renderType = VeilRenderType.quasarTrailInstanced(this.texture);
+        renderType.setupRenderState();
+        ShaderInstance shaderInstance = RenderSystem.getShader();
+        ShaderProgram shader = VeilRenderSystem.getShader();
+        if (shaderInstance == null || shader == null) {
+            renderType.clearRenderState();
+            this.instanceCount = 0;
+            this.pointCount = 0;
+            this.maxVertices = 0;
+            return;
+        }
+
+        this.instances.limit(this.instanceCount * INSTANCE_SIZE);
+        VertexArray.upload(this.instanceVbo, this.instances, VertexArray.DrawUsage.STREAM);
+        this.instances.clear();
+        this.points.limit(this.pointCount * POINT_SIZE);
+        VertexArray.upload(this.pointBuffer, this.points, VertexArray.DrawUsage.STREAM);
+        this.points.clear();
+        this.pointBlock.setSize((long) this.pointCount * POINT_SIZE);
+
+        this.modelView.set(RenderSystem.getModelViewMatrix()).mul(this.matrixStack.position());
+        shaderInstance.setDefaultUniforms(VertexFormat.Mode.TRIANGLE_STRIP, this.modelView, RenderSystem.getProjectionMatrix(), Minecraft.getInstance().getWindow());
+        VeilRenderSystem.bind("QuasarTrailPoints", this.pointBlock);
+        shaderInstance.apply();
+
+        this.vertexArray.bind();
+        this.ensureIndices(this.maxVertices);
+        this.vertexArray.setIndexCount(this.maxVertices, VertexArray.IndexType.INT);
+        this.vertexArray.drawInstanced(this.instanceCount);
+        VertexArray.unbind();
+
+        shaderInstance.clear();
+        VeilRenderSystem.unbind(this.pointBlock);
+        renderType.clearRenderState();
+        this.instanceCount = 0;
+        this.pointCount = 0;
+        this.maxVertices = 0;
+    }
+
+    private void ensureIndices(int count) {
+        if (count <= this.indexCapacity) {
+            return;
+        }
+
+        // Vertices are only identified by gl_VertexID, so the index buffer is just a sequence shared by every strip
+        int capacity = Math.max(count, this.indexCapacity * 2);
+        ByteBuffer indices = MemoryUtil.memAlloc(capacity * Integer.BYTES);
+        try {
+            for (int i = 0; i < capacity; i++) {
+                indices.putInt(i);
+            }
+            indices.flip();
+            this.vertexArray.uploadIndexBuffer(indices);
+        } finally {
+            MemoryUtil.memFree(indices);
+        }
+        this.indexCapacity = capacity;
+    }
+
+    @Override
+    public void free() {
+        this.pointBlock.free();
+        this.vertexArray.free();
+        MemoryUtil.memFree(this.instances);
+        MemoryUtil.memFree(this.points);
+    }
+}
@@ -0,0 +1,120 @@
+package foundry.veil.impl.quasar.gpu;
+
+import foundry.veil.Veil;
+import foundry.veil.api.quasar.data.QuasarParticleData;
+import foundry.veil.api.quasar.data.module.ParticleModuleData;
+import foundry.veil.api.quasar.data.module.force.*;
+import foundry.veil.api.quasar.data.module.init.InitSizeParticleModuleData;
+import foundry.veil.api.quasar.data.module.init.InitialVelocityModuleData;
+import foundry.veil.api.quasar.data.module.render.ColorParticleModuleData;
+import foundry.veil.api.quasar.data.module.update.TickSizeParticleModuleData;
+import foundry.veil.api.quasar.particle.ParticleExpression;
+import foundry.veil.api.quasar.particle.RenderStyle;
+import foundry.veil.api.quasar.particle.SpriteData;
+import gg.moonflower.molangcompiler.api.MolangExpression;
+import net.minecraft.resources.ResourceLocation;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+import org.joml.Vector4f;
+
+import java.util.List;
+
+/**
+ * Everything about a particle type that the GPU simulation needs that does not change between ticks.
+ *
+ * @param sizeCurve  The radius of each particle sampled over its life or <code>null</code> to keep the spawned radius
+ * @param colorCurve The RGBA color of each particle sampled over its life or <code>null</code> to keep the spawned color
+ * @param spriteData The animated sprite to use or <code>null</code> for a blank texture
+ * @param texture    The texture to draw particles with
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public record GpuParticleProgram(float @Nullable [] sizeCurve,
+                                 float @Nullable [] colorCurve,
+                                 @Nullable SpriteData spriteData,
+                                 ResourceLocation texture) {
+
+    public static final int CURVE_SAMPLES = 32;
+    private static final ResourceLocation BLANK = Veil.veilPath("textures/special/blank.png");
+
+    /**
+     * Attempts to express the specified particle on the GPU.
+     *
+     * @param data    The particle to simulate
+     * @param modules All modules the particle uses
+     * @return A new program or <code>null</code> if any part of the particle requires the CPU
+     */
+    public static @Nullable GpuParticleProgram create(QuasarParticleData data, List<ParticleModuleData> modules) {
+        // GPU particles are drawn in buffer order, so only additive particles that look the same in any order can be simulated
+        if (!data.additive()) {
+            return null;
+        }
+        if (!(data.renderStyle() instanceof RenderStyle.Billboard) || data.faceVelocity() || data.velocityStretchFactor() != 0.0F || data.shouldCollide() || !data.collisionModules().isEmpty()) {
+            return null;
+        }
+
+        float[] sizeCurve = null;
+        float[] colorCurve = null;
+        boolean vectorField = false;
+        for (ParticleModuleData module : modules) {
+            // Init modules run on the CPU before the particle is uploaded
+            if (module instanceof InitSizeParticleModuleData || module instanceof InitialVelocityModuleData) {
+                continue;
+            }
+            if (module instanceof GravityForceData || module instanceof DragForceData || module instanceof WindForceData ||
+                    module instanceof PointForceData || module instanceof PointAttractorForceData || module instanceof VortexForceData) {
+                continue;
+            }
+            // Only a single baked field can be bound to the simulation
+            if (module instanceof VectorFieldForceData force && force.vectorField().isBaked() && !vectorField) {
+                vectorField = true;
+                continue;
+            }
+            if (module instanceof TickSizeParticleModuleData tickSize) {
+                sizeCurve = bakeCurve(tickSize.size());
+                if (sizeCurve == null) {
+                    return null;
+                }
+                continue;
+            }
+            if (module instanceof ColorParticleModuleData color) {
+                // Constant colors are set when the particle spawns
+                if (color.gradient().isConstant() || color.interpolant().isConstant()) {
+                    colorCurve = null;
+                    continue;
+                }
+
+                float[] interpolant = bakeCurve(color.interpolant());
+                if (interpolant == null) {
+                    return null;
+                }
+
+                colorCurve = new float[CURVE_SAMPLES * 4];
+                Vector4f sample = new Vector4f();
+                for (int i = 0; i < CURVE_SAMPLES; i++) {
+                    color.gradient().getColor(interpolant[i], sample);
+                    colorCurve[i * 4] = sample.x;
+                    colorCurve[i * 4 + 1] = sample.y;
+                    colorCurve[i * 4 + 2] = sample.z;
+                    colorCurve[i * 4 + 3] = sample.w;
+                }
+                continue;
+            }
+            // Collision, sub-emitters, lights, trails, exact vector fields, and code modules all need the CPU
+            return null;
+        }
+
+        SpriteData spriteData = data.spriteData();
+        return new GpuParticleProgram(sizeCurve, colorCurve, spriteData, spriteData != null ? spriteData.sprite() : BLANK);
+    }
+
+    /**
+     * Samples an expression over the life of a particle. This only succeeds if the expression only depends on <code>query.agePercent</code>.
+     *
+     * @param expression The expression to sample
+     * @return The sampled values or <code>null</code> if the expression depends on anything else
+     */
+    private static float @Nullable [] bakeCurve(MolangExpression expression) {
+        return ParticleExpression.of(expression).sampleCurve(CURVE_SAMPLES);
+    }
+}
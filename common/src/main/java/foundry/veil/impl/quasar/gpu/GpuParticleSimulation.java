@@ -0,0 +1,531 @@
+package foundry.veil.impl.quasar.gpu;
+
+import com.mojang.blaze3d.platform.GlStateManager;
+import com.mojang.blaze3d.systems.RenderSystem;
+import com.mojang.blaze3d.vertex.VertexFormat;
+import foundry.veil.Veil;
+import foundry.veil.api.client.render.MatrixStack;
+import foundry.veil.api.client.render.VeilRenderSystem;
+import foundry.veil.api.client.render.rendertype.VeilRenderType;
+import foundry.veil.api.client.render.shader.block.DynamicShaderBlock;
+import foundry.veil.api.client.render.shader.block.ShaderBlock;
+import foundry.veil.api.client.render.shader.program.ShaderProgram;
+import foundry.veil.api.quasar.emitters.module.ForceParticleModule;
+import foundry.veil.api.quasar.emitters.module.force.*;
+import foundry.veil.api.quasar.emitters.module.update.BakedVectorField;
+import foundry.veil.api.quasar.emitters.module.update.VectorField;
+import foundry.veil.api.quasar.particle.ParticleEmitter;
+import foundry.veil.api.quasar.particle.ParticleStorage;
+import foundry.veil.api.quasar.particle.SpriteData;
+import foundry.veil.impl.quasar.ParticleLightCache;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import net.minecraft.client.Camera;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.multiplayer.ClientLevel;
+import net.minecraft.client.renderer.RenderType;
+import net.minecraft.client.renderer.ShaderInstance;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.phys.Vec3;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+import org.joml.Matrix4f;
+import org.joml.Vector3d;
+import org.joml.Vector3dc;
+import org.joml.Vector4f;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+import org.lwjgl.system.NativeResource;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import static org.lwjgl.opengl.GL15C.*;
+import static org.lwjgl.opengl.GL30C.glDeleteVertexArrays;
+import static org.lwjgl.opengl.GL30C.glGenVertexArrays;
+import static org.lwjgl.opengl.GL31C.GL_COPY_READ_BUFFER;
+import static org.lwjgl.opengl.GL31C.GL_COPY_WRITE_BUFFER;
+import static org.lwjgl.opengl.GL31C.glCopyBufferSubData;
+import static org.lwjgl.opengl.GL40C.GL_DRAW_INDIRECT_BUFFER;
+import static org.lwjgl.opengl.GL40C.glDrawArraysIndirect;
+import static org.lwjgl.opengl.GL42C.GL_COMMAND_BARRIER_BIT;
+import static org.lwjgl.opengl.GL42C.glMemoryBarrier;
+import static org.lwjgl.opengl.GL43C.GL_SHADER_STORAGE_BARRIER_BIT;
+import static org.lwjgl.opengl.GL43C.glDispatchCompute;
+
+/**
+ * <p>Simulates and draws all particles of a single emitter on the GPU.</p>
+ * <p>Particles are still spawned and initialized on the CPU, then uploaded into free slots of a shader storage buffer.
+ * A compute shader advances every slot each tick and writes the live slots into an indirect draw command,
+ * so particles are drawn from the same buffer without ever being read back.</p>
+ * <p>Lifetimes can't be changed on the GPU, so the CPU knows when each slot dies without reading anything back.</p>
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public class GpuParticleSimulation implements NativeResource {
+
+    private static final ResourceLocation SIMULATE_SHADER = Veil.veilPath("quasar/simulate");
+    private static final int PARTICLE_SIZE = Float.BYTES * 4 * 5;
+    private static final int AGE_OFFSET = Float.BYTES * 4 * 4;
+    private static final int DRAW_COMMAND_SIZE = Integer.BYTES * 4;
+    private static final int MIN_CAPACITY = 256;
+    private static final int MAX_FORCES = 16;
+    private static final int WORK_GROUP_SIZE = 64;
+    private static final int VECTOR_FIELD_SIZE = 32;
+
+    private static final int CONSTANT_FORCE = 0;
+    private static final int SCALE_FORCE = 1;
+    private static final int POINT_FORCE = 2;
+    private static final int POINT_ATTRACTOR_FORCE = 3;
+    private static final int VORTEX_FORCE = 4;
+    private static final int VECTOR_FIELD_FORCE = 5;
+
+    private final ParticleEmitter emitter;
+    private final GpuParticleProgram program;
+    private final Vector3d origin;
+    private final RenderType renderType;
+    private final IntArrayList freeSlots;
+    private final int[] forceTypes;
+    private final Vector4f[] forces;
+    private final Vector4f[] colorCurve;
+    private final Vector3d forceOrigin;
+    private final Matrix4f modelView;
+
+    private final int vao;
+    private final int drawBuffer;
+    private final DynamicShaderBlock<?> drawBlock;
+    private int particleBuffer;
+    private DynamicShaderBlock<?> particleBlock;
+    private int capacity;
+    private long[] deathTick;
+    private int aliveCount;
+    private long tick;
+    private int packedLight;
+    private boolean printedError;
+    private BakedVectorField vectorField;
+    private VectorField vectorFieldSource;
+
+    public GpuParticleSimulation(ParticleEmitter emitter, GpuParticleProgram program) {
+        this.emitter = emitter;
+        this.program = program;
+        Vector3dc position = emitter.getPosition();
+        // Positions are stored relative to this origin, so floats don't lose precision far away from the world origin
+        this.origin = new Vector3d(Math.floor(position.x()), Math.floor(position.y()), Math.floor(position.z()));
+        // Only additive particles are simulated on the GPU
+        this.renderType = VeilRenderType.quasarParticleGpu(program.texture(), true);
+        this.freeSlots = new IntArrayList();
+        this.forceTypes = new int[MAX_FORCES];
+        this.forces = new Vector4f[MAX_FORCES * 2];
+        for (int i = 0; i < this.forces.length; i++) {
+            this.forces[i] = new Vector4f();
+        }
+        if (program.colorCurve() != null) {
+            float[] curve = program.colorCurve();
+            this.colorCurve = new Vector4f[GpuParticleProgram.CURVE_SAMPLES];
+            for (int i = 0; i < this.colorCurve.length; i++) {
+                this.colorCurve[i] = new Vector4f(curve[i * 4], curve[i * 4 + 1], curve[i * 4 + 2], curve[i * 4 + 3]);
+            }
+        } else {
+            this.colorCurve = null;
+        }
+        this.forceOrigin = new Vector3d();
+        this.modelView = new Matrix4f();
+
+        this.vao = glGenVertexArrays();
+        this.drawBuffer = GlStateManager._glGenBuffers();
+        this.drawBlock = ShaderBlock.wrapper(ShaderBlock.BufferBinding.SHADER_STORAGE, this.drawBuffer);
+        this.capacity = 0;
+        this.deathTick = new long[0];
+        this.resize(MIN_CAPACITY);
+    }
+
+    /**
+     * @return Whether the GPU simulation can be used on this device
+     */
+    public static boolean isSupported() {
+        return VeilRenderSystem.computeSupported() && VeilRenderSystem.shaderStorageBufferSupported() && VeilRenderSystem.drawIndirectSupported();
+    }
+
+    private void resize(int capacity) {
+        int buffer = GlStateManager._glGenBuffers();
+        RenderSystem.glBindBuffer(GL_COPY_WRITE_BUFFER, buffer);
+
+        // Empty slots have a lifetime of 0, so they are never simulated or drawn
+        ByteBuffer empty = MemoryUtil.memCalloc(capacity * PARTICLE_SIZE);
+        try {
+            glBufferData(GL_COPY_WRITE_BUFFER, empty, GL_DYNAMIC_DRAW);
+        } finally {
+            MemoryUtil.memFree(empty);
+        }
+
+        if (this.particleBuffer != 0) {
+            RenderSystem.glBindBuffer(GL_COPY_READ_BUFFER, this.particleBuffer);
+            glCopyBufferSubData(GL_COPY_READ_BUFFER, GL_COPY_WRITE_BUFFER, 0, 0, (long) this.capacity * PARTICLE_SIZE);
+            RenderSystem.glBindBuffer(GL_COPY_READ_BUFFER, 0);
+            this.particleBlock.free();
+            GlStateManager._glDeleteBuffers(this.particleBuffer);
+        }
+        RenderSystem.glBindBuffer(GL_COPY_WRITE_BUFFER, 0);
+
+        this.particleBuffer = buffer;
+        this.particleBlock = ShaderBlock.wrapper(ShaderBlock.BufferBinding.SHADER_STORAGE, buffer);
+        this.particleBlock.setSize((long) capacity * PARTICLE_SIZE);
+
+        RenderSystem.glBindBuffer(GL_ARRAY_BUFFER, this.drawBuffer);
+        glBufferData(GL_ARRAY_BUFFER, DRAW_COMMAND_SIZE + (long) capacity * Integer.BYTES, GL_DYNAMIC_DRAW);
+        RenderSystem.glBindBuffer(GL_ARRAY_BUFFER, 0);
+        this.drawBlock.setSize(DRAW_COMMAND_SIZE + (long) capacity * Integer.BYTES);
+
+        // New slots are pushed in reverse, so they are allocated in order
+        for (int i = capacity - 1; i >= this.capacity; i--) {
+            this.freeSlots.add(i);
+        }
+        this.deathTick = Arrays.copyOf(this.deathTick, capacity);
+        Arrays.fill(this.deathTick, this.capacity, capacity, -1L);
+        this.capacity = capacity;
+    }
+
+    private void reserve(int count) {
+        int missing = count - this.freeSlots.size();
+        if (missing > 0) {
+            this.resize(Math.max(this.capacity + missing, (int) (this.capacity * 1.5)));
+        }
+    }
+
+    /**
+     * Moves all particles that were spawned on the CPU into the GPU buffer. The storage is empty afterward.
+     *
+     * @param storage The storage containing newly spawned particles
+     */
+    private void upload(ParticleStorage storage) {
+        int size = storage.size();
+        if (size == 0) {
+            return;
+        }
+
+        double[] position = storage.position();
+        double[] velocity = storage.velocity();
+        float[] radius = storage.radius();
+        float[] color = storage.color();
+        int[] age = storage.age();
+        int[] lifetime = storage.lifetime();
+
+        // Resizing changes the bound buffer, so all slots need to exist before uploading
+        this.reserve(size);
+        ByteBuffer buffer = MemoryUtil.memAlloc(size * PARTICLE_SIZE);
+        try {
+            RenderSystem.glBindBuffer(GL_ARRAY_BUFFER, this.particleBuffer);
+
+            // Consecutive slots are uploaded together
+            int runStart = -1;
+            int runLength = 0;
+            for (int i = 0; i < size; i++) {
+                int slot = this.freeSlots.removeInt(this.freeSlots.size() - 1);
+                if (runLength > 0 && slot != runStart + runLength) {
+                    buffer.flip();
+                    glBufferSubData(GL_ARRAY_BUFFER, (long) runStart * PARTICLE_SIZE, buffer);
+                    buffer.clear();
+                    runLength = 0;
+                }
+                if (runLength == 0) {
+                    runStart = slot;
+                }
+                runLength++;
+
+                float x = (float) (position[i * 3] - this.origin.x);
+                float y = (float) (position[i * 3 + 1] - this.origin.y);
+                float z = (float) (position[i * 3 + 2] - this.origin.z);
+                buffer.putFloat(x).putFloat(y).putFloat(z).putFloat(0.0F);
+                buffer.putFloat((float) velocity[i * 3]).putFloat((float) velocity[i * 3 + 1]).putFloat((float) velocity[i * 3 + 2]).putFloat(radius[i]);
+                buffer.putFloat(x).putFloat(y).putFloat(z).putFloat(radius[i]);
+                buffer.putFloat(color[i * 4]).putFloat(color[i * 4 + 1]).putFloat(color[i * 4 + 2]).putFloat(color[i * 4 + 3]);
+                buffer.putInt(age[i]).putInt(lifetime[i]).putInt(0).putInt(0);
+
+                // The particle is stepped for the first time this tick
+                this.deathTick[slot] = this.tick + lifetime[i] - age[i] - 1;
+            }
+            if (runLength > 0) {
+                buffer.flip();
+                glBufferSubData(GL_ARRAY_BUFFER, (long) runStart * PARTICLE_SIZE, buffer);
+            }
+
+            RenderSystem.glBindBuffer(GL_ARRAY_BUFFER, 0);
+        } finally {
+            MemoryUtil.memFree(buffer);
+        }
+
+        storage.clear();
+    }
+
+    /**
+     * Uploads new particles and advances every particle by one tick.
+     *
+     * @param level      The level to sample light from
+     * @param lightCache The light cache to sample through
+     * @param storage    The storage containing newly spawned particles
+     */
+    public void tick(ClientLevel level, ParticleLightCache lightCache, ParticleStorage storage) {
+        this.upload(storage);
+
+        // Particles can't sample the level on the GPU, so they all use the light at the emitter
+        Vector3dc position = this.emitter.getPosition();
+        this.packedLight = lightCache.getLightColor(level, position.x(), position.y(), position.z());
+        if (lightCache.gatherDeferredLights(position.x(), position.y(), position.z(), 0.0)) {
+            this.packedLight = lightCache.applyDeferredLights(this.packedLight, position.x(), position.y(), position.z());
+        }
+
+        ShaderProgram shader = VeilRenderSystem.renderer().getShaderManager().getShader(SIMULATE_SHADER);
+        if (shader == null || !shader.isCompute()) {
+            if (!this.printedError) {
+                this.printedError = true;
+                Veil.LOGGER.error("Failed to find particle simulation shader: {}", SIMULATE_SHADER);
+            }
+        } else {
+            try (MemoryStack stack = MemoryStack.stackPush()) {
+                // Reset the draw command, the shader counts instances while simulating
+                RenderSystem.glBindBuffer(GL_ARRAY_BUFFER, this.drawBuffer);
+                glBufferSubData(GL_ARRAY_BUFFER, 0, stack.ints(6, 0, 0, 0));
+                RenderSystem.glBindBuffer(GL_ARRAY_BUFFER, 0);
+
+                VeilRenderSystem.bind("QuasarParticles", this.particleBlock);
+                VeilRenderSystem.bind("QuasarParticleDraw", this.drawBlock);
+
+                int forceCount = this.updateForces();
+                shader.setInt("ParticleCount", this.capacity);
+                shader.setInt("ForceCount", forceCount);
+                shader.setInts("ForceTypes", this.forceTypes);
+                shader.setVectors("Forces", this.forces);
+                float[] sizeCurve = this.program.sizeCurve();
+                shader.setInt("SizeCurveEnabled", sizeCurve != null ? 1 : 0);
+                if (sizeCurve != null) {
+                    shader.setFloats("SizeCurve", sizeCurve);
+                }
+
+                if (this.vectorField != null) {
+                    shader.setSampler("VectorField", this.vectorField.getOrCreateTexture());
+                } else {
+                    // The program is shared by every simulation, so the last field must not leak into this one
+                    shader.removeSampler("VectorField");
+                }
+
+                shader.bind();
+                shader.bindSamplers(0);
+                glDispatchCompute((this.capacity + WORK_GROUP_SIZE - 1) / WORK_GROUP_SIZE, 1, 1);
+                glMemoryBarrier(GL_SHADER_STORAGE_BARRIER_BIT | GL_COMMAND_BARRIER_BIT);
+                ShaderProgram.unbind();
+            } finally {
+                VeilRenderSystem.unbind(this.particleBlock);
+                VeilRenderSystem.unbind(this.drawBlock);
+            }
+        }
+
+        // Release slots that died this tick
+        int alive = 0;
+        for (int i = 0; i < this.capacity; i++) {
+            long death = this.deathTick[i];
+            if (death < 0) {
+                continue;
+            }
+            if (this.tick >= death) {
+                this.deathTick[i] = -1L;
+                this.freeSlots.add(i);
+            } else {
+                alive++;
+            }
+        }
+        this.aliveCount = alive;
+        this.tick++;
+    }
+
+    private int updateForces() {
+        ForceParticleModule[] modules = this.emitter.getModules().getForceModules();
+        BakedVectorField vectorField = null;
+        int count = 0;
+        for (ForceParticleModule module : modules) {
+            if (count >= MAX_FORCES) {
+                break;
+            }
+
+            Vector4f a = this.forces[count * 2];
+            Vector4f b = this.forces[count * 2 + 1];
+            if (module instanceof ConstantForceModule force) {
+                Vector3d acceleration = force.getAcceleration();
+                float strength = force.getStrength();
+                this.forceTypes[count] = CONSTANT_FORCE;
+                a.set((float) acceleration.x * strength, (float) acceleration.y * strength, (float) acceleration.z * strength, 0.0F);
+            } else if (module instanceof ScaleForceModule force) {
+                Vector3d scale = force.getScale();
+                float strength = force.getStrength();
+                this.forceTypes[count] = SCALE_FORCE;
+                a.set(1.0F + (float) (scale.x - 1.0) * strength, 1.0F + (float) (scale.y - 1.0) * strength, 1.0F + (float) (scale.z - 1.0) * strength, 0.0F);
+            } else if (module instanceof PointForceModule force) {
+                this.forceTypes[count] = POINT_FORCE;
+                this.setOrigin(force, a, (float) force.getRangeSquared());
+                b.set(force.getStrength(), 0.0F, 0.0F, 0.0F);
+            } else if (module instanceof PointAttractorForceModule force) {
+                this.forceTypes[count] = POINT_ATTRACTOR_FORCE;
+                this.setOrigin(force, a, (float) force.getRangeSquared());
+                b.set(force.getStrength(), force.isStrengthByDistance() ? 1.0F : 0.0F, force.isInvertDistanceModifier() ? 1.0F : 0.0F, 0.0F);
+            } else if (module instanceof VortexForceModule force) {
+                Vector3dc axis = force.getVortexAxis();
+                this.forceTypes[count] = VORTEX_FORCE;
+                this.setOrigin(force, a, (float) force.getRangeSquared());
+                b.set((float) axis.x(), (float) axis.y(), (float) axis.z(), force.getStrength());
+            } else if (module instanceof VectorFieldForceModule force && vectorField == null) {
+                vectorField = this.bakeVectorField(force.getVectorField());
+                if (vectorField == null) {
+                    continue;
+                }
+
+                float cellSize = vectorField.getCellSize();
+                this.forceTypes[count] = VECTOR_FIELD_FORCE;
+                a.set((float) (vectorField.getMinX() - this.origin.x), (float) (vectorField.getMinY() - this.origin.y), (float) (vectorField.getMinZ() - this.origin.z), force.getVectorField().strength() * force.getStrength());
+                b.set(cellSize, vectorField.getSize() + 1, 0.0F, 0.0F);
+            } else {
+                continue;
+            }
+            count++;
+        }
+        if (vectorField == null) {
+            this.freeVectorField();
+        }
+        return count;
+    }
+
+    private @Nullable BakedVectorField bakeVectorField(VectorField field) {
+        if (!field.isBaked()) {
+            this.freeVectorField();
+            return null;
+        }
+        if (this.vectorFieldSource == field) {
+            return this.vectorField;
+        }
+
+        // Particles rarely travel far from the emitter, so the field only covers the area around the origin
+        this.freeVectorField();
+        double offset = VECTOR_FIELD_SIZE * field.resolution() / 2.0;
+        this.vectorField = BakedVectorField.bake(field, this.origin.x - offset, this.origin.y - offset, this.origin.z - offset, VECTOR_FIELD_SIZE);
+        this.vectorFieldSource = field;
+        return this.vectorField;
+    }
+
+    private void freeVectorField() {
+        if (this.vectorField != null) {
+            this.vectorField.free();
+            this.vectorField = null;
+            this.vectorFieldSource = null;
+        }
+    }
+
+    private void setOrigin(SimplePositionedForce force, Vector4f store, float rangeSq) {
+        Vector3d position = force.getPosition();
+        if (force.isLocalPosition()) {
+            position.add(this.emitter.getPosition(), this.forceOrigin);
+        } else {
+            this.forceOrigin.set(position);
+        }
+        this.forceOrigin.sub(this.origin);
+        store.set((float) this.forceOrigin.x, (float) this.forceOrigin.y, (float) this.forceOrigin.z, rangeSq);
+    }
+
+    /**
+     * Draws all live particles.
+     *
+     * @param matrixStack  The current transform
+     * @param camera       The camera to draw particles facing
+     * @param partialTicks The percentage from last tick to this tick
+     */
+    public void render(MatrixStack matrixStack, Camera camera, float partialTicks) {
+        if (this.aliveCount == 0) {
+            return;
+        }
+
+        this.renderType.setupRenderState();
+        ShaderInstance shaderInstance = RenderSystem.getShader();
+        ShaderProgram shader = VeilRenderSystem.getShader();
+        if (shaderInstance == null || shader == null) {
+            this.renderType.clearRenderState();
+            return;
+        }
+
+        Vec3 cameraPos = camera.getPosition();
+        this.modelView.set(RenderSystem.getModelViewMatrix()).mul(matrixStack.position());
+        shaderInstance.setDefaultUniforms(VertexFormat.Mode.TRIANGLES, this.modelView, RenderSystem.getProjectionMatrix(), Minecraft.getInstance().getWindow());
+
+        VeilRenderSystem.bind("QuasarParticles", this.particleBlock);
+        VeilRenderSystem.bind("QuasarParticleDraw", this.drawBlock);
+        shader.setVector("RenderOffset", (float) (this.origin.x - cameraPos.x), (float) (this.origin.y - cameraPos.y), (float) (this.origin.z - cameraPos.z));
+        shader.setFloat("PartialTicks", partialTicks);
+        shader.setVectorI("LightUV", this.packedLight & 0xFFFF, this.packedLight >> 16 & 0xFFFF);
+        shader.setInt("ColorCurveEnabled", this.colorCurve != null ? 1 : 0);
+        if (this.colorCurve != null) {
+            shader.setVectors("ColorCurve", this.colorCurve);
+        }
+        SpriteData spriteData = this.program.spriteData();
+        if (spriteData != null) {
+            shader.setVectorI("SpriteFrames", spriteData.frameCount(), spriteData.frameWidth(), spriteData.frameHeight(), spriteData.stretchToLifetime() ? 1 : 0);
+            shader.setFloat("SpriteFrameTime", spriteData.frameTime());
+        } else {
+            shader.setVectorI("SpriteFrames", 1, 1, 1, 0);
+            shader.setFloat("SpriteFrameTime", 1.0F);
+        }
+        shaderInstance.apply();
+
+        VeilRenderSystem.bindVertexArray(this.vao);
+        RenderSystem.glBindBuffer(GL_DRAW_INDIRECT_BUFFER, this.drawBuffer);
+        glDrawArraysIndirect(GL_TRIANGLES, 0L);
+        RenderSystem.glBindBuffer(GL_DRAW_INDIRECT_BUFFER, 0);
+        VeilRenderSystem.bindVertexArray(0);
+
+        shaderInstance.clear();
+        VeilRenderSystem.unbind(this.particleBlock);
+        VeilRenderSystem.unbind(this.drawBlock);
+        this.renderType.clearRenderState();
+    }
+
+    /**
+     * Kills up to the specified number of particles.
+     *
+     * @param count The number of particles to remove
+     * @return The number of particles actually removed
+     */
+    public int trim(int count) {
+        int removed = 0;
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer dead = stack.ints(Integer.MAX_VALUE);
+            RenderSystem.glBindBuffer(GL_ARRAY_BUFFER, this.particleBuffer);
+            for (int i = 0; i < this.capacity && removed < count; i++) {
+                if (this.deathTick[i] < 0) {
+                    continue;
+                }
+
+                // An age past the lifetime stops the slot from being simulated or drawn
+                glBufferSubData(GL_ARRAY_BUFFER, (long) i * PARTICLE_SIZE + AGE_OFFSET, dead);
+                this.deathTick[i] = -1L;
+                this.freeSlots.add(i);
+                removed++;
+            }
+            RenderSystem.glBindBuffer(GL_ARRAY_BUFFER, 0);
+        }
+        this.aliveCount -= removed;
+        return removed;
+    }
+
+    /**
+     * @return The number of particles currently alive on the GPU
+     */
+    public int getParticleCount() {
+        return this.aliveCount;
+    }
+
+    @Override
+    public void free() {
+        this.particleBlock.free();
+        this.drawBlock.free();
+        GlStateManager._glDeleteBuffers(this.particleBuffer);
+        GlStateManager._glDeleteBuffers(this.drawBuffer);
+        glDeleteVertexArrays(this.vao);
+        this.freeVectorField();
+    }
+}
@@ -1,6 +1,7 @@
 package foundry.veil.mixin.perspective.accessor;
 
 import net.minecraft.client.renderer.LevelRenderer;
+import net.minecraft.client.renderer.ViewArea;
 import net.minecraft.client.renderer.culling.Frustum;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.gen.Accessor;
@@ -13,4 +14,7 @@ public interface LevelRendererAccessor {
 
     @Accessor
     void setCullingFrustum(Frustum frustum);
+
+    @Accessor
+    ViewArea getViewArea();
 }
@@ -11,6 +11,7 @@ import com.mojang.blaze3d.vertex.VertexFormat;
 import foundry.veil.api.client.render.CullFrustum;
 import foundry.veil.api.client.render.VeilRenderBridge;
 import foundry.veil.api.client.render.VeilRenderSystem;
+import foundry.veil.api.client.render.VeilRenderer;
 import foundry.veil.api.client.render.framebuffer.AdvancedFbo;
 import foundry.veil.api.client.render.framebuffer.FramebufferManager;
 import foundry.veil.api.client.render.framebuffer.VeilFramebuffers;
@@ -141,6 +142,15 @@ public abstract class PipelineLevelRendererMixin implements LevelRendererExtensi
         framebufferManager.setFramebuffer(VeilFramebuffers.CLOUDS_TARGET, VeilRenderBridge.wrap(this.cloudsTarget));
     }
 
+    // Cached shadow maps have to be redrawn when the terrain they contain is rebuilt
+    @Inject(method = "setSectionDirty(IIIZ)V", at = @At("HEAD"))
+    public void veil$invalidateShadows(int sectionX, int sectionY, int sectionZ, boolean reRenderOnMainThread, CallbackInfo ci) {
+        VeilRenderer renderer = VeilRenderSystem.renderer();
+        if (renderer != null) {
+            renderer.getLightRenderer().invalidateShadows(sectionX, sectionY, sectionZ);
+        }
+    }
+
     @Inject(method = "setLevel", at = @At(value = "INVOKE", target = "Lnet/minecraft/client/renderer/SectionOcclusionGraph;waitAndReset(Lnet/minecraft/client/renderer/ViewArea;)V"))
     public void free(ClientLevel level, CallbackInfo ci) {
         VeilRenderSystem.clearLevel();
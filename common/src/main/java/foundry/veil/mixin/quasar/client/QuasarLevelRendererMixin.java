@@ -0,0 +1,22 @@
+package foundry.veil.mixin.quasar.client;
+
+import foundry.veil.api.client.render.VeilRenderSystem;
+import foundry.veil.api.client.render.VeilRenderer;
+import net.minecraft.client.renderer.LevelRenderer;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(LevelRenderer.class)
+public class QuasarLevelRendererMixin {
+
+    // Both block and light updates mark the section dirty
+    @Inject(method = "setSectionDirty(IIIZ)V", at = @At("HEAD"))
+    public void invalidateParticleLight(int sectionX, int sectionY, int sectionZ, boolean reRenderOnMainThread, CallbackInfo ci) {
+        VeilRenderer renderer = VeilRenderSystem.renderer();
+        if (renderer != null) {
+            renderer.getParticleManager().getLightCache().invalidateSection(sectionX, sectionY, sectionZ);
+        }
+    }
+}
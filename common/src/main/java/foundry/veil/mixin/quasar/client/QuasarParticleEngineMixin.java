@@ -18,7 +18,18 @@ public class QuasarParticleEngineMixin {
     @Inject(method = "countParticles", at = @At("RETURN"), cancellable = true)
     public void countParticles(CallbackInfoReturnable<String> cir) {
         ParticleSystemManager particleManager = VeilRenderSystem.renderer().getParticleManager();
-        cir.setReturnValue(cir.getReturnValue() + ". VE: " + particleManager.getEmitterCount() + ". VP: " + particleManager.getParticleCount());
+        StringBuilder builder = new StringBuilder(cir.getReturnValue());
+        builder.append(". VE: ").append(particleManager.getVisibleEmitterCount()).append('/').append(particleManager.getEmitterCount());
+        builder.append(". VP: ").append(particleManager.getParticleCount());
+        // Number of emitters at each level of detail
+        builder.append(". VL: ");
+        for (int i = 0; i <= particleManager.getMaxLodLevel(); i++) {
+            if (i > 0) {
+                builder.append('/');
+            }
+            builder.append(particleManager.getLodCount(i));
+        }
+        cir.setReturnValue(builder.toString());
     }
 
     @Inject(method = "setLevel", at = @At("HEAD"))
@@ -0,0 +1,26 @@
+struct QuasarParticle {
+    // xyz: position relative to the emitter origin
+    vec4 position;
+    // xyz: velocity, w: radius
+    vec4 velocity;
+    // xyz: position last tick, w: radius last tick
+    vec4 prevPosition;
+    vec4 color;
+    // x: age, y: lifetime
+    ivec4 info;
+};
+
+layout(std430) buffer QuasarParticles {
+    QuasarParticle particles[];
+};
+
+// Starts with a DrawArraysIndirectCommand, so it can be used as the indirect buffer directly
+layout(std430) buffer QuasarParticleDraw {
+    uint vertexCount;
+    uint instanceCount;
+    uint firstVertex;
+    uint baseInstance;
+    uint aliveParticles[];
+};
+
+#define QUASAR_CURVE_SAMPLES 32
@@ -0,0 +1,50 @@
+import foundry.veil.api.client.render.light.PointLight;
+import foundry.veil.impl.client.render.light.LightOctree;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class LightOctreeTest {
+
+    private static Set<PointLight> near(LightOctree<PointLight> tree, double x, double y, double z, double radius) {
+        Set<PointLight> lights = new HashSet<>();
+        tree.forEachNear(x, y, z, radius, lights::add);
+        return lights;
+    }
+
+    @Test
+    public void testNear() {
+        LightOctree<PointLight> tree = new LightOctree<>();
+        PointLight small = new PointLight().setPosition(10, 64, 10).setRadius(2.0F);
+        PointLight far = new PointLight().setPosition(1000, 64, -1000).setRadius(4.0F);
+        PointLight large = new PointLight().setPosition(-300, 64, 0).setRadius(500.0F);
+        tree.update(small);
+        tree.update(far);
+        tree.update(large);
+
+        assertEquals(3, tree.size());
+        assertEquals(Set.of(small, large), near(tree, 12, 64, 10, 1.0));
+        assertEquals(Set.of(far, large), near(tree, 1000, 70, -1000, 3.0));
+        assertEquals(Set.of(large), near(tree, 100, 64, 100, 1.0));
+    }
+
+    @Test
+    public void testMove() {
+        LightOctree<PointLight> tree = new LightOctree<>();
+        PointLight light = new PointLight().setPosition(0, 0, 0).setRadius(1.0F);
+        tree.update(light);
+        assertEquals(Set.of(light), near(tree, 0, 0, 0, 1.0));
+
+        light.setPosition(-513, 40, 700);
+        tree.update(light);
+        assertEquals(Set.of(), near(tree, 0, 0, 0, 1.0));
+        assertEquals(Set.of(light), near(tree, -513, 40, 700, 1.0));
+
+        tree.remove(light);
+        assertEquals(0, tree.size());
+        assertEquals(Set.of(), near(tree, -513, 40, 700, 1.0));
+    }
+}
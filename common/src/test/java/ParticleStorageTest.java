@@ -0,0 +1,57 @@
+import foundry.veil.api.quasar.particle.ParticleStorage;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ParticleStorageTest {
+
+    @Test
+    public void testGrow() {
+        ParticleStorage storage = new ParticleStorage(2);
+        for (int i = 0; i < 100; i++) {
+            int index = storage.add();
+            storage.age()[index] = i;
+        }
+
+        assertEquals(100, storage.size());
+        assertTrue(storage.capacity() >= 100);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, storage.age()[i]);
+        }
+    }
+
+    @Test
+    public void testSwapRemove() {
+        ParticleStorage storage = new ParticleStorage();
+        for (int i = 0; i < 4; i++) {
+            int index = storage.add();
+            storage.age()[index] = i;
+            storage.position()[index * 3 + 1] = i * 10.0;
+            storage.lastUpdate()[index] = i * 2;
+        }
+
+        storage.remove(1);
+        assertEquals(3, storage.size());
+        assertEquals(3, storage.age()[1]);
+        assertEquals(30.0, storage.position()[4]);
+        assertEquals(6, storage.lastUpdate()[1]);
+
+        storage.remove(2);
+        assertEquals(2, storage.size());
+        assertEquals(0, storage.age()[0]);
+        assertEquals(3, storage.age()[1]);
+    }
+
+    @Test
+    public void testDefaults() {
+        ParticleStorage storage = new ParticleStorage();
+        int index = storage.add();
+        storage.color()[index * 4] = 0.5F;
+        storage.remove(index);
+
+        index = storage.add();
+        assertEquals(1.0F, storage.color()[index * 4]);
+        assertEquals(1.0F, storage.radius()[index]);
+    }
+}
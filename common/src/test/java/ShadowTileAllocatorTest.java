@@ -0,0 +1,58 @@
+import foundry.veil.impl.client.render.light.shadow.ShadowTileAllocator;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShadowTileAllocatorTest {
+
+    @Test
+    public void testFill() {
+        ShadowTileAllocator allocator = new ShadowTileAllocator(1024, 128);
+        Set<ShadowTileAllocator.Tile> tiles = new HashSet<>();
+        for (int i = 0; i < 64; i++) {
+            ShadowTileAllocator.Tile tile = allocator.allocate(128);
+            assertNotNull(tile);
+            assertEquals(128, tile.size());
+            assertTrue(tiles.add(tile));
+        }
+
+        assertNull(allocator.allocate(128));
+        assertEquals(1.0F, allocator.getUsage());
+    }
+
+    @Test
+    public void testMerge() {
+        ShadowTileAllocator allocator = new ShadowTileAllocator(1024, 128);
+        List<ShadowTileAllocator.Tile> tiles = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            tiles.add(allocator.allocate(128));
+        }
+        for (ShadowTileAllocator.Tile tile : tiles) {
+            allocator.free(tile);
+        }
+
+        assertEquals(0.0F, allocator.getUsage());
+        assertEquals(new ShadowTileAllocator.Tile(0, 0, 1024), allocator.allocate(1024));
+    }
+
+    @Test
+    public void testMixedSizes() {
+        ShadowTileAllocator allocator = new ShadowTileAllocator(1024, 128);
+        ShadowTileAllocator.Tile large = allocator.allocate(512);
+        ShadowTileAllocator.Tile small = allocator.allocate(128);
+        assertNotNull(large);
+        assertNotNull(small);
+        assertEquals(512, large.size());
+        assertEquals(128, allocator.allocate(100).size());
+
+        // Only two quarters are left whole
+        assertNotNull(allocator.allocate(512));
+        assertNotNull(allocator.allocate(512));
+        assertNull(allocator.allocate(512));
+    }
+}
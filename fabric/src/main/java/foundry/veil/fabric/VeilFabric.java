@@ -1,7 +1,10 @@
 package foundry.veil.fabric;
 
 import foundry.veil.Veil;
+import foundry.veil.impl.network.EmitterSpawnQueue;
 import net.fabricmc.api.ModInitializer;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
 import org.jetbrains.annotations.ApiStatus;
 
 @ApiStatus.Internal
@@ -10,5 +13,7 @@ public class VeilFabric implements ModInitializer {
     @Override
     public void onInitialize() {
         Veil.init();
+        ServerTickEvents.END_SERVER_TICK.register(server -> EmitterSpawnQueue.flush());
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> EmitterSpawnQueue.clear());
     }
 }
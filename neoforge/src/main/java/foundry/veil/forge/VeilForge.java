@@ -1,8 +1,12 @@
 package foundry.veil.forge;
 
 import foundry.veil.Veil;
+import foundry.veil.impl.network.EmitterSpawnQueue;
 import net.neoforged.bus.api.IEventBus;
 import net.neoforged.fml.common.Mod;
+import net.neoforged.neoforge.common.NeoForge;
+import net.neoforged.neoforge.event.server.ServerStoppedEvent;
+import net.neoforged.neoforge.event.tick.ServerTickEvent;
 import org.jetbrains.annotations.ApiStatus;
 
 @ApiStatus.Internal
@@ -11,5 +15,7 @@ public class VeilForge {
 
     public VeilForge(IEventBus bus) {
         Veil.init();
+        NeoForge.EVENT_BUS.addListener(ServerTickEvent.Post.class, event -> EmitterSpawnQueue.flush());
+        NeoForge.EVENT_BUS.addListener(ServerStoppedEvent.class, event -> EmitterSpawnQueue.clear());
     }
 }